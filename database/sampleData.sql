@@ -1,6 +1,9 @@
 CREATE DATABASE IF NOT EXISTS etf_portfolio;
 USE etf_portfolio;
 
+-- Indexes and later schema changes are not in this file. The application applies them at startup
+-- from etf/src/main/resources/db/migration (see SchemaMigrations).
+
 -- ==================================================
 -- Users table
 -- ==================================================
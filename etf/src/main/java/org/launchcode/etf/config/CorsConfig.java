@@ -1,5 +1,6 @@
 package org.launchcode.etf.config;
 
+import org.launchcode.etf.dto.KeysetPage;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.cors.CorsConfiguration;
@@ -23,6 +24,7 @@ public class CorsConfig implements WebMvcConfigurer {
                 .allowedOrigins("http://localhost:5173")
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                 .allowedHeaders("*")
+                .exposedHeaders(KeysetPage.NEXT_CURSOR_HEADER)
                 .allowCredentials(true)
                 .maxAge(3600);
     }
@@ -34,6 +36,8 @@ public class CorsConfig implements WebMvcConfigurer {
         configuration.setAllowedOriginPatterns(Arrays.asList("http://localhost:5173"));
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS"));
         configuration.setAllowedHeaders(Arrays.asList("*"));
+        // Lets the frontend read the pagination cursor of the list endpoints.
+        configuration.setExposedHeaders(Arrays.asList(KeysetPage.NEXT_CURSOR_HEADER));
         configuration.setAllowCredentials(true);
         configuration.setMaxAge(3600L);
         
@@ -0,0 +1,20 @@
+package org.launchcode.etf.config;
+
+import org.launchcode.etf.dao.SchemaMigrations;
+import org.springframework.boot.autoconfigure.AbstractDependsOnBeanFactoryPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcOperations;
+
+@Configuration
+public class DatabaseConfig {
+
+    // Every DAO reads the schema through the JdbcTemplate bean, so making that bean depend on SchemaMigrations
+    // means no DAO is created, let alone queried, before the migrations are done. This is how Spring Boot orders
+    // JdbcTemplate after Flyway; a new DAO gets it without remembering a @DependsOn.
+    @Bean
+    public static AbstractDependsOnBeanFactoryPostProcessor jdbcOperationsDependOnSchemaMigrations() {
+        return new AbstractDependsOnBeanFactoryPostProcessor(JdbcOperations.class, SchemaMigrations.class) {
+        };
+    }
+}
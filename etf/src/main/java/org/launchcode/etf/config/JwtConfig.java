@@ -0,0 +1,41 @@
+package org.launchcode.etf.config;
+
+import eu.fraho.spring.securityJwt.base.dto.JwtUser;
+import eu.fraho.spring.securityJwt.base.service.JwtTokenService;
+import org.launchcode.etf.security.CachingJwtTokenService;
+import org.launchcode.etf.security.EtfJwtUser;
+import org.launchcode.etf.security.VerifiedTokenCache;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Scope;
+
+@Configuration
+public class JwtConfig {
+
+    // fraho asks this prototype bean for a new JwtUser every time it parses a token.
+    // Replacing its default with EtfJwtUser is what makes our extra claims readable on each request.
+    @Bean
+    @Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+    public JwtUser jwtUser() {
+        return new EtfJwtUser();
+    }
+
+    // fraho's filter and login controller both use the JwtTokenService bean, so wrapping it here is enough
+    // to put VerifiedTokenCache in front of every token check. The bean is still fraho's own implementation.
+    @Bean
+    public static BeanPostProcessor cachingJwtTokenServicePostProcessor(ObjectProvider<VerifiedTokenCache> verifiedTokenCache,
+                                                                      ObjectProvider<JwtUser> jwtUser) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof JwtTokenService tokenService && !(bean instanceof CachingJwtTokenService)) {
+                    return new CachingJwtTokenService(tokenService, verifiedTokenCache.getObject(), jwtUser::getObject);
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -1,18 +1,71 @@
 package org.launchcode.etf.config;
 
+import org.launchcode.etf.dto.HashingCalibration;
+import org.launchcode.etf.service.BcryptCostCalibrator;
+import org.launchcode.etf.service.BoundedPasswordEncoder;
+import org.launchcode.etf.service.TargetCostBcryptPasswordEncoder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+
+import java.util.Map;
 
 @Configuration
 public class PasswordConfig {
-    
+
     // If you go to 'bcrypt-generator.com', the default cost factor is 12. BCryptPasswordEncoder uses a cost factor of 10 by default.
-    // When you add user accounts in SQL in MySQL Workbench, make sure to use the same cost factor.
-    // If you use a different cost factor, the password won't match.
+    // We no longer hard-code it: at startup BcryptCostCalibrator picks the highest cost that hashes within
+    // etf.password.hashing.target-ms on this machine. Existing hashes with a different cost still match,
+    // and they are rehashed to the new cost the next time their owner logs in.
+    // If several servers share one database, set etf.password.hashing.cost so they all agree on one cost.
+    // Otherwise each server would keep rehashing the other's passwords.
+    @Bean
+    public HashingCalibration hashingCalibration(@Value("${etf.password.hashing.cost:0}") int fixedCost,
+                                                 @Value("${etf.password.hashing.target-ms:250}") long targetMillis,
+                                                 @Value("${etf.password.hashing.min-cost:10}") int minCost,
+                                                 @Value("${etf.password.hashing.max-cost:14}") int maxCost) {
+        if (fixedCost > 0) {
+            return new HashingCalibration(fixedCost, targetMillis, true, Map.of());
+        }
+        return new BcryptCostCalibrator(targetMillis, minCost, maxCost).calibrate();
+    }
+
+    // Hashing runs on its own small pool (see BoundedPasswordEncoder) so logins and registrations can't tie up
+    // every Tomcat thread. Leave threads at 0 to use one thread per CPU core. Leave queue-capacity at 0 to queue only
+    // as many callers per thread as finish within timeout-ms at the target hash time: the caller's thread waits for
+    // its hash, so the queue is what bounds how many servlet threads wait, and for how long.
+    @Bean
+    public BoundedPasswordEncoder passwordEncoder(HashingCalibration hashingCalibration,
+                                                 @Value("${etf.password.hashing.threads:0}") int threads,
+                                                 @Value("${etf.password.hashing.queue-capacity:0}") int queueCapacity,
+                                                 @Value("${etf.password.hashing.timeout-ms:1000}") long timeoutMillis,
+                                                 @Value("${etf.password.hashing.retry-after-seconds:1}") long retryAfterSeconds) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        if (queueCapacity <= 0) {
+            // A caller at the back of the queue waits for the hashes ahead of it and then its own.
+            long hashesPerThread = Math.max(1, timeoutMillis / Math.max(1, hashingCalibration.getTargetMs()) - 1);
+            queueCapacity = (int) Math.min(Integer.MAX_VALUE, poolSize * hashesPerThread);
+        }
+        return new BoundedPasswordEncoder(new TargetCostBcryptPasswordEncoder(hashingCalibration.getCost()),
+                poolSize, queueCapacity, timeoutMillis, retryAfterSeconds);
+    }
+
+    // fraho creates its DaoAuthenticationProvider without a UserDetailsPasswordService, so Spring never rehashes
+    // on login. Handing it ours (CustomUserDetailsService) turns on the upgradeEncoding -> updatePassword step.
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public static BeanPostProcessor rehashOnLoginPostProcessor(ObjectProvider<UserDetailsPasswordService> passwordService) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DaoAuthenticationProvider provider) {
+                    provider.setUserDetailsPasswordService(passwordService.getObject());
+                }
+                return bean;
+            }
+        };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,38 @@
+package org.launchcode.etf.config;
+
+import org.launchcode.etf.dao.EtfDao;
+import org.launchcode.etf.dao.PriceStore;
+import org.launchcode.etf.service.FileQuoteSource;
+import org.launchcode.etf.service.QuoteSource;
+import org.launchcode.etf.service.SimulatedQuoteSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+// The quote source QuoteFeed runs, picked by etf.quotes.source: "simulated", "file", or "none" (no live prices).
+// A real feed is just another QuoteSource bean, with etf.quotes.source left at none.
+@Configuration
+public class QuoteSourceConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "etf.quotes.source", havingValue = "simulated")
+    public QuoteSource simulatedQuoteSource(EtfDao etfDao, PriceStore priceStore,
+                                            @Value("${etf.quotes.rate:20000}") double rate,
+                                            @Value("${etf.quotes.seed:1}") long seed) {
+        return new SimulatedQuoteSource(etfDao, priceStore, rate, seed);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "etf.quotes.source", havingValue = "file")
+    public QuoteSource fileQuoteSource(@Value("${etf.quotes.file:}") String file,
+                                       @Value("${etf.quotes.rate:20000}") double rate,
+                                       @Value("${etf.quotes.loop:true}") boolean loop) {
+        if (file.isBlank()) {
+            throw new IllegalStateException("etf.quotes.source=file needs etf.quotes.file");
+        }
+        return new FileQuoteSource(Paths.get(file), rate, loop);
+    }
+}
@@ -0,0 +1,10 @@
+package org.launchcode.etf.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Turns on @Scheduled jobs, such as the nightly backtest of every public portfolio (BacktestService.runBatch).
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
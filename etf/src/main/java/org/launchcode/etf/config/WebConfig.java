@@ -0,0 +1,22 @@
+package org.launchcode.etf.config;
+
+import org.launchcode.etf.security.AuthenticatedUserArgumentResolver;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+    private final AuthenticatedUserArgumentResolver authenticatedUserArgumentResolver;
+
+    public WebConfig(AuthenticatedUserArgumentResolver authenticatedUserArgumentResolver) {
+        this.authenticatedUserArgumentResolver = authenticatedUserArgumentResolver;
+    }
+
+    @Override
+    public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
+        resolvers.add(authenticatedUserArgumentResolver);
+    }
+}
@@ -0,0 +1,149 @@
+package org.launchcode.etf.controller;
+
+import org.launchcode.etf.dao.EtfCatalog;
+import org.launchcode.etf.dao.PriceStore;
+import org.launchcode.etf.dao.UserCache;
+import org.launchcode.etf.dto.BacktestBatch;
+import org.launchcode.etf.dto.CacheStats;
+import org.launchcode.etf.dto.CatalogStats;
+import org.launchcode.etf.dto.HashingCalibration;
+import org.launchcode.etf.dto.HashingStats;
+import org.launchcode.etf.dto.PriceImportResult;
+import org.launchcode.etf.dto.QuoteStreamStats;
+import org.launchcode.etf.dto.TokenCacheStats;
+import org.launchcode.etf.security.VerifiedTokenCache;
+import org.launchcode.etf.service.BacktestService;
+import org.launchcode.etf.service.BoundedPasswordEncoder;
+import org.launchcode.etf.service.FrontierService;
+import org.launchcode.etf.service.NavStreamService;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+// Operational endpoints for admins. Nothing here changes user data.
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+    private final UserCache userCache;
+    private final BoundedPasswordEncoder passwordEncoder;
+    private final HashingCalibration hashingCalibration;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final EtfCatalog etfCatalog;
+    private final PriceStore priceStore;
+    private final BacktestService backtestService;
+    private final FrontierService frontierService;
+    private final NavStreamService navStreamService;
+
+    public AdminController(UserCache userCache, BoundedPasswordEncoder passwordEncoder,
+                           HashingCalibration hashingCalibration, VerifiedTokenCache verifiedTokenCache,
+                           EtfCatalog etfCatalog, PriceStore priceStore, BacktestService backtestService,
+                           FrontierService frontierService, NavStreamService navStreamService) {
+        this.userCache = userCache;
+        this.passwordEncoder = passwordEncoder;
+        this.hashingCalibration = hashingCalibration;
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.etfCatalog = etfCatalog;
+        this.priceStore = priceStore;
+        this.backtestService = backtestService;
+        this.frontierService = frontierService;
+        this.navStreamService = navStreamService;
+    }
+
+    @GetMapping("/stats/user-cache")
+    @PreAuthorize("hasRole('ADMIN')")
+    public CacheStats getUserCacheStats() {
+        return userCache.getStats();
+    }
+
+    @DeleteMapping("/stats/user-cache")
+    @PreAuthorize("hasRole('ADMIN')")
+    public void clearUserCache() {
+        userCache.clear();
+    }
+
+    @GetMapping("/stats/token-cache")
+    @PreAuthorize("hasRole('ADMIN')")
+    public TokenCacheStats getTokenCacheStats() {
+        return verifiedTokenCache.getStats();
+    }
+
+    // Only drops cached verifications; every token is simply verified again on its next use.
+    @DeleteMapping("/stats/token-cache")
+    @PreAuthorize("hasRole('ADMIN')")
+    public void clearTokenCache() {
+        verifiedTokenCache.clear();
+    }
+
+    @GetMapping("/stats/password-hashing")
+    @PreAuthorize("hasRole('ADMIN')")
+    public HashingStats getPasswordHashingStats() {
+        return passwordEncoder.getStats();
+    }
+
+    @GetMapping("/stats/password-hashing/calibration")
+    @PreAuthorize("hasRole('ADMIN')")
+    public HashingCalibration getPasswordHashingCalibration() {
+        return hashingCalibration;
+    }
+
+    @GetMapping("/stats/etf-catalog")
+    @PreAuthorize("hasRole('ADMIN')")
+    public CatalogStats getEtfCatalogStats() {
+        return etfCatalog.getStats();
+    }
+
+    // Picks up rows that were changed directly in MySQL, which the catalog can't see on its own.
+    @PostMapping("/etf-catalog/reload")
+    @PreAuthorize("hasRole('ADMIN')")
+    public CatalogStats reloadEtfCatalog() {
+        etfCatalog.reload();
+        return etfCatalog.getStats();
+    }
+
+    @GetMapping("/stats/frontier-cache")
+    @PreAuthorize("hasRole('ADMIN')")
+    public CacheStats getFrontierCacheStats() {
+        return frontierService.getStats();
+    }
+
+    // The live quote feed and NAV streams (QuoteFeed, NavStreamService).
+    @GetMapping("/stats/quotes")
+    @PreAuthorize("hasRole('ADMIN')")
+    public QuoteStreamStats getQuoteStats() {
+        return navStreamService.getStats();
+    }
+
+    // Loads the CSV files in etf.prices.import-dir into the price store. Only days after the last stored one are
+    // added, so running it again after the files were refreshed is the daily update.
+    @PostMapping("/prices/import")
+    @PreAuthorize("hasRole('ADMIN')")
+    public PriceImportResult importPrices() {
+        try {
+            return priceStore.importAll();
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+    }
+
+    // The nightly backtest of every public portfolio, run now; waits for it to finish. 409 if one is running.
+    @PostMapping("/backtests/run")
+    @PreAuthorize("hasRole('ADMIN')")
+    public BacktestBatch runBacktests() {
+        try {
+            return backtestService.runBatch();
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+    }
+
+    @GetMapping("/backtests/latest")
+    @PreAuthorize("hasRole('ADMIN')")
+    public BacktestBatch getLatestBacktests() {
+        BacktestBatch batch = backtestService.getLatestBatch();
+        if (batch == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No backtest batch has run yet");
+        }
+        return batch;
+    }
+}
@@ -3,15 +3,18 @@ package org.launchcode.etf.controller;
 import org.launchcode.etf.dao.UserDao;
 import org.launchcode.etf.dto.ChangePasswordRequest;
 import org.launchcode.etf.dto.CreateUserRequest;
+import org.launchcode.etf.dto.KeysetPage;
 import org.launchcode.etf.dto.UpdateUserRequest;
 import org.launchcode.etf.model.User;
+import org.launchcode.etf.security.AuthenticatedUser;
+import org.launchcode.etf.security.VerifiedTokenCache;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.security.Principal;
 import java.util.List;
 
 @RestController
@@ -19,16 +22,18 @@ import java.util.List;
 public class AuthController {
     private final UserDao userDao;
     private final PasswordEncoder passwordEncoder;
+    private final VerifiedTokenCache verifiedTokenCache;
 
-    public AuthController(UserDao userDao, PasswordEncoder passwordEncoder) {
+    public AuthController(UserDao userDao, PasswordEncoder passwordEncoder, VerifiedTokenCache verifiedTokenCache) {
         this.userDao = userDao;
         this.passwordEncoder = passwordEncoder;
+        this.verifiedTokenCache = verifiedTokenCache;
     }
 
     @GetMapping("/user")
     @PreAuthorize("isAuthenticated()")
-    public User getCurrentUser(Principal principal) {
-        User user = userDao.getUserByUsername(principal.getName());
+    public User getCurrentUser(AuthenticatedUser authenticatedUser) {
+        User user = userDao.findById(authenticatedUser.getId());
         if (user == null) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found");
         }
@@ -38,7 +43,7 @@ public class AuthController {
 
     @PutMapping("/change-password")
     @PreAuthorize("isAuthenticated()")
-    public void changePassword(@RequestBody ChangePasswordRequest request, Principal principal) {
+    public void changePassword(@RequestBody ChangePasswordRequest request, AuthenticatedUser authenticatedUser) {
         if (request == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Request body is required");
         }
@@ -51,7 +56,7 @@ public class AuthController {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "New password is required");
         }
         
-        User user = userDao.getUserByUsername(principal.getName());
+        User user = userDao.findById(authenticatedUser.getId());
         if (user == null) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found");
         }
@@ -60,14 +65,31 @@ public class AuthController {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Current password is incorrect");
         }
 
+        // updatePassword bumps the credential version, so tokens issued before this change stop working.
+        // Revoking them in VerifiedTokenCache also rejects them in the security filter, before any controller runs.
+        // The frontend has to log in again with the new password.
         String newPasswordHash = passwordEncoder.encode(request.getNewPassword());
         userDao.updatePassword(user.getId(), newPasswordHash);
+        verifiedTokenCache.revokeUser(user.getId());
     }
 
     //only admin can manage users
+    // Same limit/cursor contract as EtfController.getAllEtfs.
     @GetMapping("/users")
     @PreAuthorize("hasRole('ADMIN')")
-    public List<User> getAllUsers(@RequestParam(required = false) String search, @RequestParam(required = false) String sortBy, @RequestParam(required = false) String sortDirection) {
+    public ResponseEntity<List<User>> getAllUsers(@RequestParam(required = false) String search, @RequestParam(required = false) String sortBy, @RequestParam(required = false) String sortDirection,
+                                                  @RequestParam(required = false) Integer limit, @RequestParam(required = false) String cursor) {
+        if (limit != null || cursor != null) {
+            KeysetPage<User> page;
+            try {
+                page = userDao.findPage(search, sortBy, sortDirection, cursor, Pagination.pageSize(limit));
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+            }
+            page.getItems().forEach(user -> user.setPassword(null));
+            return Pagination.response(page);
+        }
+
         List<User> users;
         if (search != null && !search.trim().isEmpty()) {
             users = userDao.search(search, sortBy, sortDirection);
@@ -76,7 +98,7 @@ public class AuthController {
         }
 
         users.forEach(user -> user.setPassword(null));
-        return users;
+        return ResponseEntity.ok(users);
     }
 
     @GetMapping("/users/{id}")
@@ -151,6 +173,9 @@ public class AuthController {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Username is already taken");
         }
 
+        boolean credentialsChanged = !trimmedUsername.equals(existingUser.getUsername())
+                || !request.getRole().trim().equals(existingUser.getRole());
+
         existingUser.setUsername(trimmedUsername);
         existingUser.setRole(request.getRole().trim());
         
@@ -159,6 +184,11 @@ public class AuthController {
         if (request.getNewPassword() != null && !request.getNewPassword().trim().isEmpty()) {
             String newPasswordHash = passwordEncoder.encode(request.getNewPassword());
             userDao.updatePassword(id, newPasswordHash);
+            credentialsChanged = true;
+        }
+
+        if (credentialsChanged) {
+            verifiedTokenCache.revokeUser(id);
         }
 
         updatedUser.setPassword(null);
@@ -167,17 +197,17 @@ public class AuthController {
 
     @DeleteMapping("/users/{id}")
     @PreAuthorize("hasRole('ADMIN')")
-    public void deleteUser(@PathVariable Long id, Principal principal) {
+    public void deleteUser(@PathVariable Long id, AuthenticatedUser currentUser) {
         User userToDelete = userDao.findById(id);
         if (userToDelete == null) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found");
         }
 
-        User currentUser = userDao.getUserByUsername(principal.getName());
         if (currentUser.getId().equals(id)) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cannot delete your own account");
         }
 
         userDao.deleteById(id);
+        verifiedTokenCache.revokeUser(id);
     }
 }
\ No newline at end of file
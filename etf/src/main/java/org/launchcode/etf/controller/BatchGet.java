@@ -0,0 +1,62 @@
+package org.launchcode.etf.controller;
+
+import org.launchcode.etf.dto.BatchGetRequest;
+import org.launchcode.etf.dto.BatchGetResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Shared by the batch-get endpoints. The rows are fetched with one query by the caller;
+// this checks the request and sorts the rows into visible, forbidden and missing.
+final class BatchGet {
+    private BatchGet() {
+    }
+
+    // The requested ids without duplicates, in the order they were given.
+    static Collection<Long> ids(BatchGetRequest request) {
+        if (request == null || request.getIds() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ids is required");
+        }
+        LinkedHashSet<Long> ids = new LinkedHashSet<>();
+        for (Long id : request.getIds()) {
+            if (id == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ids must not contain null");
+            }
+            ids.add(id);
+        }
+        if (ids.size() > BatchGetRequest.MAX_IDS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + BatchGetRequest.MAX_IDS + " ids per request");
+        }
+        return ids;
+    }
+
+    // visible is the same rule the single-row GET applies before answering 403.
+    static <T> BatchGetResponse<T> response(Collection<Long> ids, List<T> rows, Function<T, Long> idOf, Predicate<T> visible) {
+        Map<Long, T> byId = new HashMap<>();
+        for (T row : rows) {
+            byId.put(idOf.apply(row), row);
+        }
+        List<T> items = new ArrayList<>();
+        List<Long> forbiddenIds = new ArrayList<>();
+        List<Long> notFoundIds = new ArrayList<>();
+        for (Long id : ids) {
+            T row = byId.get(id);
+            if (row == null) {
+                notFoundIds.add(id);
+            } else if (visible.test(row)) {
+                items.add(row);
+            } else {
+                forbiddenIds.add(id);
+            }
+        }
+        return new BatchGetResponse<>(items, forbiddenIds, notFoundIds);
+    }
+}
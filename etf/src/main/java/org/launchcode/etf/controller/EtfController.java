@@ -1,15 +1,30 @@
 package org.launchcode.etf.controller;
 
+import org.launchcode.etf.dao.EtfCatalog;
 import org.launchcode.etf.dao.EtfDao;
-import org.launchcode.etf.dao.UserDao;
+import org.launchcode.etf.dao.EtfHoldersIndex;
+import org.launchcode.etf.dao.FieldSet;
+import org.launchcode.etf.dao.PriceSeries;
+import org.launchcode.etf.dao.PriceStore;
+import org.launchcode.etf.dto.BatchGetRequest;
+import org.launchcode.etf.dto.BatchGetResponse;
+import org.launchcode.etf.dto.EtfImpact;
+import org.launchcode.etf.dto.EtfSuggestion;
+import org.launchcode.etf.dto.KeysetPage;
+import org.launchcode.etf.dto.PriceHistory;
 import org.launchcode.etf.model.Etf;
-import org.launchcode.etf.model.User;
+import org.launchcode.etf.model.Portfolio;
+import org.launchcode.etf.security.AuthenticatedUser;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.security.Principal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 @RestController
@@ -17,44 +32,72 @@ import java.util.List;
 
 public class EtfController {
     private final EtfDao etfDao;
-    private final UserDao userDao;
+    private final EtfCatalog etfCatalog;
+    private final EtfHoldersIndex etfHoldersIndex;
+    private final PriceStore priceStore;
 
-    public EtfController(EtfDao etfDao, UserDao userDao) {
+    public EtfController(EtfDao etfDao, EtfCatalog etfCatalog, EtfHoldersIndex etfHoldersIndex, PriceStore priceStore) {
         this.etfDao = etfDao;
-        this.userDao = userDao;
+        this.etfCatalog = etfCatalog;
+        this.etfHoldersIndex = etfHoldersIndex;
+        this.priceStore = priceStore;
     }
 
+    // Without limit or cursor this returns the whole list, as it always has.
+    // With them it returns one page, and the cursor for the next page comes back in the X-Next-Cursor header
+    // (absent on the last page). Pass that value as cursor, with the same sortBy/sortDirection/search.
+    // Both are answered from EtfCatalog, so listing, sorting and searching don't hit MySQL.
+    // fields=ticker,expenseRatio returns only those properties (and id) of each ETF, which keeps a list view
+    // from downloading every description.
     @GetMapping
     @PreAuthorize("isAuthenticated()")
-    public List<Etf> getAllEtfs(@RequestParam(required = false) String search, @RequestParam(required = false) String sortBy, @RequestParam(required = false) String sortDirection, Principal principal) {
-        User user = userDao.getUserByUsername(principal.getName());
-        boolean isAdmin = "ADMIN".equals(user.getRole());
-        
-        if (search != null && !search.trim().isEmpty()) {
-            return etfDao.search(search, sortBy, sortDirection, user.getId(), isAdmin);
-        }
+    public ResponseEntity<? extends List<?>> getAllEtfs(@RequestParam(required = false) String search, @RequestParam(required = false) String sortBy, @RequestParam(required = false) String sortDirection,
+                                                        @RequestParam(required = false) Integer limit, @RequestParam(required = false) String cursor,
+                                                        @RequestParam(required = false) String fields, AuthenticatedUser user) {
+        boolean isAdmin = user.isAdmin();
+        FieldSet<Etf> fieldSet = Fields.select(EtfDao.FIELDS, fields);
 
-        if (sortBy != null && !sortBy.trim().isEmpty()) {
-            return etfDao.findAllSorted(sortBy, sortDirection, user.getId(), isAdmin);
+        if (limit != null || cursor != null) {
+            KeysetPage<Etf> page;
+            try {
+                page = etfCatalog.findPage(search, sortBy, sortDirection, user.getId(), isAdmin, cursor, Pagination.pageSize(limit));
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+            }
+            if (fieldSet != null) {
+                return Pagination.response(new KeysetPage<>(fieldSet.project(page.getItems()), page.getNextCursor()));
+            }
+            return Pagination.response(page);
         }
 
-        if (isAdmin) {
-            return etfDao.findAll();
-        } else {
-            return etfDao.findByUserIdOrPublic(user.getId());
+        List<Etf> etfs = etfCatalog.findAll(search, sortBy, sortDirection, user.getId(), isAdmin);
+        return ResponseEntity.ok(fieldSet == null ? etfs : fieldSet.project(etfs));
+    }
+
+    // Typeahead for picking an ETF: /api/etfs/suggest?prefix=VT&limit=10 returns the visible ETFs whose ticker,
+    // or a word of whose description, starts with prefix. Only id, ticker and description, at most 50 rows.
+    @GetMapping("/suggest")
+    @PreAuthorize("isAuthenticated()")
+    public List<EtfSuggestion> suggest(@RequestParam String prefix, @RequestParam(defaultValue = "10") int limit, AuthenticatedUser user) {
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be at least 1");
         }
+        String trimmed = prefix.trim();
+        if (trimmed.isEmpty()) {
+            return List.of();
+        }
+        return etfCatalog.suggest(trimmed, Math.min(limit, EtfSuggestion.MAX_LIMIT), user.getId(), user.isAdmin());
     }
 
     @GetMapping("/{id}")
     @PreAuthorize("isAuthenticated()")
-    public Etf getEtf(@PathVariable Long id, Principal principal) {
+    public Etf getEtf(@PathVariable Long id, AuthenticatedUser user) {
         Etf etf = etfDao.findById(id);
         if (etf == null) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ETF not found");
         }
         
-        User user = userDao.getUserByUsername(principal.getName());
-        boolean isAdmin = "ADMIN".equals(user.getRole());
+        boolean isAdmin = user.isAdmin();
         
         if (!isAdmin && !etf.getUserId().equals(user.getId()) && !etf.getIsPublic()) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
@@ -63,50 +106,117 @@ public class EtfController {
         return etf;
     }
 
+    // The portfolios holding an ETF that the caller may see, in id order and always paged: limit (at most
+    // KeysetPage.MAX_LIMIT) and cursor work like they do on the lists, with the cursor in X-Next-Cursor.
+    @GetMapping("/{id}/portfolios")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<List<Portfolio>> getEtfPortfolios(@PathVariable Long id, @RequestParam(required = false) Integer limit,
+                                                            @RequestParam(required = false) String cursor, AuthenticatedUser user) {
+        getEtf(id, user);
+        try {
+            return Pagination.response(etfHoldersIndex.findPage(id, user.getId(), user.isAdmin(), cursor, Pagination.pageSize(limit)));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    // How many portfolios would lose this ETF if it were deleted, counting ones the caller can't see.
+    // So only someone who may delete it (the owner or an admin) may ask.
+    @GetMapping("/{id}/impact")
+    @PreAuthorize("isAuthenticated()")
+    public EtfImpact getEtfImpact(@PathVariable Long id, AuthenticatedUser user) {
+        Etf etf = getEtf(id, user);
+        if (!user.isAdmin() && !etf.getUserId().equals(user.getId())) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
+        }
+        return new EtfImpact(etfHoldersIndex.countPortfolios(id));
+    }
+
+    // Daily prices of the ETF's ticker from the price store, from and to (yyyy-MM-dd) both inclusive and optional.
+    // Empty columns when nothing has been imported for the ticker.
+    @GetMapping("/{id}/prices")
+    @PreAuthorize("isAuthenticated()")
+    public PriceHistory getEtfPrices(@PathVariable Long id,
+                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                     AuthenticatedUser user) {
+        Etf etf = getEtf(id, user);
+        PriceSeries series;
+        try {
+            series = priceStore.series(etf.getTicker()).range(from, to);
+        } catch (IllegalArgumentException e) {
+            // A ticker that can't name a price directory has no prices.
+            return new PriceHistory(etf.getTicker(), List.of(), new double[0], new double[0], new long[0]);
+        }
+        List<LocalDate> dates = new ArrayList<>(series.size());
+        for (int i = 0; i < series.size(); i++) {
+            dates.add(series.getDate(i));
+        }
+        double[] close = new double[series.size()];
+        double[] adjustedClose = new double[series.size()];
+        long[] volume = new long[series.size()];
+        series.closes().get(close);
+        series.adjustedCloses().get(adjustedClose);
+        series.volumes().get(volume);
+        return new PriceHistory(series.getTicker(), dates, close, adjustedClose, volume);
+    }
+
+    // Looks up to 100 ETFs with one query, instead of one GET /api/etfs/{id} per id.
+    // Ids the caller may not see come back in forbiddenIds and unknown ids in notFoundIds, rather than as 403/404.
+    @PostMapping("/batch-get")
+    @PreAuthorize("isAuthenticated()")
+    public BatchGetResponse<Etf> batchGetEtfs(@RequestBody BatchGetRequest request, AuthenticatedUser user) {
+        Collection<Long> ids = BatchGet.ids(request);
+        boolean isAdmin = user.isAdmin();
+        return BatchGet.response(ids, etfDao.findByIds(ids), Etf::getId,
+                etf -> isAdmin || etf.getUserId().equals(user.getId()) || etf.getIsPublic());
+    }
+
     @PostMapping
     @PreAuthorize("isAuthenticated()")
-    public Etf createEtf(@RequestBody Etf etf, Principal principal) {
-        User user = userDao.getUserByUsername(principal.getName());
+    public Etf createEtf(@RequestBody Etf etf, AuthenticatedUser user) {
         etf.setUserId(user.getId());
         etf.setId(null);
         return etfDao.save(etf);
     }
 
+    // The ownership check happens inside the write. An edit that leaves the expense ratio and asset class alone is a
+    // single UPDATE; other edits, and deletes, also update portfolio stats, so they lock the row first (see EtfDao).
+    // Only when no row was touched do we look the ETF up, to tell "doesn't exist" (404) from "not yours" (403).
     @PutMapping("/{id}")
     @PreAuthorize("isAuthenticated()")
-    public Etf updateEtf(@PathVariable Long id, @RequestBody Etf etf, Principal principal) {
-        Etf existingEtf = etfDao.findById(id);
-        if (existingEtf == null) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ETF not found");
+    public Etf updateEtf(@PathVariable Long id, @RequestBody Etf etf, AuthenticatedUser user) {
+        boolean isAdmin = user.isAdmin();
+
+        etf.setId(id);
+        if (etfDao.updateIfOwned(etf, user.getId(), isAdmin) == 0) {
+            throw writeFailure(id);
         }
-        
-        User user = userDao.getUserByUsername(principal.getName());
-        boolean isAdmin = "ADMIN".equals(user.getRole());
-        
-        if (!isAdmin && !existingEtf.getUserId().equals(user.getId())) {
-            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
+
+        // A non-admin can only have updated their own ETF. Admins may edit anyone's, so read the owner back.
+        if (isAdmin) {
+            Etf updatedEtf = etfDao.findById(id);
+            if (updatedEtf == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ETF not found");
+            }
+            return updatedEtf;
         }
-        
-        etf.setId(id);
-        etf.setUserId(existingEtf.getUserId());
-        return etfDao.save(etf);
+        etf.setUserId(user.getId());
+        return etf;
     }
 
     @DeleteMapping("/{id}")
     @PreAuthorize("isAuthenticated()")
-    public void deleteEtf(@PathVariable Long id, Principal principal) {
-        Etf etf = etfDao.findById(id);
-        if (etf == null) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ETF not found");
+    public void deleteEtf(@PathVariable Long id, AuthenticatedUser user) {
+        if (etfDao.deleteIfOwned(id, user.getId(), user.isAdmin()) == 0) {
+            throw writeFailure(id);
         }
-        
-        User user = userDao.getUserByUsername(principal.getName());
-        boolean isAdmin = "ADMIN".equals(user.getRole());
-        
-        if (!isAdmin && !etf.getUserId().equals(user.getId())) {
-            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
+    }
+
+    private ResponseStatusException writeFailure(Long id) {
+        if (!etfDao.existsById(id)) {
+            return new ResponseStatusException(HttpStatus.NOT_FOUND, "ETF not found");
         }
-        
-        etfDao.deleteById(id);
+        return new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
     }
 }
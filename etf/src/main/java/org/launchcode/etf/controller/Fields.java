@@ -0,0 +1,23 @@
+package org.launchcode.etf.controller;
+
+import org.launchcode.etf.dao.FieldSet;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+// Shared by the list endpoints that accept fields= (see FieldSet).
+final class Fields {
+    private Fields() {
+    }
+
+    // null when fields wasn't given, meaning whole rows as before. An unknown property name is a 400.
+    static <T> FieldSet<T> select(FieldSet<T> all, String fields) {
+        if (fields == null || fields.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return all.select(fields);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.launchcode.etf.controller;
+
+import org.launchcode.etf.dto.KeysetPage;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+// Shared by the list endpoints that accept limit/cursor.
+final class Pagination {
+    private Pagination() {
+    }
+
+    // A cursor without a limit gets the maximum page size; larger limits are capped at it.
+    static int pageSize(Integer limit) {
+        if (limit == null) {
+            return KeysetPage.MAX_LIMIT;
+        }
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be at least 1");
+        }
+        return Math.min(limit, KeysetPage.MAX_LIMIT);
+    }
+
+    static <T> ResponseEntity<List<T>> response(KeysetPage<T> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(KeysetPage.NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
+    }
+}
@@ -1,19 +1,53 @@
 package org.launchcode.etf.controller;
 
+import org.launchcode.etf.dao.EtfCatalog;
+import org.launchcode.etf.dao.EtfHoldersIndex;
 import org.launchcode.etf.dao.PortfolioDao;
 import org.launchcode.etf.dao.PortfolioEtfDao;
-import org.launchcode.etf.dao.UserDao;
+import org.launchcode.etf.dao.PortfolioSearchIndex;
+import org.launchcode.etf.dao.PortfolioStatsDao;
 import org.launchcode.etf.dao.EtfDao;
+import org.launchcode.etf.dao.FieldSet;
+import org.launchcode.etf.dto.Backtest;
+import org.launchcode.etf.dto.BacktestRequest;
+import org.launchcode.etf.dto.BatchGetRequest;
+import org.launchcode.etf.dto.BatchGetResponse;
+import org.launchcode.etf.dto.HoldingsSummary;
+import org.launchcode.etf.dto.KeysetPage;
+import org.launchcode.etf.dto.PortfolioDetail;
+import org.launchcode.etf.dto.PortfolioEtfBatchRequest;
+import org.launchcode.etf.dto.PortfolioEtfBatchResponse;
+import org.launchcode.etf.dto.PortfolioFrontier;
+import org.launchcode.etf.dto.PortfolioRisk;
+import org.launchcode.etf.dto.PortfolioStats;
+import org.launchcode.etf.dto.Rebalance;
+import org.launchcode.etf.dto.SimilarPortfolio;
 import org.launchcode.etf.model.Portfolio;
 import org.launchcode.etf.model.Etf;
-import org.launchcode.etf.model.User;
+import org.launchcode.etf.security.AuthenticatedUser;
+import org.launchcode.etf.service.BacktestService;
+import org.launchcode.etf.service.FrontierService;
+import org.launchcode.etf.service.NavStreamService;
+import org.launchcode.etf.service.RiskService;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.security.Principal;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/portfolios")
@@ -21,47 +55,103 @@ import java.util.List;
 public class PortfolioController {
     private final PortfolioDao portfolioDao;
     private final PortfolioEtfDao portfolioEtfDao;
-    private final UserDao userDao;
     private final EtfDao etfDao;
+    private final PortfolioSearchIndex portfolioSearchIndex;
+    private final EtfCatalog etfCatalog;
+    private final PortfolioStatsDao portfolioStatsDao;
+    private final EtfHoldersIndex etfHoldersIndex;
+    private final BacktestService backtestService;
+    private final RiskService riskService;
+    private final FrontierService frontierService;
+    private final NavStreamService navStreamService;
 
-    public PortfolioController(PortfolioDao portfolioDao, PortfolioEtfDao portfolioEtfDao, UserDao userDao, EtfDao etfDao) {
+    // What fits in portfolio_etf.weight.
+    private static final BigDecimal MAX_WEIGHT = new BigDecimal("999999");
+    // What fits in portfolio.name.
+    private static final int MAX_NAME_LENGTH = 100;
+
+    public PortfolioController(PortfolioDao portfolioDao, PortfolioEtfDao portfolioEtfDao, EtfDao etfDao,
+                               PortfolioSearchIndex portfolioSearchIndex, EtfCatalog etfCatalog, PortfolioStatsDao portfolioStatsDao,
+                               EtfHoldersIndex etfHoldersIndex, BacktestService backtestService,
+                               RiskService riskService, FrontierService frontierService, NavStreamService navStreamService) {
         this.portfolioDao = portfolioDao;
         this.portfolioEtfDao = portfolioEtfDao;
-        this.userDao = userDao;
         this.etfDao = etfDao;
+        this.portfolioSearchIndex = portfolioSearchIndex;
+        this.etfCatalog = etfCatalog;
+        this.portfolioStatsDao = portfolioStatsDao;
+        this.etfHoldersIndex = etfHoldersIndex;
+        this.backtestService = backtestService;
+        this.riskService = riskService;
+        this.frontierService = frontierService;
+        this.navStreamService = navStreamService;
     }
 
+    // Same limit/cursor/fields contract as EtfController.getAllEtfs. Searches go through PortfolioSearchIndex;
+    // everything else is a query that SELECTs only the requested columns.
+    // include=summary adds a "summary" (HoldingsSummary) to every portfolio, so a card can show what's in it
+    // without a /{id}/etfs call per portfolio. All of them come from one GROUP BY query, however many there are.
     @GetMapping
     @PreAuthorize("isAuthenticated()")
-    public List<Portfolio> getAllPortfolios(@RequestParam(required = false) String search, @RequestParam(required = false) String sortBy, @RequestParam(required = false) String sortDirection, Principal principal) {
-        User user = userDao.getUserByUsername(principal.getName());
-        boolean isAdmin = "ADMIN".equals(user.getRole());
-        
-        if (search != null && !search.trim().isEmpty()) {
-            return portfolioDao.search(search, sortBy, sortDirection, user.getId(), isAdmin);
-        }
+    public ResponseEntity<? extends List<?>> getAllPortfolios(@RequestParam(required = false) String search, @RequestParam(required = false) String sortBy, @RequestParam(required = false) String sortDirection,
+                                                              @RequestParam(required = false) Integer limit, @RequestParam(required = false) String cursor,
+                                                              @RequestParam(required = false) String fields, @RequestParam(required = false) String include,
+                                                              AuthenticatedUser user) {
+        boolean isAdmin = user.isAdmin();
+        boolean searching = search != null && !search.trim().isEmpty();
+        FieldSet<Portfolio> fieldSet = Fields.select(PortfolioDao.FIELDS, fields);
+        boolean summaries = includesSummary(include);
 
-        if (sortBy != null && !sortBy.trim().isEmpty()) {
-            return portfolioDao.findAllSorted(sortBy, sortDirection, user.getId(), isAdmin);
+        if (limit != null || cursor != null) {
+            try {
+                KeysetPage<Portfolio> page;
+                if (searching) {
+                    page = portfolioSearchIndex.findPage(search, sortBy, sortDirection, user.getId(), isAdmin, cursor, Pagination.pageSize(limit));
+                } else if (fieldSet != null) {
+                    page = portfolioDao.findPage(search, sortBy, sortDirection, user.getId(), isAdmin, cursor, Pagination.pageSize(limit), fieldSet);
+                } else {
+                    page = portfolioDao.findPage(search, sortBy, sortDirection, user.getId(), isAdmin, cursor, Pagination.pageSize(limit));
+                }
+                if (summaries) {
+                    return Pagination.response(new KeysetPage<>(withSummaries(page.getItems(), fieldSet), page.getNextCursor()));
+                }
+                return fieldSet == null
+                        ? Pagination.response(page)
+                        : Pagination.response(new KeysetPage<>(fieldSet.project(page.getItems()), page.getNextCursor()));
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+            }
         }
 
-        if (isAdmin) {
-            return portfolioDao.findAll();
+        List<Portfolio> portfolios;
+        if (searching) {
+            portfolios = portfolioSearchIndex.search(search, sortBy, sortDirection, user.getId(), isAdmin);
+        } else if (fieldSet != null) {
+            // Without sortBy, findAllSorted orders by name like findAll/findByUserIdOrPublic.
+            portfolios = portfolioDao.findAllSorted(sortBy, sortDirection, user.getId(), isAdmin, fieldSet);
+        } else if (sortBy != null && !sortBy.trim().isEmpty()) {
+            portfolios = portfolioDao.findAllSorted(sortBy, sortDirection, user.getId(), isAdmin);
+        } else if (isAdmin) {
+            portfolios = portfolioDao.findAll();
         } else {
-            return portfolioDao.findByUserIdOrPublic(user.getId());
+            portfolios = portfolioDao.findByUserIdOrPublic(user.getId());
         }
+
+        if (summaries) {
+            return ResponseEntity.ok(withSummaries(portfolios, fieldSet));
+        }
+        return ResponseEntity.ok(fieldSet == null ? portfolios : fieldSet.project(portfolios));
     }
 
     @GetMapping("/{id}")
     @PreAuthorize("isAuthenticated()")
-    public Portfolio getPortfolio(@PathVariable Long id, Principal principal) {
+    public Portfolio getPortfolio(@PathVariable Long id, AuthenticatedUser user) {
         Portfolio portfolio = portfolioDao.findById(id);
         if (portfolio == null) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Portfolio not found");
         }
         
-        User user = userDao.getUserByUsername(principal.getName());
-        boolean isAdmin = "ADMIN".equals(user.getRole());
+        boolean isAdmin = user.isAdmin();
         
         if (!isAdmin && !portfolio.getUserId().equals(user.getId()) && !portfolio.getIsPublic()) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
@@ -70,16 +160,25 @@ public class PortfolioController {
         return portfolio;
     }
 
+    // Same contract as EtfController.batchGetEtfs.
+    @PostMapping("/batch-get")
+    @PreAuthorize("isAuthenticated()")
+    public BatchGetResponse<Portfolio> batchGetPortfolios(@RequestBody BatchGetRequest request, AuthenticatedUser user) {
+        Collection<Long> ids = BatchGet.ids(request);
+        boolean isAdmin = user.isAdmin();
+        return BatchGet.response(ids, portfolioDao.findByIds(ids), Portfolio::getId,
+                portfolio -> isAdmin || portfolio.getUserId().equals(user.getId()) || portfolio.getIsPublic());
+    }
+
     @GetMapping("/{id}/etfs")
     @PreAuthorize("isAuthenticated()")
-    public List<Etf> getPortfolioEtfs(@PathVariable Long id, Principal principal) {
+    public List<Etf> getPortfolioEtfs(@PathVariable Long id, AuthenticatedUser user) {
         Portfolio portfolio = portfolioDao.findById(id);
         if (portfolio == null) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Portfolio not found");
         }
         
-        User user = userDao.getUserByUsername(principal.getName());
-        boolean isAdmin = "ADMIN".equals(user.getRole());
+        boolean isAdmin = user.isAdmin();
         
         if (!isAdmin && !portfolio.getUserId().equals(user.getId()) && !portfolio.getIsPublic()) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
@@ -88,95 +187,397 @@ public class PortfolioController {
         return portfolioEtfDao.findEtfsByPortfolioId(id);
     }
 
+    // What the portfolio page used to get from /{id}, /{id}/etfs and all of /api/etfs, in one request.
+    // The portfolio and its ETFs are a single joined query. The addable ETFs (visible to the user and not in the
+    // portfolio yet, in ticker order) come from EtfCatalog; limit, cursor and search page through them like
+    // GET /api/etfs, except the next cursor is addableNextCursor in the body. They're left empty for someone
+    // who can only look at the portfolio.
+    @GetMapping("/{id}/detail")
+    @PreAuthorize("isAuthenticated()")
+    public PortfolioDetail getPortfolioDetail(@PathVariable Long id, @RequestParam(required = false) String search,
+                                              @RequestParam(required = false) Integer limit, @RequestParam(required = false) String cursor,
+                                              AuthenticatedUser user) {
+        PortfolioDetail detail = portfolioEtfDao.findPortfolioWithEtfs(id);
+        if (detail == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Portfolio not found");
+        }
+
+        boolean isAdmin = user.isAdmin();
+        Portfolio portfolio = detail.getPortfolio();
+        boolean isOwner = portfolio.getUserId().equals(user.getId());
+
+        if (!isAdmin && !isOwner && !portfolio.getIsPublic()) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
+        }
+        if (!isAdmin && !isOwner) {
+            return detail;
+        }
+
+        Set<Long> held = detail.getEtfs().stream().map(Etf::getId).collect(Collectors.toSet());
+        KeysetPage<Etf> addable;
+        try {
+            addable = etfCatalog.findPage(search, "ticker", "asc", user.getId(), isAdmin, cursor, Pagination.pageSize(limit), held);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        return new PortfolioDetail(portfolio, detail.getEtfs(), addable.getItems(), addable.getNextCursor());
+    }
+
     @PostMapping
     @PreAuthorize("isAuthenticated()")
-    public Portfolio createPortfolio(@RequestBody Portfolio portfolio, Principal principal) {
-        User user = userDao.getUserByUsername(principal.getName());
+    public Portfolio createPortfolio(@RequestBody Portfolio portfolio, AuthenticatedUser user) {
         portfolio.setUserId(user.getId());
         portfolio.setId(null);
         return portfolioDao.save(portfolio);
     }
 
+    // The ownership check happens inside the write, so renaming or deleting a portfolio is a single statement.
+    // Changing its holdings also updates portfolio stats, so those writes lock the portfolio row first.
+    // Only when no row was touched do we look things up, to pick the right error.
     @PutMapping("/{id}")
     @PreAuthorize("isAuthenticated()")
-    public Portfolio updatePortfolio(@PathVariable Long id, @RequestBody Portfolio portfolio, Principal principal) {
-        Portfolio existingPortfolio = portfolioDao.findById(id);
-        if (existingPortfolio == null) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Portfolio not found");
+    public Portfolio updatePortfolio(@PathVariable Long id, @RequestBody Portfolio portfolio, AuthenticatedUser user) {
+        boolean isAdmin = user.isAdmin();
+
+        portfolio.setId(id);
+        if (portfolioDao.updateIfOwned(portfolio, user.getId(), isAdmin) == 0) {
+            throw portfolioWriteFailure(id);
         }
-        
-        User user = userDao.getUserByUsername(principal.getName());
-        boolean isAdmin = "ADMIN".equals(user.getRole());
-        
-        if (!isAdmin && !existingPortfolio.getUserId().equals(user.getId())) {
-            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
+
+        // A non-admin can only have updated their own portfolio. Admins may edit anyone's, so read the owner back.
+        if (isAdmin) {
+            Portfolio updatedPortfolio = portfolioDao.findById(id);
+            if (updatedPortfolio == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Portfolio not found");
+            }
+            return updatedPortfolio;
         }
-        
-        portfolio.setId(id);
-        portfolio.setUserId(existingPortfolio.getUserId());
-        return portfolioDao.save(portfolio);
+        portfolio.setUserId(user.getId());
+        return portfolio;
     }
 
     @DeleteMapping("/{id}")
     @PreAuthorize("isAuthenticated()")
-    public void deletePortfolio(@PathVariable Long id, Principal principal) {
-        Portfolio portfolio = portfolioDao.findById(id);
-        if (portfolio == null) {
+    public void deletePortfolio(@PathVariable Long id, AuthenticatedUser user) {
+        if (portfolioDao.deleteIfOwned(id, user.getId(), user.isAdmin()) == 0) {
+            throw portfolioWriteFailure(id);
+        }
+    }
+
+    // weight is optional and relative to the other holdings' weights (1 when not given, so equal weights).
+    @PostMapping("/{portfolioId}/etfs/{etfId}")
+    @PreAuthorize("isAuthenticated()")
+    public void addEtfToPortfolio(@PathVariable Long portfolioId, @PathVariable Long etfId,
+                                  @RequestParam(required = false) BigDecimal weight, AuthenticatedUser user) {
+        boolean isAdmin = user.isAdmin();
+
+        if (portfolioEtfDao.insertIfAbsentForOwner(portfolioId, etfId, weight(weight), user.getId(), isAdmin) == 0) {
+            // Same checks, in the same order, as before the insert became a single statement.
+            Portfolio portfolio = portfolioDao.findById(portfolioId);
+            if (portfolio == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Portfolio not found");
+            }
+            if (!etfDao.existsById(etfId)) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ETF not found");
+            }
+            if (!isAdmin && !portfolio.getUserId().equals(user.getId())) {
+                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
+            }
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "ETF already in portfolio");
+        }
+    }
+
+    // Adds and removes many ETFs at once: {"add": [...], "remove": [...]}, at most
+    // PortfolioEtfBatchRequest.MAX_ETFS ids in all. Same rules as the single POST/DELETE, checked once, and it all
+    // happens in one transaction of at most four statements: lock the portfolio, see which ETFs exist and are
+    // already in it, one multi-row INSERT and one multi-row DELETE. An ETF deleted between the check and the INSERT
+    // fails it, and the request with it, with 409.
+    @PostMapping("/{id}/etfs:batch")
+    @PreAuthorize("isAuthenticated()")
+    @Transactional
+    public PortfolioEtfBatchResponse batchUpdatePortfolioEtfs(@PathVariable Long id, @RequestBody PortfolioEtfBatchRequest request,
+                                                              AuthenticatedUser user) {
+        if (request == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "add or remove is required");
+        }
+        Collection<Long> add = batchEtfIds(request.getAdd(), "add");
+        Collection<Long> remove = batchEtfIds(request.getRemove(), "remove");
+        if (add.size() + remove.size() > PortfolioEtfBatchRequest.MAX_ETFS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + PortfolioEtfBatchRequest.MAX_ETFS + " ETFs per request");
+        }
+        for (Long etfId : add) {
+            if (remove.contains(etfId)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ETF " + etfId + " is both added and removed");
+            }
+        }
+
+        Long ownerId = portfolioDao.findOwnerIdForUpdate(id);
+        if (ownerId == null) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Portfolio not found");
         }
-        
-        User user = userDao.getUserByUsername(principal.getName());
-        boolean isAdmin = "ADMIN".equals(user.getRole());
-        
-        if (!isAdmin && !portfolio.getUserId().equals(user.getId())) {
+        if (!user.isAdmin() && !ownerId.equals(user.getId())) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
         }
-        
-        portfolioDao.deleteById(id);
+
+        List<Long> all = new ArrayList<>(add);
+        all.addAll(remove);
+        Map<Long, Boolean> membership = portfolioEtfDao.findMembership(id, all);
+
+        List<Long> added = new ArrayList<>();
+        List<Long> alreadyPresent = new ArrayList<>();
+        List<Long> notFound = new ArrayList<>();
+        for (Long etfId : add) {
+            Boolean held = membership.get(etfId);
+            if (held == null) {
+                notFound.add(etfId);
+            } else if (held) {
+                alreadyPresent.add(etfId);
+            } else {
+                added.add(etfId);
+            }
+        }
+        List<Long> removed = new ArrayList<>();
+        List<Long> notPresent = new ArrayList<>();
+        for (Long etfId : remove) {
+            if (Boolean.TRUE.equals(membership.get(etfId))) {
+                removed.add(etfId);
+            } else {
+                notPresent.add(etfId);
+            }
+        }
+
+        try {
+            portfolioEtfDao.addEtfsToPortfolio(id, added);
+        } catch (DataIntegrityViolationException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "An ETF changed during the request, try again");
+        }
+        portfolioEtfDao.removeEtfsFromPortfolio(id, removed);
+        return new PortfolioEtfBatchResponse(added, alreadyPresent, notFound, removed, notPresent);
     }
 
-    @PostMapping("/{portfolioId}/etfs/{etfId}")
+    // PUT /api/portfolios/{portfolioId}/etfs/{etfId}?weight=2.5 changes the weight of a holding.
+    @PutMapping("/{portfolioId}/etfs/{etfId}")
     @PreAuthorize("isAuthenticated()")
-    public void addEtfToPortfolio(@PathVariable Long portfolioId, @PathVariable Long etfId, Principal principal) {
-        Portfolio portfolio = portfolioDao.findById(portfolioId);
-        if (portfolio == null) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Portfolio not found");
+    public void updateEtfWeight(@PathVariable Long portfolioId, @PathVariable Long etfId, @RequestParam BigDecimal weight,
+                                AuthenticatedUser user) {
+        if (portfolioEtfDao.updateWeightIfOwned(portfolioId, etfId, weight(weight), user.getId(), user.isAdmin()) == 0) {
+            Portfolio portfolio = portfolioDao.findById(portfolioId);
+            if (portfolio == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Portfolio not found");
+            }
+            if (!user.isAdmin() && !portfolio.getUserId().equals(user.getId())) {
+                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
+            }
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ETF not in portfolio");
         }
-        
-        Etf etf = etfDao.findById(etfId);
-        if (etf == null) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ETF not found");
+    }
+
+    // Copies a portfolio the caller may see, with all its ETFs and their weights, into a new portfolio of theirs.
+    // The body is optional: name defaults to "Copy of <name>" and isPublic to false. It's five statements however
+    // many ETFs the portfolio holds: read the source, insert the portfolio, copy the holdings with one
+    // INSERT ... SELECT, and add them to the stats (two upserts).
+    @PostMapping("/{id}/clone")
+    @PreAuthorize("isAuthenticated()")
+    @Transactional
+    public Portfolio clonePortfolio(@PathVariable Long id, @RequestBody(required = false) Portfolio request, AuthenticatedUser user) {
+        Portfolio source = getPortfolio(id, user);
+        String name = request != null && request.getName() != null && !request.getName().trim().isEmpty()
+                ? request.getName()
+                : "Copy of " + source.getName();
+        boolean isPublic = request != null && Boolean.TRUE.equals(request.getIsPublic());
+
+        Portfolio clone = portfolioDao.save(new Portfolio(null, name.length() > MAX_NAME_LENGTH ? name.substring(0, MAX_NAME_LENGTH) : name,
+                user.getId(), isPublic));
+        portfolioEtfDao.copyHoldings(id, clone.getId());
+        return clone;
+    }
+
+    // Weighted expense ratio, asset class allocation and holding count. They're kept up to date as holdings
+    // change (see PortfolioStatsDao), so this reads a row per asset class however many ETFs the portfolio holds.
+    @GetMapping("/{id}/stats")
+    @PreAuthorize("isAuthenticated()")
+    public PortfolioStats getPortfolioStats(@PathVariable Long id, AuthenticatedUser user) {
+        getPortfolio(id, user);
+        return portfolioStatsDao.findByPortfolioId(id);
+    }
+
+    // /api/portfolios/{id}/similar?limit=20: the portfolios holding the most similar ETFs, most similar first,
+    // among the ones the caller may see. At most SimilarPortfolio.MAX_LIMIT. See EtfHoldersIndex.findSimilar.
+    @GetMapping("/{id}/similar")
+    @PreAuthorize("isAuthenticated()")
+    public List<SimilarPortfolio> getSimilarPortfolios(@PathVariable Long id, @RequestParam(defaultValue = "20") int limit,
+                                                       AuthenticatedUser user) {
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be at least 1");
         }
-        
-        User user = userDao.getUserByUsername(principal.getName());
-        boolean isAdmin = "ADMIN".equals(user.getRole());
-        
-        if (!isAdmin && !portfolio.getUserId().equals(user.getId())) {
-            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
+        getPortfolio(id, user);
+        return etfHoldersIndex.findSimilar(id, user.getId(), user.isAdmin(), Math.min(limit, SimilarPortfolio.MAX_LIMIT));
+    }
+
+    // Simulates the portfolio at its current weights over the price history of its ETFs, as buy-and-hold and with
+    // periodic rebalancing (see BacktestRequest for the optional body). Returns the equity curve, CAGR, max
+    // drawdown and turnover of each strategy; 400 when the ETFs have no prices in common.
+    @PostMapping("/{id}/backtest")
+    @PreAuthorize("isAuthenticated()")
+    public Backtest backtestPortfolio(@PathVariable Long id, @RequestBody(required = false) BacktestRequest request, AuthenticatedUser user) {
+        getPortfolio(id, user);
+        BacktestRequest options = request != null ? request : new BacktestRequest();
+        if (options.getFrom() != null && options.getTo() != null && options.getFrom().isAfter(options.getTo())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must not be after to");
         }
-        
-        if (portfolioEtfDao.existsByPortfolioIdAndEtfId(portfolioId, etfId)) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "ETF already in portfolio");
+        double initialValue = options.getInitialValue() != null ? options.getInitialValue() : BacktestService.DEFAULT_INITIAL_VALUE;
+        if (!(initialValue > 0) || Double.isInfinite(initialValue)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "initialValue must be positive");
+        }
+        List<Rebalance> strategies = options.getRebalance() == null || options.getRebalance().isEmpty()
+                ? List.of(Rebalance.values())
+                : new ArrayList<>(new LinkedHashSet<>(options.getRebalance()));
+        try {
+            return backtestService.backtest(id, options.getFrom(), options.getTo(), strategies, initialValue);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    // /api/portfolios/{id}/risk?benchmarkEtfId=5&horizonDays=10&paths=100000&seed=42: volatility, beta to the
+    // benchmark ETF (which the caller must be able to see) and Monte Carlo VaR at the portfolio's current weights.
+    // Everything but the portfolio is optional; without a seed each call draws new paths. See RiskService.
+    @GetMapping("/{id}/risk")
+    @PreAuthorize("isAuthenticated()")
+    public PortfolioRisk getPortfolioRisk(@PathVariable Long id, @RequestParam(required = false) Long benchmarkEtfId,
+                                          @RequestParam(defaultValue = "1") int horizonDays,
+                                          @RequestParam(defaultValue = "" + RiskService.DEFAULT_PATHS) int paths,
+                                          @RequestParam(required = false) Long seed, AuthenticatedUser user) {
+        if (horizonDays < 1 || horizonDays > RiskService.MAX_HORIZON_DAYS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "horizonDays must be between 1 and " + RiskService.MAX_HORIZON_DAYS);
+        }
+        if (paths < RiskService.MIN_PATHS || paths > RiskService.MAX_PATHS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "paths must be between " + RiskService.MIN_PATHS + " and " + RiskService.MAX_PATHS);
+        }
+        getPortfolio(id, user);
+        String benchmarkTicker = null;
+        if (benchmarkEtfId != null) {
+            Etf benchmark = etfDao.findById(benchmarkEtfId);
+            if (benchmark == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ETF not found");
+            }
+            if (!user.isAdmin() && !benchmark.getUserId().equals(user.getId()) && !benchmark.getIsPublic()) {
+                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
+            }
+            benchmarkTicker = benchmark.getTicker();
+        }
+        try {
+            return riskService.risk(id, benchmarkTicker, horizonDays, paths,
+                    seed != null ? seed : ThreadLocalRandom.current().nextLong());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    // /api/portfolios/{id}/frontier?points=20&maxWeight=0.25: the long-only efficient frontier of the portfolio's
+    // ETFs with no ETF above maxWeight (1 for no cap), and where the portfolio stands against it. See FrontierService.
+    @GetMapping("/{id}/frontier")
+    @PreAuthorize("isAuthenticated()")
+    public PortfolioFrontier getPortfolioFrontier(@PathVariable Long id,
+                                                  @RequestParam(defaultValue = "" + FrontierService.DEFAULT_POINTS) int points,
+                                                  @RequestParam(defaultValue = "1") double maxWeight, AuthenticatedUser user) {
+        if (points < 1 || points > FrontierService.MAX_POINTS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "points must be between 1 and " + FrontierService.MAX_POINTS);
+        }
+        if (!(maxWeight > 0 && maxWeight <= 1)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "maxWeight must be more than 0 and at most 1");
+        }
+        getPortfolio(id, user);
+        try {
+            return frontierService.frontier(id, points, maxWeight);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    // /api/portfolios/{id}/stream: the portfolio's live NAV (PortfolioNav) as Server-Sent Events named "nav", the
+    // current one first and then at most one per tick while quotes move it. See NavStreamService.
+    @GetMapping(value = "/{id}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("isAuthenticated()")
+    public SseEmitter streamPortfolio(@PathVariable Long id, AuthenticatedUser user) {
+        getPortfolio(id, user);
+        try {
+            return navStreamService.subscribe(id);
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
         }
-        
-        portfolioEtfDao.addEtfToPortfolio(portfolioId, etfId);
     }
 
     @DeleteMapping("/{portfolioId}/etfs/{etfId}")
     @PreAuthorize("isAuthenticated()")
-    public void removeEtfFromPortfolio(@PathVariable Long portfolioId, @PathVariable Long etfId, Principal principal) {
-        Portfolio portfolio = portfolioDao.findById(portfolioId);
-        if (portfolio == null) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Portfolio not found");
+    public void removeEtfFromPortfolio(@PathVariable Long portfolioId, @PathVariable Long etfId, AuthenticatedUser user) {
+        if (portfolioEtfDao.deleteIfOwned(portfolioId, etfId, user.getId(), user.isAdmin()) == 0) {
+            // Removing an ETF that isn't in the portfolio has always been a no-op, so only a missing
+            // or someone else's portfolio is an error.
+            Portfolio portfolio = portfolioDao.findById(portfolioId);
+            if (portfolio == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Portfolio not found");
+            }
+            if (!user.isAdmin() && !portfolio.getUserId().equals(user.getId())) {
+                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
+            }
         }
-        
-        User user = userDao.getUserByUsername(principal.getName());
-        boolean isAdmin = "ADMIN".equals(user.getRole());
-        
-        if (!isAdmin && !portfolio.getUserId().equals(user.getId())) {
-            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
+    }
+
+    // One of the id lists of a PortfolioEtfBatchRequest, without duplicates. Left out means empty.
+    private static Collection<Long> batchEtfIds(List<Long> etfIds, String name) {
+        LinkedHashSet<Long> ids = new LinkedHashSet<>();
+        if (etfIds == null) {
+            return ids;
         }
-        
-        portfolioEtfDao.removeEtfFromPortfolio(portfolioId, etfId);
+        for (Long etfId : etfIds) {
+            if (etfId == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, name + " must not contain null");
+            }
+            ids.add(etfId);
+        }
+        return ids;
+    }
+
+    private static BigDecimal weight(BigDecimal weight) {
+        if (weight == null) {
+            return BigDecimal.ONE;
+        }
+        if (weight.signum() <= 0 || weight.compareTo(MAX_WEIGHT) > 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "weight must be greater than 0 and at most " + MAX_WEIGHT);
+        }
+        return weight;
+    }
+
+    private static boolean includesSummary(String include) {
+        if (include == null || include.trim().isEmpty()) {
+            return false;
+        }
+        if (!"summary".equals(include.trim())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown include: " + include);
+        }
+        return true;
+    }
+
+    // Each portfolio's properties (only those in fieldSet, when given) plus its summary.
+    private List<Map<String, Object>> withSummaries(List<Portfolio> portfolios, FieldSet<Portfolio> fieldSet) {
+        FieldSet<Portfolio> properties = fieldSet == null ? PortfolioDao.FIELDS : fieldSet;
+        Map<Long, HoldingsSummary> summaries = portfolioEtfDao.summarize(
+                portfolios.stream().map(Portfolio::getId).collect(Collectors.toList()));
+        List<Map<String, Object>> rows = new ArrayList<>(portfolios.size());
+        for (Portfolio portfolio : portfolios) {
+            Map<String, Object> row = properties.valuesOf(portfolio);
+            row.put("summary", summaries.getOrDefault(portfolio.getId(), HoldingsSummary.EMPTY));
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private ResponseStatusException portfolioWriteFailure(Long id) {
+        if (!portfolioDao.existsById(id)) {
+            return new ResponseStatusException(HttpStatus.NOT_FOUND, "Portfolio not found");
+        }
+        return new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,598 @@
+package org.launchcode.etf.dao;
+
+import org.launchcode.etf.dto.CatalogStats;
+import org.launchcode.etf.dto.EtfSuggestion;
+import org.launchcode.etf.dto.KeysetPage;
+import org.launchcode.etf.model.Etf;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+// The ETF list is read on every page view and every keystroke, but written rarely, so EtfController serves
+// lists, sorting and search from this in-memory copy of the etf table instead of querying MySQL each time.
+//
+// Everything lives in one immutable Snapshot:
+//  - slots: every row, ordered by id (deleted rows leave a null "tombstone" until the next rebuild)
+//  - byTicker / byAssetClass: slot numbers presorted by (ticker, id) and (asset_class, id).
+//    Descending order is the same array read backwards.
+//  - publicSlots: a bitmap of the public rows
+//  - slotsByOwner: the sorted slot numbers of each user's rows
+//  - text: a TrigramIndex over ticker and description, so a search only looks at rows that can match
+//  - descriptionWords: a PrefixIndex over the words of each description, for suggest
+// A user sees a row when its public bit is set or its slot is in their own set; admins see everything.
+//
+// Writers copy the parts they change and publish a new Snapshot through a volatile field (copy-on-write),
+// so readers never lock and always see one consistent version. Writes come in as EtfChangedEvents after
+// the transaction commits. Rows changed outside this application show up after POST /api/admin/etf-catalog/reload.
+//
+// Inside a transaction we go to EtfDao instead, like UserCache does: the snapshot can't see the transaction's
+// own uncommitted writes, and loading it there could pick up rows that are later rolled back. We also go there
+// until the table is loaded, which happens once at startup (see load()), never on a request.
+//
+// The returned Etf objects are shared between requests, so callers must not modify them.
+@Component
+public class EtfCatalog {
+    // Case-insensitive like the MySQL column collation, with id breaking ties like Keyset does.
+    private static final Comparator<Etf> BY_TICKER = Comparator.comparing(Etf::getTicker, String.CASE_INSENSITIVE_ORDER)
+            .thenComparing(Etf::getId);
+    private static final Comparator<Etf> BY_ASSET_CLASS = Comparator.comparing(Etf::getAssetClass, String.CASE_INSENSITIVE_ORDER)
+            .thenComparing(Etf::getId);
+
+    // A search sorts its visible candidates when they are fewer than one row in SORT_FRACTION, and otherwise walks the
+    // presorted array with them in a bitmap: at 1M rows that walk takes a few milliseconds, as long as sorting ~4,000 rows.
+    private static final int SORT_FRACTION = 256;
+
+    // Rebuild instead of patching once more than a quarter of the slots are tombstones.
+    private static final int MIN_TOMBSTONES_FOR_REBUILD = 1024;
+
+    private final EtfDao etfDao;
+    private final Object writeLock = new Object();
+    private volatile Snapshot snapshot;
+
+    private final AtomicLong changesApplied = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private volatile double lastRebuildMs;
+
+    public EtfCatalog(EtfDao etfDao) {
+        this.etfDao = etfDao;
+    }
+
+    // Same results as EtfDao.findAll/findByUserIdOrPublic/findAllSorted/search, including the relevance order
+    // of a search without sortBy (see EtfDao.sortsByRelevance).
+    public List<Etf> findAll(String search, String sortBy, String sortDirection, Long userId, boolean isAdmin) {
+        Snapshot current = current();
+        if (current == null) {
+            if (search != null && !search.trim().isEmpty()) {
+                return etfDao.search(search, sortBy, sortDirection, userId, isAdmin);
+            }
+            if (sortBy != null && !sortBy.trim().isEmpty()) {
+                return etfDao.findAllSorted(sortBy, sortDirection, userId, isAdmin);
+            }
+            return isAdmin ? etfDao.findAll() : etfDao.findByUserIdOrPublic(userId);
+        }
+        boolean relevance = search != null && !search.trim().isEmpty() && EtfDao.sortsByRelevance(sortBy);
+        View view = relevance
+                ? new View(current, "ticker", false, userId, isAdmin, search, true)
+                : new View(current, sortBy, "desc".equalsIgnoreCase(sortDirection), userId, isAdmin, search, true);
+        List<Etf> result = new ArrayList<>();
+        for (int i = 0; i < view.order.length; i++) {
+            Etf etf = view.accept(i);
+            if (etf != null) {
+                result.add(etf);
+            }
+        }
+        if (relevance) {
+            // Exact matches, then prefix matches, then the rest, each still in ticker order.
+            List<List<Etf>> byRelevance = List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+            for (Etf etf : result) {
+                byRelevance.get(TrigramIndex.relevance(etf.getTicker(), search)).add(etf);
+            }
+            result.clear();
+            byRelevance.forEach(result::addAll);
+        }
+        return result;
+    }
+
+    // Same contract and cursors as EtfDao.findPage, so sortBy=relevance pages in ticker order. The cursor position is found by binary search
+    // in the presorted array, and we scan forward from there until the page is full.
+    public KeysetPage<Etf> findPage(String search, String sortBy, String sortDirection, Long userId, boolean isAdmin,
+                                    String cursor, int limit) {
+        return findPage(search, sortBy, sortDirection, userId, isAdmin, cursor, limit, Set.of());
+    }
+
+    // Same as EtfDao.findPage with excludedIds: those rows are skipped while the page fills up.
+    public KeysetPage<Etf> findPage(String search, String sortBy, String sortDirection, Long userId, boolean isAdmin,
+                                    String cursor, int limit, Set<Long> excludedIds) {
+        Snapshot current = current();
+        if (current == null) {
+            return etfDao.findPage(search, sortBy, sortDirection, userId, isAdmin, cursor, limit, excludedIds);
+        }
+        boolean descending = "desc".equalsIgnoreCase(sortDirection);
+        Keyset keyset = EtfDao.keyset(sortBy, descending);
+        View view = new View(current, sortBy, descending, userId, isAdmin, search, false);
+
+        int start = 0;
+        if (cursor != null) {
+            Object[] key = keyset.decode(cursor);
+            Etf after = new Etf();
+            after.setId((Long) key[1]);
+            if ("assetClass".equals(sortBy)) {
+                after.setAssetClass((String) key[0]);
+            } else {
+                after.setTicker((String) key[0]);
+            }
+            // Ascending, the page starts at the first row that sorts after the cursor row.
+            // Descending (reading backwards), it starts at the last row that sorts before it.
+            start = descending
+                    ? view.order.length - countLess(view.order, current.slots, view.comparator, after)
+                    : countNotGreater(view.order, current.slots, view.comparator, after);
+        }
+
+        List<Etf> rows = new ArrayList<>(Math.min(limit + 1, 1024));
+        for (int i = start; i < view.order.length && rows.size() <= limit; i++) {
+            Etf etf = view.accept(i);
+            if (etf != null && !excludedIds.contains(etf.getId())) {
+                rows.add(etf);
+            }
+        }
+        return keyset.page(rows, limit, EtfDao.keyOf(sortBy));
+    }
+
+    // Typeahead for GET /api/etfs/suggest: up to limit visible ETFs whose ticker starts with prefix, in ticker order,
+    // followed by those with a description word starting with it. Both come from presorted arrays, so this is
+    // a binary search and a short walk in each.
+    public List<EtfSuggestion> suggest(String prefix, int limit, Long userId, boolean isAdmin) {
+        Snapshot current = current();
+        if (current == null) {
+            return etfDao.suggest(prefix, limit, userId, isAdmin);
+        }
+        View view = new View(current, "ticker", false, userId, isAdmin, null, false);
+        List<EtfSuggestion> result = new ArrayList<>(limit);
+
+        Etf from = new Etf();
+        from.setTicker(prefix);
+        from.setId(Long.MIN_VALUE);
+        for (int i = countLess(current.byTicker, current.slots, BY_TICKER, from); i < current.byTicker.length && result.size() < limit; i++) {
+            int slot = current.byTicker[i];
+            Etf etf = current.slots[slot];
+            if (!etf.getTicker().regionMatches(true, 0, prefix, 0, prefix.length())) {
+                break;
+            }
+            if (view.visible(slot)) {
+                result.add(new EtfSuggestion(etf.getId(), etf.getTicker(), etf.getDescription()));
+            }
+        }
+
+        String lower = prefix.toLowerCase(Locale.ROOT);
+        // An ETF with several matching words comes up once per word. There are fewer than limit (at most 50) added
+        // here, so looking through them beats boxing and hashing every slot.
+        int[] added = new int[limit];
+        int addedCount = 0;
+        for (int position = current.descriptionWords.first(lower);
+             current.descriptionWords.matches(position, lower) && result.size() < limit; position++) {
+            int slot = current.descriptionWords.slotAt(position);
+            Etf etf = current.slots[slot];
+            // Rows whose ticker matched are already in the list.
+            if (view.visible(slot) && !etf.getTicker().regionMatches(true, 0, prefix, 0, prefix.length())
+                    && !contains(added, addedCount, slot)) {
+                added[addedCount++] = slot;
+                result.add(new EtfSuggestion(etf.getId(), etf.getTicker(), etf.getDescription()));
+            }
+        }
+        return result;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEtfChanged(EtfChangedEvent event) {
+        synchronized (writeLock) {
+            if (snapshot == null) {
+                // Not loaded yet. The load reads the table under this lock, after this commit, so it has the change.
+                return;
+            }
+            // Reading inside the lock means the last change applied is always the latest committed row.
+            if (event.getEtfId() != null) {
+                apply(event.getEtfId(), etfDao.findById(event.getEtfId()));
+            } else {
+                Set<Long> stillOwned = new HashSet<>();
+                for (Etf etf : etfDao.findByUserId(event.getOwnerId())) {
+                    stillOwned.add(etf.getId());
+                    apply(etf.getId(), etf);
+                }
+                int[] owned = snapshot.slotsByOwner.getOrDefault(event.getOwnerId(), new int[0]);
+                for (long id : Arrays.stream(owned).mapToLong(slot -> snapshot.ids[slot]).toArray()) {
+                    if (!stillOwned.contains(id)) {
+                        apply(id, null);
+                    }
+                }
+            }
+        }
+    }
+
+    public void reload() {
+        synchronized (writeLock) {
+            snapshot = rebuild(etfDao.findAll(), snapshot == null ? 0 : snapshot.version + 1);
+        }
+    }
+
+    // Loads the table once the application has started, rather than on the first request: at 1M rows it takes tens
+    // of seconds, and that request, and every reader behind it on writeLock, used to wait for it. Now readers go to
+    // EtfDao until it is done, and only writers wait on the lock, so no change is lost.
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        synchronized (writeLock) {
+            if (snapshot == null) {
+                snapshot = rebuild(etfDao.findAll(), 0);
+            }
+        }
+    }
+
+    public CatalogStats getStats() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return new CatalogStats(0, 0, 0, 0, 0, -1, changesApplied.get(), rebuilds.get(), lastRebuildMs);
+        }
+        return new CatalogStats(current.byTicker.length, current.publicSlots.cardinality(), current.slotsByOwner.size(),
+                current.tombstones, current.text.trigramCount(), current.version, changesApplied.get(), rebuilds.get(), lastRebuildMs);
+    }
+
+    // The snapshot to read, or null to go to EtfDao: inside a transaction, and until load() is done.
+    private Snapshot current() {
+        return TransactionSynchronizationManager.isSynchronizationActive() ? null : snapshot;
+    }
+
+    // Must be called while holding writeLock. row == null means the ETF no longer exists.
+    private void apply(Long id, Etf row) {
+        Snapshot current = snapshot;
+        int index = Arrays.binarySearch(current.ids, id);
+        if (index >= 0) {
+            if (row == null && current.slots[index] == null) {
+                return;
+            }
+            current = current.replace(index, row);
+        } else if (row == null) {
+            return;
+        } else if (-index - 1 == current.ids.length) {
+            // New rows get the highest id so far, so they are simply appended.
+            current = current.append(row);
+        } else {
+            // An id below the highest one (inserted by hand); slot numbers would shift, so rebuild.
+            List<Etf> rows = current.liveRows();
+            rows.add(row);
+            current = rebuild(rows, current.version + 1);
+        }
+
+        int live = current.byTicker.length;
+        if (current.tombstones >= MIN_TOMBSTONES_FOR_REBUILD && current.tombstones > live / 4) {
+            current = rebuild(current.liveRows(), current.version);
+        }
+        snapshot = current;
+        changesApplied.incrementAndGet();
+    }
+
+    private Snapshot rebuild(List<Etf> rows, long version) {
+        long start = System.nanoTime();
+        Etf[] slots = rows.toArray(new Etf[0]);
+        Arrays.sort(slots, Comparator.comparing(Etf::getId));
+        long[] ids = new long[slots.length];
+        BitSet publicSlots = new BitSet(slots.length);
+        Map<Long, List<Integer>> owned = new HashMap<>();
+        for (int slot = 0; slot < slots.length; slot++) {
+            ids[slot] = slots[slot].getId();
+            if (Boolean.TRUE.equals(slots[slot].getIsPublic())) {
+                publicSlots.set(slot);
+            }
+            owned.computeIfAbsent(slots[slot].getUserId(), owner -> new ArrayList<>()).add(slot);
+        }
+        Map<Long, int[]> slotsByOwner = new HashMap<>();
+        owned.forEach((owner, ownerSlots) -> slotsByOwner.put(owner, ownerSlots.stream().mapToInt(Integer::intValue).toArray()));
+
+        int[] all = IntStream.range(0, slots.length).toArray();
+        Snapshot rebuilt = new Snapshot(ids, slots, sortedSlots(all, slots, BY_TICKER), sortedSlots(all, slots, BY_ASSET_CLASS),
+                publicSlots, slotsByOwner, TrigramIndex.build(slots.length, slot -> searchable(slots[slot])),
+                PrefixIndex.build(slots.length, slot -> slots[slot].getDescription()), 0, version);
+        rebuilds.incrementAndGet();
+        lastRebuildMs = (System.nanoTime() - start) / 1_000_000.0;
+        return rebuilt;
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] sortedSlots(int[] slotNumbers, Etf[] slots, Comparator<Etf> comparator) {
+        return Arrays.stream(slotNumbers).boxed()
+                .sorted((a, b) -> comparator.compare(slots[a], slots[b]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    // The fields a search looks at; none for a tombstone.
+    private static List<String> searchable(Etf etf) {
+        return etf == null ? List.of() : Arrays.asList(etf.getTicker(), etf.getDescription());
+    }
+
+    private static Comparator<Etf> comparator(String sortBy) {
+        return "assetClass".equals(sortBy) ? BY_ASSET_CLASS : BY_TICKER;
+    }
+
+    // Number of positions in order whose row sorts before or equal to target.
+    private static int countNotGreater(int[] order, Etf[] slots, Comparator<Etf> comparator, Etf target) {
+        int low = 0;
+        int high = order.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(slots[order[mid]], target) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Number of positions in order whose row sorts strictly before target.
+    private static int countLess(int[] order, Etf[] slots, Comparator<Etf> comparator, Etf target) {
+        int low = 0;
+        int high = order.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(slots[order[mid]], target) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // One reader's pass over a snapshot: which presorted array, which direction, and who is looking.
+    private static final class View {
+        private final Snapshot snapshot;
+        private final int[] order;
+        private final Comparator<Etf> comparator;
+        private final boolean descending;
+        private final boolean isAdmin;
+        private final int[] ownSlots;
+        private final String needle;
+        // Slots the trigram index allows, when we walk the whole presorted array; null when not filtering that way.
+        private final BitSet candidates;
+
+        // everyMatch: the reader reads to the end, rather than stopping after a page.
+        private View(Snapshot snapshot, String sortBy, boolean descending, Long userId, boolean isAdmin, String search,
+                     boolean everyMatch) {
+            this.snapshot = snapshot;
+            this.comparator = comparator(sortBy);
+            this.descending = descending;
+            this.isAdmin = isAdmin;
+            this.ownSlots = snapshot.slotsByOwner.get(userId);
+            this.needle = search == null || search.trim().isEmpty() ? null : search.toLowerCase(Locale.ROOT);
+
+            int[] presorted = "assetClass".equals(sortBy) ? snapshot.byAssetClass : snapshot.byTicker;
+            int[] matches = null;
+            if (needle != null) {
+                int[] indexed = snapshot.text.candidates(needle);
+                // A page of a short query is better off walking the sorted rows until it is full.
+                matches = indexed != null ? visibleOnly(indexed) : everyMatch ? scanVisible() : null;
+            }
+            if (matches == null) {
+                this.order = presorted;
+                this.candidates = null;
+            } else if (matches.length < presorted.length / SORT_FRACTION) {
+                // Few candidates: sorting just them is cheaper than walking every row.
+                this.order = sortedSlots(matches, snapshot.slots, comparator);
+                this.candidates = null;
+            } else {
+                this.order = presorted;
+                this.candidates = new BitSet(snapshot.slots.length);
+                for (int slot : matches) {
+                    candidates.set(slot);
+                }
+            }
+        }
+
+        // Every visible row containing the needle, for a query too short for the trigram index. Reading the rows in
+        // slot order rather than sorted order reads them about in the order they sit in memory, and the reader's own
+        // slots are merged in instead of being searched for each row.
+        private int[] scanVisible() {
+            int[] found = new int[64];
+            int count = 0;
+            int own = 0;
+            for (int slot = 0; slot < snapshot.slots.length; slot++) {
+                while (ownSlots != null && own < ownSlots.length && ownSlots[own] < slot) {
+                    own++;
+                }
+                boolean visible = isAdmin || snapshot.publicSlots.get(slot)
+                        || ownSlots != null && own < ownSlots.length && ownSlots[own] == slot;
+                Etf etf = snapshot.slots[slot];
+                if (visible && etf != null && (containsIgnoreCase(etf.getTicker(), needle) || containsIgnoreCase(etf.getDescription(), needle))) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = slot;
+                }
+            }
+            return Arrays.copyOf(found, count);
+        }
+
+        // The candidates this reader may see, before sorting them: most rows aren't, for anyone but an admin.
+        private int[] visibleOnly(int[] slots) {
+            if (slots == null || isAdmin) {
+                return slots;
+            }
+            // Both are sorted, so the reader's own slots are merged in rather than searched for each one.
+            int[] visibleSlots = new int[slots.length];
+            int count = 0;
+            int own = 0;
+            for (int slot : slots) {
+                while (ownSlots != null && own < ownSlots.length && ownSlots[own] < slot) {
+                    own++;
+                }
+                if (snapshot.publicSlots.get(slot) || ownSlots != null && own < ownSlots.length && ownSlots[own] == slot) {
+                    visibleSlots[count++] = slot;
+                }
+            }
+            return Arrays.copyOf(visibleSlots, count);
+        }
+
+        private boolean visible(int slot) {
+            return isAdmin || snapshot.publicSlots.get(slot)
+                    || ownSlots != null && Arrays.binarySearch(ownSlots, slot) >= 0;
+        }
+
+        // Returns the row at the i-th position in reading order, or null when it's hidden or doesn't match.
+        private Etf accept(int i) {
+            int slot = order[descending ? order.length - 1 - i : i];
+            // The candidates are visible ones already.
+            if (candidates != null ? !candidates.get(slot) : !visible(slot)) {
+                return null;
+            }
+            Etf etf = snapshot.slots[slot];
+            if (needle != null && !containsIgnoreCase(etf.getTicker(), needle) && !containsIgnoreCase(etf.getDescription(), needle)) {
+                return null;
+            }
+            return etf;
+        }
+
+        // text.toLowerCase(Locale.ROOT).contains(needle) without a lower-cased copy of every row it looks at. Only
+        // positions starting with the needle's first character are compared in full.
+        private static boolean containsIgnoreCase(String text, String needle) {
+            char first = needle.charAt(0);
+            char firstUpper = Character.toUpperCase(first);
+            for (int i = 0; i + needle.length() <= text.length(); i++) {
+                char c = text.charAt(i);
+                if ((c == first || c == firstUpper || Character.toLowerCase(c) == first)
+                        && text.regionMatches(true, i, needle, 0, needle.length())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Snapshot {
+        private final long[] ids;
+        private final Etf[] slots;
+        private final int[] byTicker;
+        private final int[] byAssetClass;
+        private final BitSet publicSlots;
+        private final Map<Long, int[]> slotsByOwner;
+        private final TrigramIndex text;
+        private final PrefixIndex descriptionWords;
+        private final int tombstones;
+        private final long version;
+
+        private Snapshot(long[] ids, Etf[] slots, int[] byTicker, int[] byAssetClass, BitSet publicSlots,
+                         Map<Long, int[]> slotsByOwner, TrigramIndex text, PrefixIndex descriptionWords,
+                         int tombstones, long version) {
+            this.ids = ids;
+            this.slots = slots;
+            this.byTicker = byTicker;
+            this.byAssetClass = byAssetClass;
+            this.publicSlots = publicSlots;
+            this.slotsByOwner = slotsByOwner;
+            this.text = text;
+            this.descriptionWords = descriptionWords;
+            this.tombstones = tombstones;
+            this.version = version;
+        }
+
+        private List<Etf> liveRows() {
+            List<Etf> rows = new ArrayList<>(byTicker.length);
+            for (Etf etf : slots) {
+                if (etf != null) {
+                    rows.add(etf);
+                }
+            }
+            return rows;
+        }
+
+        // A new empty (tombstone) slot at the end, then filled by replace.
+        private Snapshot append(Etf row) {
+            long[] newIds = Arrays.copyOf(ids, ids.length + 1);
+            newIds[ids.length] = row.getId();
+            Etf[] newSlots = Arrays.copyOf(slots, slots.length + 1);
+            Snapshot extended = new Snapshot(newIds, newSlots, byTicker, byAssetClass, publicSlots, slotsByOwner,
+                    text, descriptionWords, tombstones + 1, version);
+            return extended.replace(ids.length, row);
+        }
+
+        // Puts row (or a tombstone when row is null) in slot and patches the sorted arrays, the public bitmap,
+        // the owner sets and both text indexes. Only what changes is copied; everything else is shared with this snapshot.
+        private Snapshot replace(int slot, Etf row) {
+            Etf old = slots[slot];
+            Etf[] newSlots = slots.clone();
+            newSlots[slot] = row;
+
+            BitSet newPublic = (BitSet) publicSlots.clone();
+            newPublic.set(slot, row != null && Boolean.TRUE.equals(row.getIsPublic()));
+
+            Map<Long, int[]> newOwners = new HashMap<>(slotsByOwner);
+            if (old != null) {
+                int[] remaining = remove(newOwners.get(old.getUserId()), Arrays.binarySearch(newOwners.get(old.getUserId()), slot));
+                if (remaining.length == 0) {
+                    newOwners.remove(old.getUserId());
+                } else {
+                    newOwners.put(old.getUserId(), remaining);
+                }
+            }
+            if (row != null) {
+                int[] ownerSlots = newOwners.getOrDefault(row.getUserId(), new int[0]);
+                newOwners.put(row.getUserId(), insert(ownerSlots, -Arrays.binarySearch(ownerSlots, slot) - 1, slot));
+            }
+
+            int newTombstones = tombstones + (old != null && row == null ? 1 : 0) - (old == null && row != null ? 1 : 0);
+            return new Snapshot(ids, newSlots, resort(byTicker, BY_TICKER, old, row, slot, newSlots),
+                    resort(byAssetClass, BY_ASSET_CLASS, old, row, slot, newSlots),
+                    newPublic, newOwners, text.update(slot, searchable(old), searchable(row)),
+                    descriptionWords.update(slot, old == null ? null : old.getDescription(), row == null ? null : row.getDescription()),
+                    newTombstones, version + 1);
+        }
+
+        private int[] resort(int[] order, Comparator<Etf> comparator, Etf old, Etf row, int slot, Etf[] newSlots) {
+            int[] result = order;
+            if (old != null) {
+                // Find the slot by the values it was sorted with.
+                result = remove(result, countLess(result, slots, comparator, old));
+            }
+            if (row != null) {
+                result = insert(result, countLess(result, newSlots, comparator, row), slot);
+            }
+            return result;
+        }
+
+        private static int[] remove(int[] array, int index) {
+            int[] result = new int[array.length - 1];
+            System.arraycopy(array, 0, result, 0, index);
+            System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+            return result;
+        }
+
+        private static int[] insert(int[] array, int index, int value) {
+            int[] result = new int[array.length + 1];
+            System.arraycopy(array, 0, result, 0, index);
+            result[index] = value;
+            System.arraycopy(array, index, result, index + 1, array.length - index);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.launchcode.etf.dao;
+
+// Published by EtfDao (and UserDao, whose deletes cascade to etf) after a write to the etf table.
+// It only says which rows changed. EtfCatalog re-reads them after commit, so a listener that runs late
+// still ends up with the latest committed row rather than whatever this event carried.
+public class EtfChangedEvent {
+    private final Long etfId;
+    private final Long ownerId;
+
+    private EtfChangedEvent(Long etfId, Long ownerId) {
+        this.etfId = etfId;
+        this.ownerId = ownerId;
+    }
+
+    public static EtfChangedEvent forEtf(Long etfId) {
+        return new EtfChangedEvent(etfId, null);
+    }
+
+    // Every ETF of this owner may have changed, e.g. because the owner was deleted.
+    public static EtfChangedEvent forOwner(Long ownerId) {
+        return new EtfChangedEvent(null, ownerId);
+    }
+
+    public Long getEtfId() { return etfId; }
+
+    public Long getOwnerId() { return ownerId; }
+}
@@ -1,25 +1,53 @@
 package org.launchcode.etf.dao;
 
+import org.launchcode.etf.dto.EtfSuggestion;
+import org.launchcode.etf.dto.KeysetPage;
 import org.launchcode.etf.model.Etf;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Function;
 
 @Repository
 public class EtfDao {
     private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PortfolioStatsDao portfolioStatsDao;
+    private final TransactionTemplate transactionTemplate;
 
-    public EtfDao(JdbcTemplate jdbcTemplate) {
+    // Every write publishes an EtfChangedEvent, which keeps EtfCatalog up to date. Changes to the expense ratio
+    // or asset class of an ETF, and deletes, also update the stats of the portfolios holding it.
+    public EtfDao(JdbcTemplate jdbcTemplate, ApplicationEventPublisher eventPublisher, PortfolioStatsDao portfolioStatsDao,
+                  TransactionTemplate transactionTemplate) {
         this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.portfolioStatsDao = portfolioStatsDao;
+        this.transactionTemplate = transactionTemplate;
     }
 
+    // What GET /api/etfs?fields= can ask for (see FieldSet).
+    public static final FieldSet<Etf> FIELDS = new FieldSet<>(Etf::new,
+            FieldSet.field("id", "id", Etf::getId, (rs, column, etf) -> etf.setId(rs.getLong(column))),
+            FieldSet.field("ticker", "ticker", Etf::getTicker, (rs, column, etf) -> etf.setTicker(rs.getString(column))),
+            FieldSet.field("description", "description", Etf::getDescription, (rs, column, etf) -> etf.setDescription(rs.getString(column))),
+            FieldSet.field("assetClass", "asset_class", Etf::getAssetClass, (rs, column, etf) -> etf.setAssetClass(rs.getString(column))),
+            FieldSet.field("expenseRatio", "expense_ratio", Etf::getExpenseRatio, (rs, column, etf) -> etf.setExpenseRatio(rs.getBigDecimal(column))),
+            FieldSet.field("userId", "user_id", Etf::getUserId, (rs, column, etf) -> etf.setUserId(rs.getLong(column))),
+            FieldSet.field("isPublic", "is_public", Etf::getIsPublic, (rs, column, etf) -> etf.setIsPublic(rs.getBoolean(column))));
+
     private final RowMapper<Etf> etfRowMapper = new RowMapper<Etf>() {
         @Override
         public Etf mapRow(ResultSet rs, int rowNum) throws SQLException {
@@ -55,31 +83,59 @@ public class EtfDao {
         return jdbcTemplate.query(sql, etfRowMapper, userId);
     }
 
+    // Without sortBy (or with sortBy=relevance) an exact ticker match comes first, then tickers starting
+    // with the query, then everything else, each group in ticker order. EtfCatalog orders the same way.
     public List<Etf> search(String query, String sortBy, String sortDirection, Long userId, boolean isAdmin) {
         StringBuilder sql = new StringBuilder("SELECT * FROM etf WHERE ");
+        List<Object> params = new ArrayList<>();
         
         if (!isAdmin) {
             sql.append("(user_id = ? OR is_public = TRUE) AND ");
+            params.add(userId);
         }
         
         sql.append("(ticker LIKE ? OR description LIKE ?) ");
         
+        String searchParam = "%" + query + "%";
+        params.add(searchParam);
+        params.add(searchParam);
+        
         //equalsIgnoreCase to make it case insensitive - "DESC", "desc", "Desc" are all treated the same.
         String direction = "desc".equalsIgnoreCase(sortDirection) ? "DESC" : "ASC";
         
         if ("assetClass".equals(sortBy)) {
             sql.append("ORDER BY asset_class ").append(direction);
+        } else if (sortsByRelevance(sortBy)) {
+            sql.append("ORDER BY CASE WHEN ticker = ? THEN 0 WHEN ticker LIKE ? THEN 1 ELSE 2 END, ticker");
+            params.add(query);
+            params.add(query + "%");
         } else {
             sql.append("ORDER BY ticker ").append(direction);
         }
         
-        String searchParam = "%" + query + "%";
-        
-        if (isAdmin) {
-            return jdbcTemplate.query(sql.toString(), etfRowMapper, searchParam, searchParam);
-        } else {
-            return jdbcTemplate.query(sql.toString(), etfRowMapper, userId, searchParam, searchParam);
+        return jdbcTemplate.query(sql.toString(), etfRowMapper, params.toArray());
+    }
+
+    // SQL version of EtfCatalog.suggest, used inside transactions. Words are only split on spaces here.
+    public List<EtfSuggestion> suggest(String prefix, int limit, Long userId, boolean isAdmin) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM etf WHERE ");
+        List<Object> params = new ArrayList<>();
+        if (!isAdmin) {
+            sql.append("(user_id = ? OR is_public = TRUE) AND ");
+            params.add(userId);
         }
+        sql.append("(ticker LIKE ? OR description LIKE ? OR description LIKE ?) ORDER BY ticker LIKE ? DESC, ticker LIMIT ?");
+        params.addAll(List.of(prefix + "%", prefix + "%", "% " + prefix + "%", prefix + "%", limit));
+
+        List<EtfSuggestion> suggestions = new ArrayList<>();
+        for (Etf etf : jdbcTemplate.query(sql.toString(), etfRowMapper, params.toArray())) {
+            suggestions.add(new EtfSuggestion(etf.getId(), etf.getTicker(), etf.getDescription()));
+        }
+        return suggestions;
+    }
+
+    static boolean sortsByRelevance(String sortBy) {
+        return sortBy == null || sortBy.trim().isEmpty() || "relevance".equals(sortBy);
     }
 
     public Etf findById(Long id) {
@@ -88,9 +144,19 @@ public class EtfDao {
         return etfs.isEmpty() ? null : etfs.get(0);
     }
 
+    // All the rows for ids in one IN (...) query, in no particular order. Missing ids are simply absent.
+    public List<Etf> findByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        String sql = "SELECT * FROM etf WHERE id IN (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+        return jdbcTemplate.query(sql, etfRowMapper, ids.toArray());
+    }
+
     // This method will check if the id is already existing.
     // If it is, it will update the existing ETF.
     // If it is not, it will create a new ETF. In controllers, you can just use save method. 
+    @Transactional
     public Etf save(Etf etf) {
         if (etf.getId() == null) {
             return create(etf);
@@ -117,19 +183,98 @@ public class EtfDao {
         }, keyHolder);
         
         etf.setId(keyHolder.getKey().longValue());
+        eventPublisher.publishEvent(EtfChangedEvent.forEtf(etf.getId()));
         return etf;
     }
 
     private Etf update(Etf etf) {
-        String sql = "UPDATE etf SET ticker = ?, description = ?, asset_class = ?, expense_ratio = ?, is_public = ? WHERE id = ?";
-        jdbcTemplate.update(sql, etf.getTicker(), etf.getDescription(), etf.getAssetClass(), 
-                           etf.getExpenseRatio(), etf.getIsPublic(), etf.getId());
+        Etf before = lockIfOwned(etf.getId(), null, true);
+        if (before != null) {
+            update(before, etf);
+        }
+        eventPublisher.publishEvent(EtfChangedEvent.forEtf(etf.getId()));
         return etf;
     }
 
+    // before is the row as lockIfOwned read it. Holdings count in portfolio stats with the ETF's expense ratio
+    // and asset class, so when either changes the ETF's share is taken out and put back with the new values.
+    private int update(Etf before, Etf etf) {
+        boolean statsChange = etf.getExpenseRatio() == null || before.getExpenseRatio().compareTo(etf.getExpenseRatio()) != 0
+                || !before.getAssetClass().equals(etf.getAssetClass());
+        if (statsChange) {
+            portfolioStatsDao.etfRemoving(etf.getId());
+        }
+        String sql = "UPDATE etf SET ticker = ?, description = ?, asset_class = ?, expense_ratio = ?, is_public = ? WHERE id = ?";
+        int updated = jdbcTemplate.update(sql, etf.getTicker(), etf.getDescription(), etf.getAssetClass(),
+                                          etf.getExpenseRatio(), etf.getIsPublic(), etf.getId());
+        if (statsChange) {
+            portfolioStatsDao.etfAdded(etf.getId());
+        }
+        return updated;
+    }
+
+    // Reads the row a write is about to change and locks it until the transaction ends. null when it doesn't
+    // exist or belongs to someone other than userId (admins pass isAdmin = true, which matches every row).
+    private Etf lockIfOwned(Long id, Long userId, boolean isAdmin) {
+        String sql = "SELECT * FROM etf WHERE id = ? AND (? OR user_id = ?) FOR UPDATE";
+        List<Etf> etfs = jdbcTemplate.query(sql, etfRowMapper, id, isAdmin, userId);
+        return etfs.isEmpty() ? null : etfs.get(0);
+    }
+
+    @Transactional
     public void deleteById(Long id) {
+        portfolioStatsDao.etfRemoving(id);
         String sql = "DELETE FROM etf WHERE id = ?";
         jdbcTemplate.update(sql, id);
+        eventPublisher.publishEvent(EtfChangedEvent.forEtf(id));
+    }
+
+    // The ownership check is part of the WHERE clause, so nobody can change the owner between checking and writing.
+    // Admins pass isAdmin = true, which matches every row. Most edits leave the expense ratio and asset class alone,
+    // and the UPDATE only matches when they are unchanged (asset classes compared case-sensitively, as update() does),
+    // so those are a single statement. When it matches nothing, the ETF is missing, someone else's, or the edit
+    // changes portfolio stats: then we lock the row and update the stats with it, in one transaction.
+    // Returns the number of rows touched: 0 means the ETF doesn't exist or belongs to someone else.
+    public int updateIfOwned(Etf etf, Long userId, boolean isAdmin) {
+        int updated = 0;
+        if (etf.getExpenseRatio() != null && etf.getAssetClass() != null) {
+            String sql = "UPDATE etf SET ticker = ?, description = ?, is_public = ? " +
+                         "WHERE id = ? AND (? OR user_id = ?) AND expense_ratio = ? AND CAST(asset_class AS BINARY) = ?";
+            updated = jdbcTemplate.update(sql, etf.getTicker(), etf.getDescription(), etf.getIsPublic(),
+                                          etf.getId(), isAdmin, userId, etf.getExpenseRatio(), etf.getAssetClass());
+        }
+        if (updated == 0) {
+            updated = transactionTemplate.execute(status -> {
+                Etf before = lockIfOwned(etf.getId(), userId, isAdmin);
+                return before == null ? 0 : update(before, etf);
+            });
+        }
+        if (updated > 0) {
+            eventPublisher.publishEvent(EtfChangedEvent.forEtf(etf.getId()));
+        }
+        return updated;
+    }
+
+    // Deletes always take the lock: the ETF's holdings have to come out of portfolio stats before the cascade
+    // removes them.
+    @Transactional
+    public int deleteIfOwned(Long id, Long userId, boolean isAdmin) {
+        if (lockIfOwned(id, userId, isAdmin) == null) {
+            return 0;
+        }
+        portfolioStatsDao.etfRemoving(id);
+        String sql = "DELETE FROM etf WHERE id = ?";
+        int deleted = jdbcTemplate.update(sql, id);
+        if (deleted > 0) {
+            eventPublisher.publishEvent(EtfChangedEvent.forEtf(id));
+        }
+        return deleted;
+    }
+
+    public boolean existsById(Long id) {
+        String sql = "SELECT COUNT(*) FROM etf WHERE id = ?";
+        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, id);
+        return count != null && count > 0;
     }
 
     public List<Etf> findAllSorted(String sortBy, String sortDirection, Long userId, boolean isAdmin) {
@@ -154,5 +299,55 @@ public class EtfDao {
             return jdbcTemplate.query(sql.toString(), etfRowMapper, userId);
         }
     }
-}
 
+    // Paginated version of findAll/findByUserIdOrPublic/findAllSorted/search (see Keyset).
+    // search may be null. cursor is the nextCursor of the previous page, or null for the first page.
+    public KeysetPage<Etf> findPage(String search, String sortBy, String sortDirection, Long userId, boolean isAdmin,
+                                    String cursor, int limit) {
+        return findPage(search, sortBy, sortDirection, userId, isAdmin, cursor, limit, Collections.emptySet());
+    }
+
+    // Same page, leaving out the ETFs in excludedIds (e.g. the ones already in a portfolio).
+    public KeysetPage<Etf> findPage(String search, String sortBy, String sortDirection, Long userId, boolean isAdmin,
+                                    String cursor, int limit, Collection<Long> excludedIds) {
+        Keyset keyset = keyset(sortBy, "desc".equalsIgnoreCase(sortDirection));
+
+        StringBuilder sql = new StringBuilder("SELECT * FROM etf WHERE TRUE");
+        List<Object> params = new ArrayList<>();
+        if (!isAdmin) {
+            sql.append(" AND (user_id = ? OR is_public = TRUE)");
+            params.add(userId);
+        }
+        if (search != null && !search.trim().isEmpty()) {
+            sql.append(" AND (ticker LIKE ? OR description LIKE ?)");
+            params.add("%" + search + "%");
+            params.add("%" + search + "%");
+        }
+        if (!excludedIds.isEmpty()) {
+            sql.append(" AND id NOT IN (").append(String.join(", ", Collections.nCopies(excludedIds.size(), "?"))).append(")");
+            params.addAll(excludedIds);
+        }
+        if (cursor != null) {
+            sql.append(" AND ").append(keyset.seekPredicate());
+            params.addAll(List.of(keyset.decode(cursor)));
+        }
+        sql.append(keyset.orderBy()).append(" LIMIT ?");
+        params.add(limit + 1);
+
+        List<Etf> rows = jdbcTemplate.query(sql.toString(), etfRowMapper, params.toArray());
+        return keyset.page(rows, limit, keyOf(sortBy));
+    }
+
+    // Shared with EtfCatalog, so a cursor from either one works with the other.
+    static Keyset keyset(String sortBy, boolean descending) {
+        return "assetClass".equals(sortBy)
+                ? new Keyset("assetClass", descending, "asset_class", "id")
+                : new Keyset("ticker", descending, "ticker", "id");
+    }
+
+    static Function<Etf, Object[]> keyOf(String sortBy) {
+        return "assetClass".equals(sortBy)
+                ? etf -> new Object[]{etf.getAssetClass(), etf.getId()}
+                : etf -> new Object[]{etf.getTicker(), etf.getId()};
+    }
+}
@@ -0,0 +1,291 @@
+package org.launchcode.etf.dao;
+
+import org.launchcode.etf.dto.KeysetPage;
+import org.launchcode.etf.dto.SimilarPortfolio;
+import org.launchcode.etf.model.Portfolio;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+// "Which portfolios hold this ETF" without going to portfolio_etf. For every held ETF we keep the sorted ids of
+// the portfolios holding it as a long[], and for every portfolio the sorted ids of its ETFs, so a change to one
+// portfolio's holdings can be applied as a diff.
+//
+// An array is never modified once it is in a map; a change puts a new one, so readers don't lock and always see
+// a whole array. Changes come in after commit: PortfolioHoldingsChangedEvents from PortfolioEtfDao, plus the
+// PortfolioChangedEvents and EtfChangedEvents of deletes, which cascade to portfolio_etf. A user delete takes
+// an unknown set of portfolios and ETFs with it, so that drops everything and the next read loads it again.
+//
+// It also keeps a MinHashIndex over the ETFs of every portfolio, for finding portfolios like a given one.
+//
+// It loads on first use, and like EtfCatalog it goes to PortfolioEtfDao instead inside a transaction.
+@Component
+public class EtfHoldersIndex {
+    private static final long[] NONE = new long[0];
+    private static final Keyset HOLDERS = new Keyset("holders", false, "portfolio_id");
+    // Candidates compared exactly per findSimilar. A portfolio of only very popular ETFs shares buckets with a large
+    // part of all portfolios; these are the ones sharing the most.
+    private static final int MAX_CANDIDATES = 1000;
+    // Holders whose rows one findPage query reads, and all its queries together at most.
+    private static final int BATCH = 1000;
+    private static final int MAX_SCANNED = 20_000;
+
+    private final PortfolioEtfDao portfolioEtfDao;
+    private final PortfolioDao portfolioDao;
+    private final Object writeLock = new Object();
+    private volatile Links links;
+
+    public EtfHoldersIndex(PortfolioEtfDao portfolioEtfDao, PortfolioDao portfolioDao) {
+        this.portfolioEtfDao = portfolioEtfDao;
+        this.portfolioDao = portfolioDao;
+    }
+
+    // The ids of every portfolio holding the ETF, ascending, whoever may see them. Callers must not modify it.
+    public long[] findPortfolioIds(Long etfId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            return portfolioEtfDao.findPortfolioIdsByEtfId(etfId);
+        }
+        return current().byEtf.getOrDefault(etfId, NONE);
+    }
+
+    public int countPortfolios(Long etfId) {
+        return findPortfolioIds(etfId).length;
+    }
+
+    // One page of the portfolios holding the ETF that the user may see, in id order. The holders' rows are read by
+    // primary key, BATCH ids at a time with the visibility check in the query, until the page is full. A request
+    // looks at no more than MAX_SCANNED holders: when those don't fill the page, it comes back short, with a cursor
+    // that carries on after them. Throws IllegalArgumentException for a bad cursor.
+    public KeysetPage<Portfolio> findPage(Long etfId, Long userId, boolean isAdmin, String cursor, int limit) {
+        long[] holders = findPortfolioIds(etfId);
+        int start = 0;
+        if (cursor != null) {
+            int index = Arrays.binarySearch(holders, (Long) HOLDERS.decode(cursor)[0]);
+            start = index >= 0 ? index + 1 : -index - 1;
+        }
+        int stop = Math.min(holders.length, start + MAX_SCANNED);
+        List<Portfolio> rows = new ArrayList<>();
+        int end = start;
+        while (end < stop && rows.size() <= limit) {
+            int from = end;
+            end = Math.min(stop, from + BATCH);
+            List<Long> ids = Arrays.stream(holders, from, end).boxed().collect(Collectors.toList());
+            rows.addAll(portfolioDao.findVisibleByIds(ids, userId, isAdmin, limit + 1 - rows.size()));
+        }
+        if (rows.size() <= limit && end < holders.length) {
+            return HOLDERS.partialPage(rows, holders[end - 1]);
+        }
+        return HOLDERS.page(rows, limit, portfolio -> new Object[]{portfolio.getId()});
+    }
+
+    // The portfolios whose ETFs are most like this one's, that the user may see: by similarity (shared ETFs / all
+    // ETFs of the two), then by shared ETFs, then by id. Portfolios sharing no ETF are never similar.
+    // Outside a transaction the candidates come from the MinHashIndex, so weak matches can be missed (see there);
+    // inside one every portfolio sharing an ETF is compared, in SQL.
+    public List<SimilarPortfolio> findSimilar(Long portfolioId, Long userId, boolean isAdmin, int limit) {
+        List<Overlap> overlaps = new ArrayList<>();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            int size = portfolioEtfDao.findEtfIdsByPortfolioId(portfolioId).length;
+            portfolioEtfDao.findOverlaps(portfolioId).forEach((id, counts) ->
+                    overlaps.add(new Overlap(id, counts[0], size + counts[1] - counts[0])));
+        } else {
+            Links current = current();
+            long[] mine = current.byPortfolio.getOrDefault(portfolioId, NONE);
+            for (long id : current.similar.candidates(mine, MAX_CANDIDATES)) {
+                long[] theirs = current.byPortfolio.getOrDefault(id, NONE);
+                int shared = MinHashIndex.overlap(mine, theirs);
+                if (id != portfolioId && shared > 0) {
+                    overlaps.add(new Overlap(id, shared, mine.length + theirs.length - shared));
+                }
+            }
+        }
+        overlaps.sort(Overlap.MOST_SIMILAR);
+
+        // Rows of the best ones, limit at a time, until there are limit the user may see.
+        List<SimilarPortfolio> result = new ArrayList<>();
+        for (int start = 0; start < overlaps.size() && result.size() < limit; start += limit) {
+            List<Overlap> chunk = overlaps.subList(start, Math.min(overlaps.size(), start + limit));
+            Map<Long, Portfolio> rows = portfolioDao.findByIds(chunk.stream().map(overlap -> overlap.portfolioId).collect(Collectors.toList()))
+                    .stream().collect(Collectors.toMap(Portfolio::getId, portfolio -> portfolio));
+            for (Overlap overlap : chunk) {
+                Portfolio portfolio = rows.get(overlap.portfolioId);
+                if (portfolio != null && result.size() < limit
+                        && (isAdmin || Boolean.TRUE.equals(portfolio.getIsPublic()) || portfolio.getUserId().equals(userId))) {
+                    result.add(new SimilarPortfolio(portfolio, overlap.shared, BigDecimal.valueOf(overlap.shared)
+                            .divide(BigDecimal.valueOf(overlap.union), 4, RoundingMode.HALF_UP)));
+                }
+            }
+        }
+        return result;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onHoldingsChanged(PortfolioHoldingsChangedEvent event) {
+        synchronized (writeLock) {
+            if (links == null) {
+                // Not loaded yet; the first read loads the current table anyway.
+                return;
+            }
+            Long portfolioId = event.getPortfolioId();
+            links.setEtfs(portfolioId, portfolioEtfDao.findEtfIdsByPortfolioId(portfolioId));
+        }
+    }
+
+    // Only a delete matters here, so only portfolios that hold something are read again.
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPortfolioChanged(PortfolioChangedEvent event) {
+        synchronized (writeLock) {
+            if (links == null) {
+                return;
+            }
+            Long portfolioId = event.getPortfolioId();
+            if (portfolioId == null) {
+                links = null;
+            } else if (links.byPortfolio.containsKey(portfolioId)) {
+                links.setEtfs(portfolioId, portfolioEtfDao.findEtfIdsByPortfolioId(portfolioId));
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEtfChanged(EtfChangedEvent event) {
+        synchronized (writeLock) {
+            if (links == null) {
+                return;
+            }
+            Long etfId = event.getEtfId();
+            if (etfId == null) {
+                links = null;
+            } else if (links.byEtf.containsKey(etfId)) {
+                links.setHolders(etfId, portfolioEtfDao.findPortfolioIdsByEtfId(etfId));
+            }
+        }
+    }
+
+    private Links current() {
+        Links current = links;
+        if (current == null) {
+            synchronized (writeLock) {
+                if (links == null) {
+                    Map<Long, long[]> byPortfolio = portfolioEtfDao.findAllEtfIdsByPortfolio();
+                    links = new Links(new ConcurrentHashMap<>(portfolioEtfDao.findAllPortfolioIdsByEtf()),
+                            new ConcurrentHashMap<>(byPortfolio), MinHashIndex.build(byPortfolio));
+                }
+                current = links;
+            }
+        }
+        return current;
+    }
+
+    private static void put(Map<Long, long[]> map, Long key, long[] values) {
+        if (values.length == 0) {
+            map.remove(key);
+        } else {
+            map.put(key, values);
+        }
+    }
+
+    private static long[] with(long[] sorted, long id) {
+        int index = Arrays.binarySearch(sorted, id);
+        if (index >= 0) {
+            return sorted;
+        }
+        int at = -index - 1;
+        long[] result = new long[sorted.length + 1];
+        System.arraycopy(sorted, 0, result, 0, at);
+        result[at] = id;
+        System.arraycopy(sorted, at, result, at + 1, sorted.length - at);
+        return result;
+    }
+
+    private static long[] without(long[] sorted, long id) {
+        int index = Arrays.binarySearch(sorted, id);
+        if (index < 0) {
+            return sorted;
+        }
+        long[] result = new long[sorted.length - 1];
+        System.arraycopy(sorted, 0, result, 0, index);
+        System.arraycopy(sorted, index + 1, result, index, sorted.length - index - 1);
+        return result;
+    }
+
+    private static final class Overlap {
+        // Higher shared / union first, compared without dividing.
+        private static final Comparator<Overlap> MOST_SIMILAR = ((Comparator<Overlap>) (a, b) ->
+                Long.compare((long) b.shared * a.union, (long) a.shared * b.union))
+                .thenComparing(overlap -> -overlap.shared)
+                .thenComparing(overlap -> overlap.portfolioId);
+
+        private final long portfolioId;
+        private final int shared;
+        private final int union;
+
+        private Overlap(long portfolioId, int shared, int union) {
+            this.portfolioId = portfolioId;
+            this.shared = shared;
+            this.union = union;
+        }
+    }
+
+    // The setters must be called while holding writeLock. Each one also adds or removes the id in the arrays
+    // on the other side that gained or lost it, and every change to a portfolio's ETFs goes through setPortfolio,
+    // so the MinHash buckets follow.
+    private static final class Links {
+        private final Map<Long, long[]> byEtf;
+        private final Map<Long, long[]> byPortfolio;
+        private final MinHashIndex similar;
+
+        private Links(Map<Long, long[]> byEtf, Map<Long, long[]> byPortfolio, MinHashIndex similar) {
+            this.byEtf = byEtf;
+            this.byPortfolio = byPortfolio;
+            this.similar = similar;
+        }
+
+        private void setEtfs(Long portfolioId, long[] etfIds) {
+            long[] old = byPortfolio.getOrDefault(portfolioId, NONE);
+            for (long etfId : old) {
+                if (Arrays.binarySearch(etfIds, etfId) < 0) {
+                    put(byEtf, etfId, without(byEtf.getOrDefault(etfId, NONE), portfolioId));
+                }
+            }
+            for (long etfId : etfIds) {
+                if (Arrays.binarySearch(old, etfId) < 0) {
+                    put(byEtf, etfId, with(byEtf.getOrDefault(etfId, NONE), portfolioId));
+                }
+            }
+            setPortfolio(portfolioId, old, etfIds);
+        }
+
+        private void setHolders(Long etfId, long[] portfolioIds) {
+            long[] old = byEtf.getOrDefault(etfId, NONE);
+            for (long portfolioId : old) {
+                if (Arrays.binarySearch(portfolioIds, portfolioId) < 0) {
+                    long[] etfs = byPortfolio.getOrDefault(portfolioId, NONE);
+                    setPortfolio(portfolioId, etfs, without(etfs, etfId));
+                }
+            }
+            for (long portfolioId : portfolioIds) {
+                if (Arrays.binarySearch(old, portfolioId) < 0) {
+                    long[] etfs = byPortfolio.getOrDefault(portfolioId, NONE);
+                    setPortfolio(portfolioId, etfs, with(etfs, etfId));
+                }
+            }
+            put(byEtf, etfId, portfolioIds);
+        }
+
+        private void setPortfolio(Long portfolioId, long[] oldEtfIds, long[] etfIds) {
+            put(byPortfolio, portfolioId, etfIds);
+            similar.update(portfolioId, oldEtfIds, etfIds);
+        }
+    }
+}
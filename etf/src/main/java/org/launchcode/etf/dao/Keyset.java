@@ -0,0 +1,107 @@
+package org.launchcode.etf.dao;
+
+import org.launchcode.etf.dto.KeysetPage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+// Keyset ("seek") pagination for the list endpoints.
+// A page is fetched with WHERE (sort columns..., id) > (values of the last row seen) ORDER BY sort columns..., id LIMIT n,
+// so MySQL jumps straight to the next row through the index instead of reading and skipping OFFSET rows.
+// id is the last column, which makes the order total even when two rows have the same ticker or name.
+// A column that is already unique (users.username) can stand on its own.
+//
+// The cursor is the last row's key values, base64url encoded, prefixed with the sort it belongs to.
+// A cursor from one sort can't be used with another, because the values wouldn't mean anything there.
+final class Keyset {
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final String sortName;
+    private final boolean descending;
+    private final String[] columns;
+
+    // columns must end with the primary key or another unique column, e.g. new Keyset("ticker", false, "ticker", "id").
+    Keyset(String sortName, boolean descending, String... columns) {
+        this.sortName = sortName + (descending ? ":desc" : ":asc");
+        this.descending = descending;
+        this.columns = columns;
+    }
+
+    String seekPredicate() {
+        String placeholders = String.join(", ", Collections.nCopies(columns.length, "?"));
+        return "(" + String.join(", ", columns) + ") " + (descending ? "<" : ">") + " (" + placeholders + ")";
+    }
+
+    String orderBy() {
+        String direction = descending ? " DESC" : " ASC";
+        return " ORDER BY " + String.join(direction + ", ", columns) + direction;
+    }
+
+    // Throws IllegalArgumentException when the cursor is malformed or belongs to a different sort.
+    Object[] decode(String cursor) {
+        String[] parts = cursor.split("\\.", -1);
+        if (parts.length != columns.length + 1) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        String cursorSort;
+        Object[] values = new Object[columns.length];
+        try {
+            cursorSort = decodePart(parts[0]);
+            for (int i = 0; i < columns.length; i++) {
+                String value = decodePart(parts[i + 1]);
+                values[i] = isNumeric(columns[i]) ? Long.valueOf(value) : value;
+            }
+        } catch (IllegalArgumentException e) {
+            // Bad base64 or a non-numeric id.
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        if (!sortName.equals(cursorSort)) {
+            throw new IllegalArgumentException("Cursor does not match the requested sort");
+        }
+        return values;
+    }
+
+    String[] columns() {
+        return columns.clone();
+    }
+
+    // rows must have been fetched with LIMIT limit + 1; the extra row only tells us whether there is a next page.
+    <T> KeysetPage<T> page(List<T> rows, int limit, Function<T, Object[]> keyOf) {
+        if (rows.size() <= limit) {
+            return new KeysetPage<>(rows, null);
+        }
+        List<T> items = new ArrayList<>(rows.subList(0, limit));
+        return new KeysetPage<>(items, encode(keyOf.apply(items.get(limit - 1))));
+    }
+
+    // The cursor of a page ending at a row with these key values, for a page that ends short of limit rows because
+    // the caller stopped looking (see EtfHoldersIndex.findPage).
+    <T> KeysetPage<T> partialPage(List<T> rows, Object... resumeAfter) {
+        return new KeysetPage<>(rows, encode(resumeAfter));
+    }
+
+    private String encode(Object[] values) {
+        StringBuilder cursor = new StringBuilder(encodePart(sortName));
+        for (Object value : values) {
+            cursor.append('.').append(encodePart(String.valueOf(value)));
+        }
+        return cursor.toString();
+    }
+
+    private static boolean isNumeric(String column) {
+        return column.equals("id") || column.endsWith("_id");
+    }
+
+    private static String encodePart(String value) {
+        return ENCODER.encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodePart(String part) {
+        return new String(DECODER.decode(part), StandardCharsets.UTF_8);
+    }
+}
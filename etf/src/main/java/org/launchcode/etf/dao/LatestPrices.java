@@ -0,0 +1,54 @@
+package org.launchcode.etf.dao;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// The last quoted price of every ETF, indexed by ETF id, kept in memory for the live quote feed (QuoteFeed). Unlike
+// PriceStore's daily closes these are per ETF row, not per ticker, and nothing is kept once the application stops.
+//
+// One AtomicLongArray of double bits, NaN for ETFs never quoted: a read is one volatile load, and a write one
+// getAndSet, without locks or allocation. ETF ids come from an auto-increment column, so they're dense enough to
+// index by directly; the array doubles when a larger id shows up, up to MAX_ETF_ID. Writers must not race each
+// other (QuoteFeed serializes them), so a grow never loses a write; readers never wait for anything.
+@Component
+public class LatestPrices {
+    public static final long MAX_ETF_ID = (1 << 24) - 1;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long NONE = Double.doubleToRawLongBits(Double.NaN);
+
+    private volatile AtomicLongArray prices = empty(INITIAL_CAPACITY);
+
+    // NaN when the ETF has no quote yet.
+    public double get(long etfId) {
+        AtomicLongArray current = prices;
+        return etfId >= 0 && etfId < current.length() ? Double.longBitsToDouble(current.get((int) etfId)) : Double.NaN;
+    }
+
+    // Returns the price it replaces, NaN when there was none. etfId must be between 0 and MAX_ETF_ID.
+    public double put(long etfId, double price) {
+        AtomicLongArray current = prices;
+        if (etfId >= current.length()) {
+            current = grow((int) etfId);
+        }
+        return Double.longBitsToDouble(current.getAndSet((int) etfId, Double.doubleToRawLongBits(price)));
+    }
+
+    private AtomicLongArray grow(int etfId) {
+        AtomicLongArray current = prices;
+        AtomicLongArray bigger = empty((int) Math.min(MAX_ETF_ID + 1, Integer.highestOneBit(etfId) * 2L));
+        for (int i = 0; i < current.length(); i++) {
+            bigger.set(i, current.get(i));
+        }
+        prices = bigger;
+        return bigger;
+    }
+
+    private static AtomicLongArray empty(int capacity) {
+        AtomicLongArray array = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            array.set(i, NONE);
+        }
+        return array;
+    }
+}
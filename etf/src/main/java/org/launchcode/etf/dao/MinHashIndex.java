@@ -0,0 +1,270 @@
+package org.launchcode.etf.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Finds sets that are probably similar without comparing every pair. Similarity is Jaccard: the members two sets
+// share divided by all the members of either. EtfHoldersIndex keeps one over the ETF ids of every portfolio.
+//
+// MinHash: for each of bands * rows hash functions, the signature holds the smallest hash of any member. Two sets
+// have the same minimum for a function with probability equal to their similarity. LSH banding: the signature is
+// cut into bands of rows values, and each band is hashed into a bucket. Sets that share any bucket are candidates.
+// With 20 bands of 3 a pair at similarity s shares one with probability 1 - (1 - s^3)^20: about 15% at 0.2,
+// 73% at 0.4, 93% at 0.5 and 99% at 0.6. Fewer rows per band find more of the weak matches, but then the few
+// very popular ETFs put hundreds of thousands of portfolios in one bucket. Candidates are only likely matches;
+// callers compare the real sets to rank them.
+//
+// Every band is 4096 partitions of sorted (bucket << 32 | slot) entries, a slot standing for one set's id. An update
+// replaces one small partition array per band instead of copying a whole index, so it stays cheap with a million
+// sets. Updates must come from one thread at a time (EtfHoldersIndex calls them under its write lock); lookups
+// don't lock, and see every partition either before or after an update.
+final class MinHashIndex {
+    static final int BANDS = 20;
+    static final int ROWS = 3;
+    private static final int PARTITION_BITS = 12;
+
+    private final long[] seeds = new long[BANDS * ROWS];
+    private final List<AtomicReferenceArray<long[]>> bands = new ArrayList<>(BANDS);
+
+    // Slot -> id, for lookups. Only the writer grows it, and a slot is written before any entry refers to it.
+    private volatile long[] slotIds = new long[1024];
+    private final Map<Long, Integer> slotOf = new HashMap<>();
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int nextSlot;
+
+    MinHashIndex() {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < seeds.length; i++) {
+            seed = mix(seed + i);
+            seeds[i] = seed;
+        }
+        for (int band = 0; band < BANDS; band++) {
+            AtomicReferenceArray<long[]> partitions = new AtomicReferenceArray<>(1 << PARTITION_BITS);
+            for (int partition = 0; partition < partitions.length(); partition++) {
+                partitions.set(partition, new long[0]);
+            }
+            bands.add(partitions);
+        }
+    }
+
+    // Every id with its sorted members, in one pass: entries are collected per partition and sorted once.
+    static MinHashIndex build(Map<Long, long[]> sets) {
+        MinHashIndex index = new MinHashIndex();
+        int[][] sizes = new int[BANDS][1 << PARTITION_BITS];
+        long[][][] pending = new long[BANDS][1 << PARTITION_BITS][];
+        for (Map.Entry<Long, long[]> entry : sets.entrySet()) {
+            if (entry.getValue().length == 0) {
+                continue;
+            }
+            int slot = index.newSlot(entry.getKey());
+            int[] buckets = index.buckets(entry.getValue());
+            for (int band = 0; band < BANDS; band++) {
+                int partition = partition(buckets[band]);
+                long[] entries = pending[band][partition];
+                if (entries == null) {
+                    entries = pending[band][partition] = new long[4];
+                } else if (sizes[band][partition] == entries.length) {
+                    entries = pending[band][partition] = Arrays.copyOf(entries, entries.length * 2);
+                }
+                entries[sizes[band][partition]++] = entry(buckets[band], slot);
+            }
+        }
+        for (int band = 0; band < BANDS; band++) {
+            for (int partition = 0; partition < 1 << PARTITION_BITS; partition++) {
+                if (pending[band][partition] != null) {
+                    long[] entries = Arrays.copyOf(pending[band][partition], sizes[band][partition]);
+                    Arrays.sort(entries);
+                    index.bands.get(band).set(partition, entries);
+                }
+            }
+        }
+        return index;
+    }
+
+    // Moves id from the buckets of oldMembers to those of newMembers (both sorted; empty means not indexed).
+    void update(long id, long[] oldMembers, long[] newMembers) {
+        if (Arrays.equals(oldMembers, newMembers)) {
+            return;
+        }
+        Integer slot = slotOf.get(id);
+        if (slot != null && oldMembers.length > 0) {
+            int[] buckets = buckets(oldMembers);
+            for (int band = 0; band < BANDS; band++) {
+                remove(bands.get(band), entry(buckets[band], slot));
+            }
+        }
+        if (newMembers.length == 0) {
+            if (slot != null) {
+                freeSlot(id, slot);
+            }
+            return;
+        }
+        if (slot == null) {
+            slot = newSlot(id);
+        }
+        int[] buckets = buckets(newMembers);
+        for (int band = 0; band < BANDS; band++) {
+            insert(bands.get(band), entry(buckets[band], slot));
+        }
+    }
+
+    // The ids sharing at least one bucket with members (sorted), without duplicates. When there are more than max,
+    // the max that share the most buckets, which are the most similar ones on average. Ids updated while this runs
+    // may or may not be in it.
+    long[] candidates(long[] members, int max) {
+        if (members.length == 0) {
+            return new long[0];
+        }
+        long[] ids = slotIds;
+        int[] buckets = buckets(members);
+        int[] found = new int[16];
+        int count = 0;
+        for (int band = 0; band < BANDS; band++) {
+            long[] entries = bands.get(band).get(partition(buckets[band]));
+            int from = Arrays.binarySearch(entries, entry(buckets[band], 0));
+            for (int i = from >= 0 ? from : -from - 1; i < entries.length && (int) (entries[i] >>> 32) == buckets[band]; i++) {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = (int) entries[i];
+            }
+        }
+        // Equal slots are next to each other once sorted, and the length of each run is its number of shared buckets.
+        // Sorting (shared buckets << 32 | slot) then puts the best candidates last.
+        Arrays.sort(found, 0, count);
+        long[] runs = new long[count];
+        int distinct = 0;
+        for (int i = 0; i < count; ) {
+            int start = i;
+            while (i < count && found[i] == found[start]) {
+                i++;
+            }
+            runs[distinct++] = ((long) (i - start) << 32) | found[start];
+        }
+        if (distinct > max) {
+            Arrays.sort(runs, 0, distinct);
+        }
+        long[] result = new long[Math.min(distinct, max)];
+        int taken = 0;
+        for (int i = distinct - 1; i >= 0 && taken < result.length; i--) {
+            int slot = (int) runs[i];
+            if (slot < ids.length) {
+                result[taken++] = ids[slot];
+            }
+        }
+        return Arrays.copyOf(result, taken);
+    }
+
+    int size() {
+        return slotOf.size();
+    }
+
+    // Size of the intersection of two sorted arrays.
+    static int overlap(long[] a, long[] b) {
+        int shared = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                shared++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return shared;
+    }
+
+    // The bucket of every band: MinHash signature values of the band's rows, hashed together.
+    private int[] buckets(long[] members) {
+        int[] buckets = new int[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            long hash = band;
+            for (int row = 0; row < ROWS; row++) {
+                long seed = seeds[band * ROWS + row];
+                long min = Long.MAX_VALUE;
+                for (long member : members) {
+                    min = Math.min(min, mix(member ^ seed));
+                }
+                hash = mix(hash * 31 + min);
+            }
+            buckets[band] = (int) (hash >>> 32);
+        }
+        return buckets;
+    }
+
+    private int newSlot(long id) {
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : nextSlot++;
+        long[] ids = slotIds;
+        if (slot >= ids.length) {
+            ids = Arrays.copyOf(ids, ids.length * 2);
+        }
+        ids[slot] = id;
+        slotIds = ids;
+        slotOf.put(id, slot);
+        return slot;
+    }
+
+    private void freeSlot(long id, int slot) {
+        slotOf.remove(id);
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private static void insert(AtomicReferenceArray<long[]> partitions, long entry) {
+        int partition = partition((int) (entry >>> 32));
+        long[] entries = partitions.get(partition);
+        int index = Arrays.binarySearch(entries, entry);
+        if (index >= 0) {
+            return;
+        }
+        index = -index - 1;
+        long[] longer = new long[entries.length + 1];
+        System.arraycopy(entries, 0, longer, 0, index);
+        longer[index] = entry;
+        System.arraycopy(entries, index, longer, index + 1, entries.length - index);
+        partitions.set(partition, longer);
+    }
+
+    private static void remove(AtomicReferenceArray<long[]> partitions, long entry) {
+        int partition = partition((int) (entry >>> 32));
+        long[] entries = partitions.get(partition);
+        int index = Arrays.binarySearch(entries, entry);
+        if (index < 0) {
+            return;
+        }
+        long[] shorter = new long[entries.length - 1];
+        System.arraycopy(entries, 0, shorter, 0, index);
+        System.arraycopy(entries, index + 1, shorter, index, entries.length - index - 1);
+        partitions.set(partition, shorter);
+    }
+
+    // The bucket in the high half, so entries sort by bucket; the slot (never negative) in the low half.
+    private static long entry(int bucket, int slot) {
+        return ((long) bucket << 32) | slot;
+    }
+
+    private static int partition(int bucket) {
+        return bucket >>> (32 - PARTITION_BITS);
+    }
+
+    // The finalizer of MurmurHash3: every input bit affects every output bit.
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB93FE1A2C4CDL;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,26 @@
+package org.launchcode.etf.dao;
+
+// The portfolio counterpart of EtfChangedEvent, published by PortfolioDao and UserDao.
+// PortfolioSearchIndex re-reads the rows after commit.
+public class PortfolioChangedEvent {
+    private final Long portfolioId;
+    private final Long ownerId;
+
+    private PortfolioChangedEvent(Long portfolioId, Long ownerId) {
+        this.portfolioId = portfolioId;
+        this.ownerId = ownerId;
+    }
+
+    public static PortfolioChangedEvent forPortfolio(Long portfolioId) {
+        return new PortfolioChangedEvent(portfolioId, null);
+    }
+
+    // Every portfolio of this owner may have changed, e.g. because the owner was deleted.
+    public static PortfolioChangedEvent forOwner(Long ownerId) {
+        return new PortfolioChangedEvent(null, ownerId);
+    }
+
+    public Long getPortfolioId() { return portfolioId; }
+
+    public Long getOwnerId() { return ownerId; }
+}
@@ -1,6 +1,8 @@
 package org.launchcode.etf.dao;
 
+import org.launchcode.etf.dto.KeysetPage;
 import org.launchcode.etf.model.Portfolio;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
@@ -10,16 +12,29 @@ import org.springframework.stereotype.Repository;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Function;
 
 @Repository
 public class PortfolioDao {
     private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public PortfolioDao(JdbcTemplate jdbcTemplate) {
+    public PortfolioDao(JdbcTemplate jdbcTemplate, ApplicationEventPublisher eventPublisher) {
         this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
     }
 
+    // What GET /api/portfolios?fields= can ask for (see FieldSet).
+    public static final FieldSet<Portfolio> FIELDS = new FieldSet<>(Portfolio::new,
+            FieldSet.field("id", "id", Portfolio::getId, (rs, column, portfolio) -> portfolio.setId(rs.getLong(column))),
+            FieldSet.field("name", "name", Portfolio::getName, (rs, column, portfolio) -> portfolio.setName(rs.getString(column))),
+            FieldSet.field("userId", "user_id", Portfolio::getUserId, (rs, column, portfolio) -> portfolio.setUserId(rs.getLong(column))),
+            FieldSet.field("isPublic", "is_public", Portfolio::getIsPublic, (rs, column, portfolio) -> portfolio.setIsPublic(rs.getBoolean(column))));
+
     private final RowMapper<Portfolio> portfolioRowMapper = new RowMapper<Portfolio>() {
         @Override
         public Portfolio mapRow(ResultSet rs, int rowNum) throws SQLException {
@@ -43,7 +58,19 @@ public class PortfolioDao {
     }
 
     public List<Portfolio> findAllSorted(String sortBy, String sortDirection, Long userId, boolean isAdmin) {
-        StringBuilder sql = new StringBuilder("SELECT * FROM portfolio");
+        return findAllSorted("*", portfolioRowMapper, sortBy, sortDirection, userId, isAdmin);
+    }
+
+    // Same rows, but only the columns in fields are read; the other properties are null. Pass them through
+    // fields.project before handing them out. Without sortBy this is findAll/findByUserIdOrPublic.
+    public List<Portfolio> findAllSorted(String sortBy, String sortDirection, Long userId, boolean isAdmin,
+                                         FieldSet<Portfolio> fields) {
+        return findAllSorted(fields.columns(), fields.rowMapper(), sortBy, sortDirection, userId, isAdmin);
+    }
+
+    private List<Portfolio> findAllSorted(String columns, RowMapper<Portfolio> rowMapper, String sortBy, String sortDirection,
+                                          Long userId, boolean isAdmin) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(columns).append(" FROM portfolio");
         
         //Admin can see all portofolios, so you don't have to add WHERE clause.
         if (!isAdmin) {
@@ -59,9 +86,9 @@ public class PortfolioDao {
         }
         
         if (isAdmin) {
-            return jdbcTemplate.query(sql.toString(), portfolioRowMapper);
+            return jdbcTemplate.query(sql.toString(), rowMapper);
         } else {
-            return jdbcTemplate.query(sql.toString(), portfolioRowMapper, userId);
+            return jdbcTemplate.query(sql.toString(), rowMapper, userId);
         }
     }
 
@@ -75,30 +102,33 @@ public class PortfolioDao {
         return jdbcTemplate.query(sql, portfolioRowMapper, userId);
     }
 
+    // Without sortBy (or with sortBy=relevance) an exact name match comes first, then names starting
+    // with the query, then everything else, each group in name order. PortfolioSearchIndex orders the same way.
     public List<Portfolio> search(String query, String sortBy, String sortDirection, Long userId, boolean isAdmin) {
         StringBuilder sql = new StringBuilder("SELECT * FROM portfolio WHERE ");
+        List<Object> params = new ArrayList<>();
         
         if (!isAdmin) {
             sql.append("(user_id = ? OR is_public = TRUE) AND ");
+            params.add(userId);
         }
         
         sql.append("name LIKE ? ");
+        params.add("%" + query + "%");
         
         String direction = "desc".equalsIgnoreCase(sortDirection) ? "DESC" : "ASC";
 
         if ("userId".equals(sortBy)) {
             sql.append("ORDER BY user_id ").append(direction);
+        } else if (EtfDao.sortsByRelevance(sortBy)) {
+            sql.append("ORDER BY CASE WHEN name = ? THEN 0 WHEN name LIKE ? THEN 1 ELSE 2 END, name");
+            params.add(query);
+            params.add(query + "%");
         } else {
             sql.append("ORDER BY name ").append(direction);
         }
         
-        String searchParam = "%" + query + "%";
-        
-        if (isAdmin) {
-            return jdbcTemplate.query(sql.toString(), portfolioRowMapper, searchParam);
-        } else {
-            return jdbcTemplate.query(sql.toString(), portfolioRowMapper, userId, searchParam);
-        }
+        return jdbcTemplate.query(sql.toString(), portfolioRowMapper, params.toArray());
     }
 
     public Portfolio findById(Long id) {
@@ -107,6 +137,30 @@ public class PortfolioDao {
         return portfolios.isEmpty() ? null : portfolios.get(0);
     }
 
+    // All the rows for ids in one IN (...) query, in no particular order. Missing ids are simply absent.
+    public List<Portfolio> findByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        String sql = "SELECT * FROM portfolio WHERE id IN (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+        return jdbcTemplate.query(sql, portfolioRowMapper, ids.toArray());
+    }
+
+    // The rows for ids that the user may see, in id order, at most limit of them. For EtfHoldersIndex, which knows
+    // the ids; the rows are read by primary key and the visibility check is part of the query.
+    public List<Portfolio> findVisibleByIds(Collection<Long> ids, Long userId, boolean isAdmin, int limit) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        String sql = "SELECT * FROM portfolio WHERE id IN (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ") " +
+                     "AND (? OR is_public = TRUE OR user_id = ?) ORDER BY id LIMIT ?";
+        List<Object> params = new ArrayList<>(ids);
+        params.add(isAdmin);
+        params.add(userId);
+        params.add(limit);
+        return jdbcTemplate.query(sql, portfolioRowMapper, params.toArray());
+    }
+
     // This method will check if the id is already existing.
     // If it is, it will update the existing ETF.
     // If it is not, it will create a new ETF. In controllers, you can just use save method. 
@@ -132,17 +186,105 @@ public class PortfolioDao {
         }, keyHolder);
         
         portfolio.setId(keyHolder.getKey().longValue());
+        eventPublisher.publishEvent(PortfolioChangedEvent.forPortfolio(portfolio.getId()));
         return portfolio;
     }
 
     private Portfolio update(Portfolio portfolio) {
         String sql = "UPDATE portfolio SET name = ?, is_public = ? WHERE id = ?";
         jdbcTemplate.update(sql, portfolio.getName(), portfolio.getIsPublic(), portfolio.getId());
+        eventPublisher.publishEvent(PortfolioChangedEvent.forPortfolio(portfolio.getId()));
         return portfolio;
     }
 
+    // Same idea as EtfDao.updateIfOwned: the ownership check is part of the WHERE clause.
+    // Returns 0 when the portfolio doesn't exist or belongs to someone else.
+    public int updateIfOwned(Portfolio portfolio, Long userId, boolean isAdmin) {
+        String sql = "UPDATE portfolio SET name = ?, is_public = ? WHERE id = ? AND (? OR user_id = ?)";
+        int updated = jdbcTemplate.update(sql, portfolio.getName(), portfolio.getIsPublic(), portfolio.getId(), isAdmin, userId);
+        if (updated > 0) {
+            eventPublisher.publishEvent(PortfolioChangedEvent.forPortfolio(portfolio.getId()));
+        }
+        return updated;
+    }
+
+    public int deleteIfOwned(Long id, Long userId, boolean isAdmin) {
+        String sql = "DELETE FROM portfolio WHERE id = ? AND (? OR user_id = ?)";
+        int deleted = jdbcTemplate.update(sql, id, isAdmin, userId);
+        if (deleted > 0) {
+            eventPublisher.publishEvent(PortfolioChangedEvent.forPortfolio(id));
+        }
+        return deleted;
+    }
+
+    public boolean existsById(Long id) {
+        String sql = "SELECT COUNT(*) FROM portfolio WHERE id = ?";
+        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, id);
+        return count != null && count > 0;
+    }
+
+    // The owner of the portfolio, or null when there is no such portfolio. Locks the row until the transaction
+    // ends, so changes made under it (see PortfolioController.batchUpdatePortfolioEtfs) don't interleave.
+    public Long findOwnerIdForUpdate(Long id) {
+        String sql = "SELECT user_id FROM portfolio WHERE id = ? FOR UPDATE";
+        List<Long> owners = jdbcTemplate.queryForList(sql, Long.class, id);
+        return owners.isEmpty() ? null : owners.get(0);
+    }
+
     public void deleteById(Long id) {
         String sql = "DELETE FROM portfolio WHERE id = ?";
         jdbcTemplate.update(sql, id);
+        eventPublisher.publishEvent(PortfolioChangedEvent.forPortfolio(id));
+    }
+
+    // Paginated version of findAll/findByUserIdOrPublic/findAllSorted/search (see Keyset).
+    public KeysetPage<Portfolio> findPage(String search, String sortBy, String sortDirection, Long userId, boolean isAdmin,
+                                          String cursor, int limit) {
+        return findPage("*", portfolioRowMapper, search, sortBy, sortDirection, userId, isAdmin, cursor, limit);
+    }
+
+    // Same page with only the columns in fields (as above), plus the sort columns the cursor is made from.
+    public KeysetPage<Portfolio> findPage(String search, String sortBy, String sortDirection, Long userId, boolean isAdmin,
+                                          String cursor, int limit, FieldSet<Portfolio> fields) {
+        FieldSet<Portfolio> read = fields.withColumns(keyset(sortBy, false).columns());
+        return findPage(read.columns(), read.rowMapper(), search, sortBy, sortDirection, userId, isAdmin, cursor, limit);
+    }
+
+    private KeysetPage<Portfolio> findPage(String columns, RowMapper<Portfolio> rowMapper, String search, String sortBy,
+                                           String sortDirection, Long userId, boolean isAdmin, String cursor, int limit) {
+        Keyset keyset = keyset(sortBy, "desc".equalsIgnoreCase(sortDirection));
+
+        StringBuilder sql = new StringBuilder("SELECT ").append(columns).append(" FROM portfolio WHERE TRUE");
+        List<Object> params = new ArrayList<>();
+        if (!isAdmin) {
+            sql.append(" AND (user_id = ? OR is_public = TRUE)");
+            params.add(userId);
+        }
+        if (search != null && !search.trim().isEmpty()) {
+            sql.append(" AND name LIKE ?");
+            params.add("%" + search + "%");
+        }
+        if (cursor != null) {
+            sql.append(" AND ").append(keyset.seekPredicate());
+            params.addAll(List.of(keyset.decode(cursor)));
+        }
+        sql.append(keyset.orderBy()).append(" LIMIT ?");
+        params.add(limit + 1);
+
+        List<Portfolio> rows = jdbcTemplate.query(sql.toString(), rowMapper, params.toArray());
+        return keyset.page(rows, limit, keyOf(sortBy));
+    }
+
+    // Shared with PortfolioSearchIndex so both hand out the same cursors.
+    static Keyset keyset(String sortBy, boolean descending) {
+        return "userId".equals(sortBy)
+                ? new Keyset("userId", descending, "user_id", "id")
+                : new Keyset("name", descending, "name", "id");
+    }
+
+    static Function<Portfolio, Object[]> keyOf(String sortBy) {
+        return portfolio -> "userId".equals(sortBy)
+                ? new Object[]{portfolio.getUserId(), portfolio.getId()}
+                : new Object[]{portfolio.getName(), portfolio.getId()};
     }
 }
@@ -1,24 +1,46 @@
 package org.launchcode.etf.dao;
 
+import org.launchcode.etf.dto.HoldingsSummary;
+import org.launchcode.etf.dto.PortfolioDetail;
+import org.launchcode.etf.model.Portfolio;
 import org.launchcode.etf.model.PortfolioEtf;
 import org.launchcode.etf.model.Etf;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 public class PortfolioEtfDao {
     private final JdbcTemplate jdbcTemplate;
+    private final PortfolioStatsDao portfolioStatsDao;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public PortfolioEtfDao(JdbcTemplate jdbcTemplate) {
+    // Ids per summarize query; a page of portfolios (KeysetPage.MAX_LIMIT) always fits in one.
+    private static final int SUMMARY_BATCH = 1000;
+
+    public PortfolioEtfDao(JdbcTemplate jdbcTemplate, PortfolioStatsDao portfolioStatsDao, ApplicationEventPublisher eventPublisher) {
         this.jdbcTemplate = jdbcTemplate;
+        this.portfolioStatsDao = portfolioStatsDao;
+        this.eventPublisher = eventPublisher;
     }
 
     private final RowMapper<Etf> etfRowMapper = new RowMapper<Etf>() {
@@ -45,6 +67,107 @@ public class PortfolioEtfDao {
         return jdbcTemplate.query(sql, etfRowMapper, portfolioId);
     }
 
+    // The portfolio and its ETFs in one statement, for GET /api/portfolios/{id}/detail. Returns null when the
+    // portfolio doesn't exist. The ETFs come in the order they were added; addableEtfs is left empty.
+    public PortfolioDetail findPortfolioWithEtfs(Long portfolioId) {
+        String sql = "SELECT p.id AS p_id, p.name AS p_name, p.user_id AS p_user_id, p.is_public AS p_is_public, e.* " +
+                     "FROM portfolio p LEFT JOIN portfolio_etf pe ON pe.portfolio_id = p.id LEFT JOIN etf e ON e.id = pe.etf_id " +
+                     "WHERE p.id = ? ORDER BY pe.id";
+        return jdbcTemplate.query(sql, rs -> {
+            Portfolio portfolio = null;
+            List<Etf> etfs = new ArrayList<>();
+            while (rs.next()) {
+                if (portfolio == null) {
+                    portfolio = new Portfolio(rs.getLong("p_id"), rs.getString("p_name"),
+                            rs.getLong("p_user_id"), rs.getBoolean("p_is_public"));
+                }
+                // An empty portfolio still comes back as one row, with the etf columns all NULL.
+                if (rs.getObject("id") != null) {
+                    etfs.add(etfRowMapper.mapRow(rs, etfs.size()));
+                }
+            }
+            return portfolio == null ? null : new PortfolioDetail(portfolio, etfs, List.of(), null);
+        }, portfolioId);
+    }
+
+    // Holdings summaries for GET /api/portfolios?include=summary, keyed by portfolio id; portfolios without ETFs
+    // are left out. One GROUP BY per SUMMARY_BATCH ids, so a page of portfolios is always a single query.
+    // Grouping by asset class as well gives the asset class counts, and the totals are folded together here.
+    public Map<Long, HoldingsSummary> summarize(Collection<Long> portfolioIds) {
+        Map<Long, HoldingsSummary> summaries = new HashMap<>();
+        List<Long> ids = new ArrayList<>(portfolioIds);
+        for (int from = 0; from < ids.size(); from += SUMMARY_BATCH) {
+            List<Long> batch = ids.subList(from, Math.min(from + SUMMARY_BATCH, ids.size()));
+            String sql = "SELECT pe.portfolio_id, e.asset_class, COUNT(*) AS etf_count, SUM(e.expense_ratio) AS total_expense_ratio, " +
+                         "MIN(e.expense_ratio) AS min_expense_ratio, MAX(e.expense_ratio) AS max_expense_ratio " +
+                         "FROM portfolio_etf pe JOIN etf e ON e.id = pe.etf_id " +
+                         "WHERE pe.portfolio_id IN (" + String.join(", ", Collections.nCopies(batch.size(), "?")) + ") " +
+                         "GROUP BY pe.portfolio_id, e.asset_class ORDER BY pe.portfolio_id, e.asset_class";
+            jdbcTemplate.query(sql, rs -> {
+                Long portfolioId = null;
+                List<Object[]> groups = new ArrayList<>();
+                while (rs.next()) {
+                    if (portfolioId != null && portfolioId != rs.getLong("portfolio_id")) {
+                        summaries.put(portfolioId, summary(groups));
+                        groups.clear();
+                    }
+                    portfolioId = rs.getLong("portfolio_id");
+                    groups.add(new Object[]{rs.getString("asset_class"), rs.getInt("etf_count"), rs.getBigDecimal("total_expense_ratio"),
+                            rs.getBigDecimal("min_expense_ratio"), rs.getBigDecimal("max_expense_ratio")});
+                }
+                if (portfolioId != null) {
+                    summaries.put(portfolioId, summary(groups));
+                }
+                return null;
+            }, batch.toArray());
+        }
+        return summaries;
+    }
+
+    // The weight of every ticker in each of the portfolios, for analytics that price holdings by ticker (see
+    // PriceStore). Two holdings with the same ticker count as one. Portfolios without ETFs are left out. One query
+    // per SUMMARY_BATCH ids.
+    public Map<Long, Map<String, BigDecimal>> findTickerWeights(Collection<Long> portfolioIds) {
+        Map<Long, Map<String, BigDecimal>> weights = new HashMap<>();
+        List<Long> ids = new ArrayList<>(portfolioIds);
+        for (int from = 0; from < ids.size(); from += SUMMARY_BATCH) {
+            List<Long> batch = ids.subList(from, Math.min(from + SUMMARY_BATCH, ids.size()));
+            String sql = "SELECT pe.portfolio_id, e.ticker, SUM(pe.weight) AS weight " +
+                         "FROM portfolio_etf pe JOIN etf e ON e.id = pe.etf_id " +
+                         "WHERE pe.portfolio_id IN (" + String.join(", ", Collections.nCopies(batch.size(), "?")) + ") " +
+                         "GROUP BY pe.portfolio_id, e.ticker ORDER BY pe.portfolio_id, e.ticker";
+            jdbcTemplate.query(sql, rs -> {
+                weights.computeIfAbsent(rs.getLong("portfolio_id"), id -> new LinkedHashMap<>())
+                        .put(rs.getString("ticker"), rs.getBigDecimal("weight"));
+            }, batch.toArray());
+        }
+        return weights;
+    }
+
+    // groups are {asset_class, etf_count, total_expense_ratio, min_expense_ratio, max_expense_ratio} rows of one portfolio.
+    private static HoldingsSummary summary(List<Object[]> groups) {
+        int count = 0;
+        BigDecimal total = BigDecimal.ZERO;
+        BigDecimal min = null;
+        BigDecimal max = null;
+        Map<String, Integer> assetClassCounts = new LinkedHashMap<>();
+        for (Object[] group : groups) {
+            int groupCount = (Integer) group[1];
+            count += groupCount;
+            total = total.add((BigDecimal) group[2]);
+            min = min == null || min.compareTo((BigDecimal) group[3]) > 0 ? (BigDecimal) group[3] : min;
+            max = max == null || max.compareTo((BigDecimal) group[4]) < 0 ? (BigDecimal) group[4] : max;
+            assetClassCounts.put((String) group[0], groupCount);
+        }
+        // Two more digits than the column, like AVG would give.
+        BigDecimal average = total.divide(BigDecimal.valueOf(count), total.scale() + 2, RoundingMode.HALF_UP);
+        return new HoldingsSummary(count, average, min, max, assetClassCounts);
+    }
+
+    // Every write to portfolio_etf below also updates the portfolio's stats (see PortfolioStatsDao), so each one
+    // is a transaction. The ones that add or remove links, or change weights, publish a PortfolioHoldingsChangedEvent
+    // for EtfHoldersIndex and QuoteFeed.
+    @Transactional
     public PortfolioEtf addEtfToPortfolio(Long portfolioId, Long etfId) {
         String sql = "INSERT INTO portfolio_etf (portfolio_id, etf_id) VALUES (?, ?)";
         KeyHolder keyHolder = new GeneratedKeyHolder();
@@ -55,13 +178,160 @@ public class PortfolioEtfDao {
             ps.setLong(2, etfId);
             return ps;
         }, keyHolder);
+        portfolioStatsDao.linksAdded(portfolioId, List.of(etfId));
+        eventPublisher.publishEvent(new PortfolioHoldingsChangedEvent(portfolioId));
         
         return new PortfolioEtf(keyHolder.getKey().longValue(), portfolioId, etfId);
     }
 
+    public int insertIfAbsentForOwner(Long portfolioId, Long etfId, Long userId, boolean isAdmin) {
+        return insertIfAbsentForOwner(portfolioId, etfId, BigDecimal.ONE, userId, isAdmin);
+    }
+
+    // Adds the link in one statement, and only if the portfolio belongs to userId (or isAdmin), the ETF exists
+    // and the link isn't there yet. Returns 1 when a row was added and 0 otherwise; the caller works out why.
+    // Two concurrent calls can both pass NOT EXISTS, but unique_portfolio_etf lets only one of them insert.
+    @Transactional
+    public int insertIfAbsentForOwner(Long portfolioId, Long etfId, BigDecimal weight, Long userId, boolean isAdmin) {
+        String sql = "INSERT INTO portfolio_etf (portfolio_id, etf_id, weight) " +
+                     "SELECT p.id, e.id, ? FROM portfolio p JOIN etf e ON e.id = ? " +
+                     "WHERE p.id = ? AND (? OR p.user_id = ?) " +
+                     "AND NOT EXISTS (SELECT 1 FROM portfolio_etf pe WHERE pe.portfolio_id = p.id AND pe.etf_id = e.id)";
+        int inserted;
+        try {
+            inserted = jdbcTemplate.update(sql, weight, etfId, portfolioId, isAdmin, userId);
+        } catch (DuplicateKeyException e) {
+            return 0;
+        }
+        if (inserted > 0) {
+            portfolioStatsDao.linksAdded(portfolioId, List.of(etfId));
+            eventPublisher.publishEvent(new PortfolioHoldingsChangedEvent(portfolioId));
+        }
+        return inserted;
+    }
+
+    // Returns 0 when the portfolio doesn't exist, belongs to someone else, or didn't contain the ETF.
+    // The stats have to be adjusted before the row goes, so ownership is checked first, under a lock.
+    @Transactional
+    public int deleteIfOwned(Long portfolioId, Long etfId, Long userId, boolean isAdmin) {
+        if (!lockIfOwned(portfolioId, userId, isAdmin)) {
+            return 0;
+        }
+        portfolioStatsDao.linksRemoving(portfolioId, List.of(etfId));
+        String sql = "DELETE FROM portfolio_etf WHERE portfolio_id = ? AND etf_id = ?";
+        int deleted = jdbcTemplate.update(sql, portfolioId, etfId);
+        if (deleted > 0) {
+            eventPublisher.publishEvent(new PortfolioHoldingsChangedEvent(portfolioId));
+        }
+        return deleted;
+    }
+
+    // Changes the weight of a holding. Returns 0 when the portfolio doesn't exist, belongs to someone else,
+    // or doesn't contain the ETF.
+    @Transactional
+    public int updateWeightIfOwned(Long portfolioId, Long etfId, BigDecimal weight, Long userId, boolean isAdmin) {
+        if (!lockIfOwned(portfolioId, userId, isAdmin)) {
+            return 0;
+        }
+        portfolioStatsDao.linksRemoving(portfolioId, List.of(etfId));
+        String sql = "UPDATE portfolio_etf SET weight = ? WHERE portfolio_id = ? AND etf_id = ?";
+        int updated = jdbcTemplate.update(sql, weight, portfolioId, etfId);
+        portfolioStatsDao.linksAdded(portfolioId, List.of(etfId));
+        if (updated > 0) {
+            eventPublisher.publishEvent(new PortfolioHoldingsChangedEvent(portfolioId));
+        }
+        return updated;
+    }
+
+    // Locks the portfolio row until the transaction ends, so nobody else changes its holdings (and stats)
+    // in between. false when it doesn't exist or belongs to someone else.
+    private boolean lockIfOwned(Long portfolioId, Long userId, boolean isAdmin) {
+        String sql = "SELECT COUNT(*) FROM portfolio WHERE id = ? AND (? OR user_id = ?) FOR UPDATE";
+        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, portfolioId, isAdmin, userId);
+        return count != null && count > 0;
+    }
+
+    // For each of etfIds that is an existing ETF: whether it's in the portfolio. Missing ETFs are left out.
+    public Map<Long, Boolean> findMembership(Long portfolioId, Collection<Long> etfIds) {
+        Map<Long, Boolean> membership = new HashMap<>();
+        if (etfIds.isEmpty()) {
+            return membership;
+        }
+        String sql = "SELECT e.id, pe.id IS NOT NULL AS held FROM etf e " +
+                     "LEFT JOIN portfolio_etf pe ON pe.portfolio_id = ? AND pe.etf_id = e.id " +
+                     "WHERE e.id IN (" + String.join(", ", Collections.nCopies(etfIds.size(), "?")) + ")";
+        List<Object> params = new ArrayList<>();
+        params.add(portfolioId);
+        params.addAll(etfIds);
+        jdbcTemplate.query(sql, rs -> {
+            membership.put(rs.getLong("id"), rs.getBoolean("held"));
+        }, params.toArray());
+        return membership;
+    }
+
+    // Links all of etfIds in one multi-row statement, and adds them all to the stats. The caller holds the portfolio
+    // lock (PortfolioDao.findOwnerIdForUpdate) and has seen that the ETFs exist and aren't linked, but nothing locks
+    // the ETF rows: if one was deleted since, or turns out to be linked after all, the foreign key or
+    // unique_portfolio_etf rejects the whole statement with a DataIntegrityViolationException, before the stats
+    // are touched, rather than some of the ids being skipped and counted anyway.
+    @Transactional
+    public int addEtfsToPortfolio(Long portfolioId, Collection<Long> etfIds) {
+        if (etfIds.isEmpty()) {
+            return 0;
+        }
+        String sql = "INSERT INTO portfolio_etf (portfolio_id, etf_id) VALUES " +
+                     String.join(", ", Collections.nCopies(etfIds.size(), "(?, ?)"));
+        List<Object> params = new ArrayList<>();
+        for (Long etfId : etfIds) {
+            params.add(portfolioId);
+            params.add(etfId);
+        }
+        int added = jdbcTemplate.update(sql, params.toArray());
+        portfolioStatsDao.linksAdded(portfolioId, etfIds);
+        if (added > 0) {
+            eventPublisher.publishEvent(new PortfolioHoldingsChangedEvent(portfolioId));
+        }
+        return added;
+    }
+
+    // Copies every holding of one portfolio, weights included, into another that has none yet, in one
+    // INSERT ... SELECT however many there are. Returns the number copied.
+    @Transactional
+    public int copyHoldings(Long fromPortfolioId, Long toPortfolioId) {
+        String sql = "INSERT INTO portfolio_etf (portfolio_id, etf_id, weight) " +
+                     "SELECT ?, etf_id, weight FROM portfolio_etf WHERE portfolio_id = ?";
+        int copied = jdbcTemplate.update(sql, toPortfolioId, fromPortfolioId);
+        if (copied > 0) {
+            portfolioStatsDao.portfolioFilled(toPortfolioId);
+            eventPublisher.publishEvent(new PortfolioHoldingsChangedEvent(toPortfolioId));
+        }
+        return copied;
+    }
+
+    @Transactional
+    public int removeEtfsFromPortfolio(Long portfolioId, Collection<Long> etfIds) {
+        if (etfIds.isEmpty()) {
+            return 0;
+        }
+        portfolioStatsDao.linksRemoving(portfolioId, etfIds);
+        String sql = "DELETE FROM portfolio_etf WHERE portfolio_id = ? AND etf_id IN (" +
+                     String.join(", ", Collections.nCopies(etfIds.size(), "?")) + ")";
+        List<Object> params = new ArrayList<>();
+        params.add(portfolioId);
+        params.addAll(etfIds);
+        int removed = jdbcTemplate.update(sql, params.toArray());
+        if (removed > 0) {
+            eventPublisher.publishEvent(new PortfolioHoldingsChangedEvent(portfolioId));
+        }
+        return removed;
+    }
+
+    @Transactional
     public void removeEtfFromPortfolio(Long portfolioId, Long etfId) {
+        portfolioStatsDao.linksRemoving(portfolioId, List.of(etfId));
         String sql = "DELETE FROM portfolio_etf WHERE portfolio_id = ? AND etf_id = ?";
         jdbcTemplate.update(sql, portfolioId, etfId);
+        eventPublisher.publishEvent(new PortfolioHoldingsChangedEvent(portfolioId));
     }
 
     public boolean existsByPortfolioIdAndEtfId(Long portfolioId, Long etfId) {
@@ -69,4 +339,95 @@ public class PortfolioEtfDao {
         Integer count = jdbcTemplate.queryForObject(sql, Integer.class, portfolioId, etfId);
         return count != null && count > 0;
     }
+
+    // The ids of the portfolios holding an ETF, ascending. Served by portfolio_etf_etf_portfolio alone.
+    public long[] findPortfolioIdsByEtfId(Long etfId) {
+        String sql = "SELECT portfolio_id FROM portfolio_etf WHERE etf_id = ? ORDER BY portfolio_id";
+        return jdbcTemplate.queryForList(sql, Long.class, etfId).stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // The ids of the ETFs in a portfolio, ascending. Served by unique_portfolio_etf alone.
+    public long[] findEtfIdsByPortfolioId(Long portfolioId) {
+        String sql = "SELECT etf_id FROM portfolio_etf WHERE portfolio_id = ? ORDER BY etf_id";
+        return jdbcTemplate.queryForList(sql, Long.class, portfolioId).stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // Every other portfolio sharing an ETF with this one: its id -> {ETFs shared, ETFs it holds}. Reads the
+    // holders of each of the portfolio's ETFs, so it is only meant for EtfHoldersIndex inside a transaction.
+    public Map<Long, int[]> findOverlaps(Long portfolioId) {
+        String sql = "SELECT other.portfolio_id, COUNT(*) AS shared, s.holding_count FROM portfolio_etf mine " +
+                     "JOIN portfolio_etf other ON other.etf_id = mine.etf_id AND other.portfolio_id <> mine.portfolio_id " +
+                     "JOIN portfolio_stats s ON s.portfolio_id = other.portfolio_id " +
+                     "WHERE mine.portfolio_id = ? GROUP BY other.portfolio_id, s.holding_count";
+        Map<Long, int[]> overlaps = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            overlaps.put(rs.getLong("portfolio_id"), new int[]{rs.getInt("shared"), rs.getInt("holding_count")});
+        }, portfolioId);
+        return overlaps;
+    }
+
+    // Every link, as the sorted holders of each held ETF. For building EtfHoldersIndex; reads a whole index.
+    public Map<Long, long[]> findAllPortfolioIdsByEtf() {
+        return findAllGrouped("etf_id", "portfolio_id");
+    }
+
+    // Every link, as the sorted ETFs of each portfolio that holds any.
+    public Map<Long, long[]> findAllEtfIdsByPortfolio() {
+        return findAllGrouped("portfolio_id", "etf_id");
+    }
+
+    // Every link with its weight and the ETF's ticker, in portfolio id order, for QuoteFeed's NAV book. Reads the
+    // whole table; rows go to the handler as they come instead of into a list.
+    public void forEachLink(LinkHandler handler) {
+        String sql = "SELECT pe.portfolio_id, pe.etf_id, pe.weight, e.ticker FROM portfolio_etf pe " +
+                     "JOIN etf e ON e.id = pe.etf_id ORDER BY pe.portfolio_id, pe.etf_id";
+        jdbcTemplate.query(sql, rs -> {
+            handler.link(rs.getLong(1), rs.getLong(2), rs.getDouble(3), rs.getString(4));
+        });
+    }
+
+    // The same for just these portfolios, for QuoteFeed to apply changes to a few of them.
+    public void forEachLink(Collection<Long> portfolioIds, LinkHandler handler) {
+        if (portfolioIds.isEmpty()) {
+            return;
+        }
+        String sql = "SELECT pe.portfolio_id, pe.etf_id, pe.weight, e.ticker FROM portfolio_etf pe " +
+                     "JOIN etf e ON e.id = pe.etf_id WHERE pe.portfolio_id IN (" +
+                     String.join(", ", Collections.nCopies(portfolioIds.size(), "?")) + ") ORDER BY pe.portfolio_id, pe.etf_id";
+        jdbcTemplate.query(sql, rs -> {
+            handler.link(rs.getLong(1), rs.getLong(2), rs.getDouble(3), rs.getString(4));
+        }, portfolioIds.toArray());
+    }
+
+    @FunctionalInterface
+    public interface LinkHandler {
+        void link(long portfolioId, long etfId, double weight, String ticker);
+    }
+
+    // Rows come in key order, so each key's values are one run that goes straight into a long[].
+    private Map<Long, long[]> findAllGrouped(String keyColumn, String valueColumn) {
+        String sql = "SELECT " + keyColumn + ", " + valueColumn + " FROM portfolio_etf ORDER BY " + keyColumn + ", " + valueColumn;
+        return jdbcTemplate.query(sql, rs -> {
+            Map<Long, long[]> grouped = new HashMap<>();
+            long key = 0;
+            long[] values = new long[16];
+            int count = 0;
+            while (rs.next()) {
+                long rowKey = rs.getLong(1);
+                if (count > 0 && rowKey != key) {
+                    grouped.put(key, Arrays.copyOf(values, count));
+                    count = 0;
+                }
+                key = rowKey;
+                if (count == values.length) {
+                    values = Arrays.copyOf(values, count * 2);
+                }
+                values[count++] = rs.getLong(2);
+            }
+            if (count > 0) {
+                grouped.put(key, Arrays.copyOf(values, count));
+            }
+            return grouped;
+        });
+    }
 }
@@ -0,0 +1,14 @@
+package org.launchcode.etf.dao;
+
+// Published by PortfolioEtfDao after ETFs were added to or removed from a portfolio, or their weights changed. Like
+// the other change events it only says which portfolio changed; EtfHoldersIndex re-reads its holdings after commit,
+// and QuoteFeed reads it again for its NAV book.
+public class PortfolioHoldingsChangedEvent {
+    private final Long portfolioId;
+
+    public PortfolioHoldingsChangedEvent(Long portfolioId) {
+        this.portfolioId = portfolioId;
+    }
+
+    public Long getPortfolioId() { return portfolioId; }
+}
@@ -0,0 +1,227 @@
+package org.launchcode.etf.dao;
+
+import org.launchcode.etf.dto.KeysetPage;
+import org.launchcode.etf.model.Portfolio;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// Portfolio name search without LIKE '%query%'. It keeps every portfolio in memory with a TrigramIndex over
+// the names, kept current by PortfolioChangedEvents the same way EtfCatalog is kept current by EtfChangedEvents.
+// Only searches come here; plain lists and sorts are served by PortfolioDao, where they can use an index.
+//
+// Like EtfCatalog, the rows sit in slots ordered by id (null for a deleted row until the next rebuild),
+// and a write publishes a new Snapshot, so searches never lock. Inside a transaction we use PortfolioDao instead.
+//
+// The returned Portfolio objects are shared between requests, so callers must not modify them.
+@Component
+public class PortfolioSearchIndex {
+    private static final Comparator<Portfolio> BY_NAME = Comparator.comparing(Portfolio::getName, String.CASE_INSENSITIVE_ORDER)
+            .thenComparing(Portfolio::getId);
+    private static final Comparator<Portfolio> BY_USER_ID = Comparator.comparing(Portfolio::getUserId)
+            .thenComparing(Portfolio::getId);
+
+    private static final int MIN_TOMBSTONES_FOR_REBUILD = 1024;
+
+    private final PortfolioDao portfolioDao;
+    private final Object writeLock = new Object();
+    private volatile Snapshot snapshot;
+
+    public PortfolioSearchIndex(PortfolioDao portfolioDao) {
+        this.portfolioDao = portfolioDao;
+    }
+
+    // Same results as PortfolioDao.search.
+    public List<Portfolio> search(String query, String sortBy, String sortDirection, Long userId, boolean isAdmin) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            return portfolioDao.search(query, sortBy, sortDirection, userId, isAdmin);
+        }
+        List<Portfolio> result = matches(query, userId, isAdmin);
+        if (EtfDao.sortsByRelevance(sortBy)) {
+            result.sort(Comparator.<Portfolio>comparingInt(portfolio -> TrigramIndex.relevance(portfolio.getName(), query))
+                    .thenComparing(BY_NAME));
+        } else {
+            result.sort(comparator(sortBy, "desc".equalsIgnoreCase(sortDirection)));
+        }
+        return result;
+    }
+
+    // Same contract and cursors as PortfolioDao.findPage with a search term, so sortBy=relevance pages in name order.
+    public KeysetPage<Portfolio> findPage(String search, String sortBy, String sortDirection, Long userId, boolean isAdmin,
+                                          String cursor, int limit) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            return portfolioDao.findPage(search, sortBy, sortDirection, userId, isAdmin, cursor, limit);
+        }
+        boolean descending = "desc".equalsIgnoreCase(sortDirection);
+        Keyset keyset = PortfolioDao.keyset(sortBy, descending);
+        Comparator<Portfolio> comparator = comparator(sortBy, descending);
+        List<Portfolio> sorted = matches(search, userId, isAdmin);
+        sorted.sort(comparator);
+
+        int start = 0;
+        if (cursor != null) {
+            Object[] key = keyset.decode(cursor);
+            Portfolio after = new Portfolio();
+            after.setId((Long) key[1]);
+            if ("userId".equals(sortBy)) {
+                after.setUserId((Long) key[0]);
+            } else {
+                after.setName((String) key[0]);
+            }
+            // The first match that sorts after the cursor row (comparator is already reversed for desc).
+            int high = sorted.size();
+            while (start < high) {
+                int mid = (start + high) >>> 1;
+                if (comparator.compare(sorted.get(mid), after) <= 0) {
+                    start = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+        }
+        List<Portfolio> rows = sorted.subList(start, Math.min(sorted.size(), start + limit + 1));
+        return keyset.page(rows, limit, PortfolioDao.keyOf(sortBy));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPortfolioChanged(PortfolioChangedEvent event) {
+        synchronized (writeLock) {
+            if (snapshot == null) {
+                return;
+            }
+            if (event.getPortfolioId() != null) {
+                apply(event.getPortfolioId(), portfolioDao.findById(event.getPortfolioId()));
+            } else {
+                Set<Long> stillOwned = new HashSet<>();
+                for (Portfolio portfolio : portfolioDao.findByUserId(event.getOwnerId())) {
+                    stillOwned.add(portfolio.getId());
+                    apply(portfolio.getId(), portfolio);
+                }
+                for (Portfolio portfolio : snapshot.slots) {
+                    if (portfolio != null && event.getOwnerId().equals(portfolio.getUserId())
+                            && !stillOwned.contains(portfolio.getId())) {
+                        apply(portfolio.getId(), null);
+                    }
+                }
+            }
+        }
+    }
+
+    // The visible portfolios whose name contains query, in slot order. The trigram index narrows the slots
+    // down first; each candidate is then checked for visibility and for really containing the query.
+    private List<Portfolio> matches(String query, Long userId, boolean isAdmin) {
+        Snapshot current = current();
+        String needle = query.toLowerCase(Locale.ROOT);
+        int[] candidates = current.text.candidates(needle);
+        int count = candidates == null ? current.slots.length : candidates.length;
+        List<Portfolio> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Portfolio portfolio = current.slots[candidates == null ? i : candidates[i]];
+            if (portfolio == null
+                    || !isAdmin && !Boolean.TRUE.equals(portfolio.getIsPublic()) && !portfolio.getUserId().equals(userId)
+                    || !portfolio.getName().toLowerCase(Locale.ROOT).contains(needle)) {
+                continue;
+            }
+            result.add(portfolio);
+        }
+        return result;
+    }
+
+    private static Comparator<Portfolio> comparator(String sortBy, boolean descending) {
+        Comparator<Portfolio> comparator = "userId".equals(sortBy) ? BY_USER_ID : BY_NAME;
+        return descending ? comparator.reversed() : comparator;
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (writeLock) {
+                if (snapshot == null) {
+                    snapshot = Snapshot.of(portfolioDao.findAll());
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    // Must be called while holding writeLock. row == null means the portfolio no longer exists.
+    private void apply(Long id, Portfolio row) {
+        Snapshot current = snapshot;
+        int index = Arrays.binarySearch(current.ids, id);
+        if (index >= 0) {
+            current = current.replace(index, row);
+        } else if (row == null) {
+            return;
+        } else if (-index - 1 == current.ids.length) {
+            current = current.append(row);
+        } else {
+            List<Portfolio> rows = current.liveRows();
+            rows.add(row);
+            current = Snapshot.of(rows);
+        }
+        if (current.tombstones >= MIN_TOMBSTONES_FOR_REBUILD && current.tombstones > current.slots.length / 4) {
+            current = Snapshot.of(current.liveRows());
+        }
+        snapshot = current;
+    }
+
+    private static List<String> searchable(Portfolio portfolio) {
+        return portfolio == null ? List.of() : Arrays.asList(portfolio.getName());
+    }
+
+    private static final class Snapshot {
+        private final long[] ids;
+        private final Portfolio[] slots;
+        private final TrigramIndex text;
+        private final int tombstones;
+
+        private Snapshot(long[] ids, Portfolio[] slots, TrigramIndex text, int tombstones) {
+            this.ids = ids;
+            this.slots = slots;
+            this.text = text;
+            this.tombstones = tombstones;
+        }
+
+        private static Snapshot of(List<Portfolio> rows) {
+            Portfolio[] slots = rows.toArray(new Portfolio[0]);
+            Arrays.sort(slots, Comparator.comparing(Portfolio::getId));
+            long[] ids = Arrays.stream(slots).mapToLong(Portfolio::getId).toArray();
+            return new Snapshot(ids, slots, TrigramIndex.build(slots.length, slot -> searchable(slots[slot])), 0);
+        }
+
+        private List<Portfolio> liveRows() {
+            List<Portfolio> rows = new ArrayList<>(slots.length - tombstones);
+            for (Portfolio portfolio : slots) {
+                if (portfolio != null) {
+                    rows.add(portfolio);
+                }
+            }
+            return rows;
+        }
+
+        private Snapshot append(Portfolio row) {
+            long[] newIds = Arrays.copyOf(ids, ids.length + 1);
+            newIds[ids.length] = row.getId();
+            Portfolio[] newSlots = Arrays.copyOf(slots, slots.length + 1);
+            newSlots[slots.length] = row;
+            return new Snapshot(newIds, newSlots, text.update(slots.length, List.of(), searchable(row)), tombstones);
+        }
+
+        private Snapshot replace(int slot, Portfolio row) {
+            Portfolio old = slots[slot];
+            Portfolio[] newSlots = slots.clone();
+            newSlots[slot] = row;
+            int newTombstones = tombstones + (old != null && row == null ? 1 : 0) - (old == null && row != null ? 1 : 0);
+            return new Snapshot(ids, newSlots, text.update(slot, searchable(old), searchable(row)), newTombstones);
+        }
+    }
+}
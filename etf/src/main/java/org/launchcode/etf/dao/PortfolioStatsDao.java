@@ -0,0 +1,127 @@
+package org.launchcode.etf.dao;
+
+import org.launchcode.etf.dto.PortfolioStats;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Keeps portfolio_stats and portfolio_allocation (see V2__portfolio_weights_and_stats.sql) in step with
+// portfolio_etf and etf. Nothing here recomputes a portfolio from scratch: a change adds or subtracts the share
+// of just the holdings it touches, so it costs the same however big the portfolio is, and so does reading.
+//
+// The callers are the DAOs that write portfolio_etf or etf, in the same transaction as their write:
+//  - linksAdded after inserting holdings, linksRemoving before deleting them (the rows are needed to know
+//    what to subtract), and portfolioFilled after copying every holding into a new portfolio;
+//  - etfRemoving/etfAdded around a change to a held ETF's expense ratio or asset class, and etfRemoving
+//    before deleting it, since ON DELETE CASCADE would drop its holdings without telling us;
+//  - ownerRemoving before deleting a user, whose ETFs may be held in other users' portfolios.
+// Deleting a portfolio needs nothing: its rows go with it (ON DELETE CASCADE).
+@Repository
+public class PortfolioStatsDao {
+    private final JdbcTemplate jdbcTemplate;
+
+    public PortfolioStatsDao(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public PortfolioStats findByPortfolioId(Long portfolioId) {
+        String sql = "SELECT s.holding_count, s.total_weight, s.weighted_expense_sum, a.asset_class, a.weight " +
+                     "FROM portfolio_stats s LEFT JOIN portfolio_allocation a ON a.portfolio_id = s.portfolio_id " +
+                     "WHERE s.portfolio_id = ? ORDER BY a.asset_class";
+        return jdbcTemplate.query(sql, rs -> {
+            if (!rs.next() || rs.getInt("holding_count") == 0) {
+                return PortfolioStats.EMPTY;
+            }
+            int holdingCount = rs.getInt("holding_count");
+            BigDecimal totalWeight = rs.getBigDecimal("total_weight");
+            BigDecimal weightedExpenseRatio = rs.getBigDecimal("weighted_expense_sum").divide(totalWeight, 6, RoundingMode.HALF_UP);
+            Map<String, BigDecimal> allocation = new LinkedHashMap<>();
+            do {
+                allocation.put(rs.getString("asset_class"), rs.getBigDecimal("weight").divide(totalWeight, 6, RoundingMode.HALF_UP));
+            } while (rs.next());
+            return new PortfolioStats(holdingCount, totalWeight, weightedExpenseRatio, allocation);
+        }, portfolioId);
+    }
+
+    public void linksAdded(Long portfolioId, Collection<Long> etfIds) {
+        if (!etfIds.isEmpty()) {
+            apply(1, linksFilter(etfIds), linksParams(portfolioId, etfIds));
+        }
+    }
+
+    public void linksRemoving(Long portfolioId, Collection<Long> etfIds) {
+        if (!etfIds.isEmpty()) {
+            apply(-1, linksFilter(etfIds), linksParams(portfolioId, etfIds));
+        }
+    }
+
+    // Every holding of the portfolio is new, e.g. a clone (see PortfolioEtfDao.copyHoldings).
+    public void portfolioFilled(Long portfolioId) {
+        apply(1, "pe.portfolio_id = ?", portfolioId);
+    }
+
+    public void etfAdded(Long etfId) {
+        apply(1, "pe.etf_id = ?", etfId);
+    }
+
+    public void etfRemoving(Long etfId) {
+        apply(-1, "pe.etf_id = ?", etfId);
+    }
+
+    public void ownerRemoving(Long userId) {
+        apply(-1, "e.user_id = ?", userId);
+    }
+
+    private static String linksFilter(Collection<Long> etfIds) {
+        return "pe.portfolio_id = ? AND pe.etf_id IN (" + String.join(", ", Collections.nCopies(etfIds.size(), "?")) + ")";
+    }
+
+    private static Object[] linksParams(Long portfolioId, Collection<Long> etfIds) {
+        List<Object> params = new ArrayList<>();
+        params.add(portfolioId);
+        params.addAll(etfIds);
+        return params.toArray();
+    }
+
+    // Adds (sign 1) or subtracts (sign -1) the holdings matching filter, a condition on portfolio_etf pe and
+    // etf e, grouped per portfolio. A subtraction only ever meets rows an earlier addition created, so the
+    // upsert is just the one statement for both. The deltas come from a derived table, whose columns the UPDATE
+    // part can name (VALUES() is deprecated since MySQL 8.0.20, and a row alias can't follow a SELECT).
+    private void apply(int sign, String filter, Object... filterParams) {
+        String from = " FROM portfolio_etf pe JOIN etf e ON e.id = pe.etf_id WHERE " + filter;
+        List<Object> params = new ArrayList<>(List.of(sign, sign, sign));
+        params.addAll(List.of(filterParams));
+        jdbcTemplate.update("INSERT INTO portfolio_stats (portfolio_id, holding_count, total_weight, weighted_expense_sum) " +
+                "SELECT * FROM (SELECT pe.portfolio_id, ? * COUNT(*) AS holdings, ? * SUM(pe.weight) AS weight, " +
+                "? * SUM(pe.weight * e.expense_ratio) AS expense" + from + " GROUP BY pe.portfolio_id) AS delta " +
+                "ON DUPLICATE KEY UPDATE " +
+                "holding_count = portfolio_stats.holding_count + delta.holdings, " +
+                "total_weight = portfolio_stats.total_weight + delta.weight, " +
+                "weighted_expense_sum = portfolio_stats.weighted_expense_sum + delta.expense",
+                params.toArray());
+
+        params = new ArrayList<>(List.of(sign, sign));
+        params.addAll(List.of(filterParams));
+        jdbcTemplate.update("INSERT INTO portfolio_allocation (portfolio_id, asset_class, holding_count, weight) " +
+                "SELECT * FROM (SELECT pe.portfolio_id, e.asset_class, ? * COUNT(*) AS holdings, ? * SUM(pe.weight) AS weight" +
+                from + " GROUP BY pe.portfolio_id, e.asset_class) AS delta " +
+                "ON DUPLICATE KEY UPDATE " +
+                "holding_count = portfolio_allocation.holding_count + delta.holdings, " +
+                "weight = portfolio_allocation.weight + delta.weight",
+                params.toArray());
+
+        if (sign < 0) {
+            // An asset class the portfolio no longer holds drops out of the allocation.
+            jdbcTemplate.update("DELETE a FROM portfolio_allocation a JOIN portfolio_etf pe ON pe.portfolio_id = a.portfolio_id " +
+                    "JOIN etf e ON e.id = pe.etf_id WHERE " + filter + " AND a.holding_count = 0", filterParams);
+        }
+    }
+}
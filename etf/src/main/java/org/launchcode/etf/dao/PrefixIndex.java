@@ -0,0 +1,181 @@
+package org.launchcode.etf.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+// Every word of some text, lower-cased, paired with its slot and kept in one sorted array of (word, slot).
+// All words starting with a prefix are next to each other, so a prefix lookup is a binary search for the first
+// one followed by a short walk. EtfCatalog uses it to suggest ETFs by description words ("van" -> "Vanguard ...").
+//
+// Two parallel arrays instead of a trie: there is no node object per character, and a lookup allocates nothing.
+// Like TrigramIndex it is never modified; update returns a new index.
+final class PrefixIndex {
+    private final String[] words;
+    private final int[] slots;
+
+    private PrefixIndex(String[] words, int[] slots) {
+        this.words = words;
+        this.slots = slots;
+    }
+
+    // textOf returns the text of a slot, or null for an empty slot. Descriptions share a small vocabulary, so the
+    // slots are grouped by word first: visited in order, each word's slots come out sorted, and only the distinct
+    // words are sorted, not every (word, slot) pair. Equal words also end up as one String.
+    static PrefixIndex build(int size, IntFunction<String> textOf) {
+        Map<String, TrigramIndex.SlotList> byWord = new HashMap<>();
+        int count = 0;
+        for (int slot = 0; slot < size; slot++) {
+            for (String word : words(textOf.apply(slot))) {
+                byWord.computeIfAbsent(word, w -> new TrigramIndex.SlotList()).add(slot);
+                count++;
+            }
+        }
+        String[] distinct = byWord.keySet().toArray(new String[0]);
+        Arrays.sort(distinct);
+        String[] words = new String[count];
+        int[] slots = new int[count];
+        int out = 0;
+        for (String word : distinct) {
+            TrigramIndex.SlotList list = byWord.get(word);
+            Arrays.fill(words, out, out + list.size(), word);
+            System.arraycopy(list.slots(), 0, slots, out, list.size());
+            out += list.size();
+        }
+        return new PrefixIndex(words, slots);
+    }
+
+    // Replaces the entries of slot for oldText with the entries for newText. Positions are found by binary search
+    // and the arrays copied in chunks, so this is two array copies however large the index is.
+    PrefixIndex update(int slot, String oldText, String newText) {
+        Set<String> before = words(oldText);
+        Set<String> after = words(newText);
+        if (before.equals(after)) {
+            return this;
+        }
+
+        int[] removed = new int[before.size()];
+        int count = 0;
+        for (String word : before) {
+            removed[count++] = indexOf(words, slots, words.length, word, slot);
+        }
+        Arrays.sort(removed);
+        String[] keptWords = new String[words.length - removed.length];
+        int[] keptSlots = new int[keptWords.length];
+        int from = 0;
+        int out = 0;
+        for (int index : removed) {
+            System.arraycopy(words, from, keptWords, out, index - from);
+            System.arraycopy(slots, from, keptSlots, out, index - from);
+            out += index - from;
+            from = index + 1;
+        }
+        System.arraycopy(words, from, keptWords, out, words.length - from);
+        System.arraycopy(slots, from, keptSlots, out, words.length - from);
+
+        List<Entry> added = new ArrayList<>();
+        for (String word : after) {
+            added.add(new Entry(word, slot));
+        }
+        added.sort(null);
+        String[] newWords = new String[keptWords.length + added.size()];
+        int[] newSlots = new int[newWords.length];
+        from = 0;
+        out = 0;
+        for (Entry entry : added) {
+            int index = -indexOf(keptWords, keptSlots, keptWords.length, entry.word, entry.slot) - 1;
+            System.arraycopy(keptWords, from, newWords, out, index - from);
+            System.arraycopy(keptSlots, from, newSlots, out, index - from);
+            out += index - from;
+            newWords[out] = entry.word;
+            newSlots[out++] = entry.slot;
+            from = index;
+        }
+        System.arraycopy(keptWords, from, newWords, out, keptWords.length - from);
+        System.arraycopy(keptSlots, from, newSlots, out, keptWords.length - from);
+        return new PrefixIndex(newWords, newSlots);
+    }
+
+    // Position of the first entry whose word is >= prefix; prefix must already be lower-cased.
+    int first(String prefix) {
+        int low = 0;
+        int high = words.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (words[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    boolean matches(int position, String prefix) {
+        return position < words.length && words[position].startsWith(prefix);
+    }
+
+    int slotAt(int position) {
+        return slots[position];
+    }
+
+    int size() {
+        return words.length;
+    }
+
+    // Arrays.binarySearch over the (word, slot) pairs.
+    private static int indexOf(String[] words, int[] slots, int length, String word, int slot) {
+        int low = 0;
+        int high = length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = words[mid].compareTo(word);
+            if (cmp == 0) {
+                cmp = Integer.compare(slots[mid], slot);
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // Letters and digits, split on everything else: "S&P 500 ETF" -> "s", "p", "500", "etf".
+    private static Set<String> words(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        if (text != null) {
+            for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{Alnum}]+")) {
+                if (!word.isEmpty()) {
+                    words.add(word);
+                }
+            }
+        }
+        return words;
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        private final String word;
+        private final int slot;
+
+        private Entry(String word, int slot) {
+            this.word = word;
+            this.slot = slot;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int byWord = word.compareTo(other.word);
+            return byWord != 0 ? byWord : Integer.compare(slot, other.slot);
+        }
+    }
+}
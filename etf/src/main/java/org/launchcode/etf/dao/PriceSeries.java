@@ -0,0 +1,94 @@
+package org.launchcode.etf.dao;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.LocalDate;
+
+// The daily bars of one ticker from PriceStore, oldest first, as parallel columns: the date (in days since
+// 1970-01-01), the close, the close adjusted for splits and dividends, and the volume. The columns are read-only
+// views of the memory-mapped files, so neither a series nor a range of one copies any bars. Bulk get() from the
+// column buffers when an array is needed.
+//
+// A series never changes: days appended later show up in the next PriceStore.series() call.
+public final class PriceSeries {
+    private final String ticker;
+    private final IntBuffer epochDays;
+    private final DoubleBuffer closes;
+    private final DoubleBuffer adjustedCloses;
+    private final LongBuffer volumes;
+
+    PriceSeries(String ticker, IntBuffer epochDays, DoubleBuffer closes, DoubleBuffer adjustedCloses, LongBuffer volumes) {
+        this.ticker = ticker;
+        this.epochDays = epochDays;
+        this.closes = closes;
+        this.adjustedCloses = adjustedCloses;
+        this.volumes = volumes;
+    }
+
+    static PriceSeries empty(String ticker) {
+        return new PriceSeries(ticker, IntBuffer.allocate(0).asReadOnlyBuffer(), DoubleBuffer.allocate(0).asReadOnlyBuffer(),
+                DoubleBuffer.allocate(0).asReadOnlyBuffer(), LongBuffer.allocate(0).asReadOnlyBuffer());
+    }
+
+    public String getTicker() { return ticker; }
+
+    public int size() { return epochDays.limit(); }
+
+    public boolean isEmpty() { return size() == 0; }
+
+    public LocalDate getDate(int index) { return LocalDate.ofEpochDay(epochDays.get(index)); }
+
+    public int getEpochDay(int index) { return epochDays.get(index); }
+
+    public double getClose(int index) { return closes.get(index); }
+
+    public double getAdjustedClose(int index) { return adjustedCloses.get(index); }
+
+    public long getVolume(int index) { return volumes.get(index); }
+
+    // The columns, each with its own position so callers can bulk get() without affecting anyone else.
+    public IntBuffer epochDays() { return epochDays.duplicate(); }
+
+    public DoubleBuffer closes() { return closes.duplicate(); }
+
+    public DoubleBuffer adjustedCloses() { return adjustedCloses.duplicate(); }
+
+    public LongBuffer volumes() { return volumes.duplicate(); }
+
+    // Index of the first bar on or after date (size() if there is none), by binary search.
+    public int ceilingIndex(LocalDate date) {
+        long day = date.toEpochDay();
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (epochDays.get(middle) < day) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // The bars from from to to, both inclusive; null leaves that end open.
+    public PriceSeries range(LocalDate from, LocalDate to) {
+        int start = from == null ? 0 : ceilingIndex(from);
+        int end = to == null ? size() : ceilingIndex(to.plusDays(1));
+        return slice(start, Math.max(start, end));
+    }
+
+    // Bars [from, to) by index.
+    public PriceSeries slice(int from, int to) {
+        if (from < 0 || to > size() || from > to) {
+            throw new IndexOutOfBoundsException("slice " + from + ".." + to + " of " + size() + " bars");
+        }
+        if (from == 0 && to == size()) {
+            return this;
+        }
+        int length = to - from;
+        return new PriceSeries(ticker, epochDays.slice(from, length), closes.slice(from, length),
+                adjustedCloses.slice(from, length), volumes.slice(from, length));
+    }
+}
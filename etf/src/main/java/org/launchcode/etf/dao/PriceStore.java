@@ -0,0 +1,309 @@
+package org.launchcode.etf.dao;
+
+import org.launchcode.etf.dto.PriceImportResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+// Daily price history, kept in files next to the app rather than in MySQL so that analytics over decades of bars
+// read primitive columns straight from memory instead of mapping millions of rows through JDBC.
+//
+// Prices belong to a ticker, not an etf row: every user's "VTI" is the same fund, so callers with an ETF look up
+// its ticker. Each ticker has a directory under etf.prices.dir with one file per column, little-endian:
+//   date.i32       days since 1970-01-01, strictly increasing
+//   close.f64      close
+//   adj_close.f64  close adjusted for splits and dividends
+//   volume.i64     shares traded
+// series() maps the files read-only and keeps the mapping until the next append, so reads never copy bars (see
+// PriceSeries). The history only grows: append() adds days after the last stored one, writing the values first
+// and the dates last. A crash in between leaves extra values past the last date, which reads ignore and the next
+// append overwrites.
+//
+// importCsv() and importAll() load the offline CSV files (one per ticker, named after it) from etf.prices.import-dir.
+// Importing the same file again after new days were added to it appends just the new days.
+@Component
+public class PriceStore {
+    private static final Pattern TICKER = Pattern.compile("[A-Z0-9.\\-]{1,10}");
+    private static final String DATES = "date.i32";
+    private static final String CLOSES = "close.f64";
+    private static final String ADJUSTED_CLOSES = "adj_close.f64";
+    private static final String VOLUMES = "volume.i64";
+
+    private final Path dir;
+    private final Path importDir;
+    private final ConcurrentHashMap<String, PriceSeries> mapped = new ConcurrentHashMap<>();
+    // Bumped by every append that adds bars, so anything computed from prices knows when to recompute.
+    private final AtomicLong version = new AtomicLong();
+
+    public PriceStore(@Value("${etf.prices.dir:data/prices}") String dir,
+                      @Value("${etf.prices.import-dir:}") String importDir) {
+        this.dir = Paths.get(dir);
+        this.importDir = importDir.isBlank() ? null : Paths.get(importDir);
+    }
+
+    // Everything stored for ticker (case-insensitive); empty when there is nothing.
+    public PriceSeries series(String ticker) {
+        return mapped.computeIfAbsent(normalize(ticker), this::map);
+    }
+
+    // Every ticker with prices, in order.
+    public List<String> tickers() {
+        List<String> tickers = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return tickers;
+        }
+        try (DirectoryStream<Path> tickerDirs = Files.newDirectoryStream(dir)) {
+            for (Path tickerDir : tickerDirs) {
+                String name = tickerDir.getFileName().toString();
+                if (TICKER.matcher(name).matches() && Files.exists(tickerDir.resolve(DATES))) {
+                    tickers.add(name);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list " + dir, e);
+        }
+        tickers.sort(null);
+        return tickers;
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    // Adds the first count bars of the arrays, which must be in increasing date order. Days on or before the
+    // last stored one are skipped, so overlapping downloads can be appended as they are. Returns the number added.
+    public synchronized int append(String ticker, int[] epochDays, double[] closes, double[] adjustedCloses, long[] volumes, int count) {
+        String key = normalize(ticker);
+        for (int i = 1; i < count; i++) {
+            if (epochDays[i] <= epochDays[i - 1]) {
+                throw new IllegalArgumentException("Bars must be in increasing date order, " + LocalDate.ofEpochDay(epochDays[i])
+                        + " follows " + LocalDate.ofEpochDay(epochDays[i - 1]));
+            }
+        }
+        PriceSeries current = series(key);
+        int first = 0;
+        if (!current.isEmpty()) {
+            int last = current.getEpochDay(current.size() - 1);
+            while (first < count && epochDays[first] <= last) {
+                first++;
+            }
+        }
+        int added = count - first;
+        if (added == 0) {
+            return 0;
+        }
+
+        Path tickerDir = dir.resolve(key);
+        int stored = current.size();
+        try {
+            Files.createDirectories(tickerDir);
+            ByteBuffer buffer = ByteBuffer.allocate(added * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.asDoubleBuffer().put(closes, first, added);
+            write(tickerDir.resolve(CLOSES), stored, Double.BYTES, buffer, added);
+            buffer.asDoubleBuffer().put(adjustedCloses, first, added);
+            write(tickerDir.resolve(ADJUSTED_CLOSES), stored, Double.BYTES, buffer, added);
+            buffer.asLongBuffer().put(volumes, first, added);
+            write(tickerDir.resolve(VOLUMES), stored, Long.BYTES, buffer, added);
+            buffer.asIntBuffer().put(epochDays, first, added);
+            write(tickerDir.resolve(DATES), stored, Integer.BYTES, buffer, added);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append prices for " + key, e);
+        }
+        mapped.put(key, map(key));
+        version.incrementAndGet();
+        return added;
+    }
+
+    // Appends the bars of a CSV file with a header row. The columns are found by name: date (yyyy-MM-dd), close,
+    // adj close (or adj_close / adjusted_close; the close when missing) and volume (0 when missing), so both plain
+    // exports and Yahoo-style files with open/high/low work. Rows with a missing or non-numeric price are skipped,
+    // and rows needn't be in order. Returns the number of bars added.
+    public int importCsv(String ticker, Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String header = reader.readLine();
+            if (header == null) {
+                return 0;
+            }
+            String[] names = header.split(",");
+            int dateColumn = -1, closeColumn = -1, adjustedColumn = -1, volumeColumn = -1;
+            for (int i = 0; i < names.length; i++) {
+                switch (names[i].toLowerCase(Locale.ROOT).replaceAll("[^a-z]", "")) {
+                    case "date" -> dateColumn = i;
+                    case "close" -> closeColumn = i;
+                    case "adjclose", "adjustedclose" -> adjustedColumn = i;
+                    case "volume" -> volumeColumn = i;
+                    default -> { }
+                }
+            }
+            if (dateColumn < 0 || closeColumn < 0) {
+                throw new IllegalArgumentException(file.getFileName() + " has no date or close column");
+            }
+
+            int count = 0;
+            int[] epochDays = new int[1024];
+            double[] closes = new double[1024];
+            double[] adjustedCloses = new double[1024];
+            long[] volumes = new long[1024];
+            boolean sorted = true;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.split(",");
+                int day;
+                double close, adjustedClose;
+                long volume;
+                try {
+                    day = (int) LocalDate.parse(values[dateColumn].trim()).toEpochDay();
+                    close = Double.parseDouble(values[closeColumn].trim());
+                    adjustedClose = adjustedColumn < 0 ? close : Double.parseDouble(values[adjustedColumn].trim());
+                    volume = volumeColumn < 0 ? 0 : (long) Double.parseDouble(values[volumeColumn].trim());
+                } catch (ArrayIndexOutOfBoundsException | DateTimeParseException | NumberFormatException e) {
+                    continue;
+                }
+                if (count == epochDays.length) {
+                    epochDays = Arrays.copyOf(epochDays, count * 2);
+                    closes = Arrays.copyOf(closes, count * 2);
+                    adjustedCloses = Arrays.copyOf(adjustedCloses, count * 2);
+                    volumes = Arrays.copyOf(volumes, count * 2);
+                }
+                sorted &= count == 0 || day > epochDays[count - 1];
+                epochDays[count] = day;
+                closes[count] = close;
+                adjustedCloses[count] = adjustedClose;
+                volumes[count] = volume;
+                count++;
+            }
+
+            if (!sorted) {
+                // (day << 32 | row) sorts rows by date, and by position in the file for the same day. The last
+                // row of a day wins.
+                long[] order = new long[count];
+                for (int i = 0; i < count; i++) {
+                    order[i] = ((long) epochDays[i] << 32) | i;
+                }
+                Arrays.sort(order);
+                int[] sortedDays = new int[count];
+                double[] sortedCloses = new double[count];
+                double[] sortedAdjusted = new double[count];
+                long[] sortedVolumes = new long[count];
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    int row = (int) order[i];
+                    if (kept > 0 && sortedDays[kept - 1] == epochDays[row]) {
+                        kept--;
+                    }
+                    sortedDays[kept] = epochDays[row];
+                    sortedCloses[kept] = closes[row];
+                    sortedAdjusted[kept] = adjustedCloses[row];
+                    sortedVolumes[kept] = volumes[row];
+                    kept++;
+                }
+                epochDays = sortedDays;
+                closes = sortedCloses;
+                adjustedCloses = sortedAdjusted;
+                volumes = sortedVolumes;
+                count = kept;
+            }
+            return append(ticker, epochDays, closes, adjustedCloses, volumes, count);
+        }
+    }
+
+    // Imports every *.csv in etf.prices.import-dir, the ticker being the file name (vti.csv is VTI). A file that
+    // fails doesn't stop the others; its error is in the result.
+    public PriceImportResult importAll() {
+        if (importDir == null) {
+            throw new IllegalStateException("etf.prices.import-dir is not set");
+        }
+        int files = 0;
+        long added = 0;
+        Map<String, String> errors = new LinkedHashMap<>();
+        try (DirectoryStream<Path> csvFiles = Files.newDirectoryStream(importDir, "*.csv")) {
+            for (Path file : csvFiles) {
+                String name = file.getFileName().toString();
+                try {
+                    added += importCsv(name.substring(0, name.length() - ".csv".length()), file);
+                    files++;
+                } catch (IOException | RuntimeException e) {
+                    errors.put(name, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list " + importDir, e);
+        }
+        return new PriceImportResult(files, added, errors);
+    }
+
+    private static String normalize(String ticker) {
+        String key = ticker == null ? "" : ticker.trim().toUpperCase(Locale.ROOT);
+        if (!TICKER.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid ticker: " + ticker);
+        }
+        return key;
+    }
+
+    // Writes the first count values of buffer at row stored, cutting off anything a crashed append left there.
+    // Leaves buffer cleared for the next column.
+    private static void write(Path file, int stored, int width, ByteBuffer buffer, int count) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long offset = (long) stored * width;
+            if (channel.size() > offset) {
+                channel.truncate(offset);
+            }
+            buffer.clear().limit(count * width);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, offset + buffer.position());
+            }
+            channel.force(false);
+        }
+        buffer.clear();
+    }
+
+    private PriceSeries map(String key) {
+        Path tickerDir = dir.resolve(key);
+        if (!Files.exists(tickerDir.resolve(DATES))) {
+            return PriceSeries.empty(key);
+        }
+        try {
+            MappedByteBuffer dates = map(tickerDir.resolve(DATES));
+            MappedByteBuffer closes = map(tickerDir.resolve(CLOSES));
+            MappedByteBuffer adjustedCloses = map(tickerDir.resolve(ADJUSTED_CLOSES));
+            MappedByteBuffer volumes = map(tickerDir.resolve(VOLUMES));
+            int size = Math.min(dates.capacity() / Integer.BYTES, Math.min(volumes.capacity() / Long.BYTES,
+                    Math.min(closes.capacity(), adjustedCloses.capacity()) / Double.BYTES));
+            return new PriceSeries(key, dates.asIntBuffer().slice(0, size), closes.asDoubleBuffer().slice(0, size),
+                    adjustedCloses.asDoubleBuffer().slice(0, size), volumes.asLongBuffer().slice(0, size));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map prices for " + key, e);
+        }
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package org.launchcode.etf.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Brings the schema up to date at startup. database/sampleData.sql creates the tables; every change after that
+// is a script in src/main/resources/db/migration named V<version>__<description>.sql, e.g.
+// V1__visibility_and_sort_indexes.sql. Scripts run once, in version order, and each one gets a row in
+// schema_version with a SHA-256 checksum of its contents.
+//
+// Rules for migration scripts:
+//  - Never edit a script after it has been applied anywhere. Startup fails if an applied script's checksum changed;
+//    add a new version instead.
+//  - MySQL commits DDL as it goes, so a script that fails halfway is not rolled back. Keep one change per statement,
+//    and fix the database by hand before restarting.
+//
+// Several servers can start at once, so the migrations run under a named lock (GET_LOCK) and the second server
+// finds the work already done. Set etf.migrations.enabled=false to manage the schema some other way.
+//
+// The migrations must be done before anything reads the schema, so the JdbcTemplate every DAO uses depends on
+// this bean (see DatabaseConfig). That is also why this bean talks to the DataSource through a JdbcTemplate of
+// its own.
+@Component
+public class SchemaMigrations implements InitializingBean {
+    private static final Logger log = LoggerFactory.getLogger(SchemaMigrations.class);
+
+    private static final String LOCATION = "classpath*:db/migration/*.sql";
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+    private static final String LOCK_NAME = "etf_schema_migrations";
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+
+    @Autowired
+    public SchemaMigrations(DataSource dataSource, @Value("${etf.migrations.enabled:true}") boolean enabled) {
+        this(new JdbcTemplate(dataSource), enabled);
+    }
+
+    public SchemaMigrations(JdbcTemplate jdbcTemplate, boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (enabled) {
+            migrate();
+        }
+    }
+
+    // Applies every script that isn't in schema_version yet and returns how many it applied.
+    public int migrate() {
+        List<Migration> migrations = load();
+        // Everything runs on one connection because GET_LOCK belongs to the connection that took it.
+        Integer applied = jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            if (!lock(connection)) {
+                throw new IllegalStateException("Timed out waiting for another server to finish the schema migrations");
+            }
+            try {
+                return migrate(connection, migrations);
+            } finally {
+                try (PreparedStatement release = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+                    release.setString(1, LOCK_NAME);
+                    release.execute();
+                }
+            }
+        });
+        return applied == null ? 0 : applied;
+    }
+
+    private int migrate(Connection connection, List<Migration> migrations) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS schema_version ("
+                    + "version INT PRIMARY KEY, "
+                    + "description VARCHAR(200) NOT NULL, "
+                    + "checksum CHAR(64) NOT NULL, "
+                    + "applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                    + "execution_ms BIGINT NOT NULL)");
+        }
+
+        Map<Integer, String> checksums = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (rs.next()) {
+                checksums.put(rs.getInt("version"), rs.getString("checksum"));
+            }
+        }
+
+        int applied = 0;
+        for (Migration migration : migrations) {
+            String checksum = checksums.get(migration.version);
+            if (checksum != null) {
+                if (!checksum.equals(migration.checksum)) {
+                    throw new IllegalStateException("Migration " + migration.fileName
+                            + " was changed after it was applied; add a new migration instead");
+                }
+                continue;
+            }
+
+            log.info("Applying schema migration {}", migration.fileName);
+            long start = System.nanoTime();
+            ScriptUtils.executeSqlScript(connection, new EncodedResource(migration.resource, StandardCharsets.UTF_8));
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO schema_version (version, description, checksum, execution_ms) VALUES (?, ?, ?, ?)")) {
+                insert.setInt(1, migration.version);
+                insert.setString(2, migration.description);
+                insert.setString(3, migration.checksum);
+                insert.setLong(4, elapsedMs);
+                insert.executeUpdate();
+            }
+            applied++;
+        }
+        if (applied > 0) {
+            log.info("Applied {} schema migration(s)", applied);
+        }
+        return applied;
+    }
+
+    private static boolean lock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            statement.setString(1, LOCK_NAME);
+            statement.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    // The scripts on the classpath, in version order.
+    private static List<Migration> load() {
+        Resource[] resources;
+        try {
+            resources = new PathMatchingResourcePatternResolver().getResources(LOCATION);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not list the schema migrations", e);
+        }
+
+        List<Migration> migrations = new ArrayList<>();
+        for (Resource resource : resources) {
+            Matcher matcher = FILE_NAME.matcher(resource.getFilename());
+            if (!matcher.matches()) {
+                throw new IllegalStateException("Migration " + resource.getFilename() + " is not named V<version>__<description>.sql");
+            }
+            migrations.add(new Migration(Integer.parseInt(matcher.group(1)), matcher.group(2).replace('_', ' '),
+                    resource.getFilename(), resource, checksum(resource)));
+        }
+        migrations.sort(Comparator.comparingInt(migration -> migration.version));
+        // classpath* can find the same script twice (say in target/classes and in a jar); only the contents count.
+        List<Migration> unique = new ArrayList<>();
+        for (Migration migration : migrations) {
+            Migration previous = unique.isEmpty() ? null : unique.get(unique.size() - 1);
+            if (previous == null || previous.version != migration.version) {
+                unique.add(migration);
+            } else if (!previous.checksum.equals(migration.checksum)) {
+                throw new IllegalStateException("Migrations " + previous.fileName + " and " + migration.fileName
+                        + " have the same version");
+            }
+        }
+        return unique;
+    }
+
+    private static String checksum(Resource resource) {
+        try (InputStream in = resource.getInputStream()) {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(in.readAllBytes()));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not read migration " + resource.getFilename(), e);
+        }
+    }
+
+    private static final class Migration {
+        private final int version;
+        private final String description;
+        private final String fileName;
+        private final Resource resource;
+        private final String checksum;
+
+        private Migration(int version, String description, String fileName, Resource resource, String checksum) {
+            this.version = version;
+            this.description = description;
+            this.fileName = fileName;
+            this.resource = resource;
+            this.checksum = checksum;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package org.launchcode.etf.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+// An inverted index from every 3-character substring (trigram) of some text to the slots whose text contains it.
+// A "contains" search looks up the trigrams of the query and intersects their slot lists instead of
+// scanning every row, which is what LIKE '%query%' does in MySQL.
+//
+// For example "SPY" and "S&P 500" give the trigrams "spy", "s&p", "&p ", "p 5", " 50" and "500".
+// Searching "p 50" intersects the lists of "p 5" and " 50".
+//
+// Two things to keep in mind:
+//  - A slot having all the trigrams of the query doesn't mean it contains the query ("abcxbcd" has "abc" and "bcd"
+//    but not "abcd"), so callers still check each candidate.
+//  - Queries shorter than 3 characters have no trigrams, and candidates returns null for them. Callers scan instead.
+//
+// Like the catalog snapshots, an index is never modified; update returns a new one that shares the unchanged lists.
+final class TrigramIndex {
+    static final int MIN_QUERY_LENGTH = 3;
+    // Lists within this factor of each other's length are merged rather than binary searched (see intersect).
+    private static final int MERGE_RATIO = 16;
+
+    // Trigram (packed into a long, see key) -> sorted slot numbers
+    private final Map<Long, int[]> postings;
+
+    private TrigramIndex(Map<Long, int[]> postings) {
+        this.postings = postings;
+    }
+
+    // textsOf returns the searchable fields of a slot, or an empty list for an empty slot.
+    // At 1M rows that is some 40M (trigram, slot) pairs, so it boxes nothing per pair: each slot's trigrams are
+    // collected in a long[] and deduplicated by sorting, and each trigram is numbered through a table of primitives.
+    static TrigramIndex build(int size, IntFunction<List<String>> textsOf) {
+        KeyNumbers numbers = new KeyNumbers();
+        SlotList[] lists = new SlotList[1024];
+        long[] keys = new long[64];
+        for (int slot = 0; slot < size; slot++) {
+            int count = 0;
+            for (String text : textsOf.apply(slot)) {
+                if (text == null) {
+                    continue;
+                }
+                String lower = text.toLowerCase(Locale.ROOT);
+                for (int i = 0; i + MIN_QUERY_LENGTH <= lower.length(); i++) {
+                    if (count == keys.length) {
+                        keys = Arrays.copyOf(keys, count * 2);
+                    }
+                    keys[count++] = key(lower.charAt(i), lower.charAt(i + 1), lower.charAt(i + 2));
+                }
+            }
+            Arrays.sort(keys, 0, count);
+            for (int i = 0; i < count; i++) {
+                if (i > 0 && keys[i] == keys[i - 1]) {
+                    continue;
+                }
+                int number = numbers.numberOf(keys[i]);
+                if (number == lists.length) {
+                    lists = Arrays.copyOf(lists, number * 2);
+                }
+                if (lists[number] == null) {
+                    lists[number] = new SlotList();
+                }
+                // Slots are visited in order, so every list comes out sorted.
+                lists[number].add(slot);
+            }
+        }
+        Map<Long, int[]> postings = new HashMap<>(numbers.size * 2);
+        for (int number = 0; number < numbers.size; number++) {
+            postings.put(numbers.keyOf[number], Arrays.copyOf(lists[number].slots(), lists[number].size()));
+        }
+        return new TrigramIndex(postings);
+    }
+
+    // Moves slot from the lists of oldTexts' trigrams to the lists of newTexts' trigrams.
+    TrigramIndex update(int slot, List<String> oldTexts, List<String> newTexts) {
+        Set<Long> before = keys(oldTexts);
+        Set<Long> after = keys(newTexts);
+        if (before.equals(after)) {
+            return this;
+        }
+        Map<Long, int[]> updated = new HashMap<>(postings);
+        for (long key : before) {
+            if (!after.contains(key)) {
+                int[] list = updated.get(key);
+                int index = Arrays.binarySearch(list, slot);
+                if (list.length == 1) {
+                    updated.remove(key);
+                } else {
+                    int[] shorter = new int[list.length - 1];
+                    System.arraycopy(list, 0, shorter, 0, index);
+                    System.arraycopy(list, index + 1, shorter, index, list.length - index - 1);
+                    updated.put(key, shorter);
+                }
+            }
+        }
+        for (long key : after) {
+            if (!before.contains(key)) {
+                int[] list = updated.getOrDefault(key, new int[0]);
+                int index = -Arrays.binarySearch(list, slot) - 1;
+                int[] longer = new int[list.length + 1];
+                System.arraycopy(list, 0, longer, 0, index);
+                longer[index] = slot;
+                System.arraycopy(list, index, longer, index + 1, list.length - index);
+                updated.put(key, longer);
+            }
+        }
+        return new TrigramIndex(updated);
+    }
+
+    // Sorted slots that have every trigram of query, or null when query is too short to use the index.
+    int[] candidates(String query) {
+        Set<Long> keys = keys(List.of(query));
+        if (keys.isEmpty()) {
+            return null;
+        }
+        List<int[]> lists = new ArrayList<>(keys.size());
+        for (long key : keys) {
+            int[] list = postings.get(key);
+            if (list == null) {
+                return new int[0];
+            }
+            lists.add(list);
+        }
+        // Start from the shortest list so every step looks up as few slots as possible.
+        lists.sort((a, b) -> Integer.compare(a.length, b.length));
+        int[] result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, lists.get(i));
+        }
+        return result;
+    }
+
+    int trigramCount() {
+        return postings.size();
+    }
+
+    // 0 when key equals query, 1 when key starts with it and 2 otherwise (ignoring case).
+    // Sorting by this puts an exact ticker or name match first, then prefix matches, then the rest.
+    static int relevance(String key, String query) {
+        if (key.equalsIgnoreCase(query)) {
+            return 0;
+        }
+        return key.regionMatches(true, 0, query, 0, query.length()) ? 1 : 2;
+    }
+
+    // When small is much shorter than large we binary search large; when they are about as long (common trigrams of
+    // a long word, each held by a good part of the rows) a merge reads both in order and does far less work.
+    private static int[] intersect(int[] small, int[] large) {
+        int[] result = new int[small.length];
+        int count = 0;
+        if (large.length / MERGE_RATIO <= small.length) {
+            for (int i = 0, j = 0; i < small.length && j < large.length; ) {
+                if (small[i] < large[j]) {
+                    i++;
+                } else if (small[i] > large[j]) {
+                    j++;
+                } else {
+                    result[count++] = small[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+        int from = 0;
+        for (int slot : small) {
+            int index = Arrays.binarySearch(large, from, large.length, slot);
+            if (index >= 0) {
+                result[count++] = slot;
+                from = index + 1;
+            } else {
+                from = -index - 1;
+            }
+            if (from == large.length) {
+                break;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    // Lower-cased the same way EtfCatalog and PortfolioSearchIndex match search terms.
+    private static Set<Long> keys(Collection<String> texts) {
+        Set<Long> keys = new HashSet<>();
+        for (String text : texts) {
+            if (text == null) {
+                continue;
+            }
+            String lower = text.toLowerCase(Locale.ROOT);
+            for (int i = 0; i + MIN_QUERY_LENGTH <= lower.length(); i++) {
+                keys.add(key(lower.charAt(i), lower.charAt(i + 1), lower.charAt(i + 2)));
+            }
+        }
+        return keys;
+    }
+
+    // The three characters side by side, times an odd constant. Multiplying by an odd number can't make two keys equal,
+    // but it spreads them over all 64 bits: Long.hashCode of the bare characters put many trigrams in the same
+    // HashMap bucket, which made building the index at 1M rows take seconds longer.
+    private static long key(char first, char second, char third) {
+        return (((long) first << 32) | ((long) second << 16) | third) * 0x9E3779B97F4A7C15L;
+    }
+
+    // Numbers keys 0, 1, 2 ... in the order they are first seen: an open-addressing table of primitives, since
+    // key() already spreads its bits.
+    private static final class KeyNumbers {
+        private long[] keys = new long[1 << 12];
+        private int[] numbers = new int[1 << 12];
+        private boolean[] used = new boolean[1 << 12];
+        private long[] keyOf = new long[1024];
+        private int size;
+
+        private int numberOf(long key) {
+            int mask = keys.length - 1;
+            int index = (int) (key ^ (key >>> 32)) & mask;
+            while (used[index]) {
+                if (keys[index] == key) {
+                    return numbers[index];
+                }
+                index = (index + 1) & mask;
+            }
+            used[index] = true;
+            keys[index] = key;
+            numbers[index] = size;
+            if (size == keyOf.length) {
+                keyOf = Arrays.copyOf(keyOf, size * 2);
+            }
+            keyOf[size] = key;
+            size++;
+            if (size * 2 > keys.length) {
+                grow();
+            }
+            return size - 1;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldNumbers = numbers;
+            boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2];
+            numbers = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i]) {
+                    int index = (int) (oldKeys[i] ^ (oldKeys[i] >>> 32)) & mask;
+                    while (used[index]) {
+                        index = (index + 1) & mask;
+                    }
+                    used[index] = true;
+                    keys[index] = oldKeys[i];
+                    numbers[index] = oldNumbers[i];
+                }
+            }
+        }
+    }
+
+    // A growing list of slots, without boxing them; PrefixIndex.build uses it too.
+    static final class SlotList {
+        private int[] slots = new int[4];
+        private int size;
+
+        void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+
+        int size() {
+            return size;
+        }
+
+        // The backing array; only the first size() are slots.
+        int[] slots() {
+            return slots;
+        }
+    }
+}
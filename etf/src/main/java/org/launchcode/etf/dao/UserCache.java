@@ -0,0 +1,192 @@
+package org.launchcode.etf.dao;
+
+import org.launchcode.etf.dto.CacheStats;
+import org.launchcode.etf.model.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// Every request resolves the logged-in user by username, so UserDao keeps recently used rows here.
+// Entries live for a fixed TTL and the least recently used ones are dropped once maxSize is reached.
+// UserDao invalidates an entry whenever it writes to that user, so the TTL only matters for changes
+// made outside this application (for example a manual UPDATE in MySQL Workbench).
+//
+// Inside a transaction the cache is bypassed. A row read there may be uncommitted and later rolled back,
+// and the cache could still hold the committed version of a row this transaction just changed.
+// Invalidations made inside a transaction are repeated once it ends, so nobody keeps the pre-commit row.
+@Component
+public class UserCache {
+    private final int maxSize;
+    private final long ttlNanos;
+
+    // Access-ordered, so the first entry is always the least recently used one.
+    private final LinkedHashMap<Long, Entry> byId = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> idByUsername = new HashMap<>();
+
+    // Bumped on every invalidation. A loader that started before an invalidation must not
+    // put its (possibly stale) row into the cache afterwards.
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public UserCache(@Value("${etf.cache.users.max-size:10000}") int maxSize,
+                     @Value("${etf.cache.users.ttl-seconds:300}") long ttlSeconds) {
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    public User getById(Long id, Function<Long, User> loader) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            return loader.apply(id);
+        }
+        long startGeneration;
+        synchronized (this) {
+            Entry entry = lookup(id);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return copyOf(entry.user);
+            }
+            startGeneration = generation;
+        }
+        misses.incrementAndGet();
+        return putIfCurrent(loader.apply(id), startGeneration);
+    }
+
+    public User getByUsername(String username, Function<String, User> loader) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            return loader.apply(username);
+        }
+        long startGeneration;
+        synchronized (this) {
+            Long id = idByUsername.get(username);
+            Entry entry = id == null ? null : lookup(id);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return copyOf(entry.user);
+            }
+            startGeneration = generation;
+        }
+        misses.incrementAndGet();
+        return putIfCurrent(loader.apply(username), startGeneration);
+    }
+
+    public void invalidate(Long id) {
+        removeById(id);
+        afterTransaction(() -> removeById(id));
+    }
+
+    // Used when a row is inserted, so a username that was deleted and re-created never resolves to the old id.
+    public void invalidateUsername(String username) {
+        removeByUsername(username);
+        afterTransaction(() -> removeByUsername(username));
+    }
+
+    public synchronized void clear() {
+        generation++;
+        byId.clear();
+        idByUsername.clear();
+    }
+
+    public CacheStats getStats() {
+        int size;
+        synchronized (this) {
+            size = byId.size();
+        }
+        return new CacheStats(hits.get(), misses.get(), evictions.get(), size, maxSize);
+    }
+
+    private synchronized void removeById(Long id) {
+        generation++;
+        Entry entry = byId.remove(id);
+        if (entry != null) {
+            idByUsername.remove(entry.user.getUsername());
+        }
+    }
+
+    private synchronized void removeByUsername(String username) {
+        generation++;
+        Long id = idByUsername.remove(username);
+        if (id != null) {
+            byId.remove(id);
+        }
+    }
+
+    private static void afterTransaction(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    action.run();
+                }
+            });
+        }
+    }
+
+    // Must be called while holding the lock.
+    private Entry lookup(Long id) {
+        Entry entry = byId.get(id);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.loadedAt > ttlNanos) {
+            byId.remove(id);
+            idByUsername.remove(entry.user.getUsername());
+            evictions.incrementAndGet();
+            return null;
+        }
+        return entry;
+    }
+
+    private User putIfCurrent(User loaded, long startGeneration) {
+        if (loaded == null) {
+            return null;
+        }
+        synchronized (this) {
+            if (generation == startGeneration) {
+                Entry previous = byId.put(loaded.getId(), new Entry(copyOf(loaded), System.nanoTime()));
+                if (previous != null && !previous.user.getUsername().equals(loaded.getUsername())) {
+                    idByUsername.remove(previous.user.getUsername());
+                }
+                idByUsername.put(loaded.getUsername(), loaded.getId());
+                evictOverflow();
+            }
+        }
+        return loaded;
+    }
+
+    private void evictOverflow() {
+        Iterator<Entry> eldest = byId.values().iterator();
+        while (byId.size() > maxSize && eldest.hasNext()) {
+            Entry entry = eldest.next();
+            eldest.remove();
+            idByUsername.remove(entry.user.getUsername());
+            evictions.incrementAndGet();
+        }
+    }
+
+    // Controllers clear the password before returning a User, so callers always get their own copy.
+    private static User copyOf(User user) {
+        return new User(user.getId(), user.getUsername(), user.getPassword(), user.getRole(), user.getCredentialVersion());
+    }
+
+    private static final class Entry {
+        private final User user;
+        private final long loadedAt;
+
+        private Entry(User user, long loadedAt) {
+            this.user = user;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
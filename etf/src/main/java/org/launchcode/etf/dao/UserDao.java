@@ -1,25 +1,36 @@
 package org.launchcode.etf.dao;
 
+import org.launchcode.etf.dto.KeysetPage;
 import org.launchcode.etf.model.User;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 @Repository
 public class UserDao {
     private final JdbcTemplate jdbcTemplate;
+    private final UserCache userCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PortfolioStatsDao portfolioStatsDao;
 
     // You can also create using DataSource. 
     // public UserDao(DataSource dataSource){this.jdbcTemplate = new JdbcTemplate(dataSource);}
-    public UserDao(JdbcTemplate jdbcTemplate) {
+    public UserDao(JdbcTemplate jdbcTemplate, UserCache userCache, ApplicationEventPublisher eventPublisher,
+                   PortfolioStatsDao portfolioStatsDao) {
         this.jdbcTemplate = jdbcTemplate;
+        this.userCache = userCache;
+        this.eventPublisher = eventPublisher;
+        this.portfolioStatsDao = portfolioStatsDao;
     }
 
     private final RowMapper<User> userRowMapper = new RowMapper<User>() {
@@ -29,7 +40,8 @@ public class UserDao {
                 rs.getLong("id"),
                 rs.getString("username"),
                 rs.getString("password"),
-                rs.getString("role")
+                rs.getString("role"),
+                rs.getInt("credential_version")
             );
         }
     };
@@ -45,7 +57,12 @@ public class UserDao {
         return findByUsername(username);
     }
 
+    // findByUsername and findById go through UserCache, because every authenticated request looks the user up.
     public User findByUsername(String username) {
+        return userCache.getByUsername(username, this::queryByUsername);
+    }
+
+    private User queryByUsername(String username) {
         String sql = "SELECT * FROM users WHERE username = ?";
         List<User> users = jdbcTemplate.query(sql, userRowMapper, username);
         return users.isEmpty() ? null : users.get(0);
@@ -61,6 +78,10 @@ public class UserDao {
     }
 
     public User findById(Long id) {
+        return userCache.getById(id, this::queryById);
+    }
+
+    private User queryById(Long id) {
         String sql = "SELECT * FROM users WHERE id = ?";
         List<User> users = jdbcTemplate.query(sql, userRowMapper, id);
         return users.isEmpty() ? null : users.get(0);
@@ -82,6 +103,7 @@ public class UserDao {
         }, keyHolder);
         
         user.setId(keyHolder.getKey().longValue());
+        userCache.invalidateUsername(user.getUsername());
         return user;
     }
 
@@ -104,20 +126,42 @@ public class UserDao {
     }
 
 
+    // MySQL evaluates SET assignments from left to right, so credential_version is compared against the old values.
+    // A changed username or role invalidates every token issued before this update.
+    // The BINARY casts keep the comparison case-sensitive, since "admin" and "ADMIN" are different roles.
     public User update(User user) {
-        String sql = "UPDATE users SET username = ?, role = ? WHERE id = ?";
-        jdbcTemplate.update(sql, user.getUsername(), user.getRole(), user.getId());
+        String sql = "UPDATE users SET credential_version = credential_version + (CAST(username AS BINARY) <> ? OR CAST(role AS BINARY) <> ?), username = ?, role = ? WHERE id = ?";
+        jdbcTemplate.update(sql, user.getUsername(), user.getRole(), user.getUsername(), user.getRole(), user.getId());
+        userCache.invalidate(user.getId());
         return user;
     }
 
+    // A new password also invalidates every token issued before it.
     public void updatePassword(Long userId, String newPasswordHash) {
-        String sql = "UPDATE users SET password = ? WHERE id = ?";
+        String sql = "UPDATE users SET password = ?, credential_version = credential_version + 1 WHERE id = ?";
         jdbcTemplate.update(sql, newPasswordHash, userId);
+        userCache.invalidate(userId);
     }
 
+    // Replaces a hash with the same password at a different BCrypt cost, so credential_version stays the same.
+    // The old hash is part of the WHERE clause so a password change that happened in the meantime is never overwritten.
+    public boolean rehashPassword(Long userId, String oldPasswordHash, String newPasswordHash) {
+        String sql = "UPDATE users SET password = ? WHERE id = ? AND password = ?";
+        int updated = jdbcTemplate.update(sql, newPasswordHash, userId, oldPasswordHash);
+        userCache.invalidate(userId);
+        return updated > 0;
+    }
+
+    // The user's ETFs may be in other users' portfolios, whose stats have to lose them first.
+    @Transactional
     public void deleteById(Long userId) {
+        portfolioStatsDao.ownerRemoving(userId);
         String sql = "DELETE FROM users WHERE id = ?";
         jdbcTemplate.update(sql, userId);
+        userCache.invalidate(userId);
+        // ON DELETE CASCADE removed the user's ETFs and portfolios too.
+        eventPublisher.publishEvent(EtfChangedEvent.forOwner(userId));
+        eventPublisher.publishEvent(PortfolioChangedEvent.forOwner(userId));
     }
 
     public boolean usernameExists(String username, Long excludeUserId) {
@@ -125,4 +169,42 @@ public class UserDao {
         Integer count = jdbcTemplate.queryForObject(sql, Integer.class, username, excludeUserId);
         return count != null && count > 0;
     }
+
+    // Paginated version of findAll/search (see Keyset). The role sort keeps username as its second key,
+    // like search does. username is unique, so it needs no id after it. With one, MySQL couldn't walk the
+    // unique username index (it doesn't carry id the way a plain index does) and would sort the whole table.
+    public KeysetPage<User> findPage(String search, String sortBy, String sortDirection, String cursor, int limit) {
+        boolean descending = "desc".equalsIgnoreCase(sortDirection);
+        Keyset keyset;
+        if ("role".equals(sortBy)) {
+            keyset = new Keyset("role", descending, "role", "username", "id");
+        } else if ("id".equals(sortBy)) {
+            keyset = new Keyset("id", descending, "id");
+        } else {
+            keyset = new Keyset("username", descending, "username");
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT * FROM users WHERE TRUE");
+        List<Object> params = new ArrayList<>();
+        if (search != null && !search.trim().isEmpty()) {
+            sql.append(" AND username LIKE ?");
+            params.add("%" + search + "%");
+        }
+        if (cursor != null) {
+            sql.append(" AND ").append(keyset.seekPredicate());
+            params.addAll(List.of(keyset.decode(cursor)));
+        }
+        sql.append(keyset.orderBy()).append(" LIMIT ?");
+        params.add(limit + 1);
+
+        List<User> rows = jdbcTemplate.query(sql.toString(), userRowMapper, params.toArray());
+        return keyset.page(rows, limit, user -> {
+            if ("role".equals(sortBy)) {
+                return new Object[]{user.getRole(), user.getUsername(), user.getId()};
+            } else if ("id".equals(sortBy)) {
+                return new Object[]{user.getId()};
+            }
+            return new Object[]{user.getUsername()};
+        });
+    }
 }
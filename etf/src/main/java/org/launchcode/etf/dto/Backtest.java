@@ -0,0 +1,42 @@
+package org.launchcode.etf.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Result of backtesting a portfolio: from and to are the first and last days actually simulated, which are the
+// days every ticker in tickers has prices for. Holdings without prices in the range are in excludedTickers, and
+// the weights of the others are scaled up to make up for them. dates is null in batch results.
+public class Backtest {
+    private final Long portfolioId;
+    private final LocalDate from;
+    private final LocalDate to;
+    private final List<String> tickers;
+    private final List<String> excludedTickers;
+    private final List<LocalDate> dates;
+    private final List<BacktestVariant> variants;
+
+    public Backtest(Long portfolioId, LocalDate from, LocalDate to, List<String> tickers, List<String> excludedTickers,
+                    List<LocalDate> dates, List<BacktestVariant> variants) {
+        this.portfolioId = portfolioId;
+        this.from = from;
+        this.to = to;
+        this.tickers = tickers;
+        this.excludedTickers = excludedTickers;
+        this.dates = dates;
+        this.variants = variants;
+    }
+
+    public Long getPortfolioId() { return portfolioId; }
+
+    public LocalDate getFrom() { return from; }
+
+    public LocalDate getTo() { return to; }
+
+    public List<String> getTickers() { return tickers; }
+
+    public List<String> getExcludedTickers() { return excludedTickers; }
+
+    public List<LocalDate> getDates() { return dates; }
+
+    public List<BacktestVariant> getVariants() { return variants; }
+}
@@ -0,0 +1,32 @@
+package org.launchcode.etf.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+// The last run over every public portfolio (GET /api/admin/backtests/latest). skipped counts the portfolios
+// that had no ETFs or no prices in common; results has one Backtest per other portfolio, without the curves.
+public class BacktestBatch {
+    private final Instant startedAt;
+    private final long durationMs;
+    private final int portfolios;
+    private final int skipped;
+    private final List<Backtest> results;
+
+    public BacktestBatch(Instant startedAt, long durationMs, int portfolios, int skipped, List<Backtest> results) {
+        this.startedAt = startedAt;
+        this.durationMs = durationMs;
+        this.portfolios = portfolios;
+        this.skipped = skipped;
+        this.results = results;
+    }
+
+    public Instant getStartedAt() { return startedAt; }
+
+    public long getDurationMs() { return durationMs; }
+
+    public int getPortfolios() { return portfolios; }
+
+    public int getSkipped() { return skipped; }
+
+    public List<Backtest> getResults() { return results; }
+}
@@ -0,0 +1,35 @@
+package org.launchcode.etf.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Body of POST /api/portfolios/{id}/backtest, every field optional:
+// {"from": "2010-01-01", "to": "2024-12-31", "rebalance": ["NONE", "QUARTERLY"], "initialValue": 10000}.
+// from and to default to all the history the holdings share, rebalance to every strategy and initialValue to 10000.
+public class BacktestRequest {
+    private LocalDate from;
+    private LocalDate to;
+    private List<Rebalance> rebalance;
+    private Double initialValue;
+
+    public BacktestRequest() {}
+
+    public BacktestRequest(LocalDate from, LocalDate to, List<Rebalance> rebalance, Double initialValue) {
+        this.from = from;
+        this.to = to;
+        this.rebalance = rebalance;
+        this.initialValue = initialValue;
+    }
+
+    public LocalDate getFrom() { return from; }
+    public void setFrom(LocalDate from) { this.from = from; }
+
+    public LocalDate getTo() { return to; }
+    public void setTo(LocalDate to) { this.to = to; }
+
+    public List<Rebalance> getRebalance() { return rebalance; }
+    public void setRebalance(List<Rebalance> rebalance) { this.rebalance = rebalance; }
+
+    public Double getInitialValue() { return initialValue; }
+    public void setInitialValue(Double initialValue) { this.initialValue = initialValue; }
+}
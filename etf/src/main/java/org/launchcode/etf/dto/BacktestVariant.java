@@ -0,0 +1,33 @@
+package org.launchcode.etf.dto;
+
+// One strategy of a backtest. cagr, maxDrawdown and turnover are fractions (0.07 is 7%); turnover is the share of
+// the portfolio traded over the whole run. equity is the value at every date of the backtest, null in batch results.
+public class BacktestVariant {
+    private final Rebalance rebalance;
+    private final double finalValue;
+    private final double cagr;
+    private final double maxDrawdown;
+    private final double turnover;
+    private final double[] equity;
+
+    public BacktestVariant(Rebalance rebalance, double finalValue, double cagr, double maxDrawdown, double turnover, double[] equity) {
+        this.rebalance = rebalance;
+        this.finalValue = finalValue;
+        this.cagr = cagr;
+        this.maxDrawdown = maxDrawdown;
+        this.turnover = turnover;
+        this.equity = equity;
+    }
+
+    public Rebalance getRebalance() { return rebalance; }
+
+    public double getFinalValue() { return finalValue; }
+
+    public double getCagr() { return cagr; }
+
+    public double getMaxDrawdown() { return maxDrawdown; }
+
+    public double getTurnover() { return turnover; }
+
+    public double[] getEquity() { return equity; }
+}
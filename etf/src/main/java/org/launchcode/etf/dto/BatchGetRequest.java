@@ -0,0 +1,19 @@
+package org.launchcode.etf.dto;
+
+import java.util.List;
+
+// Body of POST /api/etfs/batch-get and /api/portfolios/batch-get: {"ids": [1, 2, 3]}.
+public class BatchGetRequest {
+    public static final int MAX_IDS = 100;
+
+    private List<Long> ids;
+
+    public BatchGetRequest() {}
+
+    public BatchGetRequest(List<Long> ids) {
+        this.ids = ids;
+    }
+
+    public List<Long> getIds() { return ids; }
+    public void setIds(List<Long> ids) { this.ids = ids; }
+}
@@ -0,0 +1,24 @@
+package org.launchcode.etf.dto;
+
+import java.util.List;
+
+// Answer to a batch-get. Every requested id ends up in exactly one of the three lists:
+// items holds the rows the caller may see (in the order they were asked for), forbiddenIds the ones that
+// exist but belong to someone else and aren't public, notFoundIds the ones that don't exist.
+public class BatchGetResponse<T> {
+    private final List<T> items;
+    private final List<Long> forbiddenIds;
+    private final List<Long> notFoundIds;
+
+    public BatchGetResponse(List<T> items, List<Long> forbiddenIds, List<Long> notFoundIds) {
+        this.items = items;
+        this.forbiddenIds = forbiddenIds;
+        this.notFoundIds = notFoundIds;
+    }
+
+    public List<T> getItems() { return items; }
+
+    public List<Long> getForbiddenIds() { return forbiddenIds; }
+
+    public List<Long> getNotFoundIds() { return notFoundIds; }
+}
@@ -0,0 +1,44 @@
+package org.launchcode.etf.dto;
+
+public class CatalogStats {
+    private final int size;
+    private final int publicCount;
+    private final int owners;
+    private final int tombstones;
+    private final int trigrams;
+    private final long version;
+    private final long changesApplied;
+    private final long rebuilds;
+    private final double lastRebuildMs;
+
+    public CatalogStats(int size, int publicCount, int owners, int tombstones, int trigrams, long version,
+                        long changesApplied, long rebuilds, double lastRebuildMs) {
+        this.size = size;
+        this.publicCount = publicCount;
+        this.owners = owners;
+        this.tombstones = tombstones;
+        this.trigrams = trigrams;
+        this.version = version;
+        this.changesApplied = changesApplied;
+        this.rebuilds = rebuilds;
+        this.lastRebuildMs = lastRebuildMs;
+    }
+
+    public int getSize() { return size; }
+
+    public int getPublicCount() { return publicCount; }
+
+    public int getOwners() { return owners; }
+
+    public int getTombstones() { return tombstones; }
+
+    public int getTrigrams() { return trigrams; }
+
+    public long getVersion() { return version; }
+
+    public long getChangesApplied() { return changesApplied; }
+
+    public long getRebuilds() { return rebuilds; }
+
+    public double getLastRebuildMs() { return lastRebuildMs; }
+}
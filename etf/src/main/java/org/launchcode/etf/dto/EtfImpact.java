@@ -0,0 +1,13 @@
+package org.launchcode.etf.dto;
+
+// What deleting an ETF would touch, from GET /api/etfs/{id}/impact: the number of portfolios holding it,
+// whoever owns them. Deleting the ETF removes it from all of them.
+public class EtfImpact {
+    private final int portfolioCount;
+
+    public EtfImpact(int portfolioCount) {
+        this.portfolioCount = portfolioCount;
+    }
+
+    public int getPortfolioCount() { return portfolioCount; }
+}
@@ -0,0 +1,22 @@
+package org.launchcode.etf.dto;
+
+// One row of GET /api/etfs/suggest. Just enough to show in a typeahead list and to add the ETF by id.
+public class EtfSuggestion {
+    public static final int MAX_LIMIT = 50;
+
+    private final Long id;
+    private final String ticker;
+    private final String description;
+
+    public EtfSuggestion(Long id, String ticker, String description) {
+        this.id = id;
+        this.ticker = ticker;
+        this.description = description;
+    }
+
+    public Long getId() { return id; }
+
+    public String getTicker() { return ticker; }
+
+    public String getDescription() { return description; }
+}
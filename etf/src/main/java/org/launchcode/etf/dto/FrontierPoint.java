@@ -0,0 +1,23 @@
+package org.launchcode.etf.dto;
+
+import java.util.Map;
+
+// One portfolio on (or, for PortfolioFrontier.current, off) the efficient frontier. Annualized fractions; weights
+// sum to 1 by ticker, leaving out tickers it holds none of.
+public class FrontierPoint {
+    private final double expectedReturn;
+    private final double volatility;
+    private final Map<String, Double> weights;
+
+    public FrontierPoint(double expectedReturn, double volatility, Map<String, Double> weights) {
+        this.expectedReturn = expectedReturn;
+        this.volatility = volatility;
+        this.weights = weights;
+    }
+
+    public double getExpectedReturn() { return expectedReturn; }
+
+    public double getVolatility() { return volatility; }
+
+    public Map<String, Double> getWeights() { return weights; }
+}
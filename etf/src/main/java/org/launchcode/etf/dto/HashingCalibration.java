@@ -0,0 +1,25 @@
+package org.launchcode.etf.dto;
+
+import java.util.Map;
+
+public class HashingCalibration {
+    private final int cost;
+    private final long targetMs;
+    private final boolean fixed;
+    private final Map<Integer, Double> medianMsByCost;
+
+    public HashingCalibration(int cost, long targetMs, boolean fixed, Map<Integer, Double> medianMsByCost) {
+        this.cost = cost;
+        this.targetMs = targetMs;
+        this.fixed = fixed;
+        this.medianMsByCost = medianMsByCost;
+    }
+
+    public int getCost() { return cost; }
+
+    public long getTargetMs() { return targetMs; }
+
+    public boolean isFixed() { return fixed; }
+
+    public Map<Integer, Double> getMedianMsByCost() { return medianMsByCost; }
+}
@@ -0,0 +1,52 @@
+package org.launchcode.etf.dto;
+
+public class HashingStats {
+    private final int threads;
+    private final int active;
+    private final int queueDepth;
+    private final int queueCapacity;
+    private final long submitted;
+    private final long completed;
+    private final long rejected;
+    private final long timedOut;
+    private final double avgQueueWaitMs;
+    private final double avgHashMs;
+    private final double maxLatencyMs;
+
+    public HashingStats(int threads, int active, int queueDepth, int queueCapacity, long submitted, long completed,
+                        long rejected, long timedOut, double avgQueueWaitMs, double avgHashMs, double maxLatencyMs) {
+        this.threads = threads;
+        this.active = active;
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.submitted = submitted;
+        this.completed = completed;
+        this.rejected = rejected;
+        this.timedOut = timedOut;
+        this.avgQueueWaitMs = avgQueueWaitMs;
+        this.avgHashMs = avgHashMs;
+        this.maxLatencyMs = maxLatencyMs;
+    }
+
+    public int getThreads() { return threads; }
+
+    public int getActive() { return active; }
+
+    public int getQueueDepth() { return queueDepth; }
+
+    public int getQueueCapacity() { return queueCapacity; }
+
+    public long getSubmitted() { return submitted; }
+
+    public long getCompleted() { return completed; }
+
+    public long getRejected() { return rejected; }
+
+    public long getTimedOut() { return timedOut; }
+
+    public double getAvgQueueWaitMs() { return avgQueueWaitMs; }
+
+    public double getAvgHashMs() { return avgHashMs; }
+
+    public double getMaxLatencyMs() { return maxLatencyMs; }
+}
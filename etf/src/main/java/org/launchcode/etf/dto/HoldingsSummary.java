@@ -0,0 +1,35 @@
+package org.launchcode.etf.dto;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+// What a portfolio card shows about the ETFs in a portfolio, from GET /api/portfolios?include=summary.
+// The expense ratios are null for an empty portfolio. assetClassCounts is in asset class order.
+public class HoldingsSummary {
+    public static final HoldingsSummary EMPTY = new HoldingsSummary(0, null, null, null, Map.of());
+
+    private final int etfCount;
+    private final BigDecimal averageExpenseRatio;
+    private final BigDecimal minExpenseRatio;
+    private final BigDecimal maxExpenseRatio;
+    private final Map<String, Integer> assetClassCounts;
+
+    public HoldingsSummary(int etfCount, BigDecimal averageExpenseRatio, BigDecimal minExpenseRatio,
+                           BigDecimal maxExpenseRatio, Map<String, Integer> assetClassCounts) {
+        this.etfCount = etfCount;
+        this.averageExpenseRatio = averageExpenseRatio;
+        this.minExpenseRatio = minExpenseRatio;
+        this.maxExpenseRatio = maxExpenseRatio;
+        this.assetClassCounts = assetClassCounts;
+    }
+
+    public int getEtfCount() { return etfCount; }
+
+    public BigDecimal getAverageExpenseRatio() { return averageExpenseRatio; }
+
+    public BigDecimal getMinExpenseRatio() { return minExpenseRatio; }
+
+    public BigDecimal getMaxExpenseRatio() { return maxExpenseRatio; }
+
+    public Map<String, Integer> getAssetClassCounts() { return assetClassCounts; }
+}
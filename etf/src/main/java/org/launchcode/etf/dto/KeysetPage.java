@@ -0,0 +1,23 @@
+package org.launchcode.etf.dto;
+
+import java.util.List;
+
+// One page of a keyset-paginated list. nextCursor is null on the last page.
+// Controllers return the items as the body and the cursor in the X-Next-Cursor header,
+// so a paginated response has the same JSON shape as the unpaginated one.
+public class KeysetPage<T> {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final int MAX_LIMIT = 500;
+
+    private final List<T> items;
+    private final String nextCursor;
+
+    public KeysetPage(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() { return items; }
+
+    public String getNextCursor() { return nextCursor; }
+}
@@ -0,0 +1,31 @@
+package org.launchcode.etf.dto;
+
+import org.launchcode.etf.model.Etf;
+import org.launchcode.etf.model.Portfolio;
+
+import java.util.List;
+
+// Everything the portfolio page needs in one response: the portfolio, the ETFs in it, and one page of the ETFs
+// that could be added to it. addableEtfs is only filled in for someone who may change the portfolio;
+// addableNextCursor fetches the next page of them (null on the last page).
+public class PortfolioDetail {
+    private final Portfolio portfolio;
+    private final List<Etf> etfs;
+    private final List<Etf> addableEtfs;
+    private final String addableNextCursor;
+
+    public PortfolioDetail(Portfolio portfolio, List<Etf> etfs, List<Etf> addableEtfs, String addableNextCursor) {
+        this.portfolio = portfolio;
+        this.etfs = etfs;
+        this.addableEtfs = addableEtfs;
+        this.addableNextCursor = addableNextCursor;
+    }
+
+    public Portfolio getPortfolio() { return portfolio; }
+
+    public List<Etf> getEtfs() { return etfs; }
+
+    public List<Etf> getAddableEtfs() { return addableEtfs; }
+
+    public String getAddableNextCursor() { return addableNextCursor; }
+}
@@ -0,0 +1,24 @@
+package org.launchcode.etf.dto;
+
+import java.util.List;
+
+// Body of POST /api/portfolios/{id}/etfs:batch: {"add": [1, 2], "remove": [3]}. Either list may be left out.
+public class PortfolioEtfBatchRequest {
+    public static final int MAX_ETFS = 100;
+
+    private List<Long> add;
+    private List<Long> remove;
+
+    public PortfolioEtfBatchRequest() {}
+
+    public PortfolioEtfBatchRequest(List<Long> add, List<Long> remove) {
+        this.add = add;
+        this.remove = remove;
+    }
+
+    public List<Long> getAdd() { return add; }
+    public void setAdd(List<Long> add) { this.add = add; }
+
+    public List<Long> getRemove() { return remove; }
+    public void setRemove(List<Long> remove) { this.remove = remove; }
+}
@@ -0,0 +1,33 @@
+package org.launchcode.etf.dto;
+
+import java.util.List;
+
+// What happened to each ETF id of a PortfolioEtfBatchRequest, in the order they were given.
+// An added id ends up in added, alreadyPresentIds or notFoundIds (no such ETF); a removed id in removed
+// or notPresentIds, which like the single DELETE is not an error.
+public class PortfolioEtfBatchResponse {
+    private final List<Long> added;
+    private final List<Long> alreadyPresentIds;
+    private final List<Long> notFoundIds;
+    private final List<Long> removed;
+    private final List<Long> notPresentIds;
+
+    public PortfolioEtfBatchResponse(List<Long> added, List<Long> alreadyPresentIds, List<Long> notFoundIds,
+                                     List<Long> removed, List<Long> notPresentIds) {
+        this.added = added;
+        this.alreadyPresentIds = alreadyPresentIds;
+        this.notFoundIds = notFoundIds;
+        this.removed = removed;
+        this.notPresentIds = notPresentIds;
+    }
+
+    public List<Long> getAdded() { return added; }
+
+    public List<Long> getAlreadyPresentIds() { return alreadyPresentIds; }
+
+    public List<Long> getNotFoundIds() { return notFoundIds; }
+
+    public List<Long> getRemoved() { return removed; }
+
+    public List<Long> getNotPresentIds() { return notPresentIds; }
+}
@@ -0,0 +1,47 @@
+package org.launchcode.etf.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// GET /api/portfolios/{id}/frontier. The efficient frontier of the portfolio's ETFs (tickers) when no ETF may be
+// more than maxWeight of it and none is held short: points run from the least volatile portfolio up to the highest
+// expected return, evenly spaced by return. Estimated from observations daily returns up to asOf. current is where
+// the portfolio's own weights stand. Holdings with too little price history are in excludedTickers and left out.
+public class PortfolioFrontier {
+    private final Long portfolioId;
+    private final LocalDate asOf;
+    private final int observations;
+    private final List<String> tickers;
+    private final List<String> excludedTickers;
+    private final double maxWeight;
+    private final FrontierPoint current;
+    private final List<FrontierPoint> points;
+
+    public PortfolioFrontier(Long portfolioId, LocalDate asOf, int observations, List<String> tickers,
+                             List<String> excludedTickers, double maxWeight, FrontierPoint current, List<FrontierPoint> points) {
+        this.portfolioId = portfolioId;
+        this.asOf = asOf;
+        this.observations = observations;
+        this.tickers = tickers;
+        this.excludedTickers = excludedTickers;
+        this.maxWeight = maxWeight;
+        this.current = current;
+        this.points = points;
+    }
+
+    public Long getPortfolioId() { return portfolioId; }
+
+    public LocalDate getAsOf() { return asOf; }
+
+    public int getObservations() { return observations; }
+
+    public List<String> getTickers() { return tickers; }
+
+    public List<String> getExcludedTickers() { return excludedTickers; }
+
+    public double getMaxWeight() { return maxWeight; }
+
+    public FrontierPoint getCurrent() { return current; }
+
+    public List<FrontierPoint> getPoints() { return points; }
+}
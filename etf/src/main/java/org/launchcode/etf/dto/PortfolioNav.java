@@ -0,0 +1,27 @@
+package org.launchcode.etf.dto;
+
+import java.time.Instant;
+
+// A portfolio's live NAV: what 100 put into it at the reference prices (the last closes) is worth at the latest
+// quotes. change is the same as a fraction, 0.01 for 1% up.
+public class PortfolioNav {
+    private final Long portfolioId;
+    private final double nav;
+    private final double change;
+    private final Instant asOf;
+
+    public PortfolioNav(Long portfolioId, double nav, double change, Instant asOf) {
+        this.portfolioId = portfolioId;
+        this.nav = nav;
+        this.change = change;
+        this.asOf = asOf;
+    }
+
+    public Long getPortfolioId() { return portfolioId; }
+
+    public double getNav() { return nav; }
+
+    public double getChange() { return change; }
+
+    public Instant getAsOf() { return asOf; }
+}
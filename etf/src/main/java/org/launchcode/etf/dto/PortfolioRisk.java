@@ -0,0 +1,68 @@
+package org.launchcode.etf.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// GET /api/portfolios/{id}/risk. Figures are fractions of the portfolio's value, estimated from observations daily
+// returns up to asOf. valueAtRisk95 is the loss over horizonDays that 95% of the simulated paths stay within (a
+// negative value is a gain). beta is null without a benchmark. Holdings with too little price history are in
+// excludedTickers and the others' weights are scaled up to make up for them. The same seed gives the same VaR.
+public class PortfolioRisk {
+    private final Long portfolioId;
+    private final LocalDate asOf;
+    private final int observations;
+    private final List<String> tickers;
+    private final List<String> excludedTickers;
+    private final double annualizedVolatility;
+    private final String benchmarkTicker;
+    private final Double beta;
+    private final int horizonDays;
+    private final int paths;
+    private final long seed;
+    private final double valueAtRisk95;
+    private final double valueAtRisk99;
+
+    public PortfolioRisk(Long portfolioId, LocalDate asOf, int observations, List<String> tickers, List<String> excludedTickers,
+                         double annualizedVolatility, String benchmarkTicker, Double beta, int horizonDays, int paths, long seed,
+                         double valueAtRisk95, double valueAtRisk99) {
+        this.portfolioId = portfolioId;
+        this.asOf = asOf;
+        this.observations = observations;
+        this.tickers = tickers;
+        this.excludedTickers = excludedTickers;
+        this.annualizedVolatility = annualizedVolatility;
+        this.benchmarkTicker = benchmarkTicker;
+        this.beta = beta;
+        this.horizonDays = horizonDays;
+        this.paths = paths;
+        this.seed = seed;
+        this.valueAtRisk95 = valueAtRisk95;
+        this.valueAtRisk99 = valueAtRisk99;
+    }
+
+    public Long getPortfolioId() { return portfolioId; }
+
+    public LocalDate getAsOf() { return asOf; }
+
+    public int getObservations() { return observations; }
+
+    public List<String> getTickers() { return tickers; }
+
+    public List<String> getExcludedTickers() { return excludedTickers; }
+
+    public double getAnnualizedVolatility() { return annualizedVolatility; }
+
+    public String getBenchmarkTicker() { return benchmarkTicker; }
+
+    public Double getBeta() { return beta; }
+
+    public int getHorizonDays() { return horizonDays; }
+
+    public int getPaths() { return paths; }
+
+    public long getSeed() { return seed; }
+
+    public double getValueAtRisk95() { return valueAtRisk95; }
+
+    public double getValueAtRisk99() { return valueAtRisk99; }
+}
@@ -0,0 +1,32 @@
+package org.launchcode.etf.dto;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+// Analytics of one portfolio, from GET /api/portfolios/{id}/stats. Holdings count by their weight:
+// weightedExpenseRatio is the weight-averaged expense ratio, and allocation is the share of the total weight
+// in each asset class (adding up to 1, in asset class order). Both are null/empty for an empty portfolio.
+public class PortfolioStats {
+    public static final PortfolioStats EMPTY = new PortfolioStats(0, BigDecimal.ZERO, null, Map.of());
+
+    private final int holdingCount;
+    private final BigDecimal totalWeight;
+    private final BigDecimal weightedExpenseRatio;
+    private final Map<String, BigDecimal> allocation;
+
+    public PortfolioStats(int holdingCount, BigDecimal totalWeight, BigDecimal weightedExpenseRatio,
+                          Map<String, BigDecimal> allocation) {
+        this.holdingCount = holdingCount;
+        this.totalWeight = totalWeight;
+        this.weightedExpenseRatio = weightedExpenseRatio;
+        this.allocation = allocation;
+    }
+
+    public int getHoldingCount() { return holdingCount; }
+
+    public BigDecimal getTotalWeight() { return totalWeight; }
+
+    public BigDecimal getWeightedExpenseRatio() { return weightedExpenseRatio; }
+
+    public Map<String, BigDecimal> getAllocation() { return allocation; }
+}
@@ -0,0 +1,32 @@
+package org.launchcode.etf.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// GET /api/etfs/{id}/prices: the daily bars of the ETF's ticker as columns, oldest first. The arrays are parallel
+// to dates, which keeps decades of bars far smaller than a list of objects would be.
+public class PriceHistory {
+    private final String ticker;
+    private final List<LocalDate> dates;
+    private final double[] close;
+    private final double[] adjustedClose;
+    private final long[] volume;
+
+    public PriceHistory(String ticker, List<LocalDate> dates, double[] close, double[] adjustedClose, long[] volume) {
+        this.ticker = ticker;
+        this.dates = dates;
+        this.close = close;
+        this.adjustedClose = adjustedClose;
+        this.volume = volume;
+    }
+
+    public String getTicker() { return ticker; }
+
+    public List<LocalDate> getDates() { return dates; }
+
+    public double[] getClose() { return close; }
+
+    public double[] getAdjustedClose() { return adjustedClose; }
+
+    public long[] getVolume() { return volume; }
+}
@@ -0,0 +1,23 @@
+package org.launchcode.etf.dto;
+
+import java.util.Map;
+
+// What POST /api/admin/prices/import did: the CSV files imported, the bars they added, and the error of each file
+// that failed, by file name.
+public class PriceImportResult {
+    private final int files;
+    private final long barsAdded;
+    private final Map<String, String> errors;
+
+    public PriceImportResult(int files, long barsAdded, Map<String, String> errors) {
+        this.files = files;
+        this.barsAdded = barsAdded;
+        this.errors = errors;
+    }
+
+    public int getFiles() { return files; }
+
+    public long getBarsAdded() { return barsAdded; }
+
+    public Map<String, String> getErrors() { return errors; }
+}
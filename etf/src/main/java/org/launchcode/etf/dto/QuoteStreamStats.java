@@ -0,0 +1,48 @@
+package org.launchcode.etf.dto;
+
+public class QuoteStreamStats {
+    private final String source;
+    private final boolean running;
+    private final long quotes;
+    private final long rejected;
+    private final int portfolios;
+    private final int holdings;
+    private final long rebuilds;
+    private final long changesApplied;
+    private final int subscribers;
+    private final long events;
+
+    public QuoteStreamStats(String source, boolean running, long quotes, long rejected, int portfolios, int holdings,
+                            long rebuilds, long changesApplied, int subscribers, long events) {
+        this.source = source;
+        this.running = running;
+        this.quotes = quotes;
+        this.rejected = rejected;
+        this.portfolios = portfolios;
+        this.holdings = holdings;
+        this.rebuilds = rebuilds;
+        this.changesApplied = changesApplied;
+        this.subscribers = subscribers;
+        this.events = events;
+    }
+
+    public String getSource() { return source; }
+
+    public boolean isRunning() { return running; }
+
+    public long getQuotes() { return quotes; }
+
+    public long getRejected() { return rejected; }
+
+    public int getPortfolios() { return portfolios; }
+
+    public int getHoldings() { return holdings; }
+
+    public long getRebuilds() { return rebuilds; }
+
+    public long getChangesApplied() { return changesApplied; }
+
+    public int getSubscribers() { return subscribers; }
+
+    public long getEvents() { return events; }
+}
@@ -0,0 +1,15 @@
+package org.launchcode.etf.dto;
+
+// How a backtest treats the weights after buying: NONE is buy-and-hold, the others bring the holdings back to
+// the portfolio's weights on the first trading day of every month, quarter or year.
+public enum Rebalance {
+    NONE(0), MONTHLY(1), QUARTERLY(3), ANNUALLY(12);
+
+    private final int months;
+
+    Rebalance(int months) {
+        this.months = months;
+    }
+
+    public int getMonths() { return months; }
+}
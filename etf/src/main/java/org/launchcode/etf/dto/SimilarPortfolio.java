@@ -0,0 +1,27 @@
+package org.launchcode.etf.dto;
+
+import org.launchcode.etf.model.Portfolio;
+
+import java.math.BigDecimal;
+
+// One result of GET /api/portfolios/{id}/similar: a portfolio, the number of ETFs it shares with the one asked
+// about, and their similarity, which is the shared ETFs divided by all the ETFs of the two (1 for the same ETFs).
+public class SimilarPortfolio {
+    public static final int MAX_LIMIT = 100;
+
+    private final Portfolio portfolio;
+    private final int sharedEtfCount;
+    private final BigDecimal similarity;
+
+    public SimilarPortfolio(Portfolio portfolio, int sharedEtfCount, BigDecimal similarity) {
+        this.portfolio = portfolio;
+        this.sharedEtfCount = sharedEtfCount;
+        this.similarity = similarity;
+    }
+
+    public Portfolio getPortfolio() { return portfolio; }
+
+    public int getSharedEtfCount() { return sharedEtfCount; }
+
+    public BigDecimal getSimilarity() { return similarity; }
+}
@@ -0,0 +1,45 @@
+package org.launchcode.etf.dto;
+
+public class TokenCacheStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long revokedRejections;
+    private final int size;
+    private final int maxSize;
+    private final double avgHitMicros;
+    private final double avgMissMicros;
+
+    public TokenCacheStats(long hits, long misses, long evictions, long revokedRejections, int size, int maxSize,
+                           double avgHitMicros, double avgMissMicros) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.revokedRejections = revokedRejections;
+        this.size = size;
+        this.maxSize = maxSize;
+        this.avgHitMicros = avgHitMicros;
+        this.avgMissMicros = avgMissMicros;
+    }
+
+    public long getHits() { return hits; }
+
+    public long getMisses() { return misses; }
+
+    public long getEvictions() { return evictions; }
+
+    public long getRevokedRejections() { return revokedRejections; }
+
+    public int getSize() { return size; }
+
+    public int getMaxSize() { return maxSize; }
+
+    public double getAvgHitMicros() { return avgHitMicros; }
+
+    public double getAvgMissMicros() { return avgMissMicros; }
+
+    public double getHitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+}
@@ -1,10 +1,14 @@
 package org.launchcode.etf.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 public class User {
     private Long id;
     private String username;
     private String password;
     private String role;
+    // Bumped whenever the password or role changes. Tokens carry the version they were issued with.
+    private Integer credentialVersion;
 
     public User() {}
     
@@ -15,6 +19,11 @@ public class User {
         this.role = role;
     }
 
+    public User(Long id, String username, String password, String role, Integer credentialVersion) {
+        this(id, username, password, role);
+        this.credentialVersion = credentialVersion;
+    }
+
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
     
@@ -26,4 +35,8 @@ public class User {
     
     public String getRole() { return role; }
     public void setRole(String role) { this.role = role; }
+
+    @JsonIgnore
+    public Integer getCredentialVersion() { return credentialVersion; }
+    public void setCredentialVersion(Integer credentialVersion) { this.credentialVersion = credentialVersion; }
 }
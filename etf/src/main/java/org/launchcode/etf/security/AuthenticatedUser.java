@@ -0,0 +1,25 @@
+package org.launchcode.etf.security;
+
+// The caller of the current request, built from the JWT claims by AuthenticatedUserArgumentResolver.
+// Controllers take it as a parameter instead of a Principal, so they don't have to look the user up.
+public final class AuthenticatedUser {
+    private final Long id;
+    private final String username;
+    private final String role;
+
+    public AuthenticatedUser(Long id, String username, String role) {
+        this.id = id;
+        this.username = username;
+        this.role = role;
+    }
+
+    public Long getId() { return id; }
+
+    public String getUsername() { return username; }
+
+    public String getRole() { return role; }
+
+    public boolean isAdmin() {
+        return "ADMIN".equals(role);
+    }
+}
@@ -0,0 +1,54 @@
+package org.launchcode.etf.security;
+
+import org.launchcode.etf.dao.UserDao;
+import org.launchcode.etf.model.User;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Objects;
+
+// Resolves controller parameters of type AuthenticatedUser from the token that fraho already verified.
+// The only lookup is the credential version check, which UserDao answers from UserCache in the common case.
+// Changing a password or role bumps the version in the database, so older tokens are rejected here.
+@Component
+public class AuthenticatedUserArgumentResolver implements HandlerMethodArgumentResolver {
+    private final UserDao userDao;
+
+    public AuthenticatedUserArgumentResolver(UserDao userDao) {
+        this.userDao = userDao;
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return AuthenticatedUser.class.equals(parameter.getParameterType());
+    }
+
+    @Override
+    public AuthenticatedUser resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                             NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof EtfJwtUser jwtUser)) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Authentication required");
+        }
+
+        // Tokens issued before the custom claims existed don't carry an id, so the user has to log in again.
+        if (jwtUser.getId() == null || jwtUser.getCredentialVersion() == null) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Token is missing required claims");
+        }
+
+        User current = userDao.findById(jwtUser.getId());
+        if (current == null || !Objects.equals(current.getCredentialVersion(), jwtUser.getCredentialVersion())) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Token is no longer valid");
+        }
+
+        return new AuthenticatedUser(jwtUser.getId(), jwtUser.getUsername(), jwtUser.getRole());
+    }
+}
@@ -0,0 +1,153 @@
+package org.launchcode.etf.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import eu.fraho.spring.securityJwt.base.dto.AccessToken;
+import eu.fraho.spring.securityJwt.base.dto.JwtUser;
+import eu.fraho.spring.securityJwt.base.dto.RefreshToken;
+import eu.fraho.spring.securityJwt.base.service.JwtTokenService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.ObjectFactory;
+
+import java.text.ParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Wraps fraho's JwtTokenService (see JwtConfig). fraho's JwtAuthenticationTokenFilter calls parseUser on
+// every request, so a cache hit here is the fast path through the security filter chain: the claims come
+// from VerifiedTokenCache and only applyClaims runs on a fresh JwtUser, exactly like fraho does after verifying.
+// Everything else goes straight to fraho.
+public class CachingJwtTokenService implements JwtTokenService {
+    private final JwtTokenService delegate;
+    private final VerifiedTokenCache cache;
+    private final ObjectFactory<JwtUser> jwtUserFactory;
+
+    public CachingJwtTokenService(JwtTokenService delegate, VerifiedTokenCache cache, ObjectFactory<JwtUser> jwtUserFactory) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.jwtUserFactory = jwtUserFactory;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends JwtUser> Optional<T> parseUser(String token) {
+        long start = System.nanoTime();
+        String digest = VerifiedTokenCache.digest(token);
+
+        JWTClaimsSet cached = cache.get(digest);
+        if (cached != null) {
+            try {
+                JwtUser user = jwtUserFactory.getObject();
+                user.applyClaims(cached);
+                cache.recordHit(System.nanoTime() - start);
+                return Optional.of((T) user);
+            } catch (ParseException e) {
+                // Can't happen for claims that parsed the first time; fall back to a full verification.
+            }
+        }
+
+        Optional<T> verified = delegate.parseUser(token);
+        if (verified.isPresent()) {
+            try {
+                // Parsing without verifying is fine here, fraho has just verified this exact token.
+                JWTClaimsSet claims = SignedJWT.parse(token).getJWTClaimsSet();
+                if (!cache.put(digest, verified.get().getId(), claims)) {
+                    verified = Optional.empty();
+                }
+            } catch (ParseException e) {
+                // Leave it uncached; fraho's result still stands.
+            }
+        }
+        cache.recordMiss(System.nanoTime() - start);
+        return verified;
+    }
+
+    @Override
+    public <T extends JwtUser> AccessToken generateToken(T user) throws JOSEException {
+        return delegate.generateToken(user);
+    }
+
+    @Override
+    public boolean validateToken(String token) {
+        return delegate.validateToken(token);
+    }
+
+    @Override
+    public boolean validateToken(SignedJWT token) {
+        return delegate.validateToken(token);
+    }
+
+    @Override
+    public boolean validateToken(AccessToken token) {
+        return delegate.validateToken(token);
+    }
+
+    // Deprecated in fraho in favour of getAccessToken, but still part of the interface we delegate.
+    @Override
+    @Deprecated
+    public Optional<String> getToken(HttpServletRequest request) {
+        return delegate.getToken(request);
+    }
+
+    @Override
+    public Optional<String> getAccessToken(HttpServletRequest request) {
+        return delegate.getAccessToken(request);
+    }
+
+    @Override
+    public Optional<String> getRefreshToken(HttpServletRequest request) {
+        return delegate.getRefreshToken(request);
+    }
+
+    @Override
+    public boolean isRefreshTokenSupported() {
+        return delegate.isRefreshTokenSupported();
+    }
+
+    @Override
+    public RefreshToken generateRefreshToken(JwtUser user) {
+        return delegate.generateRefreshToken(user);
+    }
+
+    @Override
+    public <T extends JwtUser> Optional<T> useRefreshToken(String token) {
+        return delegate.useRefreshToken(token);
+    }
+
+    @Override
+    public <T extends JwtUser> Optional<T> useRefreshToken(RefreshToken token) {
+        return delegate.useRefreshToken(token);
+    }
+
+    @Override
+    public Map<Long, List<RefreshToken>> listRefreshTokens() {
+        return delegate.listRefreshTokens();
+    }
+
+    @Override
+    public List<RefreshToken> listRefreshTokens(JwtUser user) {
+        return delegate.listRefreshTokens(user);
+    }
+
+    @Override
+    public boolean revokeRefreshToken(RefreshToken token) {
+        return delegate.revokeRefreshToken(token);
+    }
+
+    @Override
+    public boolean revokeRefreshToken(String token) {
+        return delegate.revokeRefreshToken(token);
+    }
+
+    @Override
+    public int revokeRefreshTokens(JwtUser user) {
+        return delegate.revokeRefreshTokens(user);
+    }
+
+    @Override
+    public int clearTokens() {
+        return delegate.clearTokens();
+    }
+}
@@ -0,0 +1,39 @@
+package org.launchcode.etf.security;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import eu.fraho.spring.securityJwt.base.dto.JwtUser;
+
+import java.text.ParseException;
+
+// fraho only writes the username ("sub"), "uid" and "authorities" into the token.
+// We add the role and the credential version, so a request can be authorized from the token alone.
+// fraho calls toClaims() when it issues a token and applyClaims() on a fresh instance when it parses one.
+public class EtfJwtUser extends JwtUser {
+    private static final long serialVersionUID = 1L;
+
+    public static final String ROLE_CLAIM = "role";
+    public static final String CREDENTIAL_VERSION_CLAIM = "cver";
+
+    private String role;
+    private Integer credentialVersion;
+
+    public String getRole() { return role; }
+    public void setRole(String role) { this.role = role; }
+
+    public Integer getCredentialVersion() { return credentialVersion; }
+    public void setCredentialVersion(Integer credentialVersion) { this.credentialVersion = credentialVersion; }
+
+    @Override
+    public JWTClaimsSet.Builder toClaims() {
+        return super.toClaims()
+                .claim(ROLE_CLAIM, role)
+                .claim(CREDENTIAL_VERSION_CLAIM, credentialVersion);
+    }
+
+    @Override
+    public void applyClaims(JWTClaimsSet claims) throws ParseException {
+        super.applyClaims(claims);
+        role = claims.getStringClaim(ROLE_CLAIM);
+        credentialVersion = claims.getIntegerClaim(CREDENTIAL_VERSION_CLAIM);
+    }
+}
@@ -0,0 +1,162 @@
+package org.launchcode.etf.security;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import eu.fraho.spring.securityJwt.base.config.TokenProperties;
+import org.launchcode.etf.dto.TokenCacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Remembers the claims of bearer tokens that fraho already verified, so a token the frontend sends again
+// skips the base64/JSON parsing and the HMAC check (see CachingJwtTokenService).
+// Keys are SHA-256 digests, so the cache never holds a usable token. An entry expires when the token does,
+// or after max-ttl-seconds, whichever comes first. The least recently used entries are dropped at max-size.
+//
+// revokeUser is called when a user's password changes or the user is deleted. It drops their entries and
+// rejects any of their tokens issued before that moment. It only needs to remember that until the
+// longest-lived token could have expired anyway.
+@Component
+public class VerifiedTokenCache {
+    private final int maxSize;
+    private final long maxTtlMillis;
+    private final long revocationRetentionMillis;
+
+    // Access-ordered, so the first entry is always the least recently used one.
+    private final LinkedHashMap<String, Entry> byDigest = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, Long> revokedAtMillisByUser = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong revokedRejections = new AtomicLong();
+    private final LongAdder hitNanos = new LongAdder();
+    private final LongAdder missNanos = new LongAdder();
+
+    public VerifiedTokenCache(@Value("${etf.cache.tokens.max-size:10000}") int maxSize,
+                              @Value("${etf.cache.tokens.max-ttl-seconds:900}") long maxTtlSeconds,
+                              TokenProperties tokenProperties) {
+        this.maxSize = maxSize;
+        this.maxTtlMillis = TimeUnit.SECONDS.toMillis(maxTtlSeconds);
+        this.revocationRetentionMillis = tokenProperties.getExpiration().toMillis();
+    }
+
+    public static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM ships SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized JWTClaimsSet get(String digest) {
+        Entry entry = byDigest.get(digest);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() >= entry.expiresAtMillis) {
+            byDigest.remove(digest);
+            evictions.incrementAndGet();
+            return null;
+        }
+        return entry.claims;
+    }
+
+    // Returns false (and caches nothing) when the token was issued before its user was revoked.
+    public synchronized boolean put(String digest, Long userId, JWTClaimsSet claims) {
+        if (isRevoked(userId, claims.getIssueTime())) {
+            revokedRejections.incrementAndGet();
+            return false;
+        }
+        long expiresAtMillis = System.currentTimeMillis() + maxTtlMillis;
+        Date expirationTime = claims.getExpirationTime();
+        if (expirationTime != null) {
+            expiresAtMillis = Math.min(expiresAtMillis, expirationTime.getTime());
+        }
+        byDigest.put(digest, new Entry(claims, userId, expiresAtMillis));
+        evictOverflow();
+        return true;
+    }
+
+    public synchronized void revokeUser(Long userId) {
+        long now = System.currentTimeMillis();
+        revokedAtMillisByUser.values().removeIf(revokedAt -> now - revokedAt > revocationRetentionMillis);
+        revokedAtMillisByUser.put(userId, now);
+        byDigest.values().removeIf(entry -> userId.equals(entry.userId));
+    }
+
+    public synchronized void clear() {
+        byDigest.clear();
+    }
+
+    public void recordHit(long nanos) {
+        hits.incrementAndGet();
+        hitNanos.add(nanos);
+    }
+
+    public void recordMiss(long nanos) {
+        misses.incrementAndGet();
+        missNanos.add(nanos);
+    }
+
+    public TokenCacheStats getStats() {
+        int size;
+        synchronized (this) {
+            size = byDigest.size();
+        }
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        return new TokenCacheStats(hitCount, missCount, evictions.get(), revokedRejections.get(), size, maxSize,
+                hitCount == 0 ? 0.0 : hitNanos.sum() / 1_000.0 / hitCount,
+                missCount == 0 ? 0.0 : missNanos.sum() / 1_000.0 / missCount);
+    }
+
+    // JWT times only have second precision, so the revocation time is truncated the same way.
+    // A token issued in the same second as the revocation gets through here; the credential version check
+    // in AuthenticatedUserArgumentResolver still catches it.
+    // Must be called while holding the lock.
+    private boolean isRevoked(Long userId, Date issueTime) {
+        Long revokedAtMillis = revokedAtMillisByUser.get(userId);
+        if (revokedAtMillis == null) {
+            return false;
+        }
+        return issueTime == null || issueTime.getTime() < revokedAtMillis / 1000 * 1000;
+    }
+
+    private void evictOverflow() {
+        Iterator<Entry> eldest = byDigest.values().iterator();
+        while (byDigest.size() > maxSize && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static final class Entry {
+        private final JWTClaimsSet claims;
+        private final Long userId;
+        private final long expiresAtMillis;
+
+        private Entry(JWTClaimsSet claims, Long userId, long expiresAtMillis) {
+            this.claims = claims;
+            this.userId = userId;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.launchcode.etf.service;
+
+// The arithmetic of a backtest, on plain arrays so that a run over decades of days allocates nothing: the caller
+// owns every array and can reuse them from one run to the next.
+//
+// prices are day-major as in PriceMatrix. months[t] is the month of day t counted from 1970 (see monthIndex).
+// The portfolio is bought at the close of day 0 in proportion to weights (which add up to 1). After that it is
+// left alone, or, when periodMonths > 0, brought back to weights at the close of the first day of every new
+// period of that many months (1 monthly, 3 quarterly, 12 yearly).
+public final class BacktestKernel {
+    private BacktestKernel() {}
+
+    // Fills equity[0 .. days - 1] with the value of the portfolio at each close, using units (length assets) as
+    // scratch. Returns the turnover: at each rebalance, the value bought and sold divided by twice the value of
+    // the portfolio, summed over the run. 0.25 means a quarter of the portfolio changed hands in total.
+    public static double simulate(double[] prices, int assets, int days, double[] weights, int[] months, int periodMonths,
+                                  double initialValue, double[] units, double[] equity) {
+        if (days == 0) {
+            return 0;
+        }
+        for (int i = 0; i < assets; i++) {
+            units[i] = weights[i] * initialValue / prices[i];
+        }
+        equity[0] = initialValue;
+        double turnover = 0;
+        for (int t = 1; t < days; t++) {
+            int base = t * assets;
+            double value = 0;
+            for (int i = 0; i < assets; i++) {
+                value += units[i] * prices[base + i];
+            }
+            if (periodMonths > 0 && Math.floorDiv(months[t], periodMonths) != Math.floorDiv(months[t - 1], periodMonths)) {
+                double traded = 0;
+                for (int i = 0; i < assets; i++) {
+                    double price = prices[base + i];
+                    double target = weights[i] * value;
+                    traded += Math.abs(target - units[i] * price);
+                    units[i] = target / price;
+                }
+                turnover += traded / (2 * value);
+            }
+            equity[t] = value;
+        }
+        return turnover;
+    }
+
+    // Compound annual growth rate between the first and the last value, over the calendar days between them.
+    public static double cagr(double[] equity, int days, int firstEpochDay, int lastEpochDay) {
+        double years = (lastEpochDay - firstEpochDay) / 365.25;
+        if (days < 2 || years <= 0) {
+            return 0;
+        }
+        return Math.pow(equity[days - 1] / equity[0], 1 / years) - 1;
+    }
+
+    // The largest fall from a previous high, as a fraction of that high (0.35 is a 35% drawdown).
+    public static double maxDrawdown(double[] equity, int days) {
+        double peak = Double.NEGATIVE_INFINITY;
+        double worst = 0;
+        for (int t = 0; t < days; t++) {
+            peak = Math.max(peak, equity[t]);
+            worst = Math.max(worst, 1 - equity[t] / peak);
+        }
+        return worst;
+    }
+
+    // Months since January 1970 (negative before), straight from days since 1970-01-01 without making a
+    // LocalDate. The civil-from-days conversion of Howard Hinnant's date algorithms.
+    public static int monthIndex(int epochDay) {
+        int z = epochDay + 719468;
+        int era = Math.floorDiv(z, 146097);
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return (year - 1970) * 12 + month - 1;
+    }
+}
@@ -0,0 +1,184 @@
+package org.launchcode.etf.service;
+
+import org.launchcode.etf.dao.PortfolioDao;
+import org.launchcode.etf.dao.PortfolioEtfDao;
+import org.launchcode.etf.dao.PriceSeries;
+import org.launchcode.etf.dao.PriceStore;
+import org.launchcode.etf.dto.Backtest;
+import org.launchcode.etf.dto.BacktestBatch;
+import org.launchcode.etf.dto.BacktestVariant;
+import org.launchcode.etf.dto.Rebalance;
+import org.launchcode.etf.model.Portfolio;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Backtests portfolios over the prices in PriceStore (see BacktestKernel for the simulation itself).
+//
+// Everything runs on one ForkJoinPool: the strategies of a backtest are separate tasks, and the nightly batch
+// over every public portfolio is one task per portfolio that forks its strategies in turn, so the pool stays busy
+// however the work is split. Leave etf.backtest.threads at 0 for one thread per CPU core.
+@Service
+public class BacktestService implements DisposableBean {
+    public static final double DEFAULT_INITIAL_VALUE = 10_000;
+
+    private static final Logger log = LoggerFactory.getLogger(BacktestService.class);
+
+    private final PortfolioDao portfolioDao;
+    private final PortfolioEtfDao portfolioEtfDao;
+    private final PriceStore priceStore;
+    private final ForkJoinPool pool;
+    private final AtomicBoolean batchRunning = new AtomicBoolean();
+    private volatile BacktestBatch latestBatch;
+
+    public BacktestService(PortfolioDao portfolioDao, PortfolioEtfDao portfolioEtfDao, PriceStore priceStore,
+                           @Value("${etf.backtest.threads:0}") int threads) {
+        this.portfolioDao = portfolioDao;
+        this.portfolioEtfDao = portfolioEtfDao;
+        this.priceStore = priceStore;
+        this.pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+    }
+
+    // Backtests one portfolio with each of the strategies, from and to being optional. Throws
+    // IllegalArgumentException when the portfolio has no ETFs, or no days with prices for any of them.
+    public Backtest backtest(Long portfolioId, LocalDate from, LocalDate to, List<Rebalance> strategies, double initialValue) {
+        Map<String, BigDecimal> weights = portfolioEtfDao.findTickerWeights(List.of(portfolioId)).get(portfolioId);
+        if (weights == null) {
+            throw new IllegalArgumentException("Portfolio has no ETFs");
+        }
+        return pool.invoke(ForkJoinTask.adapt(() -> run(portfolioId, weights, from, to, strategies, initialValue, true)));
+    }
+
+    // Every public portfolio over all of its history, with every strategy. The result replaces the previous one in
+    // getLatestBatch(). Runs every night at etf.backtest.batch-cron ("-" turns that off), or on demand from
+    // POST /api/admin/backtests/run. Throws IllegalStateException if a run is already going.
+    @Scheduled(cron = "${etf.backtest.batch-cron:0 0 2 * * *}")
+    public BacktestBatch runBatch() {
+        if (!batchRunning.compareAndSet(false, true)) {
+            throw new IllegalStateException("A backtest batch is already running");
+        }
+        try {
+            Instant startedAt = Instant.now();
+            long start = System.nanoTime();
+            List<Long> ids = portfolioDao.findPublicPortfolios().stream().map(Portfolio::getId).toList();
+            Map<Long, Map<String, BigDecimal>> weights = portfolioEtfDao.findTickerWeights(ids);
+
+            List<ForkJoinTask<Backtest>> tasks = new ArrayList<>();
+            for (Long id : ids) {
+                if (weights.containsKey(id)) {
+                    tasks.add(ForkJoinTask.adapt(() -> {
+                        try {
+                            return run(id, weights.get(id), null, null, List.of(Rebalance.values()), DEFAULT_INITIAL_VALUE, false);
+                        } catch (IllegalArgumentException e) {
+                            return null;
+                        }
+                    }));
+                }
+            }
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+
+            List<Backtest> results = tasks.stream().map(ForkJoinTask::join).filter(Objects::nonNull).toList();
+            BacktestBatch batch = new BacktestBatch(startedAt, (System.nanoTime() - start) / 1_000_000, ids.size(),
+                    ids.size() - results.size(), results);
+            latestBatch = batch;
+            log.info("Backtested {} public portfolios in {} ms ({} skipped)", results.size(), batch.getDurationMs(), batch.getSkipped());
+            return batch;
+        } finally {
+            batchRunning.set(false);
+        }
+    }
+
+    // Null until the first batch has finished.
+    public BacktestBatch getLatestBatch() {
+        return latestBatch;
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdownNow();
+    }
+
+    // Runs inside the pool. The price matrix and the scratch arrays are made once per portfolio and strategy;
+    // the days themselves allocate nothing.
+    private Backtest run(Long portfolioId, Map<String, BigDecimal> tickerWeights, LocalDate from, LocalDate to,
+                         List<Rebalance> strategies, double initialValue, boolean withCurves) {
+        List<String> tickers = new ArrayList<>();
+        List<String> excluded = new ArrayList<>();
+        List<PriceSeries> series = new ArrayList<>();
+        double[] weights = new double[tickerWeights.size()];
+        double totalWeight = 0;
+        for (Map.Entry<String, BigDecimal> entry : tickerWeights.entrySet()) {
+            PriceSeries prices;
+            try {
+                prices = priceStore.series(entry.getKey()).range(from, to);
+            } catch (IllegalArgumentException e) {
+                // A ticker PriceStore can't store has no prices.
+                prices = null;
+            }
+            if (prices == null || prices.isEmpty()) {
+                excluded.add(entry.getKey());
+                continue;
+            }
+            weights[tickers.size()] = entry.getValue().doubleValue();
+            totalWeight += weights[tickers.size()];
+            tickers.add(entry.getKey());
+            series.add(prices);
+        }
+        PriceMatrix matrix = PriceMatrix.align(series, null, null);
+        if (matrix.getDays() < 2 || totalWeight <= 0) {
+            throw new IllegalArgumentException("Not enough prices to backtest: the ETFs need at least two days with prices in common");
+        }
+        weights = Arrays.copyOf(weights, tickers.size());
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] /= totalWeight;
+        }
+
+        int[] epochDays = matrix.getEpochDays();
+        int[] months = new int[matrix.getDays()];
+        for (int t = 0; t < months.length; t++) {
+            months[t] = BacktestKernel.monthIndex(epochDays[t]);
+        }
+        double[] normalized = weights;
+        List<ForkJoinTask<BacktestVariant>> variants = new ArrayList<>();
+        for (Rebalance strategy : strategies) {
+            variants.add(ForkJoinTask.adapt(() -> simulate(matrix, normalized, months, strategy, initialValue, withCurves)));
+        }
+        ForkJoinTask.invokeAll(variants);
+
+        List<LocalDate> dates = null;
+        if (withCurves) {
+            dates = new ArrayList<>(matrix.getDays());
+            for (int day : epochDays) {
+                dates.add(LocalDate.ofEpochDay(day));
+            }
+        }
+        return new Backtest(portfolioId, LocalDate.ofEpochDay(epochDays[0]), LocalDate.ofEpochDay(epochDays[matrix.getDays() - 1]),
+                tickers, excluded, dates, variants.stream().map(ForkJoinTask::join).toList());
+    }
+
+    private static BacktestVariant simulate(PriceMatrix matrix, double[] weights, int[] months, Rebalance strategy,
+                                            double initialValue, boolean withCurve) {
+        int days = matrix.getDays();
+        double[] equity = new double[days];
+        double turnover = BacktestKernel.simulate(matrix.getPrices(), matrix.getAssets(), days, weights, months,
+                strategy.getMonths(), initialValue, new double[matrix.getAssets()], equity);
+        int[] epochDays = matrix.getEpochDays();
+        return new BacktestVariant(strategy, equity[days - 1], BacktestKernel.cagr(equity, days, epochDays[0], epochDays[days - 1]),
+                BacktestKernel.maxDrawdown(equity, days), turnover, withCurve ? equity : null);
+    }
+}
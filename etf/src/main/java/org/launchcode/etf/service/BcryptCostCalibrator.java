@@ -0,0 +1,71 @@
+package org.launchcode.etf.service;
+
+import org.launchcode.etf.dto.HashingCalibration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Picks the BCrypt cost for this machine instead of hard-coding it in PasswordConfig.
+// Each cost step doubles the work, so we time costs from minCost upwards and keep the highest one whose
+// median hash time fits in the budget. We stop at the first cost over budget, because every later one is slower.
+// The timing table is logged at startup and kept for /api/admin/stats/password-hashing/calibration,
+// so login capacity can be estimated as threads * 1000 / medianMs for the chosen cost.
+public class BcryptCostCalibrator {
+    private static final Logger log = LoggerFactory.getLogger(BcryptCostCalibrator.class);
+
+    private static final String SAMPLE_PASSWORD = "calibration-password";
+    private static final int SAMPLES_PER_COST = 3;
+
+    private final long targetMillis;
+    private final int minCost;
+    private final int maxCost;
+
+    public BcryptCostCalibrator(long targetMillis, int minCost, int maxCost) {
+        this.targetMillis = targetMillis;
+        this.minCost = minCost;
+        this.maxCost = maxCost;
+    }
+
+    public HashingCalibration calibrate() {
+        // Warm-up so the first measured cost doesn't pay for class loading and JIT compilation.
+        BCrypt.hashpw(SAMPLE_PASSWORD, BCrypt.gensalt(4));
+
+        Map<Integer, Double> medianMillisByCost = new LinkedHashMap<>();
+        int chosenCost = minCost;
+        for (int cost = minCost; cost <= maxCost; cost++) {
+            double medianMillis = measure(cost);
+            medianMillisByCost.put(cost, medianMillis);
+            if (medianMillis > targetMillis) {
+                break;
+            }
+            chosenCost = cost;
+        }
+
+        log.info("BCrypt calibration (target {} ms):", targetMillis);
+        for (Map.Entry<Integer, Double> row : medianMillisByCost.entrySet()) {
+            log.info("  cost {} -> {} ms{}", row.getKey(), String.format("%.1f", row.getValue()),
+                    row.getKey() == chosenCost ? "  <- chosen" : "");
+        }
+        if (medianMillisByCost.get(minCost) > targetMillis) {
+            log.warn("BCrypt cost {} already takes longer than {} ms on this host; using the minimum anyway", minCost, targetMillis);
+        }
+
+        return new HashingCalibration(chosenCost, targetMillis, false, medianMillisByCost);
+    }
+
+    private double measure(int cost) {
+        String salt = BCrypt.gensalt(cost);
+        long[] samples = new long[SAMPLES_PER_COST];
+        for (int i = 0; i < SAMPLES_PER_COST; i++) {
+            long start = System.nanoTime();
+            BCrypt.hashpw(SAMPLE_PASSWORD, salt);
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        return samples[SAMPLES_PER_COST / 2] / 1_000_000.0;
+    }
+}
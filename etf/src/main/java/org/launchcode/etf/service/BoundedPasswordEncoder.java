@@ -0,0 +1,137 @@
+package org.launchcode.etf.service;
+
+import org.launchcode.etf.dto.HashingStats;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// BCrypt takes ~100ms of CPU per call. Running it directly on Tomcat threads lets a burst of logins or
+// registrations occupy the whole servlet pool, so every encode/matches runs on a small dedicated pool instead.
+// This doesn't free the calling thread: it blocks until its hash is done, or for timeoutMillis at most (then 503).
+// What the pool bounds is how many servlet threads can be blocked on hashing at once, threads + queueCapacity,
+// and with a queue sized to the timeout (PasswordConfig) how long each one is. Anyone beyond that gets a 503 with
+// Retry-After right away, without waiting, and the rest of the servlet pool stays free for reads. Logins can't
+// wait asynchronously instead: Spring Security's DaoAuthenticationProvider calls matches() on the request thread.
+public class BoundedPasswordEncoder implements PasswordEncoder, DisposableBean {
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final long timeoutMillis;
+    private final long retryAfterSeconds;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder totalQueueNanos = new LongAdder();
+    private final LongAdder totalHashNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity,
+                                  long timeoutMillis, long retryAfterSeconds) {
+        this.delegate = delegate;
+        this.queueCapacity = queueCapacity;
+        this.timeoutMillis = timeoutMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(() -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    // Only reads the cost out of the hash, so there is no need to queue it.
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    public HashingStats getStats() {
+        long done = completed.sum();
+        return new HashingStats(
+                executor.getMaximumPoolSize(),
+                executor.getActiveCount(),
+                executor.getQueue().size(),
+                queueCapacity,
+                submitted.sum(),
+                done,
+                rejected.sum(),
+                timedOut.sum(),
+                done == 0 ? 0.0 : totalQueueNanos.sum() / 1_000_000.0 / done,
+                done == 0 ? 0.0 : totalHashNanos.sum() / 1_000_000.0 / done,
+                maxLatencyNanos.get() / 1_000_000.0
+        );
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private <T> T run(Callable<T> hashing) {
+        long submittedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long startedAt = System.nanoTime();
+                try {
+                    return hashing.call();
+                } finally {
+                    long finishedAt = System.nanoTime();
+                    totalQueueNanos.add(startedAt - submittedAt);
+                    totalHashNanos.add(finishedAt - startedAt);
+                    maxLatencyNanos.accumulateAndGet(finishedAt - submittedAt, Math::max);
+                    completed.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new HashingUnavailableException(retryAfterSeconds);
+        }
+        submitted.increment();
+
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timedOut.increment();
+            throw new HashingUnavailableException(retryAfterSeconds);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new HashingUnavailableException(retryAfterSeconds);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Password hashing failed", cause);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package org.launchcode.etf.service;
+
+import org.launchcode.etf.dao.PriceSeries;
+import org.launchcode.etf.dao.PriceStore;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Mean daily returns and the covariance of daily returns of every ticker in PriceStore, over the last windowDays
+// trading days. Built once and shared by every portfolio (RiskService caches it until prices change).
+//
+// The days are every day any ticker traded in the window. A ticker without a bar on one of them keeps its last
+// price, so that day's return is 0. Tickers with bars on fewer than MIN_COVERAGE of the days (too young, or
+// delisted) are left out rather than diluting the others with made-up flat days.
+//
+// The covariance is n * n doubles, row-major. It's computed in BLOCK * BLOCK tiles, one fork-join task per tile on
+// or above the diagonal: a tile reads 2 * BLOCK rows of returns, which stay in cache while the tile's dot products
+// reuse them, and the tiles spread over every core.
+public final class CovarianceModel {
+    static final double MIN_COVERAGE = 0.8;
+    private static final int BLOCK = 32;
+
+    private final long priceVersion;
+    private final String[] tickers;
+    private final Map<String, Integer> index;
+    private final int observations;
+    private final LocalDate asOf;
+    private final double[] meanReturns;
+    private final double[] covariance;
+
+    private CovarianceModel(long priceVersion, String[] tickers, int observations, LocalDate asOf, double[] meanReturns,
+                            double[] covariance) {
+        this.priceVersion = priceVersion;
+        this.tickers = tickers;
+        this.index = new HashMap<>();
+        for (int i = 0; i < tickers.length; i++) {
+            index.put(tickers[i], i);
+        }
+        this.observations = observations;
+        this.asOf = asOf;
+        this.meanReturns = meanReturns;
+        this.covariance = covariance;
+    }
+
+    public static CovarianceModel build(PriceStore priceStore, int windowDays, ForkJoinPool pool) {
+        // Read before the prices: an append that lands while this runs makes the model stale straight away.
+        long priceVersion = priceStore.getVersion();
+        List<PriceSeries> all = new ArrayList<>();
+        for (String ticker : priceStore.tickers()) {
+            all.add(priceStore.series(ticker));
+        }
+        int[] calendar = calendar(all, windowDays + 1);
+        int days = calendar.length;
+        if (days < 3) {
+            return new CovarianceModel(priceVersion, new String[0], 0, null, new double[0], new double[0]);
+        }
+
+        // Returns of each kept ticker, minus their mean, one row of days - 1 per ticker.
+        int observations = days - 1;
+        List<ForkJoinTask<double[]>> rows = new ArrayList<>();
+        for (PriceSeries series : all) {
+            rows.add(ForkJoinTask.adapt(() -> returns(series, calendar)));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(rows)));
+        List<String> kept = new ArrayList<>();
+        double[] centered = new double[all.size() * observations];
+        double[] means = new double[all.size()];
+        for (int i = 0; i < all.size(); i++) {
+            double[] row = rows.get(i).join();
+            if (row == null) {
+                continue;
+            }
+            int n = kept.size();
+            double sum = 0;
+            for (double value : row) {
+                sum += value;
+            }
+            double mean = sum / observations;
+            for (int t = 0; t < observations; t++) {
+                centered[n * observations + t] = row[t] - mean;
+            }
+            means[n] = mean;
+            kept.add(all.get(i).getTicker());
+        }
+
+        int n = kept.size();
+        double[] covariance = new double[n * n];
+        List<ForkJoinTask<?>> tiles = new ArrayList<>();
+        for (int rowBlock = 0; rowBlock < n; rowBlock += BLOCK) {
+            for (int columnBlock = rowBlock; columnBlock < n; columnBlock += BLOCK) {
+                int rowStart = rowBlock;
+                int columnStart = columnBlock;
+                tiles.add(ForkJoinTask.adapt(() -> tile(centered, observations, n, rowStart, columnStart, covariance)));
+            }
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tiles)));
+        return new CovarianceModel(priceVersion, kept.toArray(new String[0]), observations,
+                LocalDate.ofEpochDay(calendar[days - 1]), Arrays.copyOf(means, n), covariance);
+    }
+
+    public long getPriceVersion() { return priceVersion; }
+
+    public int size() { return tickers.length; }
+
+    public List<String> getTickers() { return List.of(tickers); }
+
+    // Returns observed per ticker; 0 for an empty model.
+    public int getObservations() { return observations; }
+
+    // The last day in the window; null for an empty model.
+    public LocalDate getAsOf() { return asOf; }
+
+    // Position of ticker (as PriceStore names it, upper case) in the model, or -1 when it isn't in it.
+    public int indexOf(String ticker) {
+        Integer i = index.get(ticker);
+        return i == null ? -1 : i;
+    }
+
+    public double getMeanReturn(int i) { return meanReturns[i]; }
+
+    public double getCovariance(int i, int j) { return covariance[i * tickers.length + j]; }
+
+    // The last count distinct days any series traded, in order.
+    private static int[] calendar(List<PriceSeries> all, int count) {
+        int total = 0;
+        for (PriceSeries series : all) {
+            total += Math.min(series.size(), count);
+        }
+        int[] days = new int[total];
+        int filled = 0;
+        for (PriceSeries series : all) {
+            for (int i = Math.max(0, series.size() - count); i < series.size(); i++) {
+                days[filled++] = series.getEpochDay(i);
+            }
+        }
+        Arrays.sort(days);
+        int distinct = 0;
+        for (int i = 0; i < total; i++) {
+            if (distinct == 0 || days[distinct - 1] != days[i]) {
+                days[distinct++] = days[i];
+            }
+        }
+        return Arrays.copyOfRange(days, Math.max(0, distinct - count), distinct);
+    }
+
+    // Daily returns of series over the calendar, or null when it has bars on too few of its days.
+    private static double[] returns(PriceSeries series, int[] calendar) {
+        double[] returns = new double[calendar.length - 1];
+        int next = series.ceilingIndex(LocalDate.ofEpochDay(calendar[0]));
+        int bars = 0;
+        double previous = Double.NaN;
+        for (int t = 0; t < calendar.length; t++) {
+            double price = previous;
+            if (next < series.size() && series.getEpochDay(next) == calendar[t]) {
+                price = series.getAdjustedClose(next++);
+                bars++;
+            }
+            if (t > 0 && previous > 0) {
+                returns[t - 1] = price / previous - 1;
+            }
+            previous = price;
+        }
+        return bars >= MIN_COVERAGE * calendar.length ? returns : null;
+    }
+
+    // Sample covariances of rows rowStart.. against rows columnStart.. (at most BLOCK each), mirrored below the diagonal.
+    private static void tile(double[] centered, int observations, int n, int rowStart, int columnStart, double[] covariance) {
+        int rowEnd = Math.min(rowStart + BLOCK, n);
+        int columnEnd = Math.min(columnStart + BLOCK, n);
+        for (int i = rowStart; i < rowEnd; i++) {
+            int rowOffset = i * observations;
+            for (int j = Math.max(columnStart, i); j < columnEnd; j++) {
+                int columnOffset = j * observations;
+                double sum = 0;
+                for (int t = 0; t < observations; t++) {
+                    sum += centered[rowOffset + t] * centered[columnOffset + t];
+                }
+                double value = sum / (observations - 1);
+                covariance[i * n + j] = value;
+                covariance[j * n + i] = value;
+            }
+        }
+    }
+}
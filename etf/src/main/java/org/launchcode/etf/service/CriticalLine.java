@@ -0,0 +1,433 @@
+package org.launchcode.etf.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// The long-only efficient frontier with a cap on every weight, by Markowitz's Critical Line Algorithm (as laid out
+// in Bailey and Lopez de Prado, "An Open-Source Implementation of the Critical-Line Algorithm", 2013).
+//
+// Along the frontier, from the highest return down to the least variance, the assets split into free ones (strictly
+// between 0 and the cap) and ones held at a bound. While that split stays the same the optimal weights are linear
+// in the risk tolerance lambda, so the whole frontier is fixed by the turning points where an asset becomes free or
+// bound. Each step finds the next one in closed form, from the inverse covariance of the free assets. That inverse
+// is kept up to date by bordering when an asset is freed and by a rank-one downdate when one is bound, instead of
+// inverting again, and rebuilt every REFRESH_STEPS steps so rounding can't build up.
+final class CriticalLine {
+    private static final int REFRESH_STEPS = 32;
+    private static final double TOLERANCE = 1e-9;
+
+    private final int n;
+    private final double[] mean;
+    private final double[] covariance;
+    private final double cap;
+
+    private final double[] weights;
+    private final boolean[] isFree;
+    private final int[] free;
+    private int freeCount;
+    // Inverse covariance of the free assets, in the order of free, with a row stride of n.
+    private final double[] inverse;
+
+    // Per free set: inverse times ones, times means, and times the covariance with the bound assets' weights.
+    private final double[] inverseOnes;
+    private final double[] inverseMeans;
+    private final double[] boundCovariance;
+    private final double[] inverseBound;
+    private double sumInverseOnes;
+    private double sumInverseMeans;
+    private double boundWeight;
+    private double sumInverseBound;
+
+    private CriticalLine(double[] mean, double[] covariance, int n, double cap) {
+        this.n = n;
+        this.mean = mean;
+        this.covariance = covariance;
+        this.cap = cap;
+        this.weights = new double[n];
+        this.isFree = new boolean[n];
+        this.free = new int[n];
+        this.inverse = new double[n * n];
+        this.inverseOnes = new double[n];
+        this.inverseMeans = new double[n];
+        this.boundCovariance = new double[n];
+        this.inverseBound = new double[n];
+    }
+
+    // The turning points from the highest return to the least variance, each a weights array (summing to 1,
+    // each in [0, cap]). mean and covariance (row-major n * n, positive definite) must be on the same scale;
+    // cap * n must be at least 1.
+    static List<double[]> turningPoints(double[] mean, double[] covariance, int n, double cap) {
+        if (cap * n < 1 - TOLERANCE) {
+            throw new IllegalArgumentException("A cap of " + cap + " can't hold " + n + " assets");
+        }
+        if (n == 1 || cap * n <= 1 + TOLERANCE) {
+            double[] equal = new double[n];
+            Arrays.fill(equal, 1.0 / n);
+            return List.of(equal);
+        }
+        return new CriticalLine(mean, covariance, n, cap).solve();
+    }
+
+    // Evenly spaced points of the frontier by return, lowest first, interpolated between the turning points (which
+    // is exact, everything being linear in lambda between them). Fewer when the frontier is a single point.
+    static List<double[]> sample(List<double[]> turningPoints, double[] mean, int points) {
+        int last = turningPoints.size() - 1;
+        double lowest = dot(mean, turningPoints.get(last));
+        double highest = dot(mean, turningPoints.get(0));
+        if (last == 0 || points == 1 || highest - lowest < TOLERANCE * Math.max(1, Math.abs(highest))) {
+            return List.of(turningPoints.get(last).clone());
+        }
+        List<double[]> sampled = new ArrayList<>(points);
+        int segment = last;
+        for (int p = 0; p < points; p++) {
+            double target = p == points - 1 ? highest : lowest + (highest - lowest) * p / (points - 1);
+            // Turning points go down in return, so walk from the low end up to the segment holding target.
+            while (segment > 1 && dot(mean, turningPoints.get(segment - 1)) < target) {
+                segment--;
+            }
+            double[] below = turningPoints.get(segment);
+            double[] above = turningPoints.get(segment - 1);
+            double low = dot(mean, below);
+            double high = dot(mean, above);
+            double t = high - low > 0 ? Math.min(1, Math.max(0, (target - low) / (high - low))) : 0;
+            double[] point = new double[mean.length];
+            for (int i = 0; i < point.length; i++) {
+                point[i] = below[i] + t * (above[i] - below[i]);
+            }
+            sampled.add(point);
+        }
+        return sampled;
+    }
+
+    static double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    // w' covariance w.
+    static double variance(double[] covariance, double[] w) {
+        int n = w.length;
+        double variance = 0;
+        for (int i = 0; i < n; i++) {
+            double row = 0;
+            for (int j = 0; j < n; j++) {
+                row += covariance[i * n + j] * w[j];
+            }
+            variance += w[i] * row;
+        }
+        return variance;
+    }
+
+    private List<double[]> solve() {
+        List<double[]> points = new ArrayList<>();
+        // Highest return first: fill the best assets up to the cap; the one that reaches a total of 1 is free.
+        Integer[] byMean = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            byMean[i] = i;
+        }
+        Arrays.sort(byMean, (a, b) -> mean[a] != mean[b] ? Double.compare(mean[b], mean[a])
+                : Double.compare(covariance[a * n + a], covariance[b * n + b]));
+        double total = 0;
+        int last = 0;
+        for (int k = 0; k < n && total < 1 - TOLERANCE; k++) {
+            last = byMean[k];
+            weights[last] = Math.min(cap, 1 - total);
+            total += weights[last];
+        }
+        free(last);
+        points.add(weights.clone());
+
+        double lambda = Double.POSITIVE_INFINITY;
+        for (int step = 0; step < 20 * n + 100; step++) {
+            if (step % REFRESH_STEPS == REFRESH_STEPS - 1) {
+                invert();
+            }
+            computeProducts();
+            double gamma = 1 - boundWeight + sumInverseBound;
+
+            // An asset that would hit a bound next as lambda falls...
+            double lambdaIn = Double.NEGATIVE_INFINITY;
+            int positionIn = -1;
+            double boundIn = 0;
+            if (freeCount > 1) {
+                for (int j = 0; j < freeCount; j++) {
+                    double c = -sumInverseOnes * inverseMeans[j] + sumInverseMeans * inverseOnes[j];
+                    if (c == 0) {
+                        continue;
+                    }
+                    double bound = c > 0 ? cap : 0;
+                    double candidate = (gamma * inverseOnes[j] - sumInverseOnes * (bound + inverseBound[j])) / c;
+                    if (candidate > lambdaIn && notAfter(candidate, lambda)) {
+                        lambdaIn = candidate;
+                        positionIn = j;
+                        boundIn = bound;
+                    }
+                }
+            }
+            // ...or a bound asset that would become free.
+            double lambdaOut = Double.NEGATIVE_INFINITY;
+            int assetOut = -1;
+            double[] column = new double[freeCount];
+            double[] u = new double[freeCount];
+            for (int i = 0; i < n; i++) {
+                if (!isFree[i]) {
+                    double candidate = lambdaIfFreed(i, column, u);
+                    if (candidate > lambdaOut && notAfter(candidate, lambda)) {
+                        lambdaOut = candidate;
+                        assetOut = i;
+                    }
+                }
+            }
+
+            if (lambdaIn <= 0 && lambdaOut <= 0) {
+                // No more turning points before lambda = 0: the last one is the minimum-variance portfolio.
+                lambda = 0;
+            } else if (lambdaIn > lambdaOut) {
+                lambda = Math.min(lambdaIn, lambda);
+                int asset = free[positionIn];
+                bind(positionIn);
+                weights[asset] = boundIn;
+                computeProducts();
+            } else {
+                lambda = Math.min(lambdaOut, lambda);
+                free(assetOut);
+                computeProducts();
+            }
+            double g = (-lambda * sumInverseMeans + 1 - boundWeight + sumInverseBound) / sumInverseOnes;
+            for (int j = 0; j < freeCount; j++) {
+                weights[free[j]] = -inverseBound[j] + g * inverseOnes[j] + lambda * inverseMeans[j];
+            }
+            points.add(weights.clone());
+            if (lambda == 0) {
+                break;
+            }
+        }
+        return purge(points);
+    }
+
+    // Whether an event at candidate comes no earlier than the current lambda, counting rounding as the same lambda:
+    // on degenerate frontiers several assets change sides at one lambda, one step at a time.
+    private static boolean notAfter(double candidate, double lambda) {
+        return candidate <= lambda + TOLERANCE * Math.max(1, Math.abs(lambda));
+    }
+
+    // Lambda at which bound asset i would turn free, from the bordered inverse of the free set plus i; column and u
+    // are scratch.
+    private double lambdaIfFreed(int i, double[] column, double[] u) {
+        int m = freeCount;
+        // i's covariances with the free assets, read along its own row (the matrix is symmetric).
+        for (int q = 0; q < m; q++) {
+            column[q] = covariance[i * n + free[q]];
+        }
+        double uSum = 0;
+        double uMean = 0;
+        double uBound = 0;
+        double uColumn = 0;
+        for (int p = 0; p < m; p++) {
+            double value = 0;
+            int row = p * n;
+            for (int q = 0; q < m; q++) {
+                value += inverse[row + q] * column[q];
+            }
+            u[p] = value;
+            uSum += value;
+            uMean += value * mean[free[p]];
+            uBound += value * boundCovariance[p];
+            uColumn += value * column[p];
+        }
+        double schur = covariance[i * n + i] - uColumn;
+        if (schur <= 1e-14 * covariance[i * n + i]) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        double weight = weights[i];
+        double onesLast = (1 - uSum) / schur;
+        double meansLast = (mean[i] - uMean) / schur;
+        double sumOnes = sumInverseOnes + (uSum - 1) * (uSum - 1) / schur;
+        double sumMeans = sumInverseMeans + (uSum - 1) * (uMean - mean[i]) / schur;
+        // The bound assets without i.
+        double boundLast = 0;
+        int row = i * n;
+        for (int k = 0; k < n; k++) {
+            if (!isFree[k] && k != i) {
+                boundLast += covariance[row + k] * weights[k];
+            }
+        }
+        double uBoundWithout = uBound - weight * uColumn;
+        double inverseBoundLast = (boundLast - uBoundWithout) / schur;
+        double sumBound = sumInverseBound - uSum * weight + (uSum - 1) * (uBoundWithout - boundLast) / schur;
+        double c = -sumOnes * meansLast + sumMeans * onesLast;
+        // Only if it would then move into the box as lambda falls (its weight rises off 0 when c > 0, falls off the
+        // cap when c < 0). Otherwise it stays bound, and isn't freed only to be bound again at the same lambda.
+        if (weight < cap / 2 ? c <= 0 : c >= 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return ((1 - (boundWeight - weight) + sumBound) * onesLast - sumOnes * (weight + inverseBoundLast)) / c;
+    }
+
+    private void computeProducts() {
+        int m = freeCount;
+        boundWeight = 0;
+        for (int k = 0; k < n; k++) {
+            if (!isFree[k]) {
+                boundWeight += weights[k];
+            }
+        }
+        for (int p = 0; p < m; p++) {
+            int row = free[p] * n;
+            double sum = 0;
+            for (int k = 0; k < n; k++) {
+                if (!isFree[k]) {
+                    sum += covariance[row + k] * weights[k];
+                }
+            }
+            boundCovariance[p] = sum;
+        }
+        sumInverseOnes = 0;
+        sumInverseMeans = 0;
+        sumInverseBound = 0;
+        for (int p = 0; p < m; p++) {
+            double ones = 0;
+            double means = 0;
+            double bound = 0;
+            int row = p * n;
+            for (int q = 0; q < m; q++) {
+                double value = inverse[row + q];
+                ones += value;
+                means += value * mean[free[q]];
+                bound += value * boundCovariance[q];
+            }
+            inverseOnes[p] = ones;
+            inverseMeans[p] = means;
+            inverseBound[p] = bound;
+            sumInverseOnes += ones;
+            sumInverseMeans += means;
+            sumInverseBound += bound;
+        }
+    }
+
+    // Adds asset i to the free set, bordering the inverse with it.
+    private void free(int i) {
+        int m = freeCount;
+        double[] u = new double[m];
+        double schur = covariance[i * n + i];
+        for (int p = 0; p < m; p++) {
+            double value = 0;
+            for (int q = 0; q < m; q++) {
+                value += inverse[p * n + q] * covariance[free[q] * n + i];
+            }
+            u[p] = value;
+            schur -= value * covariance[free[p] * n + i];
+        }
+        for (int p = 0; p < m; p++) {
+            for (int q = 0; q < m; q++) {
+                inverse[p * n + q] += u[p] * u[q] / schur;
+            }
+            inverse[p * n + m] = -u[p] / schur;
+            inverse[m * n + p] = -u[p] / schur;
+        }
+        inverse[m * n + m] = 1 / schur;
+        free[m] = i;
+        isFree[i] = true;
+        freeCount++;
+    }
+
+    // Removes the free asset at position j: a rank-one downdate, then the last row and column move into j.
+    private void bind(int j) {
+        int m = freeCount;
+        double pivot = inverse[j * n + j];
+        for (int p = 0; p < m; p++) {
+            if (p == j) {
+                continue;
+            }
+            double factor = inverse[p * n + j] / pivot;
+            for (int q = 0; q < m; q++) {
+                if (q != j) {
+                    inverse[p * n + q] -= factor * inverse[j * n + q];
+                }
+            }
+        }
+        int lastPosition = m - 1;
+        if (j != lastPosition) {
+            for (int p = 0; p < m; p++) {
+                inverse[p * n + j] = inverse[p * n + lastPosition];
+            }
+            for (int q = 0; q < m; q++) {
+                inverse[j * n + q] = inverse[lastPosition * n + q];
+            }
+            inverse[j * n + j] = inverse[lastPosition * n + lastPosition];
+        }
+        isFree[free[j]] = false;
+        free[j] = free[lastPosition];
+        freeCount--;
+    }
+
+    // Inverts the free assets' covariance from scratch by Gauss-Jordan elimination with partial pivoting.
+    private void invert() {
+        int m = freeCount;
+        double[] work = new double[m * 2 * m];
+        int width = 2 * m;
+        for (int p = 0; p < m; p++) {
+            for (int q = 0; q < m; q++) {
+                work[p * width + q] = covariance[free[p] * n + free[q]];
+            }
+            work[p * width + m + p] = 1;
+        }
+        for (int column = 0; column < m; column++) {
+            int pivotRow = column;
+            for (int p = column + 1; p < m; p++) {
+                if (Math.abs(work[p * width + column]) > Math.abs(work[pivotRow * width + column])) {
+                    pivotRow = p;
+                }
+            }
+            if (pivotRow != column) {
+                for (int q = 0; q < width; q++) {
+                    double swap = work[column * width + q];
+                    work[column * width + q] = work[pivotRow * width + q];
+                    work[pivotRow * width + q] = swap;
+                }
+            }
+            double pivot = work[column * width + column];
+            for (int q = 0; q < width; q++) {
+                work[column * width + q] /= pivot;
+            }
+            for (int p = 0; p < m; p++) {
+                double factor = work[p * width + column];
+                if (p != column && factor != 0) {
+                    for (int q = 0; q < width; q++) {
+                        work[p * width + q] -= factor * work[column * width + q];
+                    }
+                }
+            }
+        }
+        for (int p = 0; p < m; p++) {
+            System.arraycopy(work, p * width + m, inverse, p * n, m);
+        }
+    }
+
+    // Drops points that rounding pushed outside the constraints, and any that don't lower the return.
+    private List<double[]> purge(List<double[]> points) {
+        List<double[]> kept = new ArrayList<>();
+        double previousReturn = Double.POSITIVE_INFINITY;
+        for (double[] point : points) {
+            double sum = 0;
+            boolean valid = true;
+            for (double weight : point) {
+                sum += weight;
+                valid &= weight >= -TOLERANCE && weight <= cap + TOLERANCE;
+            }
+            double pointReturn = dot(mean, point);
+            if (valid && Math.abs(sum - 1) <= TOLERANCE && pointReturn <= previousReturn + TOLERANCE) {
+                for (int i = 0; i < point.length; i++) {
+                    point[i] = Math.min(cap, Math.max(0, point[i]));
+                }
+                kept.add(point);
+                previousReturn = pointReturn;
+            }
+        }
+        return kept;
+    }
+}
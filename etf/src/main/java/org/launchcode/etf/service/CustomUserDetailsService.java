@@ -1,11 +1,12 @@
 package org.launchcode.etf.service;
 
-import eu.fraho.spring.securityJwt.base.dto.JwtUser;
 import org.launchcode.etf.dao.UserDao;
 import org.launchcode.etf.model.User;
+import org.launchcode.etf.security.EtfJwtUser;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Component;
@@ -14,7 +15,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Component
-public class CustomUserDetailsService implements UserDetailsService {
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
     private final UserDao userDao;
 
     public CustomUserDetailsService(UserDao userDao) {
@@ -37,8 +38,12 @@ public class CustomUserDetailsService implements UserDetailsService {
         authorities.add(new SimpleGrantedAuthority("ROLE_" + user.getRole()));
 
         // Create JwtUser object with necessary fields
-        // JwtUser is a class that extends UserDetails
-        JwtUser jwtUser = new JwtUser();
+        // JwtUser is a class that extends UserDetails. EtfJwtUser adds the role and credential version,
+        // and fraho writes id, role and credential version into the token it issues from this object.
+        EtfJwtUser jwtUser = new EtfJwtUser();
+        jwtUser.setId(user.getId());
+        jwtUser.setRole(user.getRole());
+        jwtUser.setCredentialVersion(user.getCredentialVersion());
         jwtUser.setUsername(user.getUsername());
         jwtUser.setPassword(user.getPassword());
         jwtUser.setAuthorities(authorities);
@@ -50,4 +55,15 @@ public class CustomUserDetailsService implements UserDetailsService {
         
         return jwtUser;
     }
-}
\ No newline at end of file
+
+    // Called by DaoAuthenticationProvider after a successful login when the stored hash has a different
+    // BCrypt cost than the calibrated one. The password itself didn't change, so tokens stay valid.
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        EtfJwtUser jwtUser = (EtfJwtUser) user;
+        if (userDao.rehashPassword(jwtUser.getId(), jwtUser.getPassword(), newPassword)) {
+            jwtUser.setPassword(newPassword);
+        }
+        return jwtUser;
+    }
+}
@@ -0,0 +1,69 @@
+package org.launchcode.etf.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Replays recorded quotes (etf.quotes.source=file): one "etf_id,price" per line of etf.quotes.file, in order, at
+// etf.quotes.rate, from the top again at the end if etf.quotes.loop is set. Blank lines, lines starting with '#'
+// and a header line are skipped. The whole file is read into arrays first, so replaying allocates nothing.
+public class FileQuoteSource implements QuoteSource {
+    private final Path file;
+    private final double rate;
+    private final boolean loop;
+    private volatile boolean stopped;
+
+    public FileQuoteSource(Path file, double rate, boolean loop) {
+        this.file = file;
+        this.rate = rate;
+        this.loop = loop;
+    }
+
+    @Override
+    public void run(QuoteSink sink) throws IOException {
+        long[] etfIds = new long[1024];
+        double[] prices = new double[1024];
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            for (int number = 1; (line = reader.readLine()) != null; number++) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#") || (number == 1 && !Character.isDigit(line.charAt(0)))) {
+                    continue;
+                }
+                int comma = line.indexOf(',');
+                if (count == etfIds.length) {
+                    etfIds = Arrays.copyOf(etfIds, count * 2);
+                    prices = Arrays.copyOf(prices, count * 2);
+                }
+                try {
+                    etfIds[count] = Long.parseLong(line.substring(0, comma).trim());
+                    prices[count] = Double.parseDouble(line.substring(comma + 1).trim());
+                } catch (RuntimeException e) {
+                    throw new IOException(file + " line " + number + ": expected etf_id,price but got " + line);
+                }
+                count++;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+
+        Pacer pacer = new Pacer(rate);
+        long sent = 0;
+        do {
+            for (int k = 0; k < count && !stopped; k++) {
+                sink.onQuote(etfIds[k], prices[k]);
+                pacer.pace(++sent);
+            }
+        } while (loop && !stopped);
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+    }
+}
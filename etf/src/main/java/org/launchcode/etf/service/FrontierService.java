@@ -0,0 +1,155 @@
+package org.launchcode.etf.service;
+
+import org.launchcode.etf.dao.PortfolioEtfDao;
+import org.launchcode.etf.dto.CacheStats;
+import org.launchcode.etf.dto.FrontierPoint;
+import org.launchcode.etf.dto.PortfolioFrontier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Efficient frontiers of portfolios' ETFs, from the mean returns and covariances of RiskService's shared
+// CovarianceModel (annualized). CriticalLine does the solving.
+//
+// A frontier only depends on which tickers are held, not how much of each, so it's memoized by the sorted ticker
+// set, the parameters and the model's price version: the many public portfolios built from the same few ETFs share
+// one entry, and new prices simply stop matching the old entries, which then age out. The least recently used
+// entries are dropped past etf.cache.frontiers.max-size. Two requests that miss at once both solve; the second put wins.
+@Service
+public class FrontierService {
+    public static final int DEFAULT_POINTS = 20;
+    public static final int MAX_POINTS = 100;
+    // On the diagonal, as a share of the average variance: tickers that move exactly together (or more tickers than
+    // observations) would make the covariance singular.
+    private static final double RIDGE = 1e-8;
+    // Weights below this are rounding, and left out of FrontierPoint.weights.
+    private static final double MIN_WEIGHT = 1e-9;
+
+    private final PortfolioEtfDao portfolioEtfDao;
+    private final RiskService riskService;
+    private final int maxSize;
+
+    // Access-ordered, so the first entry is always the least recently used one.
+    private final LinkedHashMap<String, List<FrontierPoint>> byKey = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public FrontierService(PortfolioEtfDao portfolioEtfDao, RiskService riskService,
+                           @Value("${etf.cache.frontiers.max-size:1000}") int maxSize) {
+        this.portfolioEtfDao = portfolioEtfDao;
+        this.riskService = riskService;
+        this.maxSize = maxSize;
+    }
+
+    // Throws IllegalArgumentException when the portfolio has no ETFs, none of them has enough price history, or
+    // maxWeight is too small to invest everything in the ones that do.
+    public PortfolioFrontier frontier(Long portfolioId, int points, double maxWeight) {
+        Map<String, BigDecimal> tickerWeights = portfolioEtfDao.findTickerWeights(List.of(portfolioId)).get(portfolioId);
+        if (tickerWeights == null) {
+            throw new IllegalArgumentException("Portfolio has no ETFs");
+        }
+        CovarianceModel model = riskService.getModel();
+
+        // Sorted, so the same ETFs make the same key in whatever order the portfolio holds them.
+        Map<String, Double> byTicker = new TreeMap<>();
+        List<String> excluded = new ArrayList<>();
+        for (Map.Entry<String, BigDecimal> entry : tickerWeights.entrySet()) {
+            String ticker = entry.getKey().trim().toUpperCase(Locale.ROOT);
+            if (model.indexOf(ticker) < 0) {
+                excluded.add(entry.getKey());
+            } else {
+                byTicker.merge(ticker, entry.getValue().doubleValue(), Double::sum);
+            }
+        }
+        if (byTicker.isEmpty()) {
+            throw new IllegalArgumentException("None of the portfolio's ETFs has enough price history");
+        }
+        int n = byTicker.size();
+        if (maxWeight * n < 1) {
+            throw new IllegalArgumentException("maxWeight must be at least 1/" + n + " to invest in " + n + " ETFs");
+        }
+
+        List<String> tickers = new ArrayList<>(byTicker.keySet());
+        double[] mean = new double[n];
+        double[] covariance = new double[n * n];
+        double averageVariance = 0;
+        for (int i = 0; i < n; i++) {
+            int row = model.indexOf(tickers.get(i));
+            mean[i] = model.getMeanReturn(row) * RiskService.TRADING_DAYS;
+            for (int j = 0; j < n; j++) {
+                covariance[i * n + j] = model.getCovariance(row, model.indexOf(tickers.get(j))) * RiskService.TRADING_DAYS;
+            }
+            averageVariance += covariance[i * n + i] / n;
+        }
+        double ridge = Math.max(RIDGE * averageVariance, Double.MIN_NORMAL);
+        for (int i = 0; i < n; i++) {
+            covariance[i * n + i] += ridge;
+        }
+
+        String key = model.getPriceVersion() + "|" + points + "|" + maxWeight + "|" + String.join(",", tickers);
+        List<FrontierPoint> frontier;
+        synchronized (this) {
+            frontier = byKey.get(key);
+        }
+        if (frontier != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            frontier = new ArrayList<>();
+            List<double[]> turningPoints = CriticalLine.turningPoints(mean, covariance, n, maxWeight);
+            for (double[] weights : CriticalLine.sample(turningPoints, mean, points)) {
+                frontier.add(point(tickers, mean, covariance, weights));
+            }
+            frontier = Collections.unmodifiableList(frontier);
+            put(key, frontier);
+        }
+
+        double totalWeight = byTicker.values().stream().mapToDouble(Double::doubleValue).sum();
+        double[] weights = new double[n];
+        for (int i = 0; i < n; i++) {
+            weights[i] = totalWeight > 0 ? byTicker.get(tickers.get(i)) / totalWeight : 1.0 / n;
+        }
+        return new PortfolioFrontier(portfolioId, model.getAsOf(), model.getObservations(), tickers, excluded, maxWeight,
+                point(tickers, mean, covariance, weights), frontier);
+    }
+
+    public CacheStats getStats() {
+        int size;
+        synchronized (this) {
+            size = byKey.size();
+        }
+        return new CacheStats(hits.get(), misses.get(), evictions.get(), size, maxSize);
+    }
+
+    private synchronized void put(String key, List<FrontierPoint> frontier) {
+        byKey.put(key, frontier);
+        Iterator<List<FrontierPoint>> eldest = byKey.values().iterator();
+        while (byKey.size() > maxSize && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static FrontierPoint point(List<String> tickers, double[] mean, double[] covariance, double[] weights) {
+        Map<String, Double> byTicker = new LinkedHashMap<>();
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] >= MIN_WEIGHT) {
+                byTicker.put(tickers.get(i), weights[i]);
+            }
+        }
+        return new FrontierPoint(CriticalLine.dot(mean, weights),
+                Math.sqrt(Math.max(0, CriticalLine.variance(covariance, weights))), Collections.unmodifiableMap(byTicker));
+    }
+}
@@ -0,0 +1,25 @@
+package org.launchcode.etf.service;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+// Thrown by BoundedPasswordEncoder when the hashing pool is full.
+// Spring turns it into a 503 and copies the Retry-After header onto the response.
+public class HashingUnavailableException extends ResponseStatusException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public HashingUnavailableException(long retryAfterSeconds) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, "Server is busy, please try again shortly");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        return headers;
+    }
+}
@@ -0,0 +1,248 @@
+package org.launchcode.etf.service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongToDoubleFunction;
+
+// The live NAV of every portfolio that holds an ETF, and who holds what, as flat arrays (see QuoteFeed).
+//
+// A portfolio's NAV is what BASE put into it at reference prices is worth at the latest ones: BASE times the sum of
+// share * price / reference over its holdings, share being the holding's weight over the portfolio's total weight.
+// An ETF's reference is its last close in PriceStore, or else its first quote; until it has one its holdings count
+// at par. So a quote moving an ETF from old to price changes each holder's NAV by BASE * share * (price - old) /
+// reference, and apply() only visits the holders of that ETF: the first held[etfId] entries of holders[etfId]
+// (their slots) and shares[etfId].
+//
+// Portfolios are slots, reused once a portfolio holds nothing any more. set() changes one portfolio's holdings,
+// touching only the ETFs it held or holds. Their NAVs (double bits) and dirty flags are atomic arrays, so the
+// publisher reads them while the feed writes, and so are the reference prices, which apply() sets on an ETF's first
+// quote while QuoteFeed.refresh() reads them. Only one thread may apply quotes or set holdings at a time (QuoteFeed
+// holds its lock for both); other threads may only call slot(), nav(), takeDirty(), reference(), portfolios() and
+// holdings(), and holderIds() only while nobody calls set().
+final class NavBook {
+    static final double BASE = 100;
+    private static final int[] NO_SLOTS = new int[0];
+    private static final double[] NO_SHARES = new double[0];
+    private static final long NONE = Double.doubleToRawLongBits(Double.NaN);
+
+    private final Map<Long, Integer> slots = new ConcurrentHashMap<>();
+    // By slot: the portfolio, and its ETFs (ascending) and weights as last set.
+    private long[] portfolioIds = new long[16];
+    private long[][] etfs = new long[16][];
+    private double[][] weights = new double[16][];
+    private int[] free = new int[16];
+    private int freeCount;
+    private int slotCount;
+    // Replaced by larger copies as slots are added, by the thread that also calls takeDirty().
+    private volatile AtomicLongArray nav = new AtomicLongArray(16);
+    private volatile AtomicIntegerArray dirty = new AtomicIntegerArray(16);
+    // By ETF id.
+    private int[][] holders = new int[0][];
+    private double[][] shares = new double[0][];
+    private int[] held = new int[0];
+    // Double bits, NaN for none; replaced by a larger copy, like nav, by the thread that applies and sets.
+    private volatile AtomicLongArray reference = new AtomicLongArray(0);
+    private volatile int holdings;
+
+    // count links, {portfolioIds[k], etfIds[k], weights[k]}, sorted by portfolio id and then ETF id. references gives
+    // an ETF's reference price (NaN for none yet) and prices its latest one (NaN for none); a reference is needed for
+    // every ETF that has a price. Every NAV starts dirty.
+    static NavBook build(long[] portfolioIds, long[] etfIds, double[] weights, int count,
+                         LongToDoubleFunction references, LongToDoubleFunction prices) {
+        NavBook book = new NavBook();
+        for (int start = 0; start < count; ) {
+            int end = start;
+            while (end < count && portfolioIds[end] == portfolioIds[start]) {
+                end++;
+            }
+            book.set(portfolioIds[start], Arrays.copyOfRange(etfIds, start, end), Arrays.copyOfRange(weights, start, end),
+                     references, prices);
+            start = end;
+        }
+        return book;
+    }
+
+    // Makes etfIds (ascending) with weights the portfolio's holdings, none taking it out of the book, and works out
+    // its NAV again at the latest prices, marking it dirty. references and prices are as for build(). Returns false,
+    // changing nothing, when those already were its holdings.
+    boolean set(long portfolioId, long[] etfIds, double[] weights, LongToDoubleFunction references, LongToDoubleFunction prices) {
+        Integer existing = slots.get(portfolioId);
+        if (existing == null ? etfIds.length == 0 : Arrays.equals(etfs[existing], etfIds) && Arrays.equals(this.weights[existing], weights)) {
+            return false;
+        }
+        int slot = existing == null ? allocate(portfolioId) : existing;
+        if (existing != null) {
+            for (long etfId : etfs[slot]) {
+                removeHolder((int) etfId, slot);
+            }
+            holdings -= etfs[slot].length;
+        }
+        if (etfIds.length == 0) {
+            slots.remove(portfolioId);
+            etfs[slot] = null;
+            this.weights[slot] = null;
+            dirty.set(slot, 0);
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, freeCount * 2);
+            }
+            free[freeCount++] = slot;
+            return true;
+        }
+
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        double value = 0;
+        for (int k = 0; k < etfIds.length; k++) {
+            int etfId = (int) etfIds[k];
+            // Weights of 0 all round would leave nothing to divide by: hold them equally then.
+            double share = total > 0 ? weights[k] / total : 1.0 / etfIds.length;
+            addHolder(etfId, slot, share);
+            double reference = reference(etfId);
+            if (Double.isNaN(reference)) {
+                reference = references.applyAsDouble(etfId);
+                this.reference.set(etfId, Double.doubleToRawLongBits(reference));
+            }
+            double price = prices.applyAsDouble(etfId);
+            value += share * (Double.isNaN(price) || Double.isNaN(reference) ? 1 : price / reference);
+        }
+        etfs[slot] = etfIds;
+        this.weights[slot] = weights;
+        holdings += etfIds.length;
+        nav.set(slot, Double.doubleToRawLongBits(BASE * value));
+        dirty.set(slot, 1);
+        // Last, so nobody finds the slot before its NAV is in.
+        slots.put(portfolioId, slot);
+        return true;
+    }
+
+    // A quote moved etfId from old (NaN when it had none) to price; returns the number of portfolios it moved.
+    int apply(long etfId, double old, double price) {
+        AtomicLongArray references = this.reference;
+        if (etfId >= references.length()) {
+            return 0;
+        }
+        int e = (int) etfId;
+        double reference = Double.longBitsToDouble(references.get(e));
+        if (Double.isNaN(reference)) {
+            reference = Double.isNaN(old) ? price : old;
+            references.set(e, Double.doubleToRawLongBits(reference));
+        }
+        double change = BASE * (price - (Double.isNaN(old) ? reference : old)) / reference;
+        if (change == 0) {
+            return 0;
+        }
+        AtomicLongArray nav = this.nav;
+        AtomicIntegerArray dirty = this.dirty;
+        int[] slots = holders[e];
+        double[] share = shares[e];
+        for (int k = 0; k < held[e]; k++) {
+            int slot = slots[k];
+            // Only this thread writes, so release stores will do: no fence per holder, and readers still see whole values.
+            nav.setRelease(slot, Double.doubleToRawLongBits(Double.longBitsToDouble(nav.getPlain(slot)) + share[k] * change));
+            dirty.setRelease(slot, 1);
+        }
+        return held[e];
+    }
+
+    // The portfolio's slot, or -1 when it holds nothing.
+    int slot(long portfolioId) {
+        Integer slot = slots.get(portfolioId);
+        return slot == null ? -1 : slot;
+    }
+
+    double nav(int slot) {
+        return Double.longBitsToDouble(nav.get(slot));
+    }
+
+    // Whether the slot's NAV moved since the last call, clearing the flag.
+    boolean takeDirty(int slot) {
+        return dirty.getAndSet(slot, 0) != 0;
+    }
+
+    // The reference price of etfId, NaN when it has none (or nobody ever held it).
+    double reference(long etfId) {
+        AtomicLongArray references = this.reference;
+        return etfId < references.length() ? Double.longBitsToDouble(references.get((int) etfId)) : Double.NaN;
+    }
+
+    // The portfolios holding etfId.
+    long[] holderIds(long etfId) {
+        int count = etfId < held.length ? held[(int) etfId] : 0;
+        long[] ids = new long[count];
+        for (int k = 0; k < count; k++) {
+            ids[k] = portfolioIds[holders[(int) etfId][k]];
+        }
+        return ids;
+    }
+
+    int portfolios() {
+        return slots.size();
+    }
+
+    int holdings() {
+        return holdings;
+    }
+
+    private int allocate(long portfolioId) {
+        int slot = freeCount > 0 ? free[--freeCount] : slotCount++;
+        if (slot == portfolioIds.length) {
+            int capacity = slot * 2;
+            portfolioIds = Arrays.copyOf(portfolioIds, capacity);
+            etfs = Arrays.copyOf(etfs, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+            AtomicLongArray navs = new AtomicLongArray(capacity);
+            AtomicIntegerArray flags = new AtomicIntegerArray(capacity);
+            for (int s = 0; s < slot; s++) {
+                navs.set(s, nav.get(s));
+                flags.set(s, dirty.get(s));
+            }
+            nav = navs;
+            dirty = flags;
+        }
+        portfolioIds[slot] = portfolioId;
+        return slot;
+    }
+
+    private void addHolder(int etfId, int slot, double share) {
+        if (etfId >= held.length) {
+            int capacity = Math.max(etfId + 1, held.length * 2);
+            holders = Arrays.copyOf(holders, capacity);
+            shares = Arrays.copyOf(shares, capacity);
+            int from = held.length;
+            held = Arrays.copyOf(held, capacity);
+            AtomicLongArray references = new AtomicLongArray(capacity);
+            for (int e = 0; e < capacity; e++) {
+                references.set(e, e < from ? reference.get(e) : NONE);
+            }
+            reference = references;
+            Arrays.fill(holders, from, capacity, NO_SLOTS);
+            Arrays.fill(shares, from, capacity, NO_SHARES);
+        }
+        int count = held[etfId];
+        if (count == holders[etfId].length) {
+            holders[etfId] = Arrays.copyOf(holders[etfId], Math.max(4, count * 2));
+            shares[etfId] = Arrays.copyOf(shares[etfId], Math.max(4, count * 2));
+        }
+        holders[etfId][count] = slot;
+        shares[etfId][count] = share;
+        held[etfId] = count + 1;
+    }
+
+    // Holder order doesn't matter, so the last one takes the removed one's place.
+    private void removeHolder(int etfId, int slot) {
+        int last = held[etfId] - 1;
+        for (int k = 0; k <= last; k++) {
+            if (holders[etfId][k] == slot) {
+                holders[etfId][k] = holders[etfId][last];
+                shares[etfId][k] = shares[etfId][last];
+                held[etfId] = last;
+                return;
+            }
+        }
+    }
+}
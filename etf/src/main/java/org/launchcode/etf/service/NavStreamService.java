@@ -0,0 +1,157 @@
+package org.launchcode.etf.service;
+
+import org.launchcode.etf.dto.PortfolioNav;
+import org.launchcode.etf.dto.QuoteStreamStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Pushes live NAVs (QuoteFeed) to the subscribers of /api/portfolios/{id}/stream as Server-Sent Events.
+//
+// Every etf.quotes.tick-ms a tick sends one "nav" event to each subscriber of a portfolio whose NAV moved since the
+// last tick, however many quotes moved it, so a busy feed costs subscribers one event per tick, not one per quote.
+// Ticks run on their own "nav-stream" thread rather than as @Scheduled jobs, which share one thread with the
+// nightly backtest. A tick without subscribers does nothing, so the book isn't even loaded until someone listens,
+// and without a QuoteSource no NAV ever moves, so there are no ticks. A subscriber gets the current NAV straight
+// away if the book has it (else with the first tick), and is dropped once its connection fails or times out
+// (etf.quotes.stream-timeout-ms); the client reconnects then, as EventSource does by itself.
+@Service
+public class NavStreamService implements InitializingBean, DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(NavStreamService.class);
+
+    private final QuoteFeed quoteFeed;
+    private final long tickMillis;
+    private final long timeoutMillis;
+    private final int maxSubscribers;
+    private final ConcurrentHashMap<Long, CopyOnWriteArrayList<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final AtomicLong events = new AtomicLong();
+    private ScheduledExecutorService ticker;
+
+    public NavStreamService(QuoteFeed quoteFeed,
+                            @Value("${etf.quotes.tick-ms:250}") long tickMillis,
+                            @Value("${etf.quotes.stream-timeout-ms:1800000}") long timeoutMillis,
+                            @Value("${etf.quotes.max-subscribers:10000}") int maxSubscribers) {
+        this.quoteFeed = quoteFeed;
+        this.tickMillis = tickMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.maxSubscribers = maxSubscribers;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        // 0 turns ticks off; tests call tick() themselves.
+        if (tickMillis <= 0 || !quoteFeed.hasSource()) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "nav-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(() -> {
+            try {
+                tick();
+            } catch (RuntimeException e) {
+                // An exception would cancel every later tick.
+                log.warn("NAV stream tick failed", e);
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        subscribers.values().forEach(emitters -> emitters.forEach(SseEmitter::complete));
+        subscribers.clear();
+    }
+
+    // The caller checks that the user may see the portfolio. Throws IllegalStateException when there are
+    // etf.quotes.max-subscribers already.
+    public SseEmitter subscribe(Long portfolioId) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new IllegalStateException("Too many NAV stream subscribers");
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        subscribers.computeIfAbsent(portfolioId, id -> new CopyOnWriteArrayList<>()).add(emitter);
+        emitter.onCompletion(() -> remove(portfolioId, emitter));
+        emitter.onTimeout(() -> remove(portfolioId, emitter));
+        emitter.onError(e -> remove(portfolioId, emitter));
+
+        // Whatever the book has now: bringing it up to date is the ticker's job, not the request thread's.
+        PortfolioNav nav = quoteFeed.nav(portfolioId);
+        if (nav != null) {
+            send(portfolioId, emitter, nav);
+        }
+        return emitter;
+    }
+
+    // Sends the NAVs that moved since the last tick; returns the number of events sent.
+    public int tick() {
+        if (subscriberCount.get() == 0) {
+            return 0;
+        }
+        quoteFeed.refresh();
+        NavBook book = quoteFeed.book();
+        int sent = 0;
+        for (Map.Entry<Long, CopyOnWriteArrayList<SseEmitter>> entry : subscribers.entrySet()) {
+            int slot = book.slot(entry.getKey());
+            if (slot < 0 || !book.takeDirty(slot)) {
+                continue;
+            }
+            PortfolioNav nav = quoteFeed.nav(entry.getKey());
+            for (SseEmitter emitter : entry.getValue()) {
+                if (send(entry.getKey(), emitter, nav)) {
+                    sent++;
+                }
+            }
+        }
+        events.addAndGet(sent);
+        return sent;
+    }
+
+    public QuoteStreamStats getStats() {
+        NavBook book = quoteFeed.book();
+        return new QuoteStreamStats(quoteFeed.getSourceName(), quoteFeed.isRunning(), quoteFeed.getQuotes(),
+                quoteFeed.getRejected(), book.portfolios(), book.holdings(), quoteFeed.getRebuilds(),
+                quoteFeed.getChangesApplied(), subscriberCount.get(), events.get());
+    }
+
+    private boolean send(Long portfolioId, SseEmitter emitter, PortfolioNav nav) {
+        try {
+            emitter.send(SseEmitter.event().name("nav").data(nav));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // The client went away (or the emitter already completed).
+            remove(portfolioId, emitter);
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    private void remove(Long portfolioId, SseEmitter emitter) {
+        List<SseEmitter> emitters = subscribers.get(portfolioId);
+        if (emitters != null && emitters.remove(emitter)) {
+            subscriberCount.decrementAndGet();
+            subscribers.computeIfPresent(portfolioId, (id, list) -> list.isEmpty() ? null : list);
+        }
+    }
+}
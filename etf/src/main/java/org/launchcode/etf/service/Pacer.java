@@ -0,0 +1,28 @@
+package org.launchcode.etf.service;
+
+import java.util.concurrent.locks.LockSupport;
+
+// Holds a source to a rate, in quotes per second (0 or less for as fast as it can). Sleeping per quote would be
+// slower than the rate at tens of thousands a second, so it sleeps off whatever it is ahead about once a
+// millisecond's worth of quotes.
+final class Pacer {
+    private final double rate;
+    private final long batch;
+    private final long start = System.nanoTime();
+
+    Pacer(double rate) {
+        this.rate = rate;
+        this.batch = Math.max(1, (long) (rate / 1000));
+    }
+
+    // Called after every quote, sent being the number so far.
+    void pace(long sent) {
+        if (rate <= 0 || sent % batch != 0) {
+            return;
+        }
+        long ahead = start + (long) (sent * 1e9 / rate) - System.nanoTime();
+        if (ahead > 0) {
+            LockSupport.parkNanos(ahead);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.launchcode.etf.service;
+
+import org.launchcode.etf.dao.PriceSeries;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+// Adjusted closes of several tickers on the days all of them traded, as one flat array: day t's prices are
+// prices[t * assets] .. prices[t * assets + assets - 1], in the order the series were given. Keeping a day's
+// prices next to each other is what the per-day loops of the analytics want.
+public final class PriceMatrix {
+    private final int assets;
+    private final int days;
+    private final int[] epochDays;
+    private final double[] prices;
+
+    PriceMatrix(int assets, int days, int[] epochDays, double[] prices) {
+        this.assets = assets;
+        this.days = days;
+        this.epochDays = epochDays;
+        this.prices = prices;
+    }
+
+    // The days from from to to (both inclusive, null for open) on which every series has a bar.
+    public static PriceMatrix align(List<PriceSeries> series, LocalDate from, LocalDate to) {
+        int assets = series.size();
+        PriceSeries[] ranges = new PriceSeries[assets];
+        int capacity = Integer.MAX_VALUE;
+        for (int i = 0; i < assets; i++) {
+            ranges[i] = series.get(i).range(from, to);
+            capacity = Math.min(capacity, ranges[i].size());
+        }
+        if (assets == 0 || capacity == 0) {
+            return new PriceMatrix(assets, 0, new int[0], new double[0]);
+        }
+
+        int[] epochDays = new int[capacity];
+        double[] prices = new double[capacity * assets];
+        int[] next = new int[assets];
+        int days = 0;
+        // Walk all the series at once, always catching up to the latest of their current days.
+        walk:
+        while (true) {
+            int day = Integer.MIN_VALUE;
+            for (int i = 0; i < assets; i++) {
+                day = Math.max(day, ranges[i].getEpochDay(next[i]));
+            }
+            boolean common = true;
+            for (int i = 0; i < assets; i++) {
+                while (ranges[i].getEpochDay(next[i]) < day) {
+                    if (++next[i] == ranges[i].size()) {
+                        break walk;
+                    }
+                }
+                common &= ranges[i].getEpochDay(next[i]) == day;
+            }
+            if (!common) {
+                continue;
+            }
+            epochDays[days] = day;
+            for (int i = 0; i < assets; i++) {
+                prices[days * assets + i] = ranges[i].getAdjustedClose(next[i]);
+            }
+            days++;
+            for (int i = 0; i < assets; i++) {
+                if (++next[i] == ranges[i].size()) {
+                    break walk;
+                }
+            }
+        }
+        return new PriceMatrix(assets, days, Arrays.copyOf(epochDays, days), Arrays.copyOf(prices, days * assets));
+    }
+
+    public int getAssets() { return assets; }
+
+    public int getDays() { return days; }
+
+    public int[] getEpochDays() { return epochDays; }
+
+    public double[] getPrices() { return prices; }
+}
@@ -0,0 +1,335 @@
+package org.launchcode.etf.service;
+
+import org.launchcode.etf.dao.EtfChangedEvent;
+import org.launchcode.etf.dao.LatestPrices;
+import org.launchcode.etf.dao.PortfolioChangedEvent;
+import org.launchcode.etf.dao.PortfolioEtfDao;
+import org.launchcode.etf.dao.PortfolioHoldingsChangedEvent;
+import org.launchcode.etf.dao.PriceSeries;
+import org.launchcode.etf.dao.PriceStore;
+import org.launchcode.etf.dto.PortfolioNav;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.LongToDoubleFunction;
+import java.util.stream.Collectors;
+
+// Live prices and portfolio NAVs. The QuoteSource bean, if any, runs on the "quote-feed" thread and sends every
+// quote to onQuote(), which stores it in LatestPrices and moves the NAV of each portfolio holding that ETF (NavBook).
+// A quote costs one array write plus one add per holder, and allocates nothing; NavStreamService publishes the NAVs
+// that moved once per tick.
+//
+// Quotes are applied one at a time under this object's lock, which with a single feed thread is never contended;
+// changing the book takes it too, so changed holdings always start from the prices the book had seen. Readers of
+// LatestPrices and NAVs never lock.
+//
+// The book is loaded from portfolio_etf by the first refresh(), which NavStreamService only calls while someone
+// is subscribed. After that, commits are applied a portfolio at a time by the next refresh(): a
+// PortfolioHoldingsChangedEvent reads that portfolio's links again, and a PortfolioChangedEvent or EtfChangedEvent
+// of a portfolio or ETF in the book checks whether it lost links (deletes cascade to portfolio_etf), so renames and
+// other edits find nothing to change. Only a user delete, which takes an unknown set of portfolios and ETFs with it,
+// or more than MAX_PENDING changes piling up while nobody is subscribed, loads the whole table again. Reference
+// prices carry over either way, so nobody's NAV is reset.
+@Service
+public class QuoteFeed implements QuoteSink, InitializingBean, DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(QuoteFeed.class);
+    private static final int MAX_PENDING = 10_000;
+    // Portfolios read per query when applying changes.
+    private static final int BATCH = 500;
+
+    private final LatestPrices latestPrices;
+    private final PortfolioEtfDao portfolioEtfDao;
+    private final PriceStore priceStore;
+    private final QuoteSource source;
+    private final Object refreshLock = new Object();
+    private final AtomicBoolean reload = new AtomicBoolean(true);
+    private final Set<Long> changedHoldings = ConcurrentHashMap.newKeySet();
+    private final Set<Long> changedPortfolios = ConcurrentHashMap.newKeySet();
+    private final Set<Long> changedEtfs = ConcurrentHashMap.newKeySet();
+    private volatile NavBook book = new NavBook();
+    private volatile Thread thread;
+    // Only written by the feed, or refresh(), under the lock.
+    private volatile long quotes;
+    private volatile long rejected;
+    private volatile long rebuilds;
+    private volatile long changesApplied;
+
+    public QuoteFeed(LatestPrices latestPrices, PortfolioEtfDao portfolioEtfDao, PriceStore priceStore,
+                     ObjectProvider<QuoteSource> source) {
+        this.latestPrices = latestPrices;
+        this.portfolioEtfDao = portfolioEtfDao;
+        this.priceStore = priceStore;
+        this.source = source.getIfAvailable();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (source == null) {
+            return;
+        }
+        Thread feed = new Thread(() -> {
+            try {
+                source.run(this);
+                log.info("Quote source {} ended after {} quotes", source.getClass().getSimpleName(), quotes);
+            } catch (Exception e) {
+                log.warn("Quote source {} failed", source.getClass().getSimpleName(), e);
+            }
+        }, "quote-feed");
+        feed.setDaemon(true);
+        thread = feed;
+        feed.start();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        Thread feed = thread;
+        if (feed != null) {
+            source.stop();
+            feed.join(1000);
+        }
+    }
+
+    // Prices that aren't positive, and ETF ids out of range, are counted and dropped.
+    @Override
+    public synchronized void onQuote(long etfId, double price) {
+        if (etfId < 0 || etfId > LatestPrices.MAX_ETF_ID || !(price > 0) || price == Double.POSITIVE_INFINITY) {
+            rejected++;
+            return;
+        }
+        quotes++;
+        book.apply(etfId, latestPrices.put(etfId, price), price);
+    }
+
+    // The portfolio's NAV (see NavBook), or null when it holds no ETFs.
+    public PortfolioNav nav(Long portfolioId) {
+        NavBook current = book;
+        int slot = current.slot(portfolioId);
+        if (slot < 0) {
+            return null;
+        }
+        double nav = current.nav(slot);
+        // The slot may have been freed, and even taken by another portfolio, while we read.
+        if (current.slot(portfolioId) != slot) {
+            return null;
+        }
+        return new PortfolioNav(portfolioId, nav, nav / NavBook.BASE - 1, Instant.now());
+    }
+
+    // Brings the book up to date with what was committed since the last call (see above). NavStreamService calls it
+    // on its own thread, before every tick that has subscribers.
+    public void refresh() {
+        synchronized (refreshLock) {
+            if (reload.getAndSet(false)) {
+                load();
+                return;
+            }
+            // Only this method changes who holds what, so the book can be read outside the lock here.
+            NavBook current = book;
+            Set<Long> portfolioIds = new HashSet<>();
+            drain(changedHoldings, portfolioIds::add);
+            drain(changedPortfolios, portfolioId -> {
+                if (current.slot(portfolioId) >= 0) {
+                    portfolioIds.add(portfolioId);
+                }
+            });
+            drain(changedEtfs, etfId -> {
+                long[] holders = current.holderIds(etfId);
+                if (holders.length > 0) {
+                    long[] still = portfolioEtfDao.findPortfolioIdsByEtfId(etfId);
+                    for (long portfolioId : holders) {
+                        if (Arrays.binarySearch(still, portfolioId) < 0) {
+                            portfolioIds.add(portfolioId);
+                        }
+                    }
+                }
+            });
+            if (!portfolioIds.isEmpty()) {
+                apply(current, portfolioIds);
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        Thread feed = thread;
+        return feed != null && feed.isAlive();
+    }
+
+    public boolean hasSource() {
+        return source != null;
+    }
+
+    public String getSourceName() {
+        return source == null ? null : source.getClass().getSimpleName();
+    }
+
+    public long getQuotes() { return quotes; }
+
+    public long getRejected() { return rejected; }
+
+    public long getRebuilds() { return rebuilds; }
+
+    public long getChangesApplied() { return changesApplied; }
+
+    NavBook book() {
+        return book;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onHoldingsChanged(PortfolioHoldingsChangedEvent event) {
+        pending(changedHoldings, event.getPortfolioId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPortfolioChanged(PortfolioChangedEvent event) {
+        if (event.getPortfolioId() == null) {
+            reload.set(true);
+        } else {
+            pending(changedPortfolios, event.getPortfolioId());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEtfChanged(EtfChangedEvent event) {
+        if (event.getEtfId() == null) {
+            reload.set(true);
+        } else {
+            pending(changedEtfs, event.getEtfId());
+        }
+    }
+
+    private void pending(Set<Long> ids, Long id) {
+        ids.add(id);
+        if (ids.size() > MAX_PENDING) {
+            reload.set(true);
+            ids.clear();
+        }
+    }
+
+    // Reads all of portfolio_etf into a new book. Changes committed while we read stay pending for the next refresh.
+    private void load() {
+        changedHoldings.clear();
+        changedPortfolios.clear();
+        changedEtfs.clear();
+        NavBook old = book;
+        Links links = new Links();
+        portfolioEtfDao.forEachLink(links::add);
+        Map<Long, Double> closes = lastCloses(links, old);
+        synchronized (this) {
+            book = NavBook.build(links.portfolioIds, links.etfIds, links.weights, links.count, references(old, closes),
+                                 latestPrices::get);
+            rebuilds++;
+        }
+    }
+
+    // Reads the links of these portfolios again and sets them in the book; portfolios without any leave it.
+    private void apply(NavBook current, Set<Long> changed) {
+        long[] portfolioIds = changed.stream().mapToLong(Long::longValue).sorted().toArray();
+        Links links = new Links();
+        for (int start = 0; start < portfolioIds.length; start += BATCH) {
+            List<Long> batch = Arrays.stream(portfolioIds, start, Math.min(portfolioIds.length, start + BATCH))
+                    .boxed().collect(Collectors.toList());
+            portfolioEtfDao.forEachLink(batch, links::add);
+        }
+        Map<Long, Double> closes = lastCloses(links, current);
+        synchronized (this) {
+            int k = 0;
+            for (long portfolioId : portfolioIds) {
+                int start = k;
+                while (k < links.count && links.portfolioIds[k] == portfolioId) {
+                    k++;
+                }
+                if (current.set(portfolioId, Arrays.copyOfRange(links.etfIds, start, k), Arrays.copyOfRange(links.weights, start, k),
+                                references(current, closes), latestPrices::get)) {
+                    changesApplied++;
+                }
+            }
+        }
+    }
+
+    // An ETF keeps the reference it had in the book; else it is its last close, or else its latest quote.
+    private LongToDoubleFunction references(NavBook old, Map<Long, Double> closes) {
+        return etfId -> {
+            double reference = old.reference(etfId);
+            if (Double.isNaN(reference)) {
+                reference = closes.getOrDefault(etfId, latestPrices.get(etfId));
+            }
+            return reference;
+        };
+    }
+
+    // The last close in PriceStore of every linked ETF's ticker, by ETF id, for those without a reference in book.
+    private Map<Long, Double> lastCloses(Links links, NavBook book) {
+        Map<String, Double> byTicker = new HashMap<>();
+        Map<Long, Double> byEtf = new HashMap<>();
+        for (int k = 0; k < links.count; k++) {
+            if (!Double.isNaN(book.reference(links.etfIds[k]))) {
+                continue;
+            }
+            Double close = byTicker.computeIfAbsent(links.tickers[k].trim().toUpperCase(Locale.ROOT), ticker -> {
+                try {
+                    PriceSeries series = priceStore.series(ticker);
+                    return series.isEmpty() ? Double.NaN : series.getClose(series.size() - 1);
+                } catch (IllegalArgumentException e) {
+                    // Not a ticker PriceStore can hold.
+                    return Double.NaN;
+                }
+            });
+            if (!close.isNaN()) {
+                byEtf.put(links.etfIds[k], close);
+            }
+        }
+        return byEtf;
+    }
+
+    // Takes the ids out one at a time, so one added meanwhile is either handled now or stays for the next call.
+    private static void drain(Set<Long> ids, Consumer<Long> handler) {
+        for (Iterator<Long> it = ids.iterator(); it.hasNext(); ) {
+            Long id = it.next();
+            it.remove();
+            handler.accept(id);
+        }
+    }
+
+    private static class Links {
+        long[] portfolioIds = new long[1024];
+        long[] etfIds = new long[1024];
+        double[] weights = new double[1024];
+        String[] tickers = new String[1024];
+        int count;
+
+        void add(long portfolioId, long etfId, double weight, String ticker) {
+            if (etfId > LatestPrices.MAX_ETF_ID) {
+                // Never quoted (onQuote drops it), so it would only stay at par.
+                return;
+            }
+            if (count == portfolioIds.length) {
+                portfolioIds = Arrays.copyOf(portfolioIds, count * 2);
+                etfIds = Arrays.copyOf(etfIds, count * 2);
+                weights = Arrays.copyOf(weights, count * 2);
+                tickers = Arrays.copyOf(tickers, count * 2);
+            }
+            portfolioIds[count] = portfolioId;
+            etfIds[count] = etfId;
+            weights[count] = weight;
+            tickers[count] = ticker;
+            count++;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package org.launchcode.etf.service;
+
+// Where a QuoteSource sends its quotes: QuoteFeed.
+@FunctionalInterface
+public interface QuoteSink {
+    // A new price for one etf row. Called from the source's thread, one quote at a time.
+    void onQuote(long etfId, double price);
+}
@@ -0,0 +1,10 @@
+package org.launchcode.etf.service;
+
+// A live price feed. QuoteFeed runs the one QuoteSource bean, if there is one, on its own thread: run() sends
+// quotes to the sink until stop() is called (from another thread) or the feed ends. See QuoteSourceConfig for the
+// built-in simulated and file sources; a real exchange feed is just another bean implementing this.
+public interface QuoteSource {
+    void run(QuoteSink sink) throws Exception;
+
+    void stop();
+}
@@ -0,0 +1,216 @@
+package org.launchcode.etf.service;
+
+import org.launchcode.etf.dao.PortfolioEtfDao;
+import org.launchcode.etf.dao.PriceStore;
+import org.launchcode.etf.dto.PortfolioRisk;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Risk figures of a portfolio at its current weights: annualized volatility, beta to a benchmark ETF, and
+// Value-at-Risk by Monte Carlo. All of them come from the shared CovarianceModel, which is built once over every
+// ticker in PriceStore (on etf.risk.threads, 0 for one per core) and rebuilt the first time it's needed after new
+// prices were appended.
+//
+// The simulation draws correlated daily returns through the Cholesky factor of the holdings' covariance and
+// compounds them over the horizon, so longer horizons aren't just a scaled one-day figure. Paths are split into
+// tasks of PATHS_PER_TASK, each with its own SplittableRandom split from one seeded root in task order, and its own
+// scratch arrays: the same seed gives the same VaR however the tasks are scheduled, and a path allocates nothing.
+@Service
+public class RiskService implements DisposableBean {
+    public static final int DEFAULT_PATHS = 100_000;
+    public static final int MIN_PATHS = 1_000;
+    public static final int MAX_PATHS = 1_000_000;
+    public static final int MAX_HORIZON_DAYS = 252;
+    static final int TRADING_DAYS = 252;
+    private static final int PATHS_PER_TASK = 8192;
+
+    private final PortfolioEtfDao portfolioEtfDao;
+    private final PriceStore priceStore;
+    private final ForkJoinPool pool;
+    private final int windowDays;
+    private volatile CovarianceModel model;
+
+    public RiskService(PortfolioEtfDao portfolioEtfDao, PriceStore priceStore,
+                       @Value("${etf.risk.threads:0}") int threads,
+                       @Value("${etf.risk.window-days:756}") int windowDays) {
+        this.portfolioEtfDao = portfolioEtfDao;
+        this.priceStore = priceStore;
+        this.pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        this.windowDays = windowDays;
+    }
+
+    // The cached model, rebuilt first if prices were appended since it was built.
+    public CovarianceModel getModel() {
+        CovarianceModel current = model;
+        if (current != null && current.getPriceVersion() == priceStore.getVersion()) {
+            return current;
+        }
+        synchronized (this) {
+            current = model;
+            if (current == null || current.getPriceVersion() != priceStore.getVersion()) {
+                current = CovarianceModel.build(priceStore, windowDays, pool);
+                model = current;
+            }
+            return current;
+        }
+    }
+
+    // benchmarkTicker may be null (no beta then). Throws IllegalArgumentException when the portfolio has no ETFs,
+    // none of them has enough price history, or the benchmark has none.
+    public PortfolioRisk risk(Long portfolioId, String benchmarkTicker, int horizonDays, int paths, long seed) {
+        Map<String, BigDecimal> tickerWeights = portfolioEtfDao.findTickerWeights(List.of(portfolioId)).get(portfolioId);
+        if (tickerWeights == null) {
+            throw new IllegalArgumentException("Portfolio has no ETFs");
+        }
+        CovarianceModel model = getModel();
+
+        // PriceStore names tickers in upper case, so "vti" and "VTI" holdings are one asset.
+        Map<String, Double> byTicker = new LinkedHashMap<>();
+        List<String> excluded = new ArrayList<>();
+        for (Map.Entry<String, BigDecimal> entry : tickerWeights.entrySet()) {
+            String ticker = entry.getKey().trim().toUpperCase(Locale.ROOT);
+            if (model.indexOf(ticker) < 0) {
+                excluded.add(entry.getKey());
+            } else {
+                byTicker.merge(ticker, entry.getValue().doubleValue(), Double::sum);
+            }
+        }
+        double totalWeight = byTicker.values().stream().mapToDouble(Double::doubleValue).sum();
+        if (byTicker.isEmpty() || totalWeight <= 0) {
+            throw new IllegalArgumentException("None of the portfolio's ETFs has enough price history");
+        }
+        int benchmark = -1;
+        if (benchmarkTicker != null) {
+            benchmark = model.indexOf(benchmarkTicker.trim().toUpperCase(Locale.ROOT));
+            if (benchmark < 0) {
+                throw new IllegalArgumentException("The benchmark " + benchmarkTicker + " has too little price history");
+            }
+        }
+
+        int assets = byTicker.size();
+        List<String> tickers = new ArrayList<>(byTicker.keySet());
+        int[] indexes = new int[assets];
+        double[] weights = new double[assets];
+        double[] meanReturns = new double[assets];
+        for (int i = 0; i < assets; i++) {
+            indexes[i] = model.indexOf(tickers.get(i));
+            weights[i] = byTicker.get(tickers.get(i)) / totalWeight;
+            meanReturns[i] = model.getMeanReturn(indexes[i]);
+        }
+        double[] covariance = new double[assets * assets];
+        double variance = 0;
+        for (int i = 0; i < assets; i++) {
+            for (int j = 0; j < assets; j++) {
+                covariance[i * assets + j] = model.getCovariance(indexes[i], indexes[j]);
+                variance += weights[i] * weights[j] * covariance[i * assets + j];
+            }
+        }
+        Double beta = null;
+        if (benchmark >= 0) {
+            double covarianceWithBenchmark = 0;
+            for (int i = 0; i < assets; i++) {
+                covarianceWithBenchmark += weights[i] * model.getCovariance(indexes[i], benchmark);
+            }
+            double benchmarkVariance = model.getCovariance(benchmark, benchmark);
+            beta = benchmarkVariance > 0 ? covarianceWithBenchmark / benchmarkVariance : null;
+        }
+
+        double[] returns = simulate(meanReturns, cholesky(covariance, assets), weights, assets, horizonDays, paths, seed);
+        Arrays.sort(returns);
+        return new PortfolioRisk(portfolioId, model.getAsOf(), model.getObservations(), tickers, excluded,
+                Math.sqrt(variance * TRADING_DAYS), benchmarkTicker == null ? null : model.getTickers().get(benchmark), beta,
+                horizonDays, paths, seed, -quantile(returns, 0.05), -quantile(returns, 0.01));
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdownNow();
+    }
+
+    // Returns of paths simulated portfolios over horizonDays, in path order.
+    private double[] simulate(double[] meanReturns, double[] cholesky, double[] weights, int assets, int horizonDays,
+                              int paths, long seed) {
+        double[] returns = new double[paths];
+        SplittableRandom root = new SplittableRandom(seed);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int from = 0; from < paths; from += PATHS_PER_TASK) {
+            int start = from;
+            int end = Math.min(from + PATHS_PER_TASK, paths);
+            SplittableRandom random = root.split();
+            tasks.add(ForkJoinTask.adapt(() -> simulatePaths(meanReturns, cholesky, weights, assets, horizonDays, random,
+                    returns, start, end, new double[assets], new double[assets])));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        return returns;
+    }
+
+    // Fills returns[from .. to - 1], using normals and growth (length assets) as scratch. Each day's returns are
+    // meanReturns + L z for standard normals z, and each holding compounds its own.
+    static void simulatePaths(double[] meanReturns, double[] cholesky, double[] weights, int assets, int horizonDays,
+                              SplittableRandom random, double[] returns, int from, int to, double[] normals, double[] growth) {
+        for (int path = from; path < to; path++) {
+            Arrays.fill(growth, 1);
+            for (int day = 0; day < horizonDays; day++) {
+                for (int i = 0; i < assets; i++) {
+                    normals[i] = random.nextGaussian();
+                }
+                for (int i = 0; i < assets; i++) {
+                    double dailyReturn = meanReturns[i];
+                    int row = i * assets;
+                    for (int j = 0; j <= i; j++) {
+                        dailyReturn += cholesky[row + j] * normals[j];
+                    }
+                    growth[i] *= 1 + dailyReturn;
+                }
+            }
+            double value = 0;
+            for (int i = 0; i < assets; i++) {
+                value += weights[i] * growth[i];
+            }
+            returns[path] = value - 1;
+        }
+    }
+
+    // Lower-triangular L with L L^T = matrix (row-major, size * size). Sample covariances of holdings that move
+    // together can be singular; a pivot that comes out zero or negative leaves its column at zero, which still
+    // reproduces the matrix as closely as it can be.
+    static double[] cholesky(double[] matrix, int size) {
+        double[] factor = new double[size * size];
+        for (int j = 0; j < size; j++) {
+            double pivot = matrix[j * size + j];
+            for (int k = 0; k < j; k++) {
+                pivot -= factor[j * size + k] * factor[j * size + k];
+            }
+            if (pivot <= 1e-18) {
+                continue;
+            }
+            double diagonal = Math.sqrt(pivot);
+            factor[j * size + j] = diagonal;
+            for (int i = j + 1; i < size; i++) {
+                double sum = matrix[i * size + j];
+                for (int k = 0; k < j; k++) {
+                    sum -= factor[i * size + k] * factor[j * size + k];
+                }
+                factor[i * size + j] = sum / diagonal;
+            }
+        }
+        return factor;
+    }
+
+    // The value below which a share probability of the sorted values lie.
+    private static double quantile(double[] sorted, double probability) {
+        return sorted[(int) Math.floor(probability * (sorted.length - 1))];
+    }
+}
@@ -0,0 +1,76 @@
+package org.launchcode.etf.service;
+
+import org.launchcode.etf.dao.EtfDao;
+import org.launchcode.etf.dao.PriceSeries;
+import org.launchcode.etf.dao.PriceStore;
+import org.launchcode.etf.model.Etf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+
+// Made-up quotes for trying the feed out (etf.quotes.source=simulated): each quote picks a ticker at random and
+// moves its price by a random walk step, starting from its last close in PriceStore (100 if it has none), then
+// quotes every etf row with that ticker. The ETFs are read once, when it starts.
+public class SimulatedQuoteSource implements QuoteSource {
+    // Per quote, so a ticker quoted a few hundred times a minute wanders a few percent an hour.
+    private static final double STEP = 0.0005;
+
+    private final EtfDao etfDao;
+    private final PriceStore priceStore;
+    private final double rate;
+    private final long seed;
+    private volatile boolean stopped;
+
+    public SimulatedQuoteSource(EtfDao etfDao, PriceStore priceStore, double rate, long seed) {
+        this.etfDao = etfDao;
+        this.priceStore = priceStore;
+        this.rate = rate;
+        this.seed = seed;
+    }
+
+    @Override
+    public void run(QuoteSink sink) {
+        TreeMap<String, List<Long>> idsByTicker = new TreeMap<>();
+        for (Etf etf : etfDao.findAll()) {
+            idsByTicker.computeIfAbsent(etf.getTicker().trim().toUpperCase(Locale.ROOT), ticker -> new ArrayList<>()).add(etf.getId());
+        }
+        if (idsByTicker.isEmpty()) {
+            return;
+        }
+        long[][] ids = new long[idsByTicker.size()][];
+        double[] prices = new double[ids.length];
+        int t = 0;
+        for (var entry : idsByTicker.entrySet()) {
+            ids[t] = entry.getValue().stream().mapToLong(Long::longValue).toArray();
+            prices[t++] = lastClose(entry.getKey());
+        }
+
+        SplittableRandom random = new SplittableRandom(seed);
+        Pacer pacer = new Pacer(rate);
+        for (long sent = 1; !stopped; sent++) {
+            int i = random.nextInt(ids.length);
+            prices[i] *= Math.exp(STEP * random.nextGaussian());
+            for (long id : ids[i]) {
+                sink.onQuote(id, prices[i]);
+            }
+            pacer.pace(sent);
+        }
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+    }
+
+    private double lastClose(String ticker) {
+        try {
+            PriceSeries series = priceStore.series(ticker);
+            return series.isEmpty() ? 100 : series.getClose(series.size() - 1);
+        } catch (IllegalArgumentException e) {
+            return 100;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.launchcode.etf.service;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// BCryptPasswordEncoder.upgradeEncoding only returns true when a stored hash is cheaper than the current strength.
+// This one returns true for any cost other than the target, so hashes follow the calibrated cost in both directions
+// the next time their owner logs in (see DaoAuthenticationProvider and CustomUserDetailsService.updatePassword).
+public class TargetCostBcryptPasswordEncoder extends BCryptPasswordEncoder {
+    private static final Pattern BCRYPT_PATTERN = Pattern.compile("\\A\\$2[abyx]?\\$(\\d\\d)\\$[./0-9A-Za-z]{53}");
+
+    private final int cost;
+
+    public TargetCostBcryptPasswordEncoder(int cost) {
+        super(cost);
+        this.cost = cost;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null || encodedPassword.isEmpty()) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_PATTERN.matcher(encodedPassword);
+        if (!matcher.matches()) {
+            // Not a BCrypt hash, so matches() would have failed and there is nothing to rehash.
+            return false;
+        }
+        return Integer.parseInt(matcher.group(1)) != cost;
+    }
+}
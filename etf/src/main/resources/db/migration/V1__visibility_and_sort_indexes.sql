@@ -0,0 +1,24 @@
+-- Indexes for the visibility filters and sort orders in EtfDao, PortfolioDao and UserDao.
+--
+-- "user_id = ? OR is_public = TRUE" can't be served by one composite index, because the two sides of the OR
+-- lead with different columns. Instead every visibility predicate gets its own (column, sort key) index, and MySQL
+-- merges the two (index_merge union). The owner's rows and the public rows are then the only rows it reads,
+-- instead of every row in the table.
+--
+-- The plain sort-key indexes serve the admin lists and keyset pages, which have no visibility filter.
+-- InnoDB appends the primary key to every secondary index, so (ticker) is really (ticker, id),
+-- which is exactly the keyset order.
+
+CREATE INDEX etf_user_ticker ON etf (user_id, ticker);
+CREATE INDEX etf_public_ticker ON etf (is_public, ticker);
+CREATE INDEX etf_ticker ON etf (ticker);
+CREATE INDEX etf_asset_class ON etf (asset_class);
+
+CREATE INDEX portfolio_user_name ON portfolio (user_id, name);
+-- MySQL drops the index it created for the user_id foreign key once another index starts with user_id, and
+-- (user_id, name) can't serve the userId sort, which is really (user_id, id). So that index comes back by name.
+CREATE INDEX portfolio_user ON portfolio (user_id);
+CREATE INDEX portfolio_public_name ON portfolio (is_public, name);
+CREATE INDEX portfolio_name ON portfolio (name);
+
+CREATE INDEX users_role_username ON users (role, username);
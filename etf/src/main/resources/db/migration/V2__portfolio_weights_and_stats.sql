@@ -0,0 +1,39 @@
+-- Weights on portfolio holdings, and per-portfolio analytics kept up to date by PortfolioStatsDao.
+--
+-- weight is relative: a portfolio's weights don't have to add up to anything, and leaving them all at 1 means
+-- equal weights. portfolio_stats has one row per portfolio that has ever held an ETF, and portfolio_allocation
+-- one row per (portfolio, asset class) it holds now. Every change to portfolio_etf, or to the expense ratio or
+-- asset class of a held ETF, adds or subtracts its share in the same transaction, so reading a portfolio's
+-- analytics never has to look at its holdings.
+--
+-- weighted_expense_sum is SUM(weight * expense_ratio); divided by total_weight it is the weighted expense ratio.
+-- The scales are wide enough that adding and subtracting never rounds, so the sums don't drift.
+
+ALTER TABLE portfolio_etf ADD COLUMN weight DECIMAL(12,6) NOT NULL DEFAULT 1;
+
+CREATE TABLE portfolio_stats (
+    portfolio_id BIGINT PRIMARY KEY,
+    holding_count INT NOT NULL,
+    total_weight DECIMAL(20,6) NOT NULL,
+    weighted_expense_sum DECIMAL(26,10) NOT NULL,
+    FOREIGN KEY (portfolio_id) REFERENCES portfolio(id) ON DELETE CASCADE
+);
+
+CREATE TABLE portfolio_allocation (
+    portfolio_id BIGINT NOT NULL,
+    asset_class VARCHAR(100) NOT NULL,
+    holding_count INT NOT NULL,
+    weight DECIMAL(20,6) NOT NULL,
+    PRIMARY KEY (portfolio_id, asset_class),
+    FOREIGN KEY (portfolio_id) REFERENCES portfolio(id) ON DELETE CASCADE
+);
+
+INSERT INTO portfolio_stats (portfolio_id, holding_count, total_weight, weighted_expense_sum)
+SELECT pe.portfolio_id, COUNT(*), SUM(pe.weight), SUM(pe.weight * e.expense_ratio)
+FROM portfolio_etf pe JOIN etf e ON e.id = pe.etf_id
+GROUP BY pe.portfolio_id;
+
+INSERT INTO portfolio_allocation (portfolio_id, asset_class, holding_count, weight)
+SELECT pe.portfolio_id, e.asset_class, COUNT(*), SUM(pe.weight)
+FROM portfolio_etf pe JOIN etf e ON e.id = pe.etf_id
+GROUP BY pe.portfolio_id, e.asset_class;
@@ -0,0 +1,6 @@
+-- "Which portfolios hold this ETF", for EtfHoldersIndex and the queries it falls back to inside a transaction.
+-- unique_portfolio_etf leads with portfolio_id, so it only answers the other direction. This one reads the
+-- holders of an ETF in portfolio id order without touching the table rows. MySQL drops the index it created
+-- for the etf_id foreign key, since this one starts with etf_id and can serve the foreign key instead.
+
+CREATE INDEX portfolio_etf_etf_portfolio ON portfolio_etf (etf_id, portfolio_id);
@@ -0,0 +1,4 @@
+-- Bumped whenever a user's password, username or role changes. Tokens carry the version they were issued under
+-- (EtfJwtUser), so changing any of them invalidates the user's existing tokens.
+
+ALTER TABLE users ADD COLUMN credential_version INT NOT NULL DEFAULT 0;
@@ -1,21 +1,37 @@
 package org.launchcode.etf.controller;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.launchcode.etf.dao.EtfDao;
+import org.launchcode.etf.dao.PortfolioDao;
+import org.launchcode.etf.dao.PortfolioEtfDao;
 import org.launchcode.etf.dao.UserDao;
+import org.launchcode.etf.dto.BatchGetRequest;
+import org.launchcode.etf.dto.BatchGetResponse;
+import org.launchcode.etf.dto.KeysetPage;
 import org.launchcode.etf.model.Etf;
+import org.launchcode.etf.model.Portfolio;
 import org.launchcode.etf.model.User;
+import org.launchcode.etf.security.AuthenticatedUser;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import static org.junit.Assert.*;
 
@@ -30,12 +46,21 @@ public class EtfControllerTest {
     @Autowired
     private UserDao userDao;
 
+    @Autowired
+    private PortfolioDao portfolioDao;
+
+    @Autowired
+    private PortfolioEtfDao portfolioEtfDao;
+
     @Autowired
     private PasswordEncoder passwordEncoder;
 
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private EtfController etfController;
+
     private User testUser;
     private User adminUser;
     private Etf testEtf;
@@ -44,6 +69,8 @@ public class EtfControllerTest {
     //Assert statements return nothing when passed. 
     @Before
     public void setUp() {
+        // The controller methods are @PreAuthorize("isAuthenticated()"); who the user is comes from AuthenticatedUser.
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("testuser", null, List.of()));
         jdbcTemplate.update("DELETE FROM etf WHERE ticker LIKE 'TEST%'");
         jdbcTemplate.update("DELETE FROM users WHERE username LIKE 'test%'");
 
@@ -68,6 +95,11 @@ public class EtfControllerTest {
         testEtf.setIsPublic(true);
     }
 
+    @After
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
     @Test
     public void testGetAllEtfsLogic() {
         etfDao.save(testEtf);
@@ -83,7 +115,7 @@ public class EtfControllerTest {
     public void testGetAllEtfsWithSearchLogic() {
         etfDao.save(testEtf);
 
-        List<Etf> searchResults = etfDao.search("VTI", null, testUser.getId(), false);
+        List<Etf> searchResults = etfDao.search("VTI", null, "asc", testUser.getId(), false);
         
         assertNotNull(searchResults);
         assertTrue(searchResults.stream().anyMatch(e -> "TESTVTI".equals(e.getTicker())));
@@ -93,7 +125,7 @@ public class EtfControllerTest {
     public void testGetAllEtfsWithSortLogic() {
         etfDao.save(testEtf);
 
-        List<Etf> sortedResults = etfDao.findAllSorted("assetClass", testUser.getId(), false);
+        List<Etf> sortedResults = etfDao.findAllSorted("assetClass", "asc", testUser.getId(), false);
         
         assertNotNull(sortedResults);
         assertTrue(sortedResults.size() >= 1);
@@ -106,7 +138,7 @@ public class EtfControllerTest {
         List<Etf> allEtfs = etfDao.findAll();
         assertTrue(allEtfs.stream().anyMatch(e -> "TESTVTI".equals(e.getTicker())));
 
-        List<Etf> adminSearchResults = etfDao.search("VTI", null, adminUser.getId(), true);
+        List<Etf> adminSearchResults = etfDao.search("VTI", null, "asc", adminUser.getId(), true);
         assertTrue(adminSearchResults.stream().anyMatch(e -> "TESTVTI".equals(e.getTicker())));
     }
 
@@ -253,7 +285,7 @@ public class EtfControllerTest {
         bondEtf.setIsPublic(true);
         etfDao.save(bondEtf);
         
-        List<Etf> sortedResults = etfDao.search("TEST", "assetClass", testUser.getId(), false);
+        List<Etf> sortedResults = etfDao.search("TEST", "assetClass", "asc", testUser.getId(), false);
         
         assertTrue(sortedResults.size() >= 2);
         if (sortedResults.size() >= 2) {
@@ -349,4 +381,104 @@ public class EtfControllerTest {
         List<Etf> firstUserVisible = etfDao.findByUserIdOrPublic(testUser.getId());
         assertTrue(firstUserVisible.stream().anyMatch(e -> "TESTUSER2".equals(e.getTicker())));
     }
-}
\ No newline at end of file
+
+    // One call sorts the ids into visible rows, someone else's private rows and ids that don't exist.
+    @Test
+    public void testBatchGetLogic() {
+        Etf publicEtf = etfDao.save(testEtf);
+        Etf privateEtf = etfDao.save(new Etf(null, "TESTPRIV", "Test Private ETF", "Equity", new BigDecimal("0.05"), adminUser.getId(), false));
+        Long missingId = privateEtf.getId() + 1000;
+        BatchGetRequest request = new BatchGetRequest(List.of(privateEtf.getId(), publicEtf.getId(), publicEtf.getId(), missingId));
+
+        BatchGetResponse<Etf> response = etfController.batchGetEtfs(request, new AuthenticatedUser(testUser.getId(), "testuser", "USER"));
+        assertEquals(List.of(publicEtf.getId()), ids(response.getItems()));
+        assertEquals(List.of(privateEtf.getId()), response.getForbiddenIds());
+        assertEquals(List.of(missingId), response.getNotFoundIds());
+
+        response = etfController.batchGetEtfs(request, new AuthenticatedUser(adminUser.getId(), "testadmin", "ADMIN"));
+        assertEquals(List.of(privateEtf.getId(), publicEtf.getId()), ids(response.getItems()));
+        assertTrue(response.getForbiddenIds().isEmpty());
+
+        List<Long> tooMany = LongStream.rangeClosed(1, BatchGetRequest.MAX_IDS + 1).boxed().collect(Collectors.toList());
+        try {
+            etfController.batchGetEtfs(new BatchGetRequest(tooMany), new AuthenticatedUser(testUser.getId(), "testuser", "USER"));
+            fail("Expected 400 for more than " + BatchGetRequest.MAX_IDS + " ids");
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testListWithFieldsLogic() {
+        Etf savedEtf = etfDao.save(testEtf);
+        AuthenticatedUser user = new AuthenticatedUser(testUser.getId(), "testuser", "USER");
+
+        List<?> rows = etfController.getAllEtfs("TESTVTI", null, null, null, null, "ticker,expenseRatio", user).getBody();
+        assertEquals(List.of(Map.of("id", savedEtf.getId(), "ticker", "TESTVTI", "expenseRatio", new BigDecimal("0.0300"))), rows);
+
+        try {
+            etfController.getAllEtfs(null, null, null, null, null, "ticker,nope", user);
+            fail("Expected 400 for an unknown field");
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testEtfPortfoliosLogic() {
+        Etf etf = etfDao.save(testEtf);
+        Portfolio ownPrivate = portfolioDao.save(new Portfolio(null, "Test Holder Own", testUser.getId(), false));
+        Portfolio adminPublic = portfolioDao.save(new Portfolio(null, "Test Holder Admin Public", adminUser.getId(), true));
+        Portfolio adminPrivate = portfolioDao.save(new Portfolio(null, "Test Holder Admin Private", adminUser.getId(), false));
+        Portfolio notHolding = portfolioDao.save(new Portfolio(null, "Test Holder None", testUser.getId(), true));
+        for (Portfolio portfolio : List.of(ownPrivate, adminPublic, adminPrivate)) {
+            portfolioEtfDao.addEtfToPortfolio(portfolio.getId(), etf.getId());
+        }
+        AuthenticatedUser owner = new AuthenticatedUser(testUser.getId(), "testuser", "USER");
+        AuthenticatedUser admin = new AuthenticatedUser(adminUser.getId(), "testadmin", "ADMIN");
+
+        // Someone else's private portfolio is left out, and the pages are in id order.
+        ResponseEntity<List<Portfolio>> first = etfController.getEtfPortfolios(etf.getId(), 1, null, owner);
+        assertEquals(List.of(ownPrivate.getId()), portfolioIds(first.getBody()));
+        String cursor = first.getHeaders().getFirst(KeysetPage.NEXT_CURSOR_HEADER);
+        assertNotNull(cursor);
+        ResponseEntity<List<Portfolio>> second = etfController.getEtfPortfolios(etf.getId(), 1, cursor, owner);
+        assertEquals(List.of(adminPublic.getId()), portfolioIds(second.getBody()));
+        assertNull(second.getHeaders().getFirst(KeysetPage.NEXT_CURSOR_HEADER));
+
+        assertEquals(List.of(ownPrivate.getId(), adminPublic.getId(), adminPrivate.getId()),
+                portfolioIds(etfController.getEtfPortfolios(etf.getId(), null, null, admin).getBody()));
+        assertFalse(portfolioIds(etfController.getEtfPortfolios(etf.getId(), null, null, admin).getBody()).contains(notHolding.getId()));
+
+        // The impact counts every holder, so only the owner and admins get it.
+        assertEquals(3, etfController.getEtfImpact(etf.getId(), owner).getPortfolioCount());
+        assertEquals(3, etfController.getEtfImpact(etf.getId(), admin).getPortfolioCount());
+        Etf adminEtf = etfDao.save(new Etf(null, "TESTADM", "Test Admin ETF", "Bond", new BigDecimal("0.05"), adminUser.getId(), true));
+        assertEquals(0, etfController.getEtfImpact(adminEtf.getId(), admin).getPortfolioCount());
+        try {
+            etfController.getEtfImpact(adminEtf.getId(), owner);
+            fail("Expected the impact of someone else's ETF to be forbidden");
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.FORBIDDEN, e.getStatusCode());
+        }
+
+        portfolioEtfDao.removeEtfFromPortfolio(adminPublic.getId(), etf.getId());
+        assertEquals(List.of(ownPrivate.getId()), portfolioIds(etfController.getEtfPortfolios(etf.getId(), null, null, owner).getBody()));
+        assertEquals(2, etfController.getEtfImpact(etf.getId(), owner).getPortfolioCount());
+
+        try {
+            etfController.getEtfPortfolios(etf.getId(), null, "nonsense", owner);
+            fail("Expected 400 for a bad cursor");
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+        }
+    }
+
+    private static List<Long> portfolioIds(List<Portfolio> portfolios) {
+        return portfolios.stream().map(Portfolio::getId).collect(Collectors.toList());
+    }
+
+    private static List<Long> ids(List<Etf> etfs) {
+        return etfs.stream().map(Etf::getId).collect(Collectors.toList());
+    }
+}
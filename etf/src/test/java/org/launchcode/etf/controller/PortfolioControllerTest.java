@@ -1,32 +1,76 @@
 package org.launchcode.etf.controller;
 
+import org.junit.After;
 import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.launchcode.etf.dao.EtfChangedEvent;
 import org.launchcode.etf.dao.EtfDao;
 import org.launchcode.etf.dao.PortfolioDao;
 import org.launchcode.etf.dao.PortfolioEtfDao;
+import org.launchcode.etf.dao.PortfolioHoldingsChangedEvent;
+import org.launchcode.etf.dao.PortfolioStatsDao;
+import org.launchcode.etf.dao.PriceStore;
 import org.launchcode.etf.dao.UserDao;
+import org.launchcode.etf.dto.Backtest;
+import org.launchcode.etf.dto.BacktestRequest;
+import org.launchcode.etf.dto.BacktestVariant;
+import org.launchcode.etf.dto.BatchGetRequest;
+import org.launchcode.etf.dto.BatchGetResponse;
+import org.launchcode.etf.dto.FrontierPoint;
+import org.launchcode.etf.dto.HoldingsSummary;
+import org.launchcode.etf.dto.KeysetPage;
+import org.launchcode.etf.dto.PortfolioDetail;
+import org.launchcode.etf.dto.PortfolioEtfBatchRequest;
+import org.launchcode.etf.dto.PortfolioEtfBatchResponse;
+import org.launchcode.etf.dto.PortfolioFrontier;
+import org.launchcode.etf.dto.PortfolioNav;
+import org.launchcode.etf.dto.PortfolioRisk;
+import org.launchcode.etf.dto.PortfolioStats;
+import org.launchcode.etf.dto.Rebalance;
+import org.launchcode.etf.dto.SimilarPortfolio;
 import org.launchcode.etf.model.Etf;
 import org.launchcode.etf.model.Portfolio;
 import org.launchcode.etf.model.PortfolioEtf;
 import org.launchcode.etf.model.User;
+import org.launchcode.etf.security.AuthenticatedUser;
+import org.launchcode.etf.service.CovarianceModel;
+import org.launchcode.etf.service.NavStreamService;
+import org.launchcode.etf.service.QuoteFeed;
+import org.launchcode.etf.service.RiskService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 
 @RunWith(SpringRunner.class)
-@SpringBootTest
+// Prices go to a directory of their own, emptied before the tests, so they never mix with real ones.
+// NAV stream ticks are left to the tests.
+@SpringBootTest(properties = {"etf.prices.dir=" + PortfolioControllerTest.PRICES_DIR, "etf.quotes.tick-ms=0"})
 @Transactional
 public class PortfolioControllerTest {
+    static final String PRICES_DIR = "target/test-prices";
 
     @Autowired
     private PortfolioDao portfolioDao;
@@ -37,23 +81,48 @@ public class PortfolioControllerTest {
     @Autowired
     private PortfolioEtfDao portfolioEtfDao;
 
+    @Autowired
+    private PortfolioStatsDao portfolioStatsDao;
+
     @Autowired
     private UserDao userDao;
 
+    @Autowired
+    private PriceStore priceStore;
+
+    @Autowired
+    private RiskService riskService;
+
+    @Autowired
+    private QuoteFeed quoteFeed;
+
+    @Autowired
+    private NavStreamService navStreamService;
+
     @Autowired
     private PasswordEncoder passwordEncoder;
 
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private PortfolioController portfolioController;
+
     private User testUser;
     private User adminUser;
     private Portfolio testPortfolio;
     private Etf testEtf;
 
+    @BeforeClass
+    public static void clearPrices() throws Exception {
+        FileSystemUtils.deleteRecursively(Path.of(PRICES_DIR));
+    }
+
     // There are a lot more for preparation because to test a portfolio, we need user, admin, ETF, and portfolio. 
     @Before
     public void setUp() {
+        // The controller methods are @PreAuthorize("isAuthenticated()"); who the user is comes from AuthenticatedUser.
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("testuser", null, List.of()));
         jdbcTemplate.update("DELETE FROM portfolio_etf");
         jdbcTemplate.update("DELETE FROM portfolio WHERE name LIKE 'Test%'");
         jdbcTemplate.update("DELETE FROM etf WHERE ticker LIKE 'TEST%'");
@@ -84,6 +153,11 @@ public class PortfolioControllerTest {
         testEtf.setUserId(testUser.getId());
         testEtf.setIsPublic(true);
     }
+    @After
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
     @Test
     public void testGetAllPortfoliosLogic() {
         portfolioDao.save(testPortfolio);
@@ -99,7 +173,7 @@ public class PortfolioControllerTest {
     public void testGetAllPortfoliosWithSearchLogic() {
         portfolioDao.save(testPortfolio);
 
-        List<Portfolio> searchResults = portfolioDao.search("Test", null, testUser.getId(), false);
+        List<Portfolio> searchResults = portfolioDao.search("Test", null, "asc", testUser.getId(), false);
         
         assertNotNull(searchResults);
         assertTrue(searchResults.stream().anyMatch(p -> "Test Portfolio".equals(p.getName())));
@@ -109,7 +183,7 @@ public class PortfolioControllerTest {
     public void testGetAllPortfoliosWithSortLogic() {
         portfolioDao.save(testPortfolio);
 
-        List<Portfolio> sortedResults = portfolioDao.findAllSorted("userId", testUser.getId(), false);
+        List<Portfolio> sortedResults = portfolioDao.findAllSorted("userId", "asc", testUser.getId(), false);
         
         assertNotNull(sortedResults);
         assertTrue(sortedResults.size() >= 1);
@@ -122,7 +196,7 @@ public class PortfolioControllerTest {
         List<Portfolio> allPortfolios = portfolioDao.findAll();
         assertTrue(allPortfolios.stream().anyMatch(p -> "Test Portfolio".equals(p.getName())));
 
-        List<Portfolio> adminSearchResults = portfolioDao.search("Test", null, adminUser.getId(), true);
+        List<Portfolio> adminSearchResults = portfolioDao.search("Test", null, "asc", adminUser.getId(), true);
         assertTrue(adminSearchResults.stream().anyMatch(p -> "Test Portfolio".equals(p.getName())));
     }
 
@@ -436,14 +510,14 @@ public class PortfolioControllerTest {
         valuePortfolio.setIsPublic(true);
         portfolioDao.save(valuePortfolio);
         
-        List<Portfolio> testResults = portfolioDao.search("Test", null, testUser.getId(), false);
+        List<Portfolio> testResults = portfolioDao.search("Test", null, "asc", testUser.getId(), false);
         assertTrue(testResults.stream().anyMatch(p -> "Test Portfolio".equals(p.getName())));
         assertFalse(testResults.stream().anyMatch(p -> "Growth Portfolio".equals(p.getName())));
         
-        List<Portfolio> portfolioResults = portfolioDao.search("Portfolio", null, testUser.getId(), false);
+        List<Portfolio> portfolioResults = portfolioDao.search("Portfolio", null, "asc", testUser.getId(), false);
         assertTrue(portfolioResults.size() >= 3); 
         
-        List<Portfolio> growthResults = portfolioDao.search("Growth", null, testUser.getId(), false);
+        List<Portfolio> growthResults = portfolioDao.search("Growth", null, "asc", testUser.getId(), false);
         assertTrue(growthResults.stream().anyMatch(p -> "Growth Portfolio".equals(p.getName())));
         assertFalse(growthResults.stream().anyMatch(p -> "Test Portfolio".equals(p.getName())));
     }
@@ -464,10 +538,10 @@ public class PortfolioControllerTest {
         secondPortfolio.setIsPublic(true);
         portfolioDao.save(secondPortfolio);
         
-        List<Portfolio> sortedByName = portfolioDao.findAllSorted("name", testUser.getId(), true);
+        List<Portfolio> sortedByName = portfolioDao.findAllSorted("name", "asc", testUser.getId(), true);
         assertTrue(sortedByName.size() >= 2);
         
-        List<Portfolio> sortedByUserId = portfolioDao.findAllSorted("userId", testUser.getId(), true);
+        List<Portfolio> sortedByUserId = portfolioDao.findAllSorted("userId", "asc", testUser.getId(), true);
         assertTrue(sortedByUserId.size() >= 2);
     }
 
@@ -508,4 +582,631 @@ public class PortfolioControllerTest {
         
         assertFalse(portfolioEtfDao.existsByPortfolioIdAndEtfId(savedPortfolio.getId(), 99999L));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBatchGetLogic() {
+        Portfolio publicPortfolio = portfolioDao.save(new Portfolio(null, "Test Public Portfolio", adminUser.getId(), true));
+        Portfolio privatePortfolio = portfolioDao.save(new Portfolio(null, "Test Private Portfolio", adminUser.getId(), false));
+        Portfolio ownPortfolio = portfolioDao.save(new Portfolio(null, "Test Own Portfolio", testUser.getId(), false));
+        Long missingId = ownPortfolio.getId() + 1000;
+        BatchGetRequest request = new BatchGetRequest(List.of(ownPortfolio.getId(), missingId, privatePortfolio.getId(), publicPortfolio.getId()));
+
+        BatchGetResponse<Portfolio> response = portfolioController.batchGetPortfolios(request, new AuthenticatedUser(testUser.getId(), "testuser", "USER"));
+        assertEquals(List.of(ownPortfolio.getId(), publicPortfolio.getId()),
+                response.getItems().stream().map(Portfolio::getId).collect(Collectors.toList()));
+        assertEquals(List.of(privatePortfolio.getId()), response.getForbiddenIds());
+        assertEquals(List.of(missingId), response.getNotFoundIds());
+
+        response = portfolioController.batchGetPortfolios(new BatchGetRequest(List.of()), new AuthenticatedUser(testUser.getId(), "testuser", "USER"));
+        assertTrue(response.getItems().isEmpty());
+    }
+
+    @Test
+    public void testPortfolioDetailLogic() {
+        Portfolio portfolio = portfolioDao.save(testPortfolio);
+        Etf held = etfDao.save(new Etf(null, "TESTDA", "Test Detail A", "Equity", new BigDecimal("0.03"), testUser.getId(), true));
+        Etf addableB = etfDao.save(new Etf(null, "TESTDB", "Test Detail B", "Equity", new BigDecimal("0.03"), testUser.getId(), false));
+        Etf addableC = etfDao.save(new Etf(null, "TESTDC", "Test Detail C", "Bond", new BigDecimal("0.05"), adminUser.getId(), true));
+        etfDao.save(new Etf(null, "TESTDD", "Test Detail D", "Bond", new BigDecimal("0.05"), adminUser.getId(), false));
+        portfolioEtfDao.addEtfToPortfolio(portfolio.getId(), held.getId());
+        AuthenticatedUser owner = new AuthenticatedUser(testUser.getId(), "testuser", "USER");
+
+        PortfolioDetail detail = portfolioController.getPortfolioDetail(portfolio.getId(), "TESTD", 1, null, owner);
+        assertEquals("Test Portfolio", detail.getPortfolio().getName());
+        assertEquals(List.of("TESTDA"), detail.getEtfs().stream().map(Etf::getTicker).collect(Collectors.toList()));
+        // Held and hidden ETFs aren't offered, and the rest page in ticker order.
+        assertEquals(List.of(addableB.getId()), detail.getAddableEtfs().stream().map(Etf::getId).collect(Collectors.toList()));
+        detail = portfolioController.getPortfolioDetail(portfolio.getId(), "TESTD", 1, detail.getAddableNextCursor(), owner);
+        assertEquals(List.of(addableC.getId()), detail.getAddableEtfs().stream().map(Etf::getId).collect(Collectors.toList()));
+        assertNull(detail.getAddableNextCursor());
+
+        // Someone else can look at a public portfolio but gets nothing to add.
+        User other = new User();
+        other.setUsername("testother");
+        other.setPassword(passwordEncoder.encode("password"));
+        other.setRole("USER");
+        other = userDao.save(other);
+        detail = portfolioController.getPortfolioDetail(portfolio.getId(), null, null, null, new AuthenticatedUser(other.getId(), "testother", "USER"));
+        assertEquals(1, detail.getEtfs().size());
+        assertTrue(detail.getAddableEtfs().isEmpty());
+
+        Portfolio empty = portfolioDao.save(new Portfolio(null, "Test Empty Portfolio", testUser.getId(), false));
+        assertTrue(portfolioController.getPortfolioDetail(empty.getId(), null, null, null, owner).getEtfs().isEmpty());
+        try {
+            portfolioController.getPortfolioDetail(empty.getId(), null, null, null, new AuthenticatedUser(other.getId(), "testother", "USER"));
+            fail("Expected a private portfolio to be forbidden");
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.FORBIDDEN, e.getStatusCode());
+        }
+        try {
+            portfolioController.getPortfolioDetail(empty.getId() + 1000, null, null, null, owner);
+            fail("Expected a missing portfolio to be not found");
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testPortfolioSummaryLogic() {
+        Portfolio mixed = portfolioDao.save(new Portfolio(null, "Test Summary Mixed", testUser.getId(), false));
+        Portfolio empty = portfolioDao.save(new Portfolio(null, "Test Summary Empty", testUser.getId(), false));
+        for (Etf etf : List.of(
+                new Etf(null, "TESTSA", "Test Summary A", "Equity", new BigDecimal("0.0300"), testUser.getId(), true),
+                new Etf(null, "TESTSB", "Test Summary B", "Equity", new BigDecimal("0.0900"), testUser.getId(), true),
+                new Etf(null, "TESTSC", "Test Summary C", "Bond", new BigDecimal("0.0500"), testUser.getId(), true))) {
+            portfolioEtfDao.addEtfToPortfolio(mixed.getId(), etfDao.save(etf).getId());
+        }
+        AuthenticatedUser owner = new AuthenticatedUser(testUser.getId(), "testuser", "USER");
+
+        List<?> body = portfolioController.getAllPortfolios("Test Summary", "name", "desc", null, null, "name", "summary", owner).getBody();
+        assertEquals(2, body.size());
+        Map<?, ?> first = (Map<?, ?>) body.get(0);
+        assertEquals(List.of("id", "name", "summary"), List.copyOf(first.keySet()));
+        assertEquals(mixed.getId(), first.get("id"));
+        HoldingsSummary summary = (HoldingsSummary) first.get("summary");
+        assertEquals(3, summary.getEtfCount());
+        assertEquals(new BigDecimal("0.056667"), summary.getAverageExpenseRatio());
+        assertEquals(new BigDecimal("0.0300"), summary.getMinExpenseRatio());
+        assertEquals(new BigDecimal("0.0900"), summary.getMaxExpenseRatio());
+        assertEquals(Map.of("Bond", 1, "Equity", 2), summary.getAssetClassCounts());
+        assertEquals(0, ((HoldingsSummary) ((Map<?, ?>) body.get(1)).get("summary")).getEtfCount());
+
+        // Paged, with every property.
+        ResponseEntity<? extends List<?>> page = portfolioController.getAllPortfolios("Test Summary", "name", "asc", 1, null, null, "summary", owner);
+        Map<?, ?> row = (Map<?, ?>) page.getBody().get(0);
+        assertEquals(empty.getId(), row.get("id"));
+        assertEquals(List.of("id", "name", "userId", "isPublic", "summary"), List.copyOf(row.keySet()));
+        assertNotNull(page.getHeaders().getFirst(KeysetPage.NEXT_CURSOR_HEADER));
+
+        try {
+            portfolioController.getAllPortfolios(null, null, null, null, null, null, "holdings", owner);
+            fail("Expected an unknown include to be rejected");
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testBatchUpdatePortfolioEtfsLogic() {
+        Portfolio portfolio = portfolioDao.save(testPortfolio);
+        Etf held = etfDao.save(new Etf(null, "TESTBA", "Test Batch A", "Equity", new BigDecimal("0.03"), testUser.getId(), true));
+        Etf newA = etfDao.save(new Etf(null, "TESTBB", "Test Batch B", "Equity", new BigDecimal("0.03"), testUser.getId(), true));
+        Etf newB = etfDao.save(new Etf(null, "TESTBC", "Test Batch C", "Bond", new BigDecimal("0.05"), adminUser.getId(), true));
+        Etf notHeld = etfDao.save(new Etf(null, "TESTBD", "Test Batch D", "Bond", new BigDecimal("0.05"), adminUser.getId(), true));
+        portfolioEtfDao.addEtfToPortfolio(portfolio.getId(), held.getId());
+        Long missingId = notHeld.getId() + 1000;
+        AuthenticatedUser owner = new AuthenticatedUser(testUser.getId(), "testuser", "USER");
+
+        PortfolioEtfBatchResponse response = portfolioController.batchUpdatePortfolioEtfs(portfolio.getId(),
+                new PortfolioEtfBatchRequest(List.of(newB.getId(), held.getId(), missingId, newA.getId(), newB.getId()), null), owner);
+        assertEquals(List.of(newB.getId(), newA.getId()), response.getAdded());
+        assertEquals(List.of(held.getId()), response.getAlreadyPresentIds());
+        assertEquals(List.of(missingId), response.getNotFoundIds());
+        assertTrue(response.getRemoved().isEmpty());
+        assertEquals(List.of(held.getId(), newA.getId(), newB.getId()),
+                portfolioEtfDao.findEtfsByPortfolioId(portfolio.getId()).stream().map(Etf::getId).sorted().collect(Collectors.toList()));
+
+        response = portfolioController.batchUpdatePortfolioEtfs(portfolio.getId(),
+                new PortfolioEtfBatchRequest(List.of(notHeld.getId()), List.of(held.getId(), newA.getId(), missingId)), owner);
+        assertEquals(List.of(notHeld.getId()), response.getAdded());
+        assertEquals(List.of(held.getId(), newA.getId()), response.getRemoved());
+        assertEquals(List.of(missingId), response.getNotPresentIds());
+        assertEquals(List.of(newB.getId(), notHeld.getId()),
+                portfolioEtfDao.findEtfsByPortfolioId(portfolio.getId()).stream().map(Etf::getId).sorted().collect(Collectors.toList()));
+
+        // Someone else's portfolio, a missing one, and a request that contradicts itself change nothing.
+        Portfolio adminPortfolio = portfolioDao.save(new Portfolio(null, "Test Admin Portfolio", adminUser.getId(), true));
+        assertBatchStatus(HttpStatus.FORBIDDEN, adminPortfolio.getId(), new PortfolioEtfBatchRequest(List.of(newA.getId()), null), owner);
+        assertBatchStatus(HttpStatus.NOT_FOUND, adminPortfolio.getId() + 1000, new PortfolioEtfBatchRequest(List.of(newA.getId()), null), owner);
+        assertBatchStatus(HttpStatus.BAD_REQUEST, portfolio.getId(), new PortfolioEtfBatchRequest(List.of(newA.getId()), List.of(newA.getId())), owner);
+        assertTrue(portfolioEtfDao.findEtfsByPortfolioId(adminPortfolio.getId()).isEmpty());
+
+        // Admins may change anyone's portfolio.
+        response = portfolioController.batchUpdatePortfolioEtfs(adminPortfolio.getId(), new PortfolioEtfBatchRequest(List.of(newA.getId()), null),
+                new AuthenticatedUser(adminUser.getId(), "testadmin", "ADMIN"));
+        assertEquals(List.of(newA.getId()), response.getAdded());
+    }
+
+    @Test
+    public void testPortfolioStatsLogic() {
+        Portfolio portfolio = portfolioDao.save(testPortfolio);
+        Etf a = etfDao.save(new Etf(null, "TESTWA", "Test Weight A", "Equity", new BigDecimal("0.03"), testUser.getId(), true));
+        Etf b = etfDao.save(new Etf(null, "TESTWB", "Test Weight B", "Equity", new BigDecimal("0.09"), testUser.getId(), true));
+        Etf c = etfDao.save(new Etf(null, "TESTWC", "Test Weight C", "Bond", new BigDecimal("0.10"), testUser.getId(), true));
+        AuthenticatedUser owner = new AuthenticatedUser(testUser.getId(), "testuser", "USER");
+        assertEquals(0, portfolioController.getPortfolioStats(portfolio.getId(), owner).getHoldingCount());
+
+        portfolioController.addEtfToPortfolio(portfolio.getId(), a.getId(), new BigDecimal("2"), owner);
+        portfolioController.addEtfToPortfolio(portfolio.getId(), b.getId(), null, owner);
+        portfolioController.addEtfToPortfolio(portfolio.getId(), c.getId(), BigDecimal.ONE, owner);
+        assertStats(portfolio.getId(), 3, "4", "0.062500", Map.of("Bond", "0.250000", "Equity", "0.750000"));
+
+        portfolioController.updateEtfWeight(portfolio.getId(), c.getId(), new BigDecimal("3"), owner);
+        assertStats(portfolio.getId(), 3, "6", "0.075000", Map.of("Bond", "0.500000", "Equity", "0.500000"));
+
+        // Changing a held ETF moves its share to its new asset class and expense ratio.
+        b.setAssetClass("Bond");
+        b.setExpenseRatio(new BigDecimal("0.15"));
+        assertEquals(1, etfDao.updateIfOwned(b, testUser.getId(), false));
+        assertStats(portfolio.getId(), 3, "6", "0.085000", Map.of("Bond", "0.666667", "Equity", "0.333333"));
+
+        portfolioController.removeEtfFromPortfolio(portfolio.getId(), a.getId(), owner);
+        assertStats(portfolio.getId(), 2, "4", "0.112500", Map.of("Bond", "1.000000"));
+
+        etfDao.deleteById(c.getId());
+        assertStats(portfolio.getId(), 1, "1", "0.150000", Map.of("Bond", "1.000000"));
+
+        portfolioController.batchUpdatePortfolioEtfs(portfolio.getId(), new PortfolioEtfBatchRequest(List.of(a.getId()), null), owner);
+        assertStats(portfolio.getId(), 2, "2", "0.090000", Map.of("Bond", "0.500000", "Equity", "0.500000"));
+
+        // Whatever happened on the way, the maintained sums are what the holdings add up to now.
+        Map<String, Object> fromScratch = jdbcTemplate.queryForMap(
+                "SELECT SUM(pe.weight) AS total_weight, SUM(pe.weight * e.expense_ratio) AS weighted_expense_sum " +
+                "FROM portfolio_etf pe JOIN etf e ON e.id = pe.etf_id WHERE pe.portfolio_id = ?", portfolio.getId());
+        Map<String, Object> maintained = jdbcTemplate.queryForMap(
+                "SELECT total_weight, weighted_expense_sum FROM portfolio_stats WHERE portfolio_id = ?", portfolio.getId());
+        assertEquals(0, ((BigDecimal) fromScratch.get("total_weight")).compareTo((BigDecimal) maintained.get("total_weight")));
+        assertEquals(0, ((BigDecimal) fromScratch.get("weighted_expense_sum")).compareTo((BigDecimal) maintained.get("weighted_expense_sum")));
+
+        portfolioController.batchUpdatePortfolioEtfs(portfolio.getId(), new PortfolioEtfBatchRequest(null, List.of(a.getId(), b.getId())), owner);
+        assertEquals(0, portfolioController.getPortfolioStats(portfolio.getId(), owner).getHoldingCount());
+        assertNull(portfolioController.getPortfolioStats(portfolio.getId(), owner).getWeightedExpenseRatio());
+
+        // Weights must be positive, and only the owner may change them.
+        portfolioController.addEtfToPortfolio(portfolio.getId(), a.getId(), null, owner);
+        try {
+            portfolioController.updateEtfWeight(portfolio.getId(), a.getId(), BigDecimal.ZERO, owner);
+            fail("Expected a zero weight to be rejected");
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+        }
+        try {
+            portfolioController.updateEtfWeight(portfolio.getId(), a.getId(), BigDecimal.TEN, new AuthenticatedUser(adminUser.getId() + 1000, "other", "USER"));
+            fail("Expected someone else's portfolio to be forbidden");
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.FORBIDDEN, e.getStatusCode());
+        }
+        try {
+            portfolioController.updateEtfWeight(portfolio.getId(), b.getId(), BigDecimal.TEN, owner);
+            fail("Expected an ETF that isn't held to be not found");
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testSimilarPortfoliosLogic() {
+        List<Etf> etfs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            etfs.add(etfDao.save(new Etf(null, "TESTSIM" + i, "Test Similar " + i, "Equity", new BigDecimal("0.03"), testUser.getId(), true)));
+        }
+        Portfolio mine = portfolioDao.save(new Portfolio(null, "Test Similar Mine", testUser.getId(), false));
+        Portfolio same = portfolioDao.save(new Portfolio(null, "Test Similar Same", adminUser.getId(), true));
+        Portfolio close = portfolioDao.save(new Portfolio(null, "Test Similar Close", adminUser.getId(), true));
+        Portfolio hidden = portfolioDao.save(new Portfolio(null, "Test Similar Hidden", adminUser.getId(), false));
+        Portfolio unrelated = portfolioDao.save(new Portfolio(null, "Test Similar Unrelated", adminUser.getId(), true));
+        holding(mine, etfs.get(0), etfs.get(1), etfs.get(2));
+        holding(same, etfs.get(0), etfs.get(1), etfs.get(2));
+        holding(close, etfs.get(0), etfs.get(1), etfs.get(3));
+        holding(hidden, etfs.get(0), etfs.get(1), etfs.get(2));
+        holding(unrelated, etfs.get(4));
+        AuthenticatedUser owner = new AuthenticatedUser(testUser.getId(), "testuser", "USER");
+
+        // Someone else's private portfolio and a portfolio with nothing in common are left out.
+        List<SimilarPortfolio> similar = portfolioController.getSimilarPortfolios(mine.getId(), 20, owner);
+        assertEquals(List.of(same.getId(), close.getId()), similar.stream().map(s -> s.getPortfolio().getId()).collect(Collectors.toList()));
+        assertEquals(3, similar.get(0).getSharedEtfCount());
+        assertEquals(new BigDecimal("1.0000"), similar.get(0).getSimilarity());
+        assertEquals(2, similar.get(1).getSharedEtfCount());
+        assertEquals(new BigDecimal("0.5000"), similar.get(1).getSimilarity());
+
+        List<SimilarPortfolio> forAdmin = portfolioController.getSimilarPortfolios(mine.getId(), 2,
+                new AuthenticatedUser(adminUser.getId(), "testadmin", "ADMIN"));
+        assertEquals(List.of(same.getId(), hidden.getId()), forAdmin.stream().map(s -> s.getPortfolio().getId()).collect(Collectors.toList()));
+
+        try {
+            portfolioController.getSimilarPortfolios(hidden.getId(), 20, owner);
+            fail("Expected someone else's private portfolio to be forbidden");
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.FORBIDDEN, e.getStatusCode());
+        }
+        try {
+            portfolioController.getSimilarPortfolios(mine.getId(), 0, owner);
+            fail("Expected 400 for limit 0");
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testClonePortfolioLogic() {
+        Etf a = etfDao.save(new Etf(null, "TESTCA", "Test Clone A", "Equity", new BigDecimal("0.03"), testUser.getId(), true));
+        Etf b = etfDao.save(new Etf(null, "TESTCB", "Test Clone B", "Bond", new BigDecimal("0.10"), testUser.getId(), true));
+        Portfolio source = portfolioDao.save(new Portfolio(null, "Test Clone Source", adminUser.getId(), true));
+        AuthenticatedUser admin = new AuthenticatedUser(adminUser.getId(), "testadmin", "ADMIN");
+        portfolioController.addEtfToPortfolio(source.getId(), a.getId(), new BigDecimal("3"), admin);
+        portfolioController.addEtfToPortfolio(source.getId(), b.getId(), BigDecimal.ONE, admin);
+        AuthenticatedUser owner = new AuthenticatedUser(testUser.getId(), "testuser", "USER");
+
+        // Anyone who can see a portfolio can clone it; the clone is theirs and private unless they say otherwise.
+        Portfolio clone = portfolioController.clonePortfolio(source.getId(), null, owner);
+        assertNotEquals(source.getId(), clone.getId());
+        assertEquals("Copy of Test Clone Source", clone.getName());
+        assertEquals(testUser.getId(), clone.getUserId());
+        assertFalse(clone.getIsPublic());
+        List<Map<String, Object>> holdings = jdbcTemplate.queryForList(
+                "SELECT etf_id, weight FROM portfolio_etf WHERE portfolio_id = ? ORDER BY etf_id", clone.getId());
+        assertEquals(List.of(a.getId(), b.getId()), holdings.stream().map(row -> ((Number) row.get("etf_id")).longValue()).collect(Collectors.toList()));
+        assertEquals(0, new BigDecimal("3").compareTo((BigDecimal) holdings.get(0).get("weight")));
+        assertStats(clone.getId(), 2, "4", "0.047500", Map.of("Bond", "0.250000", "Equity", "0.750000"));
+        // The source is untouched.
+        assertStats(source.getId(), 2, "4", "0.047500", Map.of("Bond", "0.250000", "Equity", "0.750000"));
+
+        Portfolio named = portfolioController.clonePortfolio(source.getId(), new Portfolio(null, "Test Clone Named", null, true), owner);
+        assertEquals("Test Clone Named", named.getName());
+        assertTrue(named.getIsPublic());
+        assertEquals("Copy of " + "x".repeat(92), portfolioController.clonePortfolio(
+                portfolioDao.save(new Portfolio(null, "x".repeat(100), testUser.getId(), false)).getId(), null, owner).getName());
+
+        // An empty portfolio clones to an empty portfolio.
+        Portfolio empty = portfolioController.clonePortfolio(portfolioDao.save(testPortfolio).getId(), null, owner);
+        assertEquals(0, portfolioController.getPortfolioStats(empty.getId(), owner).getHoldingCount());
+
+        Portfolio hidden = portfolioDao.save(new Portfolio(null, "Test Clone Hidden", adminUser.getId(), false));
+        try {
+            portfolioController.clonePortfolio(hidden.getId(), null, owner);
+            fail("Expected someone else's private portfolio to be forbidden");
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.FORBIDDEN, e.getStatusCode());
+        }
+        try {
+            portfolioController.clonePortfolio(999999L, null, owner);
+            fail("Expected 404 for a missing portfolio");
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testBacktestLogic() {
+        Etf a = etfDao.save(new Etf(null, "TESTBTA", "Test Backtest A", "Equity", new BigDecimal("0.03"), testUser.getId(), true));
+        Etf b = etfDao.save(new Etf(null, "TESTBTB", "Test Backtest B", "Bond", new BigDecimal("0.05"), testUser.getId(), true));
+        Etf unpriced = etfDao.save(new Etf(null, "TESTBTX", "Test Backtest Unpriced", "Bond", new BigDecimal("0.05"), testUser.getId(), true));
+        // A doubles at the end of January and halves again on 2 February. Only A traded on the 29th.
+        prices("TESTBTA", "2024-01-29", 90, "2024-01-30", 100, "2024-01-31", 200, "2024-02-01", 200, "2024-02-02", 100);
+        prices("TESTBTB", "2024-01-30", 100, "2024-01-31", 100, "2024-02-01", 100, "2024-02-02", 100);
+        Portfolio portfolio = portfolioDao.save(testPortfolio);
+        AuthenticatedUser owner = new AuthenticatedUser(testUser.getId(), "testuser", "USER");
+        portfolioController.addEtfToPortfolio(portfolio.getId(), a.getId(), new BigDecimal("2"), owner);
+        portfolioController.addEtfToPortfolio(portfolio.getId(), b.getId(), new BigDecimal("2"), owner);
+        portfolioController.addEtfToPortfolio(portfolio.getId(), unpriced.getId(), null, owner);
+
+        Backtest backtest = portfolioController.backtestPortfolio(portfolio.getId(), null, owner);
+        assertEquals(List.of("TESTBTA", "TESTBTB"), backtest.getTickers());
+        assertEquals(List.of("TESTBTX"), backtest.getExcludedTickers());
+        assertEquals(LocalDate.parse("2024-01-30"), backtest.getFrom());
+        assertEquals(LocalDate.parse("2024-02-02"), backtest.getTo());
+        assertEquals(4, backtest.getDates().size());
+        assertEquals(List.of(Rebalance.values()), backtest.getVariants().stream().map(BacktestVariant::getRebalance).collect(Collectors.toList()));
+
+        BacktestVariant buyAndHold = backtest.getVariants().get(0);
+        assertArrayEquals(new double[]{10_000, 15_000, 15_000, 10_000}, buyAndHold.getEquity(), 1e-9);
+        assertEquals(0, buyAndHold.getTurnover(), 0);
+        assertEquals(1.0 / 3, buyAndHold.getMaxDrawdown(), 1e-12);
+        BacktestVariant monthly = backtest.getVariants().get(1);
+        assertEquals(11_250, monthly.getFinalValue(), 1e-9);
+        assertEquals(1.0 / 6, monthly.getTurnover(), 1e-12);
+        assertEquals(0.25, monthly.getMaxDrawdown(), 1e-12);
+        assertTrue(monthly.getCagr() > 0);
+
+        Backtest ranged = portfolioController.backtestPortfolio(portfolio.getId(),
+                new BacktestRequest(LocalDate.parse("2024-01-31"), null, List.of(Rebalance.MONTHLY, Rebalance.MONTHLY), 100.0), owner);
+        assertEquals(LocalDate.parse("2024-01-31"), ranged.getFrom());
+        assertEquals(1, ranged.getVariants().size());
+        assertArrayEquals(new double[]{100, 100, 75}, ranged.getVariants().get(0).getEquity(), 1e-9);
+
+        assertBacktestStatus(HttpStatus.BAD_REQUEST, portfolio.getId(),
+                new BacktestRequest(LocalDate.parse("2024-02-02"), LocalDate.parse("2024-01-30"), null, null), owner);
+        assertBacktestStatus(HttpStatus.BAD_REQUEST, portfolio.getId(), new BacktestRequest(null, null, null, -1.0), owner);
+        // Fewer than two days in common.
+        assertBacktestStatus(HttpStatus.BAD_REQUEST, portfolio.getId(),
+                new BacktestRequest(LocalDate.parse("2024-02-02"), null, null, null), owner);
+        Portfolio empty = portfolioDao.save(new Portfolio(null, "Test Backtest Empty", testUser.getId(), false));
+        assertBacktestStatus(HttpStatus.BAD_REQUEST, empty.getId(), null, owner);
+        Portfolio hidden = portfolioDao.save(new Portfolio(null, "Test Backtest Hidden", adminUser.getId(), false));
+        assertBacktestStatus(HttpStatus.FORBIDDEN, hidden.getId(), null, owner);
+    }
+
+    @Test
+    public void testPortfolioRiskLogic() {
+        // B's daily returns are always twice A's, so B has twice A's volatility and a beta of 2 to it.
+        SplittableRandom random = new SplittableRandom(7);
+        int days = 300;
+        int[] epochDays = new int[days];
+        double[] a = new double[days];
+        double[] b = new double[days];
+        a[0] = b[0] = 100;
+        for (int t = 0; t < days; t++) {
+            epochDays[t] = (int) LocalDate.parse("2025-01-01").toEpochDay() + t;
+            if (t > 0) {
+                double dailyReturn = random.nextGaussian() * 0.01;
+                a[t] = a[t - 1] * (1 + dailyReturn);
+                b[t] = b[t - 1] * (1 + 2 * dailyReturn);
+            }
+        }
+        priceStore.append("TESTRKA", epochDays, a, a, new long[days], days);
+        priceStore.append("TESTRKB", epochDays, b, b, new long[days], days);
+        Etf etfA = etfDao.save(new Etf(null, "TESTRKA", "Test Risk A", "Equity", new BigDecimal("0.03"), testUser.getId(), true));
+        Etf etfB = etfDao.save(new Etf(null, "TESTRKB", "Test Risk B", "Equity", new BigDecimal("0.03"), testUser.getId(), true));
+        Etf unpriced = etfDao.save(new Etf(null, "TESTRKX", "Test Risk Unpriced", "Equity", new BigDecimal("0.03"), testUser.getId(), true));
+        Portfolio portfolio = portfolioDao.save(testPortfolio);
+        AuthenticatedUser owner = new AuthenticatedUser(testUser.getId(), "testuser", "USER");
+        portfolioController.addEtfToPortfolio(portfolio.getId(), etfA.getId(), null, owner);
+        portfolioController.addEtfToPortfolio(portfolio.getId(), etfB.getId(), null, owner);
+        portfolioController.addEtfToPortfolio(portfolio.getId(), unpriced.getId(), null, owner);
+
+        PortfolioRisk risk = portfolioController.getPortfolioRisk(portfolio.getId(), etfA.getId(), 1, 100_000, 42L, owner);
+        assertEquals(List.of("TESTRKA", "TESTRKB"), risk.getTickers());
+        assertEquals(List.of("TESTRKX"), risk.getExcludedTickers());
+        assertEquals("TESTRKA", risk.getBenchmarkTicker());
+        assertEquals(1.5, risk.getBeta(), 1e-9);
+        CovarianceModel model = riskService.getModel();
+        double volatilityA = Math.sqrt(252 * model.getCovariance(model.indexOf("TESTRKA"), model.indexOf("TESTRKA")));
+        assertEquals(1.5 * volatilityA, risk.getAnnualizedVolatility(), 1e-9);
+        // Close to the normal one-day quantiles of a portfolio with 1.5% daily volatility.
+        double dailyVolatility = risk.getAnnualizedVolatility() / Math.sqrt(252);
+        assertEquals(1.645 * dailyVolatility, risk.getValueAtRisk95(), 0.1 * dailyVolatility);
+        assertEquals(2.326 * dailyVolatility, risk.getValueAtRisk99(), 0.15 * dailyVolatility);
+        // The same seed draws the same paths.
+        assertEquals(risk.getValueAtRisk95(),
+                portfolioController.getPortfolioRisk(portfolio.getId(), null, 1, 100_000, 42L, owner).getValueAtRisk95(), 0);
+
+        PortfolioRisk tenDays = portfolioController.getPortfolioRisk(portfolio.getId(), null, 10, 10_000, null, owner);
+        assertNull(tenDays.getBeta());
+        assertTrue(tenDays.getValueAtRisk99() > risk.getValueAtRisk99());
+
+        assertRiskStatus(HttpStatus.BAD_REQUEST, portfolio.getId(), null, 0, 10_000, owner);
+        assertRiskStatus(HttpStatus.BAD_REQUEST, portfolio.getId(), null, 1, 10, owner);
+        // A benchmark without prices, and one the caller can't see.
+        assertRiskStatus(HttpStatus.BAD_REQUEST, portfolio.getId(), unpriced.getId(), 1, 10_000, owner);
+        Etf hiddenEtf = etfDao.save(new Etf(null, "TESTRKH", "Test Risk Hidden", "Equity", new BigDecimal("0.03"), adminUser.getId(), false));
+        assertRiskStatus(HttpStatus.FORBIDDEN, portfolio.getId(), hiddenEtf.getId(), 1, 10_000, owner);
+        Portfolio unpricedOnly = portfolioDao.save(new Portfolio(null, "Test Risk Unpriced", testUser.getId(), false));
+        holding(unpricedOnly, unpriced);
+        assertRiskStatus(HttpStatus.BAD_REQUEST, unpricedOnly.getId(), null, 1, 10_000, owner);
+    }
+
+    private void assertRiskStatus(HttpStatus status, Long portfolioId, Long benchmarkEtfId, int horizonDays, int paths, AuthenticatedUser user) {
+        try {
+            portfolioController.getPortfolioRisk(portfolioId, benchmarkEtfId, horizonDays, paths, 1L, user);
+            fail("Expected " + status);
+        } catch (ResponseStatusException e) {
+            assertEquals(status, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testPortfolioFrontierLogic() {
+        // Three independent ETFs: C has the highest return and the most risk, B the least of both.
+        SplittableRandom random = new SplittableRandom(11);
+        int days = 300;
+        int[] epochDays = new int[days];
+        double[][] closes = new double[3][days];
+        double[] drift = {0.0005, 0.0002, 0.001};
+        double[] volatility = {0.008, 0.005, 0.012};
+        for (int t = 0; t < days; t++) {
+            epochDays[t] = (int) LocalDate.parse("2025-01-01").toEpochDay() + t;
+            for (int i = 0; i < 3; i++) {
+                closes[i][t] = t == 0 ? 100 : closes[i][t - 1] * (1 + drift[i] + volatility[i] * random.nextGaussian());
+            }
+        }
+        String[] tickers = {"TESTFRA", "TESTFRB", "TESTFRC"};
+        Etf[] etfs = new Etf[3];
+        for (int i = 0; i < 3; i++) {
+            priceStore.append(tickers[i], epochDays, closes[i], closes[i], new long[days], days);
+            etfs[i] = etfDao.save(new Etf(null, tickers[i], "Test Frontier " + i, "Equity", new BigDecimal("0.03"), testUser.getId(), true));
+        }
+        Etf unpriced = etfDao.save(new Etf(null, "TESTFRX", "Test Frontier Unpriced", "Equity", new BigDecimal("0.03"), testUser.getId(), true));
+        Portfolio portfolio = portfolioDao.save(testPortfolio);
+        AuthenticatedUser owner = new AuthenticatedUser(testUser.getId(), "testuser", "USER");
+        holding(portfolio, etfs[2], etfs[0], unpriced, etfs[1]);
+
+        PortfolioFrontier frontier = portfolioController.getPortfolioFrontier(portfolio.getId(), 10, 0.6, owner);
+        assertEquals(List.of("TESTFRA", "TESTFRB", "TESTFRC"), frontier.getTickers());
+        assertEquals(List.of("TESTFRX"), frontier.getExcludedTickers());
+        assertEquals(10, frontier.getPoints().size());
+        FrontierPoint previous = null;
+        for (FrontierPoint point : frontier.getPoints()) {
+            assertEquals(1, point.getWeights().values().stream().mapToDouble(Double::doubleValue).sum(), 1e-9);
+            assertTrue(point.getWeights().values().stream().allMatch(weight -> weight > 0 && weight <= 0.6 + 1e-12));
+            if (previous != null) {
+                assertTrue(point.getExpectedReturn() > previous.getExpectedReturn());
+                assertTrue(point.getVolatility() >= previous.getVolatility());
+            }
+            previous = point;
+        }
+        // The highest return is as much of C as the cap allows, and the rest in the next best.
+        Map<String, Double> riskiest = frontier.getPoints().get(9).getWeights();
+        assertEquals(0.6, riskiest.get("TESTFRC"), 1e-9);
+        assertEquals(0.4, riskiest.values().stream().mapToDouble(Double::doubleValue).sum() - 0.6, 1e-9);
+        // The portfolio itself holds the three equally, and can't beat the frontier.
+        FrontierPoint current = frontier.getCurrent();
+        assertEquals(1.0 / 3, current.getWeights().get("TESTFRB"), 1e-9);
+        assertTrue(current.getVolatility() >= frontier.getPoints().get(0).getVolatility());
+
+        // Another portfolio of the same ETFs, whatever their order and weights, shares the memoized frontier.
+        Portfolio sameEtfs = portfolioDao.save(new Portfolio(null, "Test Frontier Same", testUser.getId(), false));
+        holding(sameEtfs, etfs[1], etfs[2], etfs[0]);
+        assertSame(frontier.getPoints(), portfolioController.getPortfolioFrontier(sameEtfs.getId(), 10, 0.6, owner).getPoints());
+        assertNotSame(frontier.getPoints(), portfolioController.getPortfolioFrontier(sameEtfs.getId(), 10, 0.5, owner).getPoints());
+
+        assertFrontierStatus(HttpStatus.BAD_REQUEST, portfolio.getId(), 0, 1, owner);
+        assertFrontierStatus(HttpStatus.BAD_REQUEST, portfolio.getId(), 10, 0, owner);
+        // Three ETFs can't each be at most a quarter.
+        assertFrontierStatus(HttpStatus.BAD_REQUEST, portfolio.getId(), 10, 0.25, owner);
+        Portfolio unpricedOnly = portfolioDao.save(new Portfolio(null, "Test Frontier Unpriced", testUser.getId(), false));
+        holding(unpricedOnly, unpriced);
+        assertFrontierStatus(HttpStatus.BAD_REQUEST, unpricedOnly.getId(), 10, 1, owner);
+        Portfolio hidden = portfolioDao.save(new Portfolio(null, "Test Frontier Hidden", adminUser.getId(), false));
+        holding(hidden, etfs[0]);
+        assertFrontierStatus(HttpStatus.FORBIDDEN, hidden.getId(), 10, 1, owner);
+    }
+
+    @Test
+    public void testPortfolioStreamLogic() {
+        Etf a = etfDao.save(new Etf(null, "TESTNAVA", "Test NAV A", "Equity", new BigDecimal("0.03"), testUser.getId(), true));
+        Etf b = etfDao.save(new Etf(null, "TESTNAVB", "Test NAV B", "Bond", new BigDecimal("0.03"), testUser.getId(), true));
+        Portfolio both = portfolioDao.save(testPortfolio);
+        holding(both, a, b);
+        Portfolio single = portfolioDao.save(new Portfolio(null, "Test NAV Single", testUser.getId(), false));
+        holding(single, a);
+        Portfolio hidden = portfolioDao.save(new Portfolio(null, "Test NAV Hidden", adminUser.getId(), false));
+        holding(hidden, b);
+        AuthenticatedUser owner = new AuthenticatedUser(testUser.getId(), "testuser", "USER");
+
+        // The holdings were added in this (rolled back) transaction, so nothing after commit tells QuoteFeed for us.
+        for (Portfolio portfolio : new Portfolio[]{both, single, hidden}) {
+            quoteFeed.onHoldingsChanged(new PortfolioHoldingsChangedEvent(portfolio.getId()));
+        }
+        SseEmitter emitter = portfolioController.streamPortfolio(both.getId(), owner);
+        assertNotNull(emitter);
+        // The tick brings the book up to date; a new NAV counts as moved, then nothing moves until quotes come in.
+        assertEquals(1, navStreamService.tick());
+        assertEquals(0, navStreamService.tick());
+
+        // Neither has a close, so their first quotes are the reference prices.
+        quoteFeed.onQuote(a.getId(), 50);
+        quoteFeed.onQuote(b.getId(), 20);
+        assertEquals(100, quoteFeed.nav(both.getId()).getNav(), 1e-9);
+        assertEquals(0, navStreamService.tick());
+
+        quoteFeed.onQuote(a.getId(), 55);
+        PortfolioNav nav = quoteFeed.nav(both.getId());
+        assertEquals(105, nav.getNav(), 1e-9);
+        assertEquals(0.05, nav.getChange(), 1e-12);
+        assertEquals(110, quoteFeed.nav(single.getId()).getNav(), 1e-9);
+        // single moved too, but nobody listens to it.
+        assertEquals(1, navStreamService.tick());
+        assertEquals(0, navStreamService.tick());
+
+        // However many quotes come in during a tick, subscribers get one event.
+        for (int i = 1; i <= 50; i++) {
+            quoteFeed.onQuote(b.getId(), 20 + i * 0.01);
+        }
+        assertEquals(1, navStreamService.tick());
+        // Half at 55 / 50 and half at 20.5 / 20.
+        assertEquals(106.25, quoteFeed.nav(both.getId()).getNav(), 1e-9);
+
+        long rejected = quoteFeed.getRejected();
+        quoteFeed.onQuote(a.getId(), -1);
+        quoteFeed.onQuote(a.getId(), Double.NaN);
+        assertEquals(rejected + 2, quoteFeed.getRejected());
+        assertEquals(110, quoteFeed.nav(single.getId()).getNav(), 1e-9);
+
+        // Changes are applied to the portfolios they touch on the next tick. Without b, both is all a, at 55 / 50.
+        long rebuilds = quoteFeed.getRebuilds();
+        portfolioEtfDao.deleteIfOwned(both.getId(), b.getId(), testUser.getId(), false);
+        quoteFeed.onHoldingsChanged(new PortfolioHoldingsChangedEvent(both.getId()));
+        assertEquals(1, navStreamService.tick());
+        assertEquals(110, quoteFeed.nav(both.getId()).getNav(), 1e-9);
+        // Renaming an ETF changes nobody's holdings.
+        a.setDescription("Test NAV A renamed");
+        etfDao.updateIfOwned(a, testUser.getId(), false);
+        quoteFeed.onEtfChanged(EtfChangedEvent.forEtf(a.getId()));
+        assertEquals(0, navStreamService.tick());
+        // Deleting one takes it out of its holders; hidden held nothing else.
+        etfDao.deleteIfOwned(b.getId(), testUser.getId(), false);
+        quoteFeed.onEtfChanged(EtfChangedEvent.forEtf(b.getId()));
+        assertEquals(0, navStreamService.tick());
+        assertNull(quoteFeed.nav(hidden.getId()));
+        assertEquals(rebuilds, quoteFeed.getRebuilds());
+        emitter.complete();
+
+        assertStreamStatus(HttpStatus.FORBIDDEN, hidden.getId(), owner);
+        assertStreamStatus(HttpStatus.NOT_FOUND, -1L, owner);
+    }
+
+    private void assertStreamStatus(HttpStatus status, Long portfolioId, AuthenticatedUser user) {
+        try {
+            portfolioController.streamPortfolio(portfolioId, user);
+            fail("Expected " + status);
+        } catch (ResponseStatusException e) {
+            assertEquals(status, e.getStatusCode());
+        }
+    }
+
+    private void assertFrontierStatus(HttpStatus status, Long portfolioId, int points, double maxWeight, AuthenticatedUser user) {
+        try {
+            portfolioController.getPortfolioFrontier(portfolioId, points, maxWeight, user);
+            fail("Expected " + status);
+        } catch (ResponseStatusException e) {
+            assertEquals(status, e.getStatusCode());
+        }
+    }
+
+    // Alternating dates and adjusted closes.
+    private void prices(String ticker, Object... bars) {
+        int count = bars.length / 2;
+        int[] days = new int[count];
+        double[] closes = new double[count];
+        for (int i = 0; i < count; i++) {
+            days[i] = (int) LocalDate.parse((String) bars[2 * i]).toEpochDay();
+            closes[i] = ((Number) bars[2 * i + 1]).doubleValue();
+        }
+        priceStore.append(ticker, days, closes, closes, new long[count], count);
+    }
+
+    private void assertBacktestStatus(HttpStatus status, Long portfolioId, BacktestRequest request, AuthenticatedUser user) {
+        try {
+            portfolioController.backtestPortfolio(portfolioId, request, user);
+            fail("Expected " + status);
+        } catch (ResponseStatusException e) {
+            assertEquals(status, e.getStatusCode());
+        }
+    }
+
+    private void holding(Portfolio portfolio, Etf... etfs) {
+        for (Etf etf : etfs) {
+            portfolioEtfDao.addEtfToPortfolio(portfolio.getId(), etf.getId());
+        }
+    }
+
+    private void assertStats(Long portfolioId, int holdingCount, String totalWeight, String weightedExpenseRatio,
+                             Map<String, String> allocation) {
+        PortfolioStats stats = portfolioStatsDao.findByPortfolioId(portfolioId);
+        assertEquals(holdingCount, stats.getHoldingCount());
+        assertEquals(0, new BigDecimal(totalWeight).compareTo(stats.getTotalWeight()));
+        assertEquals(new BigDecimal(weightedExpenseRatio), stats.getWeightedExpenseRatio());
+        assertEquals(allocation.keySet().stream().sorted().collect(Collectors.toList()), List.copyOf(stats.getAllocation().keySet()));
+        allocation.forEach((assetClass, share) -> assertEquals(new BigDecimal(share), stats.getAllocation().get(assetClass)));
+    }
+
+    private void assertBatchStatus(HttpStatus status, Long portfolioId, PortfolioEtfBatchRequest request, AuthenticatedUser user) {
+        try {
+            portfolioController.batchUpdatePortfolioEtfs(portfolioId, request, user);
+            fail("Expected " + status);
+        } catch (ResponseStatusException e) {
+            assertEquals(status, e.getStatusCode());
+        }
+    }
+}
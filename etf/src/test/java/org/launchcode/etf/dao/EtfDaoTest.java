@@ -3,16 +3,21 @@ package org.launchcode.etf.dao;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.launchcode.etf.dto.EtfSuggestion;
+import org.launchcode.etf.dto.KeysetPage;
 import org.launchcode.etf.model.Etf;
 import org.launchcode.etf.model.User;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -27,6 +32,9 @@ public class EtfDaoTest {
     @Autowired
     private UserDao userDao;
 
+    @Autowired
+    private EtfCatalog etfCatalog;
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
@@ -165,7 +173,7 @@ public class EtfDaoTest {
     public void testSearchAsAdmin() {
         etfDao.save(testEtf);
         
-        List<Etf> results = etfDao.search("VTI", null, testUser.getId(), true);
+        List<Etf> results = etfDao.search("VTI", null, "asc", testUser.getId(), true);
         
         assertTrue(results.size() >= 1);
         assertTrue(results.stream().anyMatch(e -> "TESTVTI".equals(e.getTicker())));
@@ -175,7 +183,7 @@ public class EtfDaoTest {
     public void testSearchAsUser() {
         etfDao.save(testEtf);
         
-        List<Etf> results = etfDao.search("VTI", null, testUser.getId(), false);
+        List<Etf> results = etfDao.search("VTI", null, "asc", testUser.getId(), false);
         
         assertTrue(results.size() >= 1);
         assertTrue(results.stream().anyMatch(e -> "TESTVTI".equals(e.getTicker())));
@@ -195,7 +203,7 @@ public class EtfDaoTest {
         bondEtf.setIsPublic(true);
         etfDao.save(bondEtf);
         
-        List<Etf> results = etfDao.search("TEST", "assetClass", testUser.getId(), true);
+        List<Etf> results = etfDao.search("TEST", "assetClass", "asc", testUser.getId(), true);
         
         assertTrue(results.size() >= 2);
         // Should be sorted by asset class
@@ -208,7 +216,7 @@ public class EtfDaoTest {
     public void testFindAllSortedAsAdmin() {
         etfDao.save(testEtf);
         
-        List<Etf> sortedEtfs = etfDao.findAllSorted("assetClass", testUser.getId(), true);
+        List<Etf> sortedEtfs = etfDao.findAllSorted("assetClass", "asc", testUser.getId(), true);
         
         assertTrue(sortedEtfs.size() >= 1);
     }
@@ -217,7 +225,7 @@ public class EtfDaoTest {
     public void testFindAllSortedAsUser() {
         etfDao.save(testEtf);
         
-        List<Etf> sortedEtfs = etfDao.findAllSorted("assetClass", testUser.getId(), false);
+        List<Etf> sortedEtfs = etfDao.findAllSorted("assetClass", "asc", testUser.getId(), false);
         
         assertTrue(sortedEtfs.size() >= 1);
     }
@@ -232,4 +240,227 @@ public class EtfDaoTest {
         Etf foundEtf = etfDao.findById(etfId);
         assertNull(foundEtf);
     }
-}
\ No newline at end of file
+
+    // updateIfOwned/deleteIfOwned only touch the row when the caller owns it (or is an admin).
+    @Test
+    public void testUpdateIfOwned() {
+        Etf savedEtf = etfDao.save(testEtf);
+        savedEtf.setDescription("Updated Test Description");
+
+        assertEquals(0, etfDao.updateIfOwned(savedEtf, testUser.getId() + 1000, false));
+        assertEquals("Test Vanguard Total Stock Market ETF", etfDao.findById(savedEtf.getId()).getDescription());
+
+        assertEquals(1, etfDao.updateIfOwned(savedEtf, testUser.getId(), false));
+        assertEquals("Updated Test Description", etfDao.findById(savedEtf.getId()).getDescription());
+
+        savedEtf.setDescription("Updated By Admin");
+        assertEquals(1, etfDao.updateIfOwned(savedEtf, testUser.getId() + 1000, true));
+        assertEquals("Updated By Admin", etfDao.findById(savedEtf.getId()).getDescription());
+    }
+
+    @Test
+    public void testDeleteIfOwned() {
+        Etf savedEtf = etfDao.save(testEtf);
+
+        assertEquals(0, etfDao.deleteIfOwned(savedEtf.getId(), testUser.getId() + 1000, false));
+        assertTrue(etfDao.existsById(savedEtf.getId()));
+
+        assertEquals(1, etfDao.deleteIfOwned(savedEtf.getId(), testUser.getId(), false));
+        assertFalse(etfDao.existsById(savedEtf.getId()));
+        assertEquals(0, etfDao.deleteIfOwned(savedEtf.getId(), testUser.getId(), true));
+    }
+
+    // Following nextCursor must visit every matching row exactly once, in sort order, for both directions.
+    @Test
+    public void testFindPageWalksAllRows() {
+        for (String ticker : new String[]{"TESTPGC", "TESTPGA", "TESTPGE", "TESTPGB", "TESTPGD"}) {
+            Etf etf = new Etf();
+            etf.setTicker(ticker);
+            etf.setDescription("Paging test ETF");
+            etf.setAssetClass("Equity");
+            etf.setExpenseRatio(new BigDecimal("0.03"));
+            etf.setUserId(testUser.getId());
+            etf.setIsPublic(false);
+            etfDao.save(etf);
+        }
+
+        assertEquals(List.of("TESTPGA", "TESTPGB", "TESTPGC", "TESTPGD", "TESTPGE"), collectTickers("asc"));
+        assertEquals(List.of("TESTPGE", "TESTPGD", "TESTPGC", "TESTPGB", "TESTPGA"), collectTickers("desc"));
+
+        // Private ETFs of testUser are invisible to another non-admin user.
+        assertTrue(etfDao.findPage("TESTPG", "ticker", "asc", testUser.getId() + 1000, false, null, 10).getItems().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFindPageRejectsCursorFromAnotherSort() {
+        etfDao.save(testEtf);
+        Etf second = new Etf();
+        second.setTicker("TESTVXUS");
+        second.setDescription("Test Vanguard Total International ETF");
+        second.setAssetClass("Equity");
+        second.setExpenseRatio(new BigDecimal("0.07"));
+        second.setUserId(testUser.getId());
+        second.setIsPublic(true);
+        etfDao.save(second);
+
+        String cursor = etfDao.findPage("TESTV", "ticker", "asc", testUser.getId(), false, null, 1).getNextCursor();
+        assertNotNull(cursor);
+        etfDao.findPage("TESTV", "assetClass", "asc", testUser.getId(), false, cursor, 1);
+    }
+
+    // Exact ticker first, then tickers starting with the query, then matches anywhere else.
+    @Test
+    public void testSearchRanksByRelevance() {
+        for (String[] row : new String[][]{{"TESTRKX", "Tracks TESTRK"}, {"TESTRK", "Exact"}, {"TESTRKA", "Prefix"}}) {
+            Etf etf = new Etf();
+            etf.setTicker(row[0]);
+            etf.setDescription(row[1]);
+            etf.setAssetClass("Equity");
+            etf.setExpenseRatio(new BigDecimal("0.03"));
+            etf.setUserId(testUser.getId());
+            etf.setIsPublic(false);
+            etfDao.save(etf);
+        }
+        Etf substring = new Etf();
+        substring.setTicker("TESTZZ");
+        substring.setDescription("Holds TESTRK");
+        substring.setAssetClass("Equity");
+        substring.setExpenseRatio(new BigDecimal("0.03"));
+        substring.setUserId(testUser.getId());
+        substring.setIsPublic(false);
+        etfDao.save(substring);
+
+        assertEquals(List.of("TESTRK", "TESTRKA", "TESTRKX", "TESTZZ"),
+                tickers(etfDao.search("testrk", null, null, testUser.getId(), false)));
+    }
+
+    @Test
+    public void testSuggest() {
+        etfDao.save(testEtf);
+        Etf other = new Etf();
+        other.setTicker("TESTOTHER");
+        other.setDescription("Another TESTVANGUARD fund");
+        other.setAssetClass("Equity");
+        other.setExpenseRatio(new BigDecimal("0.05"));
+        other.setUserId(testUser.getId());
+        other.setIsPublic(false);
+        etfDao.save(other);
+
+        // Ticker prefix matches come before description word matches.
+        assertEquals(List.of("TESTVTI", "TESTOTHER"), suggestedTickers(etfDao.suggest("testv", 10, testUser.getId(), false)));
+        assertEquals(List.of("TESTVTI"), suggestedTickers(etfDao.suggest("testv", 10, testUser.getId() + 1000, false)));
+        assertEquals(1, etfDao.suggest("testv", 1, testUser.getId(), false).size());
+    }
+
+    // EtfCatalog only hears about committed changes, so this test runs outside the test transaction
+    // and cleans up after itself.
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testCatalogFollowsCommittedChanges() {
+        User owner = new User();
+        owner.setUsername("testcatalogowner");
+        owner.setPassword("hashedpassword");
+        owner.setRole("USER");
+        owner = userDao.save(owner);
+        try {
+            etfCatalog.reload();
+            List<Etf> saved = new ArrayList<>();
+            for (String ticker : new String[]{"TESTCTC", "TESTCTA", "TESTCTB"}) {
+                Etf etf = new Etf();
+                etf.setTicker(ticker);
+                etf.setDescription("Catalog test ETF");
+                etf.setAssetClass("Equity");
+                etf.setExpenseRatio(new BigDecimal("0.03"));
+                etf.setUserId(owner.getId());
+                etf.setIsPublic(false);
+                saved.add(etfDao.save(etf));
+            }
+
+            assertEquals(List.of("TESTCTA", "TESTCTB", "TESTCTC"),
+                    tickers(etfCatalog.findAll("TESTCT", "ticker", "asc", owner.getId(), false)));
+            assertTrue(etfCatalog.findAll("TESTCT", null, null, owner.getId() + 1000, false).isEmpty());
+            // Same order as the SQL search, with and without relevance ranking.
+            for (String sortBy : new String[]{null, "ticker"}) {
+                assertEquals(tickers(etfDao.search("testct", sortBy, "desc", owner.getId(), false)),
+                        tickers(etfCatalog.findAll("testct", sortBy, "desc", owner.getId(), false)));
+            }
+            assertEquals(List.of("TESTCTB"), tickers(etfCatalog.findAll("TESTCTB", null, null, owner.getId(), false)));
+            // A query too short for the trigram index reads every row instead, with the same result.
+            assertEquals(tickers(etfDao.search("ct", "ticker", "asc", owner.getId(), false)),
+                    tickers(etfCatalog.findAll("ct", "ticker", "asc", owner.getId(), false)));
+
+            // Same pages as the SQL version, in both directions.
+            for (String direction : new String[]{"asc", "desc"}) {
+                KeysetPage<Etf> first = etfCatalog.findPage("TESTCT", "ticker", direction, owner.getId(), false, null, 2);
+                assertEquals(tickers(etfDao.findPage("TESTCT", "ticker", direction, owner.getId(), false, null, 2).getItems()),
+                        tickers(first.getItems()));
+                KeysetPage<Etf> second = etfCatalog.findPage("TESTCT", "ticker", direction, owner.getId(), false, first.getNextCursor(), 2);
+                assertEquals(1, second.getItems().size());
+                assertNull(second.getNextCursor());
+            }
+            // Excluded rows are skipped without shortening the page.
+            Set<Long> excluded = Set.of(saved.get(1).getId());
+            KeysetPage<Etf> without = etfCatalog.findPage("TESTCT", "ticker", "asc", owner.getId(), false, null, 2, excluded);
+            assertEquals(tickers(etfDao.findPage("TESTCT", "ticker", "asc", owner.getId(), false, null, 2, excluded).getItems()),
+                    tickers(without.getItems()));
+            assertEquals(2, without.getItems().size());
+            assertNull(without.getNextCursor());
+
+            // Ticker prefix matches first, then description words; hidden rows never show up.
+            assertEquals(List.of("TESTCTA", "TESTCTB"),
+                    suggestedTickers(etfCatalog.suggest("testct", 2, owner.getId(), false)));
+            List<String> byDescription = suggestedTickers(etfCatalog.suggest("catalo", 10, owner.getId(), false));
+            byDescription.sort(null);
+            assertEquals(List.of("TESTCTA", "TESTCTB", "TESTCTC"), byDescription);
+            assertTrue(etfCatalog.suggest("catalo", 10, owner.getId() + 1000, false).isEmpty());
+
+            // Renaming moves the row in the sort order; making it public shows it to everyone.
+            Etf renamed = saved.get(0);
+            renamed.setTicker("TESTCTZ");
+            renamed.setIsPublic(true);
+            etfDao.updateIfOwned(renamed, owner.getId(), false);
+            assertEquals(List.of("TESTCTA", "TESTCTB", "TESTCTZ"),
+                    tickers(etfCatalog.findAll("TESTCT", "ticker", "asc", owner.getId(), false)));
+            assertEquals(List.of("TESTCTZ"), tickers(etfCatalog.findAll("TESTCT", null, null, owner.getId() + 1000, false)));
+
+            assertEquals(List.of("TESTCTZ"), suggestedTickers(etfCatalog.suggest("TESTCTZ", 10, owner.getId(), false)));
+            assertTrue(etfCatalog.suggest("TESTCTC", 10, owner.getId(), false).isEmpty());
+
+            etfDao.deleteById(saved.get(1).getId());
+            assertEquals(List.of("TESTCTB", "TESTCTZ"),
+                    tickers(etfCatalog.findAll("TESTCT", "ticker", "asc", null, true)));
+        } finally {
+            // Deleting the user cascades to the ETFs, and the catalog drops them too.
+            userDao.deleteById(owner.getId());
+        }
+        assertTrue(etfCatalog.findAll("TESTCT", null, null, null, true).isEmpty());
+    }
+
+    private static List<String> suggestedTickers(List<EtfSuggestion> suggestions) {
+        List<String> tickers = new ArrayList<>();
+        for (EtfSuggestion suggestion : suggestions) {
+            tickers.add(suggestion.getTicker());
+        }
+        return tickers;
+    }
+
+    private static List<String> tickers(List<Etf> etfs) {
+        List<String> tickers = new ArrayList<>();
+        for (Etf etf : etfs) {
+            tickers.add(etf.getTicker());
+        }
+        return tickers;
+    }
+
+    private List<String> collectTickers(String direction) {
+        List<String> tickers = new ArrayList<>();
+        String cursor = null;
+        do {
+            KeysetPage<Etf> page = etfDao.findPage("TESTPG", "ticker", direction, testUser.getId(), false, cursor, 2);
+            assertTrue(page.getItems().size() <= 2);
+            page.getItems().forEach(etf -> tickers.add(etf.getTicker()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return tickers;
+    }
+}
@@ -0,0 +1,186 @@
+package org.launchcode.etf.dao;
+
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Not a test: the harness behind the ETF search numbers (there is no JMH in this build). It starts an embedded
+// MariaDB like QueryPlanTest, creates the schema with every migration, and fills etf with 1M synthetic rows by
+// default. Run it from the etf directory after mvn test-compile, e.g.
+//   java -Xmx3g -cp target/classes:target/test-classes:<test dependencies> org.launchcode.etf.dao.EtfSearchBench [etfs]
+//
+// Tickers are 3 to 5 random letters and a digit, descriptions 4 to 6 words from WORDS, owners one of 1,000 users,
+// and one ETF in ten is public. The same ten queries (tickers, prefixes, words and phrases) go through the two
+// search paths of GET /api/etfs?search=, as a user who isn't an admin: EtfCatalog (the trigram index, outside a
+// transaction) and EtfDao (LIKE '%q%' in MySQL, inside one), each for the whole list and for a first page of
+// PAGE rows (with limit=, as search-as-you-type asks). It prints p50 and p99 of each.
+//
+// It then times GET /api/etfs/suggest on the catalog (ten prefixes, limit 10) and UPDATES description changes, each
+// written with UPDATE and applied as the EtfChangedEvent after the commit would be, which patches the trigram and
+// description-word indexes.
+public class EtfSearchBench {
+    private static final String[] WORDS = {"Vanguard", "Total", "Stock", "Market", "Bond", "International", "Emerging",
+            "Growth", "Value", "Dividend", "Small", "Cap", "Large", "Mid", "Treasury", "Corporate", "Municipal", "Gold",
+            "Real", "Estate", "Technology", "Health", "Energy", "Index", "Fund", "Select", "Sector", "ESG", "Momentum", "Quality"};
+    private static final String[] QUERIES = {"VTI", "QQQ", "AB", "emerging mark", "treasury", "gold index", "XYZ1",
+            "dividend growth", "esg", "mom"};
+    private static final int USERS = 1_000;
+    private static final String[] PREFIXES = {"V", "VT", "QQQ", "A", "gro", "emerg", "treas", "x", "esg", "Mom"};
+    private static final int PAGE = 50;
+    private static final int SUGGESTIONS = 10;
+    private static final int SUGGEST_ROUNDS = 2_000;
+    private static final int UPDATES = 50;
+    private static final int CATALOG_ROUNDS = 30;
+    private static final int LIKE_ROUNDS = 8;
+    // Rounds that only warm up.
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int SUGGEST_WARMUP_ROUNDS = 500;
+
+    public static void main(String[] args) throws Exception {
+        int etfs = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder();
+        config.setPort(0);
+        config.addArg("--user=root");
+        DB db = DB.newEmbeddedDB(config.build());
+        db.start();
+        try {
+            new JdbcTemplate(new DriverManagerDataSource(db.getConfiguration().getURL(""), "root", ""))
+                    .execute("CREATE DATABASE etf_search");
+            DriverManagerDataSource dataSource = new DriverManagerDataSource(db.getConfiguration().getURL("etf_search"), "root", "");
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            String script = Files.readString(Path.of("../database/sampleData.sql")).replaceAll("(?m)^--.*$", "");
+            for (String statement : script.split(";")) {
+                if (statement.trim().startsWith("CREATE TABLE")) {
+                    jdbcTemplate.execute(statement);
+                }
+            }
+            new SchemaMigrations(jdbcTemplate, true).migrate();
+            long start = System.nanoTime();
+            insertRows(jdbcTemplate, etfs);
+            System.out.printf("inserted %d ETFs in %.0f s%n", etfs, (System.nanoTime() - start) / 1e9);
+
+            TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+            EtfDao etfDao = new EtfDao(jdbcTemplate, event -> { }, new PortfolioStatsDao(jdbcTemplate), transactionTemplate);
+            EtfCatalog etfCatalog = new EtfCatalog(etfDao);
+            start = System.nanoTime();
+            etfCatalog.reload();
+            System.out.printf("loaded EtfCatalog in %.0f ms%n", (System.nanoTime() - start) / 1e6);
+
+            report("EtfCatalog", "list", time(CATALOG_ROUNDS,
+                    (query, userId) -> etfCatalog.findAll(query, null, "asc", userId, false).size()));
+            report("EtfCatalog", "page", time(CATALOG_ROUNDS,
+                    (query, userId) -> etfCatalog.findPage(query, null, "asc", userId, false, null, PAGE).getItems().size()));
+            report("LIKE '%q%'", "list", time(LIKE_ROUNDS,
+                    (query, userId) -> transactionTemplate.execute(status -> etfDao.search(query, null, "asc", userId, false).size())));
+            report("LIKE '%q%'", "page", time(LIKE_ROUNDS,
+                    (query, userId) -> transactionTemplate.execute(status ->
+                            etfDao.findPage(query, null, "asc", userId, false, null, PAGE).getItems().size())));
+
+            long[] nanos = time(PREFIXES, SUGGEST_ROUNDS, SUGGEST_WARMUP_ROUNDS,
+                    (prefix, userId) -> etfCatalog.suggest(prefix, SUGGESTIONS, userId, false).size());
+            System.out.printf("%-12s suggest p50 %.1f us, p99 %.1f us over %d lookups%n", "EtfCatalog",
+                    percentile(nanos, 0.50) / 1e3, percentile(nanos, 0.99) / 1e3, nanos.length);
+
+            Random random = new Random(7);
+            nanos = new long[UPDATES];
+            for (int i = 0; i < UPDATES; i++) {
+                long id = 1 + random.nextInt(etfs);
+                jdbcTemplate.update("UPDATE etf SET description = ? WHERE id = ?", description(random), id);
+                start = System.nanoTime();
+                etfCatalog.onEtfChanged(EtfChangedEvent.forEtf(id));
+                nanos[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(nanos);
+            System.out.printf("%-12s update p50 %.1f ms, p99 %.1f ms over %d description changes%n", "EtfCatalog",
+                    percentile(nanos, 0.50) / 1e6, percentile(nanos, 0.99) / 1e6, nanos.length);
+        } finally {
+            db.stop();
+        }
+    }
+
+    private static void insertRows(JdbcTemplate jdbcTemplate, int etfs) {
+        List<Object[]> users = new ArrayList<>();
+        for (int i = 1; i <= USERS; i++) {
+            users.add(new Object[]{"user" + i, "x", "USER"});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO users (username, password, role) VALUES (?, ?, ?)", users);
+
+        Random random = new Random(42);
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < etfs; i++) {
+            StringBuilder ticker = new StringBuilder();
+            for (int length = 3 + random.nextInt(3); ticker.length() < length; ) {
+                ticker.append((char) ('A' + random.nextInt(26)));
+            }
+            ticker.append(i % 10);
+            rows.add(new Object[]{ticker.toString(), description(random), "Equity", new BigDecimal("0.05"),
+                    1 + random.nextInt(USERS), random.nextInt(10) == 0});
+            if (rows.size() == 10_000 || i == etfs - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO etf (ticker, description, asset_class, expense_ratio, user_id, is_public) " +
+                        "VALUES (?, ?, ?, ?, ?, ?)", rows);
+                rows.clear();
+            }
+        }
+        jdbcTemplate.execute("ANALYZE TABLE etf");
+    }
+
+    // 4 to 6 words from WORDS.
+    private static String description(Random random) {
+        StringBuilder description = new StringBuilder(WORDS[random.nextInt(WORDS.length)]);
+        for (int words = 4 + random.nextInt(3); words > 1; words--) {
+            description.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return description.toString();
+    }
+
+    private static long[] time(int rounds, Search search) {
+        return time(QUERIES, rounds, WARMUP_ROUNDS, search);
+    }
+
+    // Every query once per round, each round as another user; returns the nanoseconds of the timed ones, sorted.
+    private static long[] time(String[] queries, int rounds, int warmupRounds, Search search) {
+        long[] nanos = new long[(rounds - warmupRounds) * queries.length];
+        int count = 0;
+        long matches = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (String query : queries) {
+                long start = System.nanoTime();
+                matches += search.run(query, 1L + round % USERS);
+                if (round >= warmupRounds) {
+                    nanos[count++] = System.nanoTime() - start;
+                }
+            }
+        }
+        // Printed so the searches can't be optimized away.
+        System.out.printf("%d matches in all%n", matches);
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    private static void report(String path, String shape, long[] nanos) {
+        System.out.printf("%-12s %s p50 %.1f ms, p99 %.1f ms over %d searches%n", path, shape, percentile(nanos, 0.50) / 1e6,
+                percentile(nanos, 0.99) / 1e6, nanos.length);
+    }
+
+    // nanos must be sorted.
+    private static long percentile(long[] nanos, double fraction) {
+        return nanos[Math.max(0, (int) Math.ceil(nanos.length * fraction) - 1)];
+    }
+
+    @FunctionalInterface
+    private interface Search {
+        int run(String query, Long userId);
+    }
+}
@@ -0,0 +1,104 @@
+package org.launchcode.etf.dao;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.launchcode.etf.model.Etf;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+// Not a test: the harness behind the fields= numbers (there is no JMH in this build). Run it from the test classpath
+// after mvn test-compile, with room for the rows, e.g.
+//   java -Xmx3g -cp target/classes:target/test-classes:<dependencies> org.launchcode.etf.dao.FieldSetBench [etfs...]
+// For 30,000 and 1M synthetic ETFs by default (like EtfSearchBench's) it serializes GET /api/etfs three ways with
+// an ObjectMapper set up like the application's (indent-output, as in application.properties): the whole rows,
+// fields=ticker,expenseRatio through FieldSet.project, and the same fields as a map per row. It prints the size of
+// each body and the median time of ROUNDS after WARMUP_ROUNDS to build it and write it to a stream that counts bytes.
+public class FieldSetBench {
+    private static final String[] WORDS = {"Vanguard", "Total", "Stock", "Market", "Bond", "International", "Emerging",
+            "Growth", "Value", "Dividend", "Small", "Cap", "Large", "Mid", "Treasury", "Corporate", "Municipal", "Gold"};
+    private static final String[] ASSET_CLASSES = {"Equity", "Fixed Income", "Commodity", "Real Estate"};
+    private static final String FIELDS = "ticker,expenseRatio";
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int ROUNDS = 11;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length > 0 ? new int[args.length] : new int[]{30_000, 1_000_000};
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().indentOutput(true).build();
+        FieldSet<Etf> fieldSet = EtfDao.FIELDS.select(FIELDS);
+
+        for (int etfs : sizes) {
+            List<Etf> rows = rows(etfs);
+            report(etfs, "whole rows", objectMapper, () -> rows);
+            report(etfs, "fields=" + FIELDS, objectMapper, () -> fieldSet.project(rows));
+            report(etfs, "a map per row", objectMapper, () -> {
+                List<Map<String, Object>> maps = new ArrayList<>(etfs);
+                for (Etf etf : rows) {
+                    maps.add(fieldSet.valuesOf(etf));
+                }
+                return maps;
+            });
+        }
+    }
+
+    private static List<Etf> rows(int etfs) {
+        Random random = new Random(42);
+        List<Etf> rows = new ArrayList<>(etfs);
+        for (int i = 0; i < etfs; i++) {
+            StringBuilder ticker = new StringBuilder();
+            for (int length = 3 + random.nextInt(3); ticker.length() < length; ) {
+                ticker.append((char) ('A' + random.nextInt(26)));
+            }
+            StringBuilder description = new StringBuilder(WORDS[random.nextInt(WORDS.length)]);
+            for (int words = 4 + random.nextInt(3); words > 1; words--) {
+                description.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            rows.add(new Etf(i + 1L, ticker.toString(), description.toString(),
+                    ASSET_CLASSES[random.nextInt(ASSET_CLASSES.length)], BigDecimal.valueOf(3 + random.nextInt(75), 4),
+                    1L + random.nextInt(1_000), random.nextInt(10) == 0));
+        }
+        return rows;
+    }
+
+    // body is built inside the timing, since building it is part of what a shape costs.
+    private static void report(int etfs, String shape, ObjectMapper objectMapper, Supplier<Object> body) throws Exception {
+        long[] nanos = new long[ROUNDS];
+        long bytes = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            CountingStream out = new CountingStream();
+            long start = System.nanoTime();
+            objectMapper.writeValue(out, body.get());
+            if (round >= WARMUP_ROUNDS) {
+                nanos[round - WARMUP_ROUNDS] = System.nanoTime() - start;
+            }
+            bytes = out.count;
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%,9d ETFs, %-26s %,12d bytes (%.1f MB), %.0f ms%n", etfs, shape, bytes, bytes / 1e6,
+                nanos[ROUNDS / 2] / 1e6);
+    }
+
+    // Throws the body away and counts it, so the numbers are Jackson's and not a buffer's.
+    private static final class CountingStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.launchcode.etf.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Not a test: the synthetic data and harness behind the similar-portfolio numbers (there is no JMH in this build).
+// Run it from the test classpath after mvn test-compile, with room for the data, e.g.
+//   java -Xmx3g -cp target/classes:target/test-classes org.launchcode.etf.dao.MinHashIndexBench [portfolios]
+//
+// generate() makes 1M portfolios by default over 30,000 ETFs whose popularity follows Zipf's law. Each portfolio
+// starts from one of 20,000 templates of 5 to 20 ETFs, keeps each of the template's ETFs with probability 0.8 and
+// adds up to 3 more, so portfolios come in clusters that share most of their ETFs, as copied model portfolios do.
+//
+// It reports the build time and size of the MinHashIndex, the cost of an update, and the latency of a query as
+// EtfHoldersIndex.findSimilar runs it in memory (candidates, then exact overlap and sort), with recall@20 of 200 of
+// them against exact search over every portfolio sharing an ETF.
+public class MinHashIndexBench {
+    private static final int ETFS = 30_000;
+    private static final int TEMPLATES = 20_000;
+    private static final int UPDATES = 20_000;
+    private static final int QUERIES = 2_000;
+    private static final int CHECKED = 200;
+    private static final int TOP = 20;
+    private static final int MAX_CANDIDATES = 1000;
+
+    public static void main(String[] args) {
+        int portfolios = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random random = new Random(42);
+        double[] popularity = zipf(ETFS);
+        Map<Long, long[]> sets = generate(portfolios, popularity, random);
+
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+        long start = System.nanoTime();
+        MinHashIndex index = MinHashIndex.build(sets);
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+        System.gc();
+        long usedAfter = runtime.totalMemory() - runtime.freeMemory();
+        System.out.printf("%d portfolios, %d bands of %d rows: build %d ms, about %d MB%n",
+                portfolios, MinHashIndex.BANDS, MinHashIndex.ROWS, buildMillis, (usedAfter - usedBefore) >> 20);
+
+        start = System.nanoTime();
+        for (int i = 0; i < UPDATES; i++) {
+            long id = 1 + random.nextInt(portfolios);
+            long[] changed = draw(popularity, 5 + random.nextInt(10), random);
+            index.update(id, sets.get(id), changed);
+            sets.put(id, changed);
+        }
+        System.out.printf("update %.1f us%n", (System.nanoTime() - start) / (double) UPDATES / 1e3);
+
+        Map<Long, List<Long>> holders = new HashMap<>();
+        sets.forEach((id, etfIds) -> {
+            for (long etfId : etfIds) {
+                holders.computeIfAbsent(etfId, key -> new ArrayList<>()).add(id);
+            }
+        });
+
+        long[] nanos = new long[QUERIES];
+        double recall = 0;
+        long candidates = 0;
+        // The first round only warms up.
+        for (int round = 0; round < 2; round++) {
+            for (int q = 0; q < QUERIES; q++) {
+                long id = 1 + random.nextInt(portfolios);
+                long[] mine = sets.get(id);
+                start = System.nanoTime();
+                long[] found = index.candidates(mine, MAX_CANDIDATES);
+                double[] similarity = new double[found.length];
+                Integer[] order = new Integer[found.length];
+                for (int i = 0; i < found.length; i++) {
+                    long[] theirs = sets.get(found[i]);
+                    int shared = MinHashIndex.overlap(mine, theirs);
+                    similarity[i] = (double) shared / (mine.length + theirs.length - shared);
+                    order[i] = i;
+                }
+                Arrays.sort(order, (a, b) -> Double.compare(similarity[b], similarity[a]));
+                nanos[q] = System.nanoTime() - start;
+
+                if (round == 1) {
+                    candidates += found.length;
+                    if (q < CHECKED) {
+                        Set<Long> top = new HashSet<>();
+                        for (int i = 0; i < order.length && top.size() < TOP; i++) {
+                            if (found[order[i]] != id) {
+                                top.add(found[order[i]]);
+                            }
+                        }
+                        recall += recall(id, mine, sets, holders, top);
+                    }
+                }
+            }
+        }
+        Arrays.sort(nanos);
+        System.out.printf("query p50 %.2f ms, p99 %.2f ms, max %.2f ms, %d candidates on average, recall@%d %.3f%n",
+                nanos[QUERIES / 2] / 1e6, nanos[QUERIES * 99 / 100] / 1e6, nanos[QUERIES - 1] / 1e6,
+                candidates / QUERIES, TOP, recall / CHECKED);
+    }
+
+    // Portfolio ids 1 .. portfolios, each with its ETF ids ascending (see above).
+    static Map<Long, long[]> generate(int portfolios, double[] popularity, Random random) {
+        long[][] templates = new long[TEMPLATES][];
+        for (int t = 0; t < TEMPLATES; t++) {
+            templates[t] = draw(popularity, 5 + random.nextInt(16), random);
+        }
+        Map<Long, long[]> sets = new HashMap<>();
+        for (long id = 1; id <= portfolios; id++) {
+            TreeSet<Long> etfIds = new TreeSet<>();
+            for (long etfId : templates[random.nextInt(TEMPLATES)]) {
+                if (random.nextDouble() < 0.8) {
+                    etfIds.add(etfId);
+                }
+            }
+            for (long etfId : draw(popularity, random.nextInt(4), random)) {
+                etfIds.add(etfId);
+            }
+            if (etfIds.isEmpty()) {
+                etfIds.add(1L);
+            }
+            sets.put(id, etfIds.stream().mapToLong(Long::longValue).toArray());
+        }
+        return sets;
+    }
+
+    // The cumulative weights 1, 1/2, 1/3 ... of ETF ids 1 .. etfs.
+    private static double[] zipf(int etfs) {
+        double[] cumulative = new double[etfs];
+        double total = 0;
+        for (int i = 0; i < etfs; i++) {
+            total += 1.0 / (i + 1);
+            cumulative[i] = total;
+        }
+        return cumulative;
+    }
+
+    // count distinct ETF ids by popularity, ascending.
+    private static long[] draw(double[] popularity, int count, Random random) {
+        TreeSet<Long> etfIds = new TreeSet<>();
+        while (etfIds.size() < count) {
+            int index = Arrays.binarySearch(popularity, random.nextDouble() * popularity[popularity.length - 1]);
+            etfIds.add((long) (index < 0 ? -index - 1 : index) + 1);
+        }
+        return etfIds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // The share of the exact top TOP by similarity that found has.
+    private static double recall(long id, long[] mine, Map<Long, long[]> sets, Map<Long, List<Long>> holders, Set<Long> found) {
+        Map<Long, Integer> shared = new HashMap<>();
+        for (long etfId : mine) {
+            for (long other : holders.get(etfId)) {
+                if (other != id) {
+                    shared.merge(other, 1, Integer::sum);
+                }
+            }
+        }
+        List<double[]> exact = new ArrayList<>();
+        shared.forEach((other, count) -> exact.add(new double[]{(double) count / (mine.length + sets.get(other).length - count), other}));
+        exact.sort((a, b) -> Double.compare(b[0], a[0]));
+        int top = Math.min(TOP, exact.size());
+        if (top == 0) {
+            return 1;
+        }
+        int hits = 0;
+        for (int i = 0; i < top; i++) {
+            if (found.contains((long) exact.get(i)[1])) {
+                hits++;
+            }
+        }
+        return (double) hits / top;
+    }
+}
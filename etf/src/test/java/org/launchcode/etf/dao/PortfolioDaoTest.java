@@ -3,15 +3,22 @@ package org.launchcode.etf.dao;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.launchcode.etf.dto.KeysetPage;
+import org.launchcode.etf.model.Etf;
 import org.launchcode.etf.model.Portfolio;
 import org.launchcode.etf.model.User;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 
@@ -26,6 +33,18 @@ public class PortfolioDaoTest {
     @Autowired
     private UserDao userDao;
 
+    @Autowired
+    private EtfDao etfDao;
+
+    @Autowired
+    private PortfolioEtfDao portfolioEtfDao;
+
+    @Autowired
+    private PortfolioStatsDao portfolioStatsDao;
+
+    @Autowired
+    private PortfolioSearchIndex portfolioSearchIndex;
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
@@ -150,7 +169,7 @@ public class PortfolioDaoTest {
     public void testSearch() {
         portfolioDao.save(testPortfolio);
         
-        List<Portfolio> results = portfolioDao.search("Test", null, testUser.getId(), true);
+        List<Portfolio> results = portfolioDao.search("Test", null, "asc", testUser.getId(), true);
         
         assertTrue(results.size() >= 1);
         assertTrue(results.stream().anyMatch(p -> "Test Portfolio".equals(p.getName())));
@@ -160,7 +179,7 @@ public class PortfolioDaoTest {
     public void testFindAllSorted() {
         portfolioDao.save(testPortfolio);
         
-        List<Portfolio> sortedPortfolios = portfolioDao.findAllSorted("userId", testUser.getId(), true);
+        List<Portfolio> sortedPortfolios = portfolioDao.findAllSorted("userId", "asc", testUser.getId(), true);
         
         assertTrue(sortedPortfolios.size() >= 1);
     }
@@ -175,4 +194,158 @@ public class PortfolioDaoTest {
         Portfolio foundPortfolio = portfolioDao.findById(portfolioId);
         assertNull(foundPortfolio);
     }
-}
\ No newline at end of file
+
+    // updateIfOwned/deleteIfOwned only touch the row when the caller owns it (or is an admin).
+    @Test
+    public void testUpdateAndDeleteIfOwned() {
+        Portfolio savedPortfolio = portfolioDao.save(testPortfolio);
+        savedPortfolio.setName("Test Renamed Portfolio");
+
+        assertEquals(0, portfolioDao.updateIfOwned(savedPortfolio, testUser.getId() + 1000, false));
+        assertEquals("Test Portfolio", portfolioDao.findById(savedPortfolio.getId()).getName());
+        assertEquals(1, portfolioDao.updateIfOwned(savedPortfolio, testUser.getId(), false));
+        assertEquals("Test Renamed Portfolio", portfolioDao.findById(savedPortfolio.getId()).getName());
+
+        assertEquals(0, portfolioDao.deleteIfOwned(savedPortfolio.getId(), testUser.getId() + 1000, false));
+        assertTrue(portfolioDao.existsById(savedPortfolio.getId()));
+        assertEquals(1, portfolioDao.deleteIfOwned(savedPortfolio.getId(), testUser.getId() + 1000, true));
+        assertFalse(portfolioDao.existsById(savedPortfolio.getId()));
+    }
+
+    @Test
+    public void testInsertIfAbsentForOwner() {
+        Portfolio savedPortfolio = portfolioDao.save(testPortfolio);
+
+        Etf etf = new Etf();
+        etf.setTicker("TESTBND");
+        etf.setDescription("Test Bond ETF");
+        etf.setAssetClass("Fixed Income");
+        etf.setExpenseRatio(new BigDecimal("0.03"));
+        etf.setUserId(testUser.getId());
+        etf.setIsPublic(true);
+        Etf savedEtf = etfDao.save(etf);
+
+        // Someone else's portfolio, a missing ETF and a duplicate link all insert nothing.
+        assertEquals(0, portfolioEtfDao.insertIfAbsentForOwner(savedPortfolio.getId(), savedEtf.getId(), testUser.getId() + 1000, false));
+        assertEquals(0, portfolioEtfDao.insertIfAbsentForOwner(savedPortfolio.getId(), savedEtf.getId() + 1000, testUser.getId(), false));
+        assertEquals(1, portfolioEtfDao.insertIfAbsentForOwner(savedPortfolio.getId(), savedEtf.getId(), testUser.getId(), false));
+        assertEquals(0, portfolioEtfDao.insertIfAbsentForOwner(savedPortfolio.getId(), savedEtf.getId(), testUser.getId(), false));
+        assertTrue(portfolioEtfDao.existsByPortfolioIdAndEtfId(savedPortfolio.getId(), savedEtf.getId()));
+
+        assertEquals(0, portfolioEtfDao.deleteIfOwned(savedPortfolio.getId(), savedEtf.getId(), testUser.getId() + 1000, false));
+        assertEquals(1, portfolioEtfDao.deleteIfOwned(savedPortfolio.getId(), savedEtf.getId(), testUser.getId(), false));
+        assertFalse(portfolioEtfDao.existsByPortfolioIdAndEtfId(savedPortfolio.getId(), savedEtf.getId()));
+    }
+
+    // An ETF deleted between the batch endpoint's membership check and its insert fails the whole insert, and
+    // neither it nor the ETF still there go into the stats.
+    @Test
+    public void testAddEtfsToPortfolioFailsForEtfDeletedAfterCheck() {
+        Portfolio savedPortfolio = portfolioDao.save(testPortfolio);
+        Etf kept = etfDao.save(new Etf(null, "TESTKEEP", "Test Kept ETF", "Equity", new BigDecimal("0.05"), testUser.getId(), true));
+        Etf deleted = etfDao.save(new Etf(null, "TESTGONE", "Test Deleted ETF", "Bond", new BigDecimal("0.10"), testUser.getId(), true));
+        List<Long> etfIds = List.of(kept.getId(), deleted.getId());
+        assertEquals(Map.of(kept.getId(), false, deleted.getId(), false), portfolioEtfDao.findMembership(savedPortfolio.getId(), etfIds));
+
+        etfDao.deleteById(deleted.getId());
+        try {
+            portfolioEtfDao.addEtfsToPortfolio(savedPortfolio.getId(), etfIds);
+            fail("Expected the insert to fail on the deleted ETF");
+        } catch (DataIntegrityViolationException e) {
+            // expected
+        }
+        assertFalse(portfolioEtfDao.existsByPortfolioIdAndEtfId(savedPortfolio.getId(), kept.getId()));
+        assertEquals(0, portfolioStatsDao.findByPortfolioId(savedPortfolio.getId()).getHoldingCount());
+        assertEquals(0, (int) jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM portfolio_allocation WHERE portfolio_id = ?", Integer.class, savedPortfolio.getId()));
+    }
+
+    // Exact name first, then names starting with the query, then the rest.
+    @Test
+    public void testSearchRanksByRelevance() {
+        for (String name : new String[]{"Test Rank Growth", "My Test Rank", "Test Rank"}) {
+            portfolioDao.save(new Portfolio(null, name, testUser.getId(), false));
+        }
+
+        List<Portfolio> results = portfolioDao.search("Test Rank", "relevance", null, testUser.getId(), false);
+        assertEquals(List.of("Test Rank", "Test Rank Growth", "My Test Rank"), names(results));
+    }
+
+    // PortfolioSearchIndex only hears about committed changes, so this test runs outside the test transaction
+    // and cleans up after itself. Its results must match the SQL search.
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testSearchIndexFollowsCommittedChanges() {
+        User owner = new User();
+        owner.setUsername("testindexowner");
+        owner.setPassword("hashedpassword");
+        owner.setRole("USER");
+        owner = userDao.save(owner);
+        try {
+            // Loads the index before the portfolios exist, so they have to arrive as events.
+            portfolioSearchIndex.search("Test Idx", null, null, owner.getId(), false);
+            Portfolio growth = portfolioDao.save(new Portfolio(null, "Test Idx Growth", owner.getId(), false));
+            portfolioDao.save(new Portfolio(null, "My Test Idx", owner.getId(), false));
+            portfolioDao.save(new Portfolio(null, "Test Idx", owner.getId(), false));
+
+            for (String sortBy : new String[]{null, "name"}) {
+                assertEquals(names(portfolioDao.search("test idx", sortBy, "desc", owner.getId(), false)),
+                        names(portfolioSearchIndex.search("test idx", sortBy, "desc", owner.getId(), false)));
+            }
+            assertEquals(List.of("Test Idx", "Test Idx Growth", "My Test Idx"),
+                    names(portfolioSearchIndex.search("Test Idx", null, null, owner.getId(), false)));
+            assertTrue(portfolioSearchIndex.search("Test Idx", null, null, owner.getId() + 1000, false).isEmpty());
+
+            String cursor = portfolioSearchIndex.findPage("Test Idx", "name", "asc", owner.getId(), false, null, 2).getNextCursor();
+            assertEquals(List.of("Test Idx Growth"),
+                    names(portfolioSearchIndex.findPage("Test Idx", "name", "asc", owner.getId(), false, cursor, 2).getItems()));
+
+            growth.setName("Test Idx Value");
+            growth.setIsPublic(true);
+            portfolioDao.updateIfOwned(growth, owner.getId(), false);
+            assertEquals(List.of("Test Idx Value"),
+                    names(portfolioSearchIndex.search("Test Idx", null, null, owner.getId() + 1000, false)));
+            assertTrue(portfolioSearchIndex.search("Idx Growth", null, null, owner.getId(), false).isEmpty());
+        } finally {
+            userDao.deleteById(owner.getId());
+        }
+        assertTrue(portfolioSearchIndex.search("Test Idx", null, null, null, true).isEmpty());
+    }
+
+    // fields= reads only the requested columns, but the rows and their order are the same as without it.
+    @Test
+    public void testFindWithFields() {
+        for (String name : new String[]{"Test Fields B", "Test Fields A", "Test Fields C"}) {
+            portfolioDao.save(new Portfolio(null, name, testUser.getId(), false));
+        }
+        FieldSet<Portfolio> fields = PortfolioDao.FIELDS.select("isPublic");
+
+        List<Portfolio> rows = portfolioDao.findAllSorted("name", "desc", testUser.getId(), false, fields);
+        List<Portfolio> full = portfolioDao.findAllSorted("name", "desc", testUser.getId(), false);
+        assertEquals(full.stream().map(Portfolio::getId).collect(Collectors.toList()),
+                rows.stream().map(Portfolio::getId).collect(Collectors.toList()));
+        assertNull(rows.get(0).getName());
+        assertEquals(Map.of("id", full.get(0).getId(), "isPublic", false), fields.project(rows).get(0));
+        assertEquals(List.of("id", "isPublic"), List.copyOf(fields.valuesOf(rows.get(0)).keySet()));
+
+        // The cursor is made from name and id even though name isn't returned.
+        KeysetPage<Portfolio> page = portfolioDao.findPage("Test Fields", "name", "asc", testUser.getId(), false, null, 2, fields);
+        assertEquals(2, page.getItems().size());
+        assertFalse(fields.project(page.getItems()).get(0).containsKey("name"));
+        page = portfolioDao.findPage("Test Fields", "name", "asc", testUser.getId(), false, page.getNextCursor(), 2, fields);
+        assertEquals(List.of(portfolioDao.findPage("Test Fields", "name", "asc", testUser.getId(), false, null, 3).getItems().get(2).getId()),
+                page.getItems().stream().map(Portfolio::getId).collect(Collectors.toList()));
+        assertNull(page.getNextCursor());
+
+        try {
+            PortfolioDao.FIELDS.select("name,password");
+            fail("Expected an unknown field to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Unknown field: password", e.getMessage());
+        }
+    }
+
+    private static List<String> names(List<Portfolio> portfolios) {
+        return portfolios.stream().map(Portfolio::getName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,129 @@
+package org.launchcode.etf.dao;
+
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// Not a test: the harness behind the include=summary numbers (there is no JMH in this build). It starts an embedded
+// MariaDB like EtfSearchBench, creates the schema with every migration, and seeds 10,000 portfolios holding about
+// 40,000 ETF links in all (1 to 7 each) over 2,000 ETFs of four asset classes. Run it from the etf directory after
+// mvn test-compile, e.g.
+//   java -cp target/classes:target/test-classes:<test dependencies> org.launchcode.etf.dao.PortfolioSummaryBench
+//
+// For pages of 20, 100 and 500 random portfolios it times PortfolioEtfDao.summarize, the one GROUP BY behind
+// GET /api/portfolios?include=summary, against PortfolioEtfDao.findEtfsByPortfolioId for each portfolio, the query
+// a client without include=summary runs per card. Both go over one connection, like a pooled one, so the numbers are
+// SQL time only: no HTTP and no connection setup. It prints the median of ROUNDS pages after WARMUP_ROUNDS.
+public class PortfolioSummaryBench {
+    private static final String[] ASSET_CLASSES = {"Equity", "Fixed Income", "Commodity", "Real Estate"};
+    private static final int USERS = 100;
+    private static final int ETFS = 2_000;
+    private static final int PORTFOLIOS = 10_000;
+    private static final int[] PAGES = {20, 100, 500};
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 21;
+
+    public static void main(String[] args) throws Exception {
+        DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder();
+        config.setPort(0);
+        config.addArg("--user=root");
+        DB db = DB.newEmbeddedDB(config.build());
+        db.start();
+        try {
+            new JdbcTemplate(new DriverManagerDataSource(db.getConfiguration().getURL(""), "root", ""))
+                    .execute("CREATE DATABASE portfolio_summary");
+            SingleConnectionDataSource dataSource = new SingleConnectionDataSource(
+                    db.getConfiguration().getURL("portfolio_summary"), "root", "", true);
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            String script = Files.readString(Path.of("../database/sampleData.sql")).replaceAll("(?m)^--.*$", "");
+            for (String statement : script.split(";")) {
+                if (statement.trim().startsWith("CREATE TABLE")) {
+                    jdbcTemplate.execute(statement);
+                }
+            }
+            new SchemaMigrations(jdbcTemplate, true).migrate();
+            Random random = new Random(42);
+            insertRows(jdbcTemplate, random);
+
+            PortfolioEtfDao portfolioEtfDao = new PortfolioEtfDao(jdbcTemplate, new PortfolioStatsDao(jdbcTemplate), event -> { });
+            for (int page : PAGES) {
+                long[] grouped = new long[ROUNDS];
+                long[] each = new long[ROUNDS];
+                long rows = 0;
+                for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+                    Set<Long> ids = new LinkedHashSet<>();
+                    while (ids.size() < page) {
+                        ids.add(1L + random.nextInt(PORTFOLIOS));
+                    }
+                    long start = System.nanoTime();
+                    rows += portfolioEtfDao.summarize(ids).size();
+                    long groupedNanos = System.nanoTime() - start;
+                    start = System.nanoTime();
+                    for (Long id : ids) {
+                        rows += portfolioEtfDao.findEtfsByPortfolioId(id).size();
+                    }
+                    long eachNanos = System.nanoTime() - start;
+                    if (round >= WARMUP_ROUNDS) {
+                        grouped[round - WARMUP_ROUNDS] = groupedNanos;
+                        each[round - WARMUP_ROUNDS] = eachNanos;
+                    }
+                }
+                Arrays.sort(grouped);
+                Arrays.sort(each);
+                System.out.printf("%3d portfolios: grouped query %.1f ms, one /etfs query each %.1f ms (%d rows in all)%n",
+                        page, grouped[ROUNDS / 2] / 1e6, each[ROUNDS / 2] / 1e6, rows);
+            }
+            dataSource.destroy();
+        } finally {
+            db.stop();
+        }
+    }
+
+    private static void insertRows(JdbcTemplate jdbcTemplate, Random random) {
+        List<Object[]> users = new ArrayList<>();
+        for (int i = 1; i <= USERS; i++) {
+            users.add(new Object[]{"user" + i, "x", "USER"});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO users (username, password, role) VALUES (?, ?, ?)", users);
+
+        List<Object[]> etfs = new ArrayList<>();
+        for (int i = 1; i <= ETFS; i++) {
+            etfs.add(new Object[]{"E" + i, "ETF " + i, ASSET_CLASSES[random.nextInt(ASSET_CLASSES.length)],
+                    BigDecimal.valueOf(3 + random.nextInt(75), 4), 1 + random.nextInt(USERS), random.nextInt(10) == 0});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO etf (ticker, description, asset_class, expense_ratio, user_id, is_public) " +
+                "VALUES (?, ?, ?, ?, ?, ?)", etfs);
+
+        List<Object[]> portfolios = new ArrayList<>();
+        for (int i = 1; i <= PORTFOLIOS; i++) {
+            portfolios.add(new Object[]{"Portfolio " + i, 1 + random.nextInt(USERS), random.nextInt(10) == 0});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO portfolio (name, user_id, is_public) VALUES (?, ?, ?)", portfolios);
+
+        List<Object[]> links = new ArrayList<>();
+        for (int portfolio = 1; portfolio <= PORTFOLIOS; portfolio++) {
+            Set<Integer> held = new LinkedHashSet<>();
+            for (int count = 1 + random.nextInt(7); held.size() < count; ) {
+                held.add(1 + random.nextInt(ETFS));
+            }
+            for (int etf : held) {
+                links.add(new Object[]{portfolio, etf});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO portfolio_etf (portfolio_id, etf_id) VALUES (?, ?)", links);
+        jdbcTemplate.execute("ANALYZE TABLE etf, portfolio, portfolio_etf");
+        System.out.printf("%d portfolios, %d links, %d ETFs%n", PORTFOLIOS, links.size(), ETFS);
+    }
+}
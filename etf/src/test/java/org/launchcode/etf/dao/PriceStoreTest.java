@@ -0,0 +1,137 @@
+package org.launchcode.etf.dao;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.launchcode.etf.dto.PriceImportResult;
+
+import java.nio.DoubleBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.junit.Assert.*;
+
+// Runs on files in a temporary directory; no Spring context or database needed.
+public class PriceStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path importDir;
+    private PriceStore priceStore;
+
+    @Before
+    public void setUp() throws Exception {
+        importDir = folder.newFolder("import").toPath();
+        priceStore = new PriceStore(folder.newFolder("prices").toString(), importDir.toString());
+    }
+
+    @Test
+    public void testAppendAndRead() {
+        assertTrue(priceStore.series("vti").isEmpty());
+
+        int[] days = {day("2024-01-02"), day("2024-01-03"), day("2024-01-05")};
+        assertEquals(3, priceStore.append("vti", days, new double[]{10, 11, 12}, new double[]{9, 10, 11}, new long[]{100, 200, 300}, 3));
+        PriceSeries series = priceStore.series("VTI");
+        assertEquals("VTI", series.getTicker());
+        assertEquals(3, series.size());
+        assertEquals(LocalDate.parse("2024-01-05"), series.getDate(2));
+        assertEquals(11, series.getClose(1), 0);
+        assertEquals(10, series.getAdjustedClose(1), 0);
+        assertEquals(300, series.getVolume(2));
+
+        // Days already stored are skipped; the rest are appended. Series taken earlier don't change.
+        int[] more = {day("2024-01-05"), day("2024-01-08")};
+        assertEquals(1, priceStore.append("VTI", more, new double[]{99, 13}, new double[]{99, 12}, new long[]{99, 400}, 2));
+        assertEquals(3, series.size());
+        PriceSeries longer = priceStore.series("VTI");
+        assertEquals(4, longer.size());
+        assertEquals(12, longer.getClose(2), 0);
+        assertEquals(13, longer.getClose(3), 0);
+        assertEquals(0, priceStore.append("VTI", more, new double[]{99, 13}, new double[]{99, 12}, new long[]{99, 400}, 2));
+
+        // Another store on the same directory maps what was written.
+        PriceSeries reopened = new PriceStore(folder.getRoot().toPath().resolve("prices").toString(), "").series("VTI");
+        assertEquals(4, reopened.size());
+        assertEquals(400, reopened.getVolume(3));
+
+        try {
+            priceStore.append("VTI", new int[]{day("2024-01-10"), day("2024-01-09")}, new double[2], new double[2], new long[2], 2);
+            fail("Expected bars out of order to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            priceStore.series("../etc");
+            fail("Expected an invalid ticker to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRanges() {
+        int[] days = {day("2024-01-02"), day("2024-01-03"), day("2024-01-05"), day("2024-01-08")};
+        priceStore.append("BND", days, new double[]{1, 2, 3, 4}, new double[]{1, 2, 3, 4}, new long[4], 4);
+        PriceSeries series = priceStore.series("BND");
+
+        assertEquals(0, series.ceilingIndex(LocalDate.parse("2023-12-31")));
+        assertEquals(2, series.ceilingIndex(LocalDate.parse("2024-01-04")));
+        assertEquals(2, series.ceilingIndex(LocalDate.parse("2024-01-05")));
+        assertEquals(4, series.ceilingIndex(LocalDate.parse("2024-02-01")));
+
+        PriceSeries range = series.range(LocalDate.parse("2024-01-03"), LocalDate.parse("2024-01-05"));
+        assertEquals(2, range.size());
+        assertEquals(LocalDate.parse("2024-01-03"), range.getDate(0));
+        DoubleBuffer closes = range.closes();
+        double[] values = new double[closes.remaining()];
+        closes.get(values);
+        assertArrayEquals(new double[]{2, 3}, values, 0);
+        // Reading a column doesn't move anyone else's.
+        assertEquals(2, range.closes().remaining());
+
+        assertEquals(4, series.range(null, null).size());
+        assertEquals(1, series.range(LocalDate.parse("2024-01-06"), null).size());
+        assertEquals(0, series.range(LocalDate.parse("2024-01-06"), LocalDate.parse("2024-01-07")).size());
+        assertEquals(0, series.range(LocalDate.parse("2024-01-09"), LocalDate.parse("2024-01-01")).size());
+    }
+
+    @Test
+    public void testImportCsv() throws Exception {
+        // Yahoo-style columns, out of order, with a repeated day (the later row wins) and a row without prices.
+        Files.writeString(importDir.resolve("spy.csv"), String.join("\n",
+                "Date,Open,High,Low,Close,Adj Close,Volume",
+                "2024-01-03,1,1,1,470.5,468.1,1000",
+                "2024-01-02,1,1,1,472.6,470.2,2000",
+                "2024-01-04,null,null,null,null,null,null",
+                "2024-01-03,1,1,1,470.7,468.3,1100",
+                ""));
+        Files.writeString(importDir.resolve("agg.csv"), "date,close\n2024-01-02,98.5\n");
+        Files.writeString(importDir.resolve("bad.csv"), "when,price\n2024-01-02,1\n");
+
+        PriceImportResult result = priceStore.importAll();
+        assertEquals(2, result.getFiles());
+        assertEquals(3, result.getBarsAdded());
+        assertTrue(result.getErrors().containsKey("bad.csv"));
+
+        PriceSeries spy = priceStore.series("SPY");
+        assertEquals(2, spy.size());
+        assertEquals(470.7, spy.getClose(1), 0);
+        assertEquals(468.3, spy.getAdjustedClose(1), 0);
+        assertEquals(1100, spy.getVolume(1));
+        PriceSeries agg = priceStore.series("AGG");
+        assertEquals(98.5, agg.getAdjustedClose(0), 0);
+        assertEquals(0, agg.getVolume(0));
+
+        // A refreshed file adds only its new days.
+        Files.writeString(importDir.resolve("agg.csv"), "date,close\n2024-01-02,98.5\n2024-01-03,98.7\n");
+        assertEquals(1, priceStore.importCsv("AGG", importDir.resolve("agg.csv")));
+        assertEquals(2, priceStore.series("AGG").size());
+    }
+
+    private static int day(String date) {
+        return (int) LocalDate.parse(date).toEpochDay();
+    }
+}
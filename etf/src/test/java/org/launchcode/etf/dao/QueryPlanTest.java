@@ -0,0 +1,401 @@
+package org.launchcode.etf.dao;
+
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.launchcode.etf.model.Etf;
+import org.launchcode.etf.model.Portfolio;
+import org.launchcode.etf.model.User;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+// Runs every DAO query against an embedded MariaDB with the schema from database/sampleData.sql, the migrations
+// from db/migration and enough rows for the optimizer to care, and fails when MariaDB plans a full table scan
+// (EXPLAIN type ALL) for it. This is what catches a dropped index or a query rewritten so it can't use one.
+//
+// Every statement the DAO sends is EXPLAINed with the same parameters right before it runs (see ExplainingDataSource).
+// A few queries read the whole table by design (admin lists, LIKE '%query%'); they run through allowFullScan instead.
+// Each call runs in a transaction that is rolled back, so the writes don't change the data for the next one.
+//
+// This test starts its own database, so it doesn't need the MySQL instance the other tests use.
+public class QueryPlanTest {
+    private static final int USERS = 50_000;
+    private static final int ETFS = 30_000;
+    private static final int PORTFOLIOS = 10_000;
+    private static final int LINKS = 40_000;
+    private static final String[] ASSET_CLASSES = {"Equity", "Fixed Income", "Commodities", "Real Estate",
+            "Emerging Markets", "Technology", "Government Bonds", "Small Cap Equity"};
+
+    private static DB db;
+    private static ExplainingDataSource dataSource;
+    private static TransactionTemplate transactionTemplate;
+    private static EtfDao etfDao;
+    private static PortfolioDao portfolioDao;
+    private static PortfolioEtfDao portfolioEtfDao;
+    private static UserDao userDao;
+    private static PortfolioStatsDao portfolioStatsDao;
+
+    // Ids of rows that are in the middle of the data, not at either end of an index.
+    private static final long USER_ID = 12_345;
+    private static final long ETF_ID = 12_345;
+    private static final long PORTFOLIO_ID = 4_321;
+
+    @BeforeClass
+    public static void startDatabase() throws Exception {
+        DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder();
+        config.setPort(0);
+        // mariadbd refuses to start as root without this (CI containers often run as root); otherwise it's ignored.
+        config.addArg("--user=root");
+        db = DB.newEmbeddedDB(config.build());
+        db.start();
+        // Over JDBC rather than db.createDB, which needs the mariadb command line client.
+        new JdbcTemplate(new DriverManagerDataSource(db.getConfiguration().getURL(""), "root", ""))
+                .execute("CREATE DATABASE etf_plans");
+
+        DriverManagerDataSource plain = new DriverManagerDataSource(db.getConfiguration().getURL("etf_plans"), "root", "");
+        JdbcTemplate setup = new JdbcTemplate(plain);
+        createTables(setup);
+        assertTrue(new SchemaMigrations(setup, true).migrate() > 0);
+        // A second run finds every script applied, with the same checksums.
+        assertEquals(0, new SchemaMigrations(setup, true).migrate());
+        insertRows(setup);
+        // The stats V2 would have filled in, had these rows been there already.
+        setup.update("INSERT INTO portfolio_stats (portfolio_id, holding_count, total_weight, weighted_expense_sum) " +
+                "SELECT pe.portfolio_id, COUNT(*), SUM(pe.weight), SUM(pe.weight * e.expense_ratio) " +
+                "FROM portfolio_etf pe JOIN etf e ON e.id = pe.etf_id GROUP BY pe.portfolio_id");
+        setup.update("INSERT INTO portfolio_allocation (portfolio_id, asset_class, holding_count, weight) " +
+                "SELECT pe.portfolio_id, e.asset_class, COUNT(*), SUM(pe.weight) " +
+                "FROM portfolio_etf pe JOIN etf e ON e.id = pe.etf_id GROUP BY pe.portfolio_id, e.asset_class");
+        setup.execute("ANALYZE TABLE users, etf, portfolio, portfolio_etf, portfolio_stats, portfolio_allocation");
+
+        dataSource = new ExplainingDataSource(plain);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        portfolioStatsDao = new PortfolioStatsDao(jdbcTemplate);
+        etfDao = new EtfDao(jdbcTemplate, event -> { }, portfolioStatsDao, transactionTemplate);
+        portfolioDao = new PortfolioDao(jdbcTemplate, event -> { });
+        portfolioEtfDao = new PortfolioEtfDao(jdbcTemplate, portfolioStatsDao, event -> { });
+        userDao = new UserDao(jdbcTemplate, new UserCache(100, 60), event -> { }, portfolioStatsDao);
+    }
+
+    @AfterClass
+    public static void stopDatabase() throws Exception {
+        if (db != null) {
+            db.stop();
+        }
+    }
+
+    @Test
+    public void testEtfQueriesUseIndexes() {
+        assertIndexed(() -> etfDao.findByUserId(USER_ID));
+        assertIndexed(() -> etfDao.findPublicEtfs());
+        assertIndexed(() -> etfDao.findByUserIdOrPublic(USER_ID));
+        assertIndexed(() -> etfDao.findById(ETF_ID));
+        assertIndexed(() -> etfDao.existsById(ETF_ID));
+        assertIndexed(() -> etfDao.findByIds(List.of(ETF_ID, ETF_ID + 7, ETF_ID + 99)));
+        for (String sortBy : new String[]{"ticker", "assetClass", "expenseRatio"}) {
+            assertIndexed(() -> etfDao.findAllSorted(sortBy, "asc", USER_ID, false));
+        }
+        for (String sortBy : new String[]{"ticker", "assetClass"}) {
+            for (boolean isAdmin : new boolean[]{false, true}) {
+                assertIndexed(() -> {
+                    String cursor = etfDao.findPage(null, sortBy, "asc", USER_ID, isAdmin, null, 50).getNextCursor();
+                    etfDao.findPage(null, sortBy, "asc", USER_ID, isAdmin, cursor, 50);
+                });
+            }
+        }
+        // The addable ETFs of GET /api/portfolios/{id}/detail.
+        assertIndexed(() -> etfDao.findPage(null, "ticker", "asc", USER_ID, false, null, 50, List.of(ETF_ID, ETF_ID + 7)));
+        assertIndexed(() -> etfDao.search("T1", "ticker", "asc", USER_ID, false));
+        assertIndexed(() -> etfDao.suggest("T1", 10, USER_ID, false));
+
+        Etf etf = etfDao.findById(ETF_ID);
+        assertIndexed(() -> etfDao.save(etf));
+        assertIndexed(() -> etfDao.updateIfOwned(etf, USER_ID, false));
+        Etf repriced = etfDao.findById(ETF_ID);
+        repriced.setExpenseRatio(repriced.getExpenseRatio().add(BigDecimal.ONE));
+        assertIndexed(() -> etfDao.updateIfOwned(repriced, USER_ID, false));
+        assertIndexed(() -> etfDao.deleteIfOwned(ETF_ID, USER_ID, false));
+        assertIndexed(() -> etfDao.deleteById(ETF_ID));
+    }
+
+    @Test
+    public void testPortfolioQueriesUseIndexes() {
+        assertIndexed(() -> portfolioDao.findByUserId(USER_ID));
+        assertIndexed(() -> portfolioDao.findPublicPortfolios());
+        assertIndexed(() -> portfolioDao.findByUserIdOrPublic(USER_ID));
+        assertIndexed(() -> portfolioDao.findById(PORTFOLIO_ID));
+        assertIndexed(() -> portfolioDao.existsById(PORTFOLIO_ID));
+        assertIndexed(() -> portfolioDao.findByIds(List.of(PORTFOLIO_ID, PORTFOLIO_ID + 7, PORTFOLIO_ID + 99)));
+        for (boolean isAdmin : new boolean[]{false, true}) {
+            assertIndexed(() -> portfolioDao.findVisibleByIds(List.of(PORTFOLIO_ID, PORTFOLIO_ID + 7, PORTFOLIO_ID + 99), USER_ID, isAdmin, 2));
+        }
+        for (String sortBy : new String[]{"name", "userId"}) {
+            assertIndexed(() -> portfolioDao.findAllSorted(sortBy, "desc", USER_ID, false));
+            for (boolean isAdmin : new boolean[]{false, true}) {
+                assertIndexed(() -> {
+                    String cursor = portfolioDao.findPage(null, sortBy, "asc", USER_ID, isAdmin, null, 50).getNextCursor();
+                    portfolioDao.findPage(null, sortBy, "asc", USER_ID, isAdmin, cursor, 50);
+                });
+            }
+        }
+        assertIndexed(() -> portfolioDao.search("Portfolio", "name", "asc", USER_ID, false));
+        FieldSet<Portfolio> fields = PortfolioDao.FIELDS.select("name");
+        assertIndexed(() -> portfolioDao.findAllSorted(null, null, USER_ID, false, fields));
+        assertIndexed(() -> {
+            String cursor = portfolioDao.findPage(null, "userId", "asc", USER_ID, true, null, 50, fields).getNextCursor();
+            portfolioDao.findPage(null, "userId", "asc", USER_ID, true, cursor, 50, fields);
+        });
+
+        Portfolio portfolio = portfolioDao.findById(PORTFOLIO_ID);
+        assertIndexed(() -> portfolioDao.save(portfolio));
+        assertIndexed(() -> portfolioDao.updateIfOwned(portfolio, USER_ID, false));
+        assertIndexed(() -> portfolioDao.deleteIfOwned(PORTFOLIO_ID, USER_ID, false));
+        assertIndexed(() -> portfolioDao.deleteById(PORTFOLIO_ID));
+    }
+
+    @Test
+    public void testPortfolioEtfQueriesUseIndexes() {
+        assertIndexed(() -> portfolioEtfDao.findEtfsByPortfolioId(PORTFOLIO_ID));
+        assertIndexed(() -> portfolioEtfDao.findPortfolioWithEtfs(PORTFOLIO_ID));
+        assertIndexed(() -> portfolioDao.findOwnerIdForUpdate(PORTFOLIO_ID));
+        assertIndexed(() -> portfolioEtfDao.findMembership(PORTFOLIO_ID, List.of(ETF_ID, ETF_ID + 7)));
+        assertIndexed(() -> portfolioEtfDao.addEtfsToPortfolio(PORTFOLIO_ID, List.of(ETF_ID, ETF_ID + 7)));
+        assertIndexed(() -> portfolioEtfDao.removeEtfsFromPortfolio(PORTFOLIO_ID, List.of(ETF_ID, ETF_ID + 7)));
+        assertIndexed(() -> portfolioEtfDao.insertIfAbsentForOwner(PORTFOLIO_ID, ETF_ID, new BigDecimal("2.5"), USER_ID, false));
+        assertIndexed(() -> portfolioEtfDao.updateWeightIfOwned(PORTFOLIO_ID, ETF_ID, new BigDecimal("2.5"), USER_ID, false));
+        assertIndexed(() -> portfolioStatsDao.findByPortfolioId(PORTFOLIO_ID));
+        assertIndexed(() -> portfolioStatsDao.etfRemoving(ETF_ID));
+        assertIndexed(() -> portfolioStatsDao.etfAdded(ETF_ID));
+        assertIndexed(() -> portfolioStatsDao.ownerRemoving(USER_ID));
+        assertIndexed(() -> portfolioEtfDao.summarize(List.of(PORTFOLIO_ID, PORTFOLIO_ID + 7, PORTFOLIO_ID + 99)));
+        assertIndexed(() -> portfolioEtfDao.existsByPortfolioIdAndEtfId(PORTFOLIO_ID, ETF_ID));
+        assertIndexed(() -> portfolioEtfDao.insertIfAbsentForOwner(PORTFOLIO_ID, ETF_ID, USER_ID, false));
+        assertIndexed(() -> portfolioEtfDao.deleteIfOwned(PORTFOLIO_ID, ETF_ID, USER_ID, false));
+        assertIndexed(() -> portfolioEtfDao.removeEtfFromPortfolio(PORTFOLIO_ID, ETF_ID));
+        assertIndexed(() -> portfolioEtfDao.findPortfolioIdsByEtfId(ETF_ID));
+        assertIndexed(() -> portfolioEtfDao.findEtfIdsByPortfolioId(PORTFOLIO_ID));
+        assertIndexed(() -> portfolioEtfDao.findOverlaps(PORTFOLIO_ID));
+        assertIndexed(() -> portfolioEtfDao.findTickerWeights(List.of(PORTFOLIO_ID, PORTFOLIO_ID + 7, PORTFOLIO_ID + 99)));
+        // The clone of POST /api/portfolios/{id}/clone.
+        assertIndexed(() -> {
+            Portfolio clone = portfolioDao.save(new Portfolio(null, "Clone", USER_ID, false));
+            portfolioEtfDao.copyHoldings(PORTFOLIO_ID, clone.getId());
+        });
+    }
+
+    @Test
+    public void testUserQueriesUseIndexes() {
+        assertIndexed(() -> userDao.findById(USER_ID));
+        assertIndexed(() -> userDao.findByUsername("user" + USER_ID));
+        assertIndexed(() -> userDao.getRoles("user" + USER_ID));
+        assertIndexed(() -> userDao.usernameExists("user" + USER_ID, USER_ID));
+        for (String sortBy : new String[]{"username", "role", "id"}) {
+            assertIndexed(() -> {
+                String cursor = userDao.findPage(null, sortBy, "asc", null, 50).getNextCursor();
+                userDao.findPage(null, sortBy, "asc", cursor, 50);
+            });
+        }
+
+        User user = userDao.findById(USER_ID);
+        assertIndexed(() -> userDao.update(user));
+        assertIndexed(() -> userDao.updatePassword(USER_ID, "y"));
+        assertIndexed(() -> userDao.rehashPassword(USER_ID, "x", "y"));
+        assertIndexed(() -> userDao.deleteById(USER_ID));
+    }
+
+    // Admin lists return every row, and LIKE '%query%' can't use a B-tree index. Outside transactions the
+    // ETF and portfolio searches are served from memory (EtfCatalog, PortfolioSearchIndex); the user list is
+    // admin-only. EtfHoldersIndex loads every link once. These still run here, so a broken statement shows up,
+    // but they are allowed to scan.
+    @Test
+    public void testFullScansAreOnlyWhereExpected() {
+        allowFullScan(() -> etfDao.findAll());
+        allowFullScan(() -> etfDao.findAllSorted("ticker", "asc", null, true));
+        allowFullScan(() -> etfDao.search("fund", null, null, null, true));
+        allowFullScan(() -> etfDao.findPage("fund", "ticker", "asc", null, true, null, 50));
+        allowFullScan(() -> portfolioDao.findAll());
+        allowFullScan(() -> portfolioDao.findAllSorted("name", "asc", null, true));
+        allowFullScan(() -> portfolioDao.search("portfolio", null, null, null, true));
+        allowFullScan(() -> userDao.findAll());
+        allowFullScan(() -> userDao.search("user", "username", "asc"));
+        allowFullScan(() -> portfolioEtfDao.findAllPortfolioIdsByEtf());
+        allowFullScan(() -> portfolioEtfDao.findAllEtfIdsByPortfolio());
+    }
+
+    private static void assertIndexed(Runnable call) {
+        for (Plan plan : run(call)) {
+            // A derived table holds what its own SELECT produced, and that SELECT's plan is checked on its own rows.
+            if ("ALL".equals(plan.type) && !plan.table.startsWith("<derived")) {
+                fail("Full scan of " + plan.table + " (about " + plan.rows + " rows) in: " + plan.sql);
+            }
+        }
+    }
+
+    private static void allowFullScan(Runnable call) {
+        run(call);
+    }
+
+    private static List<Plan> run(Runnable call) {
+        dataSource.plans.clear();
+        transactionTemplate.executeWithoutResult(status -> {
+            call.run();
+            status.setRollbackOnly();
+        });
+        return new ArrayList<>(dataSource.plans);
+    }
+
+    // Only the CREATE TABLE statements; the sample rows are replaced by insertRows.
+    private static void createTables(JdbcTemplate jdbcTemplate) throws Exception {
+        String script = Files.readString(Path.of("../database/sampleData.sql")).replaceAll("(?m)^--.*$", "");
+        for (String statement : script.split(";")) {
+            if (statement.trim().startsWith("CREATE TABLE")) {
+                jdbcTemplate.execute(statement);
+            }
+        }
+    }
+
+    // 2% of the ETFs and portfolios are public, the rest belong to random users.
+    private static void insertRows(JdbcTemplate jdbcTemplate) {
+        Random random = new Random(1);
+        List<Object[]> users = new ArrayList<>();
+        for (int i = 1; i <= USERS; i++) {
+            users.add(new Object[]{"user" + i, "x", i % 1000 == 0 ? "ADMIN" : "USER"});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO users (username, password, role) VALUES (?, ?, ?)", users);
+
+        List<Object[]> etfs = new ArrayList<>();
+        for (int i = 1; i <= ETFS; i++) {
+            etfs.add(new Object[]{"T" + Integer.toString(random.nextInt(1 << 24), 36).toUpperCase(), "Fund number " + i,
+                    ASSET_CLASSES[random.nextInt(ASSET_CLASSES.length)], new BigDecimal("0.05"),
+                    1 + random.nextInt(USERS), random.nextInt(50) == 0});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO etf (ticker, description, asset_class, expense_ratio, user_id, is_public) VALUES (?, ?, ?, ?, ?, ?)", etfs);
+
+        List<Object[]> portfolios = new ArrayList<>();
+        for (int i = 1; i <= PORTFOLIOS; i++) {
+            portfolios.add(new Object[]{"Portfolio " + Integer.toString(random.nextInt(1 << 30), 36),
+                    1 + random.nextInt(USERS), random.nextInt(50) == 0});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO portfolio (name, user_id, is_public) VALUES (?, ?, ?)", portfolios);
+
+        List<Object[]> links = new ArrayList<>();
+        for (int i = 1; i <= LINKS; i++) {
+            links.add(new Object[]{1 + random.nextInt(PORTFOLIOS), 1 + random.nextInt(ETFS)});
+        }
+        jdbcTemplate.batchUpdate("INSERT IGNORE INTO portfolio_etf (portfolio_id, etf_id) VALUES (?, ?)", links);
+    }
+
+    private static final class Plan {
+        private final String sql;
+        private final String table;
+        private final String type;
+        private final long rows;
+
+        private Plan(String sql, String table, String type, long rows) {
+            this.sql = sql;
+            this.table = table;
+            this.type = type;
+            this.rows = rows;
+        }
+    }
+
+    // Hands out connections whose statements EXPLAIN themselves, on the same connection and with the same
+    // parameters, just before they execute. INSERT ... VALUES has no plan, so plain inserts aren't checked.
+    private static final class ExplainingDataSource extends DelegatingDataSource {
+        private final List<Plan> plans = new ArrayList<>();
+
+        private ExplainingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection connection = super.getConnection();
+            return proxy(Connection.class, connection, (method, args) -> {
+                Object result = method.invoke(connection, args);
+                if (result instanceof PreparedStatement statement && method.getName().equals("prepareStatement")) {
+                    return explaining(connection, statement, (String) args[0]);
+                }
+                if (result instanceof Statement statement && method.getName().equals("createStatement")) {
+                    return explaining(connection, statement, null);
+                }
+                return result;
+            });
+        }
+
+        private Statement explaining(Connection connection, Statement statement, String preparedSql) {
+            List<Object[]> parameters = new ArrayList<>();
+            List<Method> setters = new ArrayList<>();
+            Class<? extends Statement> type = statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+            return proxy(type, statement, (method, args) -> {
+                String name = method.getName();
+                if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                    setters.add(method);
+                    parameters.add(args);
+                } else if (name.startsWith("execute")) {
+                    String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+                    explain(connection, sql, setters, parameters);
+                }
+                return method.invoke(statement, args);
+            });
+        }
+
+        private void explain(Connection connection, String sql, List<Method> setters, List<Object[]> parameters)
+                throws SQLException, ReflectiveOperationException {
+            String normalized = sql.trim().toUpperCase();
+            if (!normalized.startsWith("SELECT") && !normalized.startsWith("UPDATE") && !normalized.startsWith("DELETE")
+                    && !(normalized.startsWith("INSERT") && normalized.contains("SELECT"))) {
+                return;
+            }
+            try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql)) {
+                for (int i = 0; i < setters.size(); i++) {
+                    setters.get(i).invoke(explain, parameters.get(i));
+                }
+                try (ResultSet rs = explain.executeQuery()) {
+                    while (rs.next()) {
+                        plans.add(new Plan(sql, rs.getString("table"), rs.getString("type"), rs.getLong("rows")));
+                    }
+                }
+            }
+        }
+    }
+
+    private interface Handler {
+        Object handle(Method method, Object[] args) throws Throwable;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Object target, Handler handler) {
+        return (T) Proxy.newProxyInstance(QueryPlanTest.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            try {
+                return handler.handle(method, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        });
+    }
+}
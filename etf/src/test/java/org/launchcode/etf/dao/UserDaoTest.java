@@ -3,13 +3,16 @@ package org.launchcode.etf.dao;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.launchcode.etf.dto.KeysetPage;
 import org.launchcode.etf.model.User;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -25,6 +28,9 @@ public class UserDaoTest {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ConfigurableListableBeanFactory beanFactory;
+
     private User testUser;
 
     @Before
@@ -107,7 +113,7 @@ public class UserDaoTest {
     public void testSearch() {
         userDao.save(testUser);
         
-        List<User> results = userDao.search("test");
+        List<User> results = userDao.search("test", null, "asc");
         
         assertTrue(results.size() >= 1);
         assertTrue(results.stream().anyMatch(u -> "testuser".equals(u.getUsername())));
@@ -151,6 +157,77 @@ public class UserDaoTest {
         assertNull(foundUser);
     }
 
+    // The first lookup puts the user in UserCache, so these make sure writes don't leave stale rows behind.
+    @Test
+    public void testCachedUserIsInvalidatedOnUpdate() {
+        User savedUser = userDao.save(testUser);
+        assertEquals("USER", userDao.findByUsername("testuser").getRole());
+
+        savedUser.setRole("ADMIN");
+        userDao.update(savedUser);
+
+        assertEquals("ADMIN", userDao.findByUsername("testuser").getRole());
+        assertEquals("ADMIN", userDao.findById(savedUser.getId()).getRole());
+    }
+
+    @Test
+    public void testCachedUserIsInvalidatedOnPasswordChangeAndDelete() {
+        User savedUser = userDao.save(testUser);
+        assertNotNull(userDao.findById(savedUser.getId()));
+
+        userDao.updatePassword(savedUser.getId(), "newhashedpassword");
+        assertEquals("newhashedpassword", userDao.findByUsername("testuser").getPassword());
+
+        userDao.deleteById(savedUser.getId());
+        assertNull(userDao.findByUsername("testuser"));
+        assertNull(userDao.findById(savedUser.getId()));
+    }
+
+    // Tokens carry the credential version they were issued with, so these writes must bump it.
+    @Test
+    public void testCredentialVersionIsBumpedOnPasswordAndRoleChange() {
+        User savedUser = userDao.save(testUser);
+        int initialVersion = userDao.findById(savedUser.getId()).getCredentialVersion();
+
+        userDao.updatePassword(savedUser.getId(), "newhashedpassword");
+        assertEquals(initialVersion + 1, (int) userDao.findById(savedUser.getId()).getCredentialVersion());
+
+        savedUser.setRole("ADMIN");
+        userDao.update(savedUser);
+        assertEquals(initialVersion + 2, (int) userDao.findById(savedUser.getId()).getCredentialVersion());
+
+        // Saving the same username and role again is not a credential change.
+        userDao.update(savedUser);
+        assertEquals(initialVersion + 2, (int) userDao.findById(savedUser.getId()).getCredentialVersion());
+    }
+
+    // Rehashing at a new BCrypt cost is not a password change, so tokens must stay valid.
+    @Test
+    public void testRehashPasswordKeepsCredentialVersion() {
+        User savedUser = userDao.save(testUser);
+        int initialVersion = userDao.findById(savedUser.getId()).getCredentialVersion();
+
+        assertTrue(userDao.rehashPassword(savedUser.getId(), "hashedpassword", "rehashedpassword"));
+
+        User foundUser = userDao.findByUsername("testuser");
+        assertEquals("rehashedpassword", foundUser.getPassword());
+        assertEquals(initialVersion, (int) foundUser.getCredentialVersion());
+
+        // The old hash no longer matches, so a late rehash can't overwrite a newer password.
+        assertFalse(userDao.rehashPassword(savedUser.getId(), "hashedpassword", "stalehash"));
+        assertEquals("rehashedpassword", userDao.findById(savedUser.getId()).getPassword());
+    }
+
+    @Test
+    public void testCachedUserIsACopy() {
+        userDao.save(testUser);
+
+        User firstLookup = userDao.findByUsername("testuser");
+        firstLookup.setPassword(null);
+
+        assertEquals("hashedpassword", userDao.findByUsername("testuser").getPassword());
+    }
+
     @Test
     public void testUsernameExists() {
         User savedUser = userDao.save(testUser);
@@ -205,7 +282,7 @@ public class UserDaoTest {
 
     @Test
     public void testSearchNoResults() {
-        List<User> results = userDao.search("nonexistentuser");
+        List<User> results = userDao.search("nonexistentuser", null, "asc");
         assertTrue(results.isEmpty());
     }
 
@@ -251,4 +328,39 @@ public class UserDaoTest {
         assertEquals("ROLE_USER", regularRoles.get(0));
         assertEquals("ROLE_ADMIN", adminRoles.get(0));
     }
-}
\ No newline at end of file
+
+    // The role sort pages on (role, username, id), so users with the same role keep their username order.
+    @Test
+    public void testFindPageByRole() {
+        for (String[] user : new String[][]{{"testpage_c", "USER"}, {"testpage_a", "ADMIN"}, {"testpage_b", "USER"}}) {
+            User newUser = new User();
+            newUser.setUsername(user[0]);
+            newUser.setPassword("hashedpassword");
+            newUser.setRole(user[1]);
+            userDao.save(newUser);
+        }
+
+        List<String> usernames = new ArrayList<>();
+        String cursor = null;
+        do {
+            KeysetPage<User> page = userDao.findPage("testpage_", "role", "asc", cursor, 1);
+            page.getItems().forEach(user -> usernames.add(user.getUsername()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertEquals(List.of("testpage_a", "testpage_b", "testpage_c"), usernames);
+    }
+
+    // Every DAO goes through the JdbcTemplate bean, so it must not exist before the schema is up to date.
+    @Test
+    public void testJdbcTemplateIsCreatedAfterSchemaMigrations() {
+        String[] names = beanFactory.getBeanNamesForType(JdbcTemplate.class);
+        assertTrue(names.length > 0);
+        for (String name : names) {
+            String[] dependsOn = beanFactory.getBeanDefinition(name).getDependsOn();
+            assertNotNull(dependsOn);
+            assertTrue(List.of(dependsOn).contains("schemaMigrations"));
+        }
+        assertTrue(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM schema_version", Integer.class) > 0);
+    }
+}
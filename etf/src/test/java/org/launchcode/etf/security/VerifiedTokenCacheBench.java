@@ -0,0 +1,85 @@
+package org.launchcode.etf.security;
+
+import eu.fraho.spring.securityJwt.base.config.RefreshCookieProperties;
+import eu.fraho.spring.securityJwt.base.config.RefreshProperties;
+import eu.fraho.spring.securityJwt.base.config.TokenCookieProperties;
+import eu.fraho.spring.securityJwt.base.config.TokenHeaderProperties;
+import eu.fraho.spring.securityJwt.base.config.TokenProperties;
+import eu.fraho.spring.securityJwt.base.dto.JwtUser;
+import eu.fraho.spring.securityJwt.base.service.JwtTokenService;
+import eu.fraho.spring.securityJwt.base.service.JwtTokenServiceImpl;
+import eu.fraho.spring.securityJwt.base.service.NullTokenStore;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+// Not a test: the harness behind the token cache (there is no JMH in this build). Run it from the test classpath
+// after mvn test-compile, e.g.
+//   java -cp target/classes:target/test-classes:<dependencies> org.launchcode.etf.security.VerifiedTokenCacheBench [users]
+// It sets up fraho's JwtTokenServiceImpl the way its auto-configuration does (HS256 with a random key, like a server
+// without a keyfile), issues one token per user, 1,000 by default, and parses them round-robin: once straight through
+// fraho (what every request paid before), and once through CachingJwtTokenService with every token already cached
+// (a frontend sending the same bearer token again). It prints microseconds and bytes allocated per parse for each.
+public class VerifiedTokenCacheBench {
+    private static final int WARMUP_PARSES = 200_000;
+    private static final int TIMED_PARSES = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+
+        TokenProperties tokenProperties = new TokenProperties();
+        tokenProperties.afterPropertiesSet();
+        JwtTokenServiceImpl fraho = new JwtTokenServiceImpl();
+        fraho.setTokenProperties(tokenProperties);
+        fraho.setRefreshProperties(new RefreshProperties());
+        fraho.setTokenCookieProperties(new TokenCookieProperties());
+        fraho.setTokenHeaderProperties(new TokenHeaderProperties());
+        fraho.setRefreshCookieProperties(new RefreshCookieProperties());
+        fraho.setRefreshTokenStore(new NullTokenStore());
+        fraho.setJwtUser(EtfJwtUser::new);
+        fraho.afterPropertiesSet();
+
+        String[] tokens = new String[users];
+        for (int i = 0; i < users; i++) {
+            EtfJwtUser user = new EtfJwtUser();
+            user.setId((long) i + 1);
+            user.setUsername("user" + (i + 1));
+            user.setRole(i % 50 == 0 ? "ADMIN" : "USER");
+            user.setCredentialVersion(1);
+            user.setAuthorities(List.of(new SimpleGrantedAuthority("ROLE_" + user.getRole())));
+            tokens[i] = fraho.generateToken(user).getToken();
+        }
+
+        VerifiedTokenCache cache = new VerifiedTokenCache(10_000, 900, tokenProperties);
+        CachingJwtTokenService caching = new CachingJwtTokenService(fraho, cache, EtfJwtUser::new);
+
+        long sink = time("fraho (uncached)", fraho, tokens);
+        sink += time("VerifiedTokenCache (hit)", caching, tokens);
+        System.out.printf("cache: %d hits, %d misses%n", cache.getStats().getHits(), cache.getStats().getMisses());
+        // Keeps the JIT from dropping the parses.
+        System.out.println("checksum " + sink);
+    }
+
+    private static long time(String path, JwtTokenService service, String[] tokens) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long sink = 0;
+        for (int i = 0; i < WARMUP_PARSES; i++) {
+            sink += parse(service, tokens[i % tokens.length]);
+        }
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < TIMED_PARSES; i++) {
+            sink += parse(service, tokens[i % tokens.length]);
+        }
+        long nanos = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        System.out.printf("%-26s %6.2f us/parse, %6d bytes/parse%n", path, nanos / 1e3 / TIMED_PARSES,
+                allocated / TIMED_PARSES);
+        return sink;
+    }
+
+    private static long parse(JwtTokenService service, String token) {
+        return service.<JwtUser>parseUser(token).orElseThrow().getId();
+    }
+}
@@ -0,0 +1,60 @@
+package org.launchcode.etf.service;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Not a test: the warm-loop harness behind the BacktestKernel timings (there is no JMH in this build). Run it from
+// the test classpath after mvn test-compile, e.g.
+//   java -cp target/classes:target/test-classes org.launchcode.etf.service.BacktestKernelBench [assets] [days]
+// It defaults to 20 ETFs over 7,500 days of random-walk prices (about 30 years of trading days, weekdays only),
+// equal weights, and times simulate() plus maxDrawdown() buy-and-hold and rebalanced monthly. It also reports what
+// the timed loop allocated: at most a few hundred bytes once, however many runs.
+public class BacktestKernelBench {
+    private static final int WARMUP_RUNS = 2_000;
+    private static final int TIMED_RUNS = 5_000;
+
+    public static void main(String[] args) {
+        int assets = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int days = args.length > 1 ? Integer.parseInt(args[1]) : 7_500;
+
+        SplittableRandom random = new SplittableRandom(1);
+        double[] prices = new double[assets * days];
+        for (int i = 0; i < assets; i++) {
+            double price = 100;
+            for (int t = 0; t < days; t++) {
+                price *= 1 + 0.01 * random.nextGaussian();
+                prices[t * assets + i] = price;
+            }
+        }
+        int[] months = new int[days];
+        for (int t = 0; t < days; t++) {
+            months[t] = BacktestKernel.monthIndex(10_000 + t * 7 / 5);
+        }
+        double[] weights = new double[assets];
+        Arrays.fill(weights, 1.0 / assets);
+        double[] units = new double[assets];
+        double[] equity = new double[days];
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        double sink = 0;
+        for (int period : new int[]{0, 1}) {
+            for (int run = 0; run < WARMUP_RUNS; run++) {
+                sink += BacktestKernel.simulate(prices, assets, days, weights, months, period, 10_000, units, equity);
+            }
+            long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (int run = 0; run < TIMED_RUNS; run++) {
+                sink += BacktestKernel.simulate(prices, assets, days, weights, months, period, 10_000, units, equity);
+                sink += BacktestKernel.maxDrawdown(equity, days);
+            }
+            long nanosPerRun = (System.nanoTime() - start) / TIMED_RUNS;
+            long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+            System.out.printf("%d assets x %d days, %s: %.3f ms/run, %.2f ns/asset-day, %d bytes allocated%n",
+                    assets, days, period == 0 ? "buy and hold" : "monthly", nanosPerRun / 1e6,
+                    nanosPerRun / (double) (assets * days), allocated);
+        }
+        // Keeps the JIT from dropping the runs.
+        System.out.println("checksum " + sink);
+    }
+}
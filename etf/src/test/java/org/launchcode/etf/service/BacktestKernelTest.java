@@ -0,0 +1,58 @@
+package org.launchcode.etf.service;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.*;
+
+public class BacktestKernelTest {
+
+    @Test
+    public void testMonthIndexMatchesLocalDate() {
+        for (int day = -800_000; day <= 800_000; day += 7) {
+            LocalDate date = LocalDate.ofEpochDay(day);
+            assertEquals(date.toString(), (date.getYear() - 1970) * 12 + date.getMonthValue() - 1, BacktestKernel.monthIndex(day));
+        }
+    }
+
+    @Test
+    public void testSimulate() {
+        // Two assets; the first doubles at the end of January and halves again on 2 February.
+        double[] prices = {
+                100, 100,
+                200, 100,
+                200, 100,
+                100, 100};
+        int[] months = new int[4];
+        String[] dates = {"2024-01-30", "2024-01-31", "2024-02-01", "2024-02-02"};
+        for (int t = 0; t < 4; t++) {
+            months[t] = BacktestKernel.monthIndex((int) LocalDate.parse(dates[t]).toEpochDay());
+        }
+        double[] weights = {0.5, 0.5};
+        double[] units = new double[2];
+        double[] equity = new double[4];
+
+        assertEquals(0, BacktestKernel.simulate(prices, 2, 4, weights, months, 0, 10_000, units, equity), 0);
+        assertArrayEquals(new double[]{10_000, 15_000, 15_000, 10_000}, equity, 1e-9);
+        assertEquals(1.0 / 3, BacktestKernel.maxDrawdown(equity, 4), 1e-12);
+        assertEquals(0, BacktestKernel.cagr(equity, 4, 0, 3), 1e-12);
+
+        // Monthly: back to half and half on 1 February, so the fall of the first asset costs less.
+        assertEquals(5_000.0 / 30_000, BacktestKernel.simulate(prices, 2, 4, weights, months, 1, 10_000, units, equity), 1e-12);
+        assertArrayEquals(new double[]{10_000, 15_000, 15_000, 11_250}, equity, 1e-9);
+        assertEquals(0.25, BacktestKernel.maxDrawdown(equity, 4), 1e-12);
+
+        // Quarterly doesn't trade within a quarter.
+        assertEquals(0, BacktestKernel.simulate(prices, 2, 4, weights, months, 3, 10_000, units, equity), 0);
+        assertEquals(10_000, equity[3], 1e-9);
+    }
+
+    @Test
+    public void testCagr() {
+        double[] equity = {100, 150, 121};
+        // Two years (730.5 days) from 100 to 121 is 10% a year.
+        assertEquals(0.10, BacktestKernel.cagr(equity, 3, 0, 731), 1e-3);
+        assertEquals(0, BacktestKernel.cagr(equity, 1, 0, 731), 0);
+    }
+}
@@ -0,0 +1,140 @@
+package org.launchcode.etf.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.launchcode.etf.dao.PriceStore;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+// Checks the blocked, parallel build against a plain two-loop covariance. No Spring context needed.
+public class CovarianceModelTest {
+    private static final int START = (int) LocalDate.parse("2020-01-01").toEpochDay();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PriceStore priceStore;
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        priceStore = new PriceStore(folder.newFolder("prices").toString(), "");
+        pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void testMatchesNaiveCovariance() {
+        // More tickers than one tile, and more history than the window.
+        int tickers = 70;
+        int days = 300;
+        int window = 250;
+        SplittableRandom random = new SplittableRandom(42);
+        double[][] returns = new double[tickers][window];
+        for (int i = 0; i < tickers; i++) {
+            int[] epochDays = new int[days];
+            double[] closes = new double[days];
+            double price = 100;
+            for (int t = 0; t < days; t++) {
+                if (t > 0) {
+                    double dailyReturn = random.nextGaussian() * 0.01 + (i % 7) * 0.0005;
+                    price *= 1 + dailyReturn;
+                    if (t >= days - window) {
+                        returns[i][t - (days - window)] = dailyReturn;
+                    }
+                }
+                epochDays[t] = START + t;
+                closes[t] = price;
+            }
+            priceStore.append("T" + i, epochDays, closes, closes, new long[days], days);
+        }
+
+        CovarianceModel model = CovarianceModel.build(priceStore, window, pool);
+        assertEquals(tickers, model.size());
+        assertEquals(window, model.getObservations());
+        assertEquals(LocalDate.ofEpochDay(START + days - 1), model.getAsOf());
+        assertEquals(priceStore.getVersion(), model.getPriceVersion());
+        for (int i = 0; i < tickers; i++) {
+            int a = model.indexOf("T" + i);
+            assertEquals(mean(returns[i]), model.getMeanReturn(a), 1e-12);
+            for (int j = 0; j < tickers; j++) {
+                int b = model.indexOf("T" + j);
+                assertEquals(covariance(returns[i], returns[j]), model.getCovariance(a, b), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testMissingDaysAndShortHistory() {
+        int[] days = new int[20];
+        double[] closes = new double[20];
+        for (int t = 0; t < 20; t++) {
+            days[t] = START + t;
+            closes[t] = 100 + t;
+        }
+        priceStore.append("FULL", days, closes, closes, new long[20], 20);
+        // Misses day 10: its price carries over, so that day's return is 0 and the next one covers both days.
+        int[] gapDays = new int[19];
+        double[] gapCloses = new double[19];
+        for (int t = 0, k = 0; t < 20; t++) {
+            if (t != 10) {
+                gapDays[k] = START + t;
+                gapCloses[k++] = 100 + t;
+            }
+        }
+        priceStore.append("GAP", gapDays, gapCloses, gapCloses, new long[19], 19);
+        // Only the last five days: too little of the window.
+        priceStore.append("YOUNG", Arrays.copyOfRange(days, 15, 20), Arrays.copyOfRange(closes, 15, 20),
+                Arrays.copyOfRange(closes, 15, 20), new long[5], 5);
+
+        CovarianceModel model = CovarianceModel.build(priceStore, 19, pool);
+        assertEquals(List.of("FULL", "GAP"), model.getTickers());
+        assertEquals(-1, model.indexOf("YOUNG"));
+        double[] full = new double[19];
+        double[] gap = new double[19];
+        for (int t = 1; t < 20; t++) {
+            full[t - 1] = (100.0 + t) / (99 + t) - 1;
+            gap[t - 1] = t == 10 ? 0 : t == 11 ? 111.0 / 109 - 1 : full[t - 1];
+        }
+        assertEquals(covariance(full, gap), model.getCovariance(0, 1), 1e-15);
+        assertEquals(covariance(gap, gap), model.getCovariance(1, 1), 1e-15);
+    }
+
+    @Test
+    public void testEmptyStore() {
+        CovarianceModel model = CovarianceModel.build(priceStore, 250, pool);
+        assertEquals(0, model.size());
+        assertNull(model.getAsOf());
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    private static double covariance(double[] a, double[] b) {
+        double meanA = mean(a);
+        double meanB = mean(b);
+        double sum = 0;
+        for (int t = 0; t < a.length; t++) {
+            sum += (a[t] - meanA) * (b[t] - meanB);
+        }
+        return sum / (a.length - 1);
+    }
+}
@@ -0,0 +1,107 @@
+package org.launchcode.etf.service;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Not a test: the harness behind the CriticalLine timings (there is no JMH in this build). Run it from the test
+// classpath after mvn test-compile, e.g.
+//   java -cp target/classes:target/test-classes org.launchcode.etf.service.CriticalLineBench [assets]
+// The fixture is a 5-factor covariance model over 200 assets by default (a market factor plus four small ones, and
+// some idiosyncratic variance), with mean returns between 2% and 12%. For no cap, a 5% cap and a 2% cap it times
+// turningPoints() plus sampling 25 points, and checks every sampled point against the KKT conditions of
+// min w'Sw subject to mean'w = r, sum w = 1, 0 <= w <= cap.
+public class CriticalLineBench {
+    private static final int FACTORS = 5;
+    private static final int POINTS = 25;
+    private static final int WARMUP_RUNS = 30;
+    private static final int TIMED_RUNS = 50;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        SplittableRandom random = new SplittableRandom(42);
+        double[][] beta = new double[n][FACTORS];
+        double[] mean = new double[n];
+        for (int i = 0; i < n; i++) {
+            for (int f = 0; f < FACTORS; f++) {
+                beta[i][f] = 0.1 * random.nextGaussian() + (f == 0 ? 0.15 : 0);
+            }
+            mean[i] = 0.02 + 0.1 * random.nextDouble();
+        }
+        double[] covariance = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i; j < n; j++) {
+                double sum = 0;
+                for (int f = 0; f < FACTORS; f++) {
+                    sum += beta[i][f] * beta[j][f];
+                }
+                if (i == j) {
+                    sum += 0.005 + 0.02 * random.nextDouble();
+                }
+                covariance[i * n + j] = sum;
+                covariance[j * n + i] = sum;
+            }
+        }
+
+        for (double cap : new double[]{1, 0.05, 0.02}) {
+            List<double[]> turningPoints = null;
+            for (int run = 0; run < WARMUP_RUNS; run++) {
+                turningPoints = CriticalLine.turningPoints(mean, covariance, n, cap);
+            }
+            long start = System.nanoTime();
+            List<double[]> points = null;
+            for (int run = 0; run < TIMED_RUNS; run++) {
+                turningPoints = CriticalLine.turningPoints(mean, covariance, n, cap);
+                points = CriticalLine.sample(turningPoints, mean, POINTS);
+            }
+            double millis = (System.nanoTime() - start) / 1e6 / TIMED_RUNS;
+            double worst = 0;
+            for (double[] w : points) {
+                worst = Math.max(worst, kktViolation(w, mean, covariance, n, cap));
+            }
+            System.out.printf("%d assets, cap %s: %d turning points, %.1f ms, worst KKT violation %.1e%n",
+                    n, cap >= 1 ? "none" : cap, turningPoints.size(), millis, worst);
+        }
+    }
+
+    // The gradient 2Sw must be a * mean + b on the free assets, at least that on the ones at 0 and at most that on
+    // the capped ones. a and b are fitted to the free assets by least squares; returns the largest violation.
+    private static double kktViolation(double[] w, double[] mean, double[] covariance, int n, double cap) {
+        double[] gradient = new double[n];
+        double count = 0, sumMean = 0, sumGradient = 0, sumMeanSquared = 0, sumProduct = 0;
+        for (int i = 0; i < n; i++) {
+            double sum = 0;
+            for (int j = 0; j < n; j++) {
+                sum += covariance[i * n + j] * w[j];
+            }
+            gradient[i] = 2 * sum;
+            if (isFree(w[i], cap)) {
+                count++;
+                sumMean += mean[i];
+                sumGradient += gradient[i];
+                sumMeanSquared += mean[i] * mean[i];
+                sumProduct += mean[i] * gradient[i];
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+        double a = count >= 2 ? (count * sumProduct - sumMean * sumGradient) / (count * sumMeanSquared - sumMean * sumMean) : 0;
+        double b = (sumGradient - a * sumMean) / count;
+        double worst = 0;
+        for (int i = 0; i < n; i++) {
+            double residual = gradient[i] - a * mean[i] - b;
+            if (isFree(w[i], cap)) {
+                worst = Math.max(worst, Math.abs(residual));
+            } else if (w[i] <= 1e-7) {
+                worst = Math.max(worst, -residual);
+            } else {
+                worst = Math.max(worst, residual);
+            }
+        }
+        return worst;
+    }
+
+    private static boolean isFree(double weight, double cap) {
+        return weight > 1e-7 && weight < cap - 1e-7;
+    }
+}
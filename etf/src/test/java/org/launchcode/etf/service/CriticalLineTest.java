@@ -0,0 +1,139 @@
+package org.launchcode.etf.service;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.*;
+
+public class CriticalLineTest {
+
+    @Test
+    public void testUncorrelatedEndpoints() {
+        // Uncorrelated: the least variance holds each asset in proportion to 1 / variance, 25 : 100 : 400.
+        double[] mean = {0.10, 0.05, 0.02};
+        double[] covariance = {
+                0.04, 0, 0,
+                0, 0.01, 0,
+                0, 0, 0.0025};
+        List<double[]> turningPoints = CriticalLine.turningPoints(mean, covariance, 3, 1);
+        assertArrayEquals(new double[]{1, 0, 0}, turningPoints.get(0), 1e-12);
+        assertArrayEquals(new double[]{25 / 525.0, 100 / 525.0, 400 / 525.0}, turningPoints.get(turningPoints.size() - 1), 1e-12);
+
+        // Capped at half: the best two, and a least-variance portfolio with the third at the cap and the rest split 1 : 4.
+        turningPoints = CriticalLine.turningPoints(mean, covariance, 3, 0.5);
+        assertArrayEquals(new double[]{0.5, 0.5, 0}, turningPoints.get(0), 1e-12);
+        assertArrayEquals(new double[]{0.1, 0.4, 0.5}, turningPoints.get(turningPoints.size() - 1), 1e-12);
+
+        List<double[]> sampled = CriticalLine.sample(turningPoints, mean, 5);
+        assertEquals(5, sampled.size());
+        double lowest = CriticalLine.dot(mean, sampled.get(0));
+        double highest = CriticalLine.dot(mean, sampled.get(4));
+        assertEquals(0.075, highest, 1e-12);
+        for (int p = 0; p < 5; p++) {
+            assertEquals(lowest + (highest - lowest) * p / 4, CriticalLine.dot(mean, sampled.get(p)), 1e-12);
+        }
+    }
+
+    @Test
+    public void testFrontierIsOptimal() {
+        // A factor model over 60 assets, capped at 5%: every sampled point must satisfy the optimality conditions.
+        int n = 60;
+        double cap = 0.05;
+        SplittableRandom random = new SplittableRandom(3);
+        double[][] loadings = new double[n][3];
+        double[] mean = new double[n];
+        for (int i = 0; i < n; i++) {
+            for (int f = 0; f < 3; f++) {
+                loadings[i][f] = random.nextGaussian() * 0.1 + (f == 0 ? 0.15 : 0);
+            }
+            mean[i] = 0.02 + random.nextDouble() * 0.1;
+        }
+        double[] covariance = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j <= i; j++) {
+                double sum = i == j ? 0.005 + random.nextDouble() * 0.02 : 0;
+                for (int f = 0; f < 3; f++) {
+                    sum += loadings[i][f] * loadings[j][f];
+                }
+                covariance[i * n + j] = sum;
+                covariance[j * n + i] = sum;
+            }
+        }
+
+        List<double[]> points = CriticalLine.sample(CriticalLine.turningPoints(mean, covariance, n, cap), mean, 25);
+        assertEquals(25, points.size());
+        double previousVariance = 0;
+        for (double[] w : points) {
+            double sum = 0;
+            for (double weight : w) {
+                assertTrue(weight >= 0 && weight <= cap + 1e-12);
+                sum += weight;
+            }
+            assertEquals(1, sum, 1e-12);
+            double variance = CriticalLine.variance(covariance, w);
+            assertTrue(variance >= previousVariance - 1e-15);
+            previousVariance = variance;
+            if (w != points.get(24)) {
+                assertOptimal(w, mean, covariance, n, cap);
+            }
+        }
+        // The last is the highest return there is: the best 20 assets at the cap.
+        double[] sorted = mean.clone();
+        Arrays.sort(sorted);
+        double best = 0;
+        for (int i = n - 20; i < n; i++) {
+            best += cap * sorted[i];
+        }
+        assertEquals(best, CriticalLine.dot(mean, points.get(24)), 1e-12);
+    }
+
+    @Test
+    public void testDegenerateCaps() {
+        double[] mean = {0.1, 0.2};
+        double[] covariance = {0.04, 0.01, 0.01, 0.09};
+        // Half each is the only portfolio that fits a cap of 1/2.
+        List<double[]> turningPoints = CriticalLine.turningPoints(mean, covariance, 2, 0.5);
+        assertEquals(1, turningPoints.size());
+        assertArrayEquals(new double[]{0.5, 0.5}, CriticalLine.sample(turningPoints, mean, 10).get(0), 0);
+        try {
+            CriticalLine.turningPoints(mean, covariance, 2, 0.4);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    // Below the highest return, the gradient 2 covariance w must be a mean + b on the assets strictly inside the box, at least that on the
+    // ones at 0 and at most that on the ones at the cap.
+    private static void assertOptimal(double[] w, double[] mean, double[] covariance, int n, double cap) {
+        double[] gradient = new double[n];
+        double count = 0, sumMean = 0, sumGradient = 0, sumMeanSquared = 0, sumProduct = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                gradient[i] += 2 * covariance[i * n + j] * w[j];
+            }
+            if (w[i] > 1e-9 && w[i] < cap - 1e-9) {
+                count++;
+                sumMean += mean[i];
+                sumGradient += gradient[i];
+                sumMeanSquared += mean[i] * mean[i];
+                sumProduct += mean[i] * gradient[i];
+            }
+        }
+        double a = count >= 2 ? (count * sumProduct - sumMean * sumGradient) / (count * sumMeanSquared - sumMean * sumMean) : 0;
+        double b = count > 0 ? (sumGradient - a * sumMean) / count : 0;
+        for (int i = 0; i < n; i++) {
+            double residual = gradient[i] - a * mean[i] - b;
+            if (w[i] <= 1e-9) {
+                assertTrue(residual > -1e-10);
+            } else if (w[i] >= cap - 1e-9) {
+                assertTrue(residual < 1e-10);
+            } else {
+                assertEquals(0, residual, 1e-10);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.launchcode.etf.service;
+
+import org.launchcode.etf.dao.LatestPrices;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Not a test: the harness behind the live quote throughput (there is no JMH in this build). Run it from the test
+// classpath after mvn test-compile, e.g.
+//   java -cp target/classes:target/test-classes org.launchcode.etf.service.NavBookBench [etfs] [portfolios]
+// It defaults to 2,000 ETFs and 50,000 portfolios of 8 random ETFs each with random weights (about 200 holders per
+// ETF), all with reference prices, and 4M quotes generated up front: a random ETF moving up to 1% from its last
+// price. Each quote goes through what QuoteFeed.onQuote does, LatestPrices.put and NavBook.apply under a lock. It
+// reports quotes per second and what the timed quotes allocated, which should be nothing.
+public class NavBookBench {
+    private static final int HOLDINGS = 8;
+    private static final int QUOTES = 4_000_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int etfs = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int portfolios = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        SplittableRandom random = new SplittableRandom(7);
+
+        long[] portfolioIds = new long[portfolios * HOLDINGS];
+        long[] etfIds = new long[portfolioIds.length];
+        double[] weights = new double[portfolioIds.length];
+        for (int p = 0; p < portfolios; p++) {
+            long[] held = random.longs(1, etfs + 1).distinct().limit(HOLDINGS).sorted().toArray();
+            for (int h = 0; h < held.length; h++) {
+                int k = p * HOLDINGS + h;
+                portfolioIds[k] = p + 1;
+                etfIds[k] = held[h];
+                weights[k] = 1 + random.nextInt(4);
+            }
+        }
+        double[] closes = new double[etfs + 1];
+        for (int e = 1; e <= etfs; e++) {
+            closes[e] = 20 + random.nextDouble() * 200;
+        }
+        LatestPrices latestPrices = new LatestPrices();
+        NavBook book = NavBook.build(portfolioIds, etfIds, weights, portfolioIds.length, etfId -> closes[(int) etfId],
+                                     latestPrices::get);
+
+        int[] quoteEtfs = new int[QUOTES];
+        double[] quotePrices = new double[QUOTES];
+        double[] last = closes.clone();
+        for (int q = 0; q < QUOTES; q++) {
+            int e = 1 + random.nextInt(etfs);
+            last[e] *= 1 + 0.01 * (random.nextDouble() * 2 - 1);
+            quoteEtfs[q] = e;
+            quotePrices[q] = last[e];
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Object lock = new Object();
+        long moved = 0;
+        long[] nanos = new long[ROUNDS];
+        long allocated = 0;
+        // The first round only warms up; the prices carry on from round to round.
+        for (int round = 0; round <= ROUNDS; round++) {
+            long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (int q = 0; q < QUOTES; q++) {
+                synchronized (lock) {
+                    moved += book.apply(quoteEtfs[q], latestPrices.put(quoteEtfs[q], quotePrices[q]), quotePrices[q]);
+                }
+            }
+            if (round > 0) {
+                nanos[round - 1] = System.nanoTime() - start;
+                allocated += threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+            }
+        }
+        Arrays.sort(nanos);
+        long median = nanos[ROUNDS / 2];
+        System.out.printf("%d ETFs, %d portfolios x %d: %.2f M quotes/s (%.2f us/quote, median of %d rounds of %d), "
+                        + "%d bytes allocated in all%n", etfs, portfolios, HOLDINGS, QUOTES / (median / 1e9) / 1e6,
+                median / 1e3 / QUOTES, ROUNDS, QUOTES, allocated);
+        // Keeps the JIT from dropping the quotes.
+        System.out.println("holder updates " + moved + ", NAV of portfolio 1 " + book.nav(book.slot(1)));
+    }
+}
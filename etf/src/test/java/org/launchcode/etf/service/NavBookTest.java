@@ -0,0 +1,168 @@
+package org.launchcode.etf.service;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.*;
+
+public class NavBookTest {
+
+    @Test
+    public void testIncrementalNavMatchesRecompute() {
+        // 300 portfolios of 1 to 8 of 60 ETFs, random weights; ETFs below 40 have a reference close, the rest don't.
+        SplittableRandom random = new SplittableRandom(5);
+        int etfs = 60;
+        long[] portfolioIds = new long[300 * 8];
+        long[] etfIds = new long[portfolioIds.length];
+        double[] weights = new double[portfolioIds.length];
+        int count = 0;
+        for (int p = 0; p < 300; p++) {
+            int holdings = 1 + random.nextInt(8);
+            int first = random.nextInt(etfs - holdings);
+            for (int h = 0; h < holdings; h++) {
+                portfolioIds[count] = 1000 + 3L * p;
+                etfIds[count] = first + h;
+                weights[count++] = random.nextInt(4);
+            }
+        }
+        double[] closes = new double[etfs];
+        Arrays.fill(closes, Double.NaN);
+        for (int e = 0; e < 40; e++) {
+            closes[e] = 50 + random.nextDouble() * 100;
+        }
+        NavBook book = NavBook.build(portfolioIds, etfIds, weights, count, etfId -> closes[(int) etfId], etfId -> Double.NaN);
+        assertEquals(300, book.portfolios());
+        assertEquals(count, book.holdings());
+
+        double[] latest = new double[etfs];
+        Arrays.fill(latest, Double.NaN);
+        for (int q = 0; q < 20_000; q++) {
+            int e = random.nextInt(etfs);
+            double price = Double.isNaN(latest[e]) ? 50 + random.nextDouble() * 100 : latest[e] * (1 + 0.01 * random.nextGaussian());
+            book.apply(e, latest[e], price);
+            latest[e] = price;
+        }
+
+        for (int p = 0; p < 300; p++) {
+            double total = 0;
+            int holdings = 0;
+            for (int k = 0; k < count; k++) {
+                if (portfolioIds[k] == 1000 + 3L * p) {
+                    total += weights[k];
+                    holdings++;
+                }
+            }
+            double expected = 0;
+            for (int k = 0; k < count; k++) {
+                if (portfolioIds[k] == 1000 + 3L * p) {
+                    int e = (int) etfIds[k];
+                    double share = total > 0 ? weights[k] / total : 1.0 / holdings;
+                    // Never quoted, at par.
+                    expected += share * (Double.isNaN(latest[e]) ? 1 : latest[e] / book.reference(e));
+                }
+            }
+            assertEquals(NavBook.BASE * expected, book.nav(book.slot(1000 + 3L * p)), 1e-9);
+        }
+        assertEquals(-1, book.slot(1001));
+    }
+
+    @Test
+    public void testDirtyFlagsAndReferences() {
+        // Portfolio 1 holds ETFs 2 and 3 half each, portfolio 2 just ETF 3; ETF 2 has a close of 50, ETF 3 none.
+        NavBook book = NavBook.build(new long[]{1, 1, 2}, new long[]{2, 3, 3}, new double[]{1, 1, 0}, 3,
+                etfId -> etfId == 2 ? 50 : Double.NaN, etfId -> Double.NaN);
+        int one = book.slot(1);
+        int two = book.slot(2);
+        assertTrue(book.takeDirty(one));
+        assertTrue(book.takeDirty(two));
+        assertFalse(book.takeDirty(one));
+        assertEquals(100, book.nav(one), 0);
+
+        // The first quote of ETF 3 becomes its reference and moves nothing.
+        assertEquals(0, book.apply(3, Double.NaN, 20));
+        assertEquals(20, book.reference(3), 0);
+        assertFalse(book.takeDirty(one));
+
+        // ETF 2's first quote is against its close.
+        assertEquals(1, book.apply(2, Double.NaN, 55));
+        assertEquals(105, book.nav(one), 1e-12);
+        assertTrue(book.takeDirty(one));
+        assertFalse(book.takeDirty(two));
+
+        assertEquals(2, book.apply(3, 20, 18));
+        assertEquals(100, book.nav(one), 1e-12);
+        assertEquals(90, book.nav(two), 1e-12);
+        assertTrue(book.takeDirty(one));
+        assertTrue(book.takeDirty(two));
+
+        // Nobody holds ETF 7.
+        assertEquals(0, book.apply(7, Double.NaN, 10));
+        assertTrue(Double.isNaN(book.reference(7)));
+
+        // A new book starts from the latest prices.
+        NavBook rebuilt = NavBook.build(new long[]{1, 1}, new long[]{2, 3}, new double[]{1, 1}, 2,
+                book::reference, etfId -> etfId == 2 ? 55 : 18);
+        assertEquals(100, rebuilt.nav(rebuilt.slot(1)), 1e-12);
+        assertTrue(rebuilt.takeDirty(rebuilt.slot(1)));
+    }
+
+    @Test
+    public void testSetMatchesRebuild() {
+        // 200 portfolios of up to 6 of 40 ETFs, changed, emptied and refilled at random between quotes.
+        SplittableRandom random = new SplittableRandom(11);
+        int etfs = 40;
+        long[][] holdings = new long[200][];
+        double[][] weights = new double[200][];
+        double[] latest = new double[etfs];
+        Arrays.fill(latest, Double.NaN);
+        NavBook book = NavBook.build(new long[0], new long[0], new double[0], 0, etfId -> Double.NaN, etfId -> Double.NaN);
+        for (int round = 0; round < 2000; round++) {
+            int p = random.nextInt(200);
+            int count = random.nextInt(7);
+            int first = random.nextInt(etfs - count);
+            holdings[p] = new long[count];
+            weights[p] = new double[count];
+            for (int h = 0; h < count; h++) {
+                holdings[p][h] = first + h;
+                weights[p][h] = random.nextInt(4);
+            }
+            boolean had = book.slot(p) >= 0;
+            assertEquals(had || count > 0, book.set(p, holdings[p].clone(), weights[p].clone(), etfId -> Double.NaN, etfId -> latest[(int) etfId]));
+            assertFalse(book.set(p, holdings[p].clone(), weights[p].clone(), etfId -> Double.NaN, etfId -> latest[(int) etfId]));
+            for (int q = 0; q < 5; q++) {
+                int e = random.nextInt(etfs);
+                double price = Double.isNaN(latest[e]) ? 50 + random.nextDouble() * 100 : latest[e] * (1 + 0.01 * random.nextGaussian());
+                book.apply(e, latest[e], price);
+                latest[e] = price;
+            }
+        }
+
+        long[] portfolioIds = new long[200 * 6];
+        long[] etfIds = new long[portfolioIds.length];
+        double[] linkWeights = new double[portfolioIds.length];
+        int count = 0;
+        for (int p = 0; p < 200; p++) {
+            for (int h = 0; holdings[p] != null && h < holdings[p].length; h++) {
+                portfolioIds[count] = p;
+                etfIds[count] = holdings[p][h];
+                linkWeights[count++] = weights[p][h];
+            }
+        }
+        NavBook rebuilt = NavBook.build(portfolioIds, etfIds, linkWeights, count, book::reference, etfId -> latest[(int) etfId]);
+        assertEquals(rebuilt.portfolios(), book.portfolios());
+        assertEquals(count, book.holdings());
+        for (int p = 0; p < 200; p++) {
+            int slot = rebuilt.slot(p);
+            if (slot < 0) {
+                assertEquals(-1, book.slot(p));
+            } else {
+                assertEquals(rebuilt.nav(slot), book.nav(book.slot(p)), 1e-9);
+            }
+        }
+        for (int e = 0; e < etfs; e++) {
+            assertEquals(Arrays.toString(rebuilt.holderIds(e)), rebuilt.holderIds(e).length, book.holderIds(e).length);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.launchcode.etf.service;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.*;
+
+public class RiskServiceTest {
+
+    @Test
+    public void testCholesky() {
+        double[] matrix = {
+                4, 2, 0.4,
+                2, 5, 1,
+                0.4, 1, 3};
+        double[] factor = RiskService.cholesky(matrix, 3);
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                double sum = 0;
+                for (int k = 0; k < 3; k++) {
+                    sum += factor[i * 3 + k] * factor[j * 3 + k];
+                }
+                assertEquals(matrix[i * 3 + j], sum, 1e-12);
+                if (j > i) {
+                    assertEquals(0, factor[i * 3 + j], 0);
+                }
+            }
+        }
+
+        // Two holdings that always move together: singular, and still reproduced.
+        double[] singular = RiskService.cholesky(new double[]{1, 2, 2, 4}, 2);
+        assertArrayEquals(new double[]{1, 0, 2, 0}, singular, 1e-12);
+    }
+
+    @Test
+    public void testSimulatedQuantilesMatchNormal() {
+        // One holding with 1% daily volatility and no drift: one-day returns are N(0, 0.01).
+        int paths = 200_000;
+        double[] returns = new double[paths];
+        RiskService.simulatePaths(new double[]{0}, new double[]{0.01}, new double[]{1}, 1, 1, new SplittableRandom(1),
+                returns, 0, paths, new double[1], new double[1]);
+        Arrays.sort(returns);
+        assertEquals(-0.01 * 1.6449, returns[(int) (0.05 * paths)], 0.0003);
+        assertEquals(-0.01 * 2.3263, returns[(int) (0.01 * paths)], 0.0005);
+
+        // Two equal halves, perfectly correlated, over 10 days: about sqrt(10) times the one-day spread.
+        double[] twoDay = new double[paths];
+        RiskService.simulatePaths(new double[]{0, 0}, RiskService.cholesky(new double[]{1e-4, 1e-4, 1e-4, 1e-4}, 2),
+                new double[]{0.5, 0.5}, 2, 10, new SplittableRandom(2), twoDay, 0, paths, new double[2], new double[2]);
+        Arrays.sort(twoDay);
+        assertEquals(-0.01 * Math.sqrt(10) * 1.6449, twoDay[(int) (0.05 * paths)], 0.002);
+    }
+}
@@ -36,16 +36,20 @@ describe('PortfolioDetail Component', () => {
     }
   ];
 
+  const detail = (etfs, addableEtfs, addableNextCursor = null) => ({
+    portfolio: mockPortfolio,
+    etfs,
+    addableEtfs,
+    addableNextCursor
+  });
+
   beforeEach(() => {
     jest.clearAllMocks();
     authService.getAuthHeaders.mockReturnValue({ Authorization: 'Bearer mock-token' });
   });
 
   it('renders portfolio detail with ETFs', async () => {
-    fetch
-      .mockResolvedValueOnce({ ok: true, json: async () => mockPortfolio })
-      .mockResolvedValueOnce({ ok: true, json: async () => mockEtfs })
-      .mockResolvedValueOnce({ ok: true, json: async () => [] });
+    fetch.mockResolvedValueOnce({ ok: true, json: async () => detail(mockEtfs, []) });
 
     render(<PortfolioDetailWithRouter user={mockUser} />);
 
@@ -57,10 +61,7 @@ describe('PortfolioDetail Component', () => {
   });
 
   it('shows Add ETF button for portfolio owner', async () => {
-    fetch
-      .mockResolvedValueOnce({ ok: true, json: async () => mockPortfolio })
-      .mockResolvedValueOnce({ ok: true, json: async () => mockEtfs })
-      .mockResolvedValueOnce({ ok: true, json: async () => [] });
+    fetch.mockResolvedValueOnce({ ok: true, json: async () => detail(mockEtfs, []) });
 
     render(<PortfolioDetailWithRouter user={mockUser} />);
 
@@ -70,10 +71,7 @@ describe('PortfolioDetail Component', () => {
   });
 
   it('shows Remove button for ETFs when user can manage portfolio', async () => {
-    fetch
-      .mockResolvedValueOnce({ ok: true, json: async () => mockPortfolio })
-      .mockResolvedValueOnce({ ok: true, json: async () => mockEtfs })
-      .mockResolvedValueOnce({ ok: true, json: async () => [] });
+    fetch.mockResolvedValueOnce({ ok: true, json: async () => detail(mockEtfs, []) });
 
     render(<PortfolioDetailWithRouter user={mockUser} />);
 
@@ -87,10 +85,7 @@ describe('PortfolioDetail Component', () => {
       { id: 2, ticker: 'BND', description: 'Bond ETF', assetClass: 'Bond', expenseRatio: 0.035 }
     ];
 
-    fetch
-      .mockResolvedValueOnce({ ok: true, json: async () => mockPortfolio })
-      .mockResolvedValueOnce({ ok: true, json: async () => mockEtfs })
-      .mockResolvedValueOnce({ ok: true, json: async () => availableEtfs });
+    fetch.mockResolvedValueOnce({ ok: true, json: async () => detail(mockEtfs, availableEtfs) });
 
     render(<PortfolioDetailWithRouter user={mockUser} />);
 
@@ -107,10 +102,7 @@ describe('PortfolioDetail Component', () => {
       { id: 2, ticker: 'BND', description: 'Bond ETF', assetClass: 'Bond', expenseRatio: 0.035 }
     ];
 
-    fetch
-      .mockResolvedValueOnce({ ok: true, json: async () => mockPortfolio })
-      .mockResolvedValueOnce({ ok: true, json: async () => mockEtfs })
-      .mockResolvedValueOnce({ ok: true, json: async () => availableEtfs });
+    fetch.mockResolvedValueOnce({ ok: true, json: async () => detail(mockEtfs, availableEtfs) });
 
     render(<PortfolioDetailWithRouter user={mockUser} />);
 
@@ -119,10 +111,7 @@ describe('PortfolioDetail Component', () => {
     });
 
     fetch.mockResolvedValueOnce({ ok: true });
-    fetch
-      .mockResolvedValueOnce({ ok: true, json: async () => mockPortfolio })
-      .mockResolvedValueOnce({ ok: true, json: async () => [...mockEtfs, availableEtfs[0]] })
-      .mockResolvedValueOnce({ ok: true, json: async () => [] });
+    fetch.mockResolvedValueOnce({ ok: true, json: async () => detail([...mockEtfs, availableEtfs[0]], []) });
 
     fireEvent.click(screen.getAllByText('Add')[0]);
 
@@ -135,10 +124,7 @@ describe('PortfolioDetail Component', () => {
   });
 
   it('handles removing ETF from portfolio', async () => {
-    fetch
-      .mockResolvedValueOnce({ ok: true, json: async () => mockPortfolio })
-      .mockResolvedValueOnce({ ok: true, json: async () => mockEtfs })
-      .mockResolvedValueOnce({ ok: true, json: async () => [] });
+    fetch.mockResolvedValueOnce({ ok: true, json: async () => detail(mockEtfs, []) });
 
     window.confirm = jest.fn(() => true);
 
@@ -149,10 +135,7 @@ describe('PortfolioDetail Component', () => {
     });
 
     fetch.mockResolvedValueOnce({ ok: true });
-    fetch
-      .mockResolvedValueOnce({ ok: true, json: async () => mockPortfolio })
-      .mockResolvedValueOnce({ ok: true, json: async () => [] })
-      .mockResolvedValueOnce({ ok: true, json: async () => [] });
+    fetch.mockResolvedValueOnce({ ok: true, json: async () => detail([], []) });
 
     fireEvent.click(screen.getByText('Remove'));
 
@@ -163,4 +146,48 @@ describe('PortfolioDetail Component', () => {
       });
     });
   });
-});
\ No newline at end of file
+
+  it('loads the portfolio with a single request', async () => {
+    fetch.mockResolvedValueOnce({ ok: true, json: async () => detail(mockEtfs, []) });
+
+    render(<PortfolioDetailWithRouter user={mockUser} />);
+
+    await waitFor(() => {
+      expect(screen.getByText('Test Portfolio')).toBeInTheDocument();
+    });
+
+    expect(fetch).toHaveBeenCalledTimes(1);
+    expect(fetch).toHaveBeenCalledWith('/api/portfolios/1/detail', {
+      headers: { Authorization: 'Bearer mock-token' }
+    });
+  });
+
+  it('loads more ETFs to add', async () => {
+    const firstPage = [
+      { id: 2, ticker: 'BND', description: 'Bond ETF', assetClass: 'Bond', expenseRatio: 0.035 }
+    ];
+    const secondPage = [
+      { id: 3, ticker: 'VXUS', description: 'International ETF', assetClass: 'Equity', expenseRatio: 0.07 }
+    ];
+
+    fetch.mockResolvedValueOnce({ ok: true, json: async () => detail(mockEtfs, firstPage, 'next') });
+
+    render(<PortfolioDetailWithRouter user={mockUser} />);
+
+    await waitFor(() => {
+      fireEvent.click(screen.getByText('Add ETF'));
+    });
+
+    fetch.mockResolvedValueOnce({ ok: true, json: async () => detail(mockEtfs, secondPage) });
+    fireEvent.click(screen.getByText('Load more'));
+
+    await waitFor(() => {
+      expect(screen.getByText('VXUS')).toBeInTheDocument();
+    });
+    expect(screen.getByText('BND')).toBeInTheDocument();
+    expect(fetch).toHaveBeenCalledWith('/api/portfolios/1/detail?cursor=next', {
+      headers: { Authorization: 'Bearer mock-token' }
+    });
+    expect(screen.queryByText('Load more')).not.toBeInTheDocument();
+  });
+});
@@ -15,6 +15,7 @@ const EtfTable = ({ etfs, searchTerm, setSearchTerm, sortBy, setSortBy, sortDire
           <select className="form-select" value={sortBy} onChange={(e) => setSortBy(e.target.value)}>
             <option value="ticker">Sort by Ticker</option>
             <option value="assetClass">Sort by Asset Class</option>
+            <option value="relevance">Sort by Relevance</option>
           </select>
         </div>
         <div className="col-md-3">
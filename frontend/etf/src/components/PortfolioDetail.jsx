@@ -8,6 +8,7 @@ const PortfolioDetail = ({ user }) => {
   const [portfolio, setPortfolio] = useState(null);
   const [portfolioEtfs, setPortfolioEtfs] = useState([]);
   const [availableEtfs, setAvailableEtfs] = useState([]);
+  const [availableCursor, setAvailableCursor] = useState(null);
   const [loading, setLoading] = useState(true);
   const [showAddModal, setShowAddModal] = useState(false);
 
@@ -18,37 +19,24 @@ const PortfolioDetail = ({ user }) => {
   const fetchPortfolioData = async () => {
     try {
       const headers = { ...authService.getAuthHeaders() }
-      
-      // This is JavaScript's destructuring syntax to fetch multiple resources in parallel.
-      // It allows us to make multiple API calls and wait for all of them to complete.
-      // We use Promise.all to wait for all fetch calls to complete. This is one of Flex-Path Quiz questions. ^__^
-      const [portfolioResponse, etfsResponse, availableResponse] = await Promise.all([
-        fetch(`/api/portfolios/${id}`, { headers }),
-        fetch(`/api/portfolios/${id}/etfs`, { headers }),
-        fetch('/api/etfs', { headers })
-      ])
-
-      if (portfolioResponse.ok) {
-        const portfolioData = await portfolioResponse.json();
-        setPortfolio(portfolioData);
-      } else if (portfolioResponse.status === 404) {
+
+      // One request brings the portfolio, its ETFs and the first page of ETFs that can still be added to it.
+      const response = await fetch(`/api/portfolios/${id}/detail`, { headers })
+
+      if (response.ok) {
+        const detail = await response.json();
+        setPortfolio(detail.portfolio);
+        setPortfolioEtfs(detail.etfs);
+        setAvailableEtfs(detail.addableEtfs);
+        setAvailableCursor(detail.addableNextCursor);
+      } else if (response.status === 404) {
         navigate('/portfolios')
         return
-      } else if (portfolioResponse.status === 401) {
+      } else if (response.status === 401) {
         authService.logout();
         window.location.reload();
         return
       }
-
-      if (etfsResponse.ok) {
-        const etfsData = await etfsResponse.json();
-        setPortfolioEtfs(etfsData);
-      }
-
-      if (availableResponse.ok) {
-        const availableData = await availableResponse.json();
-        setAvailableEtfs(availableData);
-      }
     } catch (error) {
       console.error('Failed to fetch portfolio data:', error)
     } finally {
@@ -56,6 +44,35 @@ const PortfolioDetail = ({ user }) => {
     }
   }
 
+  // The next page of ETFs for the add modal. /detail's cursor is a ticker-order cursor of GET /api/etfs, so later
+  // pages come from there instead of loading the portfolio again; the ETFs it already holds are dropped here.
+  const fetchMoreAvailableEtfs = async () => {
+    try {
+      const params = new URLSearchParams({
+        sortBy: 'ticker',
+        sortDirection: 'asc',
+        limit: '500',
+        cursor: availableCursor,
+        fields: 'ticker,description,assetClass,expenseRatio'
+      })
+      const response = await fetch(`/api/etfs?${params}`, {
+        headers: { ...authService.getAuthHeaders() }
+      })
+
+      if (response.ok) {
+        const etfs = await response.json();
+        const held = new Set(portfolioEtfs.map(etf => etf.id));
+        setAvailableEtfs([...availableEtfs, ...etfs.filter(etf => !held.has(etf.id))]);
+        setAvailableCursor(response.headers.get('X-Next-Cursor'));
+      } else if (response.status === 401) {
+        authService.logout();
+        window.location.reload();
+      }
+    } catch (error) {
+      console.error('Failed to fetch more ETFs:', error);
+    }
+  }
+
   const handleAddEtf = async (etfId) => {
     try {
       const response = await fetch(`/api/portfolios/${id}/etfs/${etfId}`, {
@@ -106,9 +123,9 @@ const PortfolioDetail = ({ user }) => {
     return portfolio && (user.role === 'ADMIN' || portfolio.userId === user.id);
   }
 
+  // The server already leaves out the ETFs that are in the portfolio.
   const getAvailableEtfsToAdd = () => {
-    const portfolioEtfIds = portfolioEtfs.map(etf => etf.id);
-    return availableEtfs.filter(etf => !portfolioEtfIds.includes(etf.id));
+    return availableEtfs;
   }
 
   if (loading) {
@@ -209,6 +226,11 @@ const PortfolioDetail = ({ user }) => {
                     </tbody>
                   </table>
                 </div>
+                {availableCursor && (
+                  <div className="text-center">
+                    <button className="btn btn-sm btn-outline-secondary" onClick={fetchMoreAvailableEtfs}>Load more</button>
+                  </div>
+                )}
                 {getAvailableEtfsToAdd().length === 0 && (
                   <div className="text-center text-muted">No more ETFs available to add.</div>
                 )}
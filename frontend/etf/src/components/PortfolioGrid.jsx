@@ -17,6 +17,7 @@ const PortfolioGrid = ({ portfolios, searchTerm, setSearchTerm, sortBy, setSortB
           <select className="form-select" value={sortBy} onChange={(e) => setSortBy(e.target.value)}>
             <option value="name">Sort by Name</option>
             <option value="userId">Sort by User ID</option>
+            <option value="relevance">Sort by Relevance</option>
           </select>
         </div>
         <div className="col-md-3">